@@ -0,0 +1,331 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.streever.data.generator.fields.KeySpace;
+
+import java.util.SplittableRandom;
+
+/*
+The live rows behind a CDC simulation (cdctype 3): a bounded working set of keys and the
+current image of each row, in slot arrays.  A delete moves the last row into the freed slot,
+so picking, adding and removing a row are all constant time.
+
+A row is its key text and image text in one char array, kept for the slot and reused, with the
+end of the key and of each image field in a flat int array.  The fields of an image are copied
+by those offsets, so values may hold the delimiter.  A 64 bit hash of each key goes in a long
+array, and an open addressed table of slots (linear probing) finds a live key by its hash.
+Without key fields every key is empty, so there is no table and no key is ever found.
+
+Configured by the schema's "cdcsim":
+  keys     how many rows can be live at once, default 10000
+  insert   relative weight of inserts, default 1
+  update   relative weight of updates, default 3
+  delete   relative weight of deletes, default 1
+
+An empty working set always inserts and a full one deletes instead of inserting, so the ratios
+hold once the set has settled between the two.
+
+Not thread safe, it belongs to one RecordGenerator.
+ */
+public class ChangeSimulator {
+
+    public static final char INSERT = 'I';
+    public static final char UPDATE = 'U';
+    public static final char DELETE = 'D';
+
+    // The most live rows, so the index (4 slots per row, to a power of 2) fits in an int array.
+    public static final int MAX_KEYS = 1 << 28;
+
+    private final int capacity;
+    // Cumulative, as fractions of the total weight.
+    private final double insertUpTo;
+    private final double updateUpTo;
+
+    // The fields in an image, and the delimiter between them.
+    private final int fieldCount;
+    private final int delimiterLength;
+
+    // By slot.
+    private final char[][] rows;
+    private final int[] lengths;
+    private final long[] hashes;
+    // By slot, 'stride' ints: the end of the key, then the end of each image field, in the row.
+    private final int stride;
+    private final int[] ends;
+    private int live = 0;
+
+    // Slot + 1 by key hash, 0 when empty.  At least twice the capacity, so probes stay short.
+    // Null when not keyed.
+    private final int[] index;
+    private final int mask;
+
+    public ChangeSimulator(JsonNode node, int fieldCount, String delimiter, boolean keyed) {
+        long capacity = 10000;
+        double insert = 1;
+        double update = 3;
+        double delete = 1;
+        if (node != null) {
+            if (node.has("keys"))
+                capacity = node.get("keys").asLong();
+            if (node.has("insert"))
+                insert = node.get("insert").asDouble();
+            if (node.has("update"))
+                update = node.get("update").asDouble();
+            if (node.has("delete"))
+                delete = node.get("delete").asDouble();
+        }
+        if (capacity < 1 || capacity > MAX_KEYS) {
+            throw new IllegalArgumentException("cdcsim keys must be between 1 and " + MAX_KEYS);
+        }
+        double total = insert + update + delete;
+        if (insert <= 0 || update < 0 || delete < 0 || total <= 0) {
+            throw new IllegalArgumentException("cdcsim needs a positive insert weight and no negative weights");
+        }
+        this.capacity = (int) capacity;
+        this.insertUpTo = insert / total;
+        this.updateUpTo = (insert + update) / total;
+        this.fieldCount = fieldCount;
+        this.delimiterLength = delimiter.length();
+        this.stride = fieldCount + 1;
+        try {
+            this.ends = new int[Math.multiplyExact(this.capacity, stride)];
+        } catch (ArithmeticException ae) {
+            throw new IllegalArgumentException("cdcsim keys (" + capacity + ") times the fields in a row (" + stride
+                    + ") is too many to hold");
+        }
+        this.rows = new char[this.capacity][];
+        this.lengths = new int[this.capacity];
+        this.hashes = new long[this.capacity];
+        this.index = keyed ? new int[Integer.highestOneBit(this.capacity) << 2] : null;
+        this.mask = keyed ? index.length - 1 : 0;
+    }
+
+    /*
+    The next operation, given how full the working set is.
+     */
+    public char nextOp(SplittableRandom random) {
+        if (live == 0) {
+            return INSERT;
+        }
+        double r = random.nextDouble();
+        if (r < insertUpTo) {
+            return live < capacity ? INSERT : DELETE;
+        }
+        return r < updateUpTo ? UPDATE : DELETE;
+    }
+
+    /*
+    A random live row.
+     */
+    public int pick(SplittableRandom random) {
+        return random.nextInt(live);
+    }
+
+    /*
+    The slot of the live row with the key in src[start, end), or -1.
+     */
+    public int find(CharSequence src, int start, int end) {
+        if (index == null) {
+            return -1;
+        }
+        long hash = hash(src, start, end);
+        for (int i = (int) hash & mask; index[i] != 0; i = (i + 1) & mask) {
+            int slot = index[i] - 1;
+            if (hashes[slot] == hash && keyEquals(slot, src, start, end)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /*
+    Add a row: its key is src[keyStart, keyEnd) and its image starts at imageStart, with field
+    'f' ending at fieldEnds[f].  The key mustn't be live, see find().  Returns the slot.
+     */
+    public int add(CharSequence src, int keyStart, int keyEnd, int imageStart, int[] fieldEnds) {
+        int slot = live++;
+        int keyLength = keyEnd - keyStart;
+        int length = keyLength + fieldEnds[fieldCount - 1] - imageStart;
+        char[] row = row(slot, length, 0);
+        copy(src, keyStart, keyEnd, row, 0);
+        copy(src, imageStart, fieldEnds[fieldCount - 1], row, keyLength);
+        lengths[slot] = length;
+        setEnds(slot, keyLength, imageStart, fieldEnds);
+
+        if (index != null) {
+            long hash = hash(src, keyStart, keyEnd);
+            hashes[slot] = hash;
+            int i = (int) hash & mask;
+            while (index[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            index[i] = slot + 1;
+        }
+        return slot;
+    }
+
+    /*
+    Replace the image of a row, laid out as for add().
+     */
+    public void setImage(int slot, CharSequence src, int imageStart, int[] fieldEnds) {
+        int keyLength = ends[slot * stride];
+        int length = keyLength + fieldEnds[fieldCount - 1] - imageStart;
+        char[] row = row(slot, length, keyLength);
+        copy(src, imageStart, fieldEnds[fieldCount - 1], row, keyLength);
+        lengths[slot] = length;
+        setEnds(slot, keyLength, imageStart, fieldEnds);
+    }
+
+    public void remove(int slot) {
+        if (index != null) {
+            unindex(slot);
+        }
+        live--;
+        if (slot != live) {
+            // Move the last row down, and keep the freed row's chars for the next add.
+            char[] freed = rows[slot];
+            rows[slot] = rows[live];
+            rows[live] = freed;
+            lengths[slot] = lengths[live];
+            hashes[slot] = hashes[live];
+            System.arraycopy(ends, live * stride, ends, slot * stride, stride);
+            if (index != null) {
+                index[position(live)] = slot + 1;
+            }
+        }
+    }
+
+    /*
+    The key, each of its fields followed by the delimiter.
+     */
+    public void appendKey(StringBuilder sb, int slot) {
+        sb.append(rows[slot], 0, ends[slot * stride]);
+    }
+
+    /*
+    The image, its fields between delimiters.
+     */
+    public void appendImage(StringBuilder sb, int slot) {
+        int keyLength = ends[slot * stride];
+        sb.append(rows[slot], keyLength, lengths[slot] - keyLength);
+    }
+
+    /*
+    Field 'field' of the image.
+     */
+    public void appendField(StringBuilder sb, int slot, int field) {
+        int base = slot * stride;
+        int start = field == 0 ? ends[base] : ends[base + field] + delimiterLength;
+        sb.append(rows[slot], start, ends[base + field + 1] - start);
+    }
+
+    public int getLive() {
+        return live;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /*
+    The slot's row, with room for 'length' chars and its first 'keep' chars kept.
+     */
+    private char[] row(int slot, int length, int keep) {
+        char[] row = rows[slot];
+        if (row == null || row.length < length) {
+            char[] grown = new char[Math.max(length, row == null ? 16 : row.length * 2)];
+            if (row != null) {
+                System.arraycopy(row, 0, grown, 0, keep);
+            }
+            rows[slot] = row = grown;
+        }
+        return row;
+    }
+
+    private void setEnds(int slot, int keyLength, int imageStart, int[] fieldEnds) {
+        int base = slot * stride;
+        ends[base] = keyLength;
+        for (int f = 0; f < fieldCount; f++) {
+            ends[base + f + 1] = keyLength + fieldEnds[f] - imageStart;
+        }
+    }
+
+    private static void copy(CharSequence src, int start, int end, char[] dst, int at) {
+        if (src instanceof StringBuilder) {
+            ((StringBuilder) src).getChars(start, end, dst, at);
+        } else {
+            for (int i = start; i < end; i++) {
+                dst[at++] = src.charAt(i);
+            }
+        }
+    }
+
+    private boolean keyEquals(int slot, CharSequence src, int start, int end) {
+        int length = end - start;
+        if (ends[slot * stride] != length) {
+            return false;
+        }
+        char[] row = rows[slot];
+        for (int i = 0; i < length; i++) {
+            if (row[i] != src.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash(CharSequence src, int start, int end) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = start; i < end; i++) {
+            h = (h ^ src.charAt(i)) * 0x100000001B3L;
+        }
+        return KeySpace.mix64(h);
+    }
+
+    /*
+    Where the slot is in the index.
+     */
+    private int position(int slot) {
+        int i = (int) hashes[slot] & mask;
+        while (index[i] != slot + 1) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /*
+    Take the slot out of the index, shifting back the entries after it that probed past it.
+     */
+    private void unindex(int slot) {
+        int hole = position(slot);
+        index[hole] = 0;
+        for (int i = (hole + 1) & mask; index[i] != 0; i = (i + 1) & mask) {
+            int home = (int) hashes[index[i] - 1] & mask;
+            // Move it into the hole unless its home lies after the hole, up to it (cyclically).
+            boolean stays = hole <= i ? (home > hole && home <= i) : (home > hole || home <= i);
+            if (!stays) {
+                index[hole] = index[i];
+                index[i] = 0;
+                hole = i;
+            }
+        }
+    }
+}
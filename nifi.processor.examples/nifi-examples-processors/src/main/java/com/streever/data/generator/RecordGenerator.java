@@ -19,8 +19,11 @@
 package com.streever.data.generator;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.streever.data.generator.fields.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
 public class RecordGenerator {
@@ -30,9 +33,105 @@ public class RecordGenerator {
     private boolean orderForced = false;
     private boolean cdc = false;
     private int cdctype = 1;
-    private Random rand = new Random(new Date().getTime());
+    // cdctype 3, the live rows of the simulation.
+    private ChangeSimulator changes = null;
+    // Where each field of the image being rendered ends.
+    private int[] fieldEnds = null;
+    // Not thread safe.  Each thread should build its own RecordGenerator from the schema.
+    private final SplittableRandom rand;
+    private final StringBuilder record = new StringBuilder(256);
+    // The key fields and the rest in order, compiled once the schema is read.
+    private final FieldPlan keyPlan;
+    private final FieldPlan fieldPlan;
 
+    /*
+    With a "seed" in the schema, the records are the same on every run.  The schema's "stream"
+    (default 0) picks one of the independent streams of that seed, ie. node K of a multi-node
+    load test sets stream K.
+     */
     public RecordGenerator(JsonNode node) {
+        this(node, sourceFor(node, getStream(node)));
+    }
+
+    /*
+    The random source for 'stream' of the schema's "seed".  Unseeded when the schema has no seed.
+    Split it for more than one generator on the same stream: the splits of a seeded source
+    come out the same on every run, in the order they are taken.
+     */
+    public static SplittableRandom sourceFor(JsonNode node, long stream) {
+        if (node.has("seed")) {
+            return new SplittableRandom(KeySpace.mix64(node.get("seed").asLong() ^ KeySpace.mix64(stream + 1)));
+        }
+        return new SplittableRandom();
+    }
+
+    /*
+    Check a schema without paying for its pools: the fields are built from a copy with each pool
+    cut to one value ("file" pools are only checked to be there, not mapped) and the CDC working
+    set cut to one row.  Throws what building the schema would.  The generator it returns has the
+    schema's columns, for checking an output format, but isn't for generating.
+     */
+    public static RecordGenerator checkSchema(JsonNode node) {
+        if (node == null || !node.isObject() || !node.has("delimiter") || !node.has("fields") || !node.get("fields").isArray()) {
+            throw new IllegalArgumentException("A generator schema needs a \"delimiter\" and a \"fields\" array");
+        }
+        ObjectNode copy = ((ObjectNode) node).deepCopy();
+        cutPools(copy.get("fields"));
+        if (copy.has("cdcsim") && copy.get("cdcsim").isObject()) {
+            ObjectNode cdcsim = (ObjectNode) copy.get("cdcsim");
+            if (cdcsim.has("keys") && (cdcsim.get("keys").asLong() < 1 || cdcsim.get("keys").asLong() > ChangeSimulator.MAX_KEYS)) {
+                throw new IllegalArgumentException("cdcsim keys must be between 1 and " + ChangeSimulator.MAX_KEYS);
+            }
+            cdcsim.put("keys", 1);
+        }
+        return new RecordGenerator(copy, new SplittableRandom(0));
+    }
+
+    private static void cutPools(JsonNode fieldsNode) {
+        for (int i = 0; i < fieldsNode.size(); i++) {
+            JsonNode fieldNode = fieldsNode.get(i);
+            if (fieldNode.has("string") && fieldNode.get("string").has("random")) {
+                cutPool(fieldNode.get("string").get("random"));
+            } else if (fieldNode.has("number")) {
+                cutPool(fieldNode.get("number"));
+            } else if (fieldNode.has("ip")) {
+                cutPool(fieldNode.get("ip"));
+            } else if (fieldNode.has("nested") && fieldNode.get("nested").has("fields")) {
+                cutPools(fieldNode.get("nested").get("fields"));
+            }
+        }
+    }
+
+    private static void cutPool(JsonNode node) {
+        JsonNode pool = node.get("pool");
+        if (pool == null || !node.isObject()) {
+            return;
+        }
+        if (pool.has("file")) {
+            File file = new File(pool.get("file").asText());
+            if (!file.isFile() || !file.canRead()) {
+                throw new IllegalArgumentException("Couldn't read string pool " + file);
+            }
+        } else if (!pool.has("size") || pool.get("size").asInt() < 1) {
+            throw new IllegalArgumentException("A pool needs a \"size\" of at least 1");
+        }
+        // Not "shared", so the cut pool isn't handed to the real fields.
+        ((ObjectNode) node).putObject("pool").put("size", 1);
+    }
+
+    public static long getStream(JsonNode node) {
+        return node.has("stream") ? node.get("stream").asLong() : 0;
+    }
+
+    public RecordGenerator(JsonNode node, SplittableRandom random) {
+        this(node, random, new KeySpace(node, getStream(node)));
+    }
+
+    /*
+    Generators that share 'keys' never hand out the same "unique" value.
+     */
+    public RecordGenerator(JsonNode node, SplittableRandom random, KeySpace keys) {
+        this.rand = random;
         // This node should be either the "root" node OR the "fields" node.
         delimiter = node.get("delimiter").asText();
         if (node.has("cdc")) {
@@ -47,32 +146,44 @@ public class RecordGenerator {
         for (int i = 0; i < fieldsNode.size(); i++) {
             JsonNode fieldNode = fieldsNode.get(i);
             if (fieldNode.has("string")) {
-                FieldType field = new StringField(fieldNode.get("string"));
+                FieldType field = new StringField(fieldNode.get("string"), rand.split());
                 addFields(field);
             } else if (fieldNode.has("number")) {
-                FieldType field = new NumberField(fieldNode.get("number"));
+                FieldType field = new NumberField(fieldNode.get("number"), rand.split());
                 addFields(field);
             } else if (fieldNode.has("ip")) {
-                FieldType field = new IPAddressField(fieldNode.get("ip"));
+                FieldType field = new IPAddressField(fieldNode.get("ip"), rand.split());
                 addFields(field);
             } else if (fieldNode.has("boolean")) {
-                FieldType field = new BooleanField(fieldNode.get("boolean"));
+                FieldType field = new BooleanField(fieldNode.get("boolean"), rand.split());
                 addFields(field);
             } else if (fieldNode.has("date")) {
-                FieldType field = new DateField(fieldNode.get("date"));
+                FieldType field = new DateField(fieldNode.get("date"), rand.split());
                 addFields(field);
             } else if (fieldNode.has("null")) {
-                FieldType field = new NullField(fieldNode.get("null"));
+                FieldType field = new NullField(fieldNode.get("null"), rand.split());
                 addFields(field);
             } else if (fieldNode.has("start.stop")) {
-                StartStopFields fields = new StartStopFields(fieldNode.get("start.stop"));
+                StartStopFields fields = new StartStopFields(fieldNode.get("start.stop"), rand.split());
                 addFields(fields.getStartField());
                 addFields(fields.getStopField());
+            } else if (fieldNode.has("unique")) {
+                FieldType field = new UniqueField(fieldNode.get("unique"), rand.split(), keys, "fields[" + i + "]");
+                addFields(field);
             } else if (fieldNode.has("nested")) {
-                FieldType field = new NestedField(fieldNode.get("nested"));
+                FieldType field = new NestedField(fieldNode.get("nested"), rand.split());
                 addFields(field);
             }
         }
+        keyPlan = new FieldPlan(keyFields.values(), delimiter);
+        fieldPlan = new FieldPlan(fields.values(), delimiter);
+        if (cdc && cdctype == 3) {
+            if (fields.isEmpty()) {
+                throw new RuntimeException("CDC type 3 needs at least one field that isn't a key.");
+            }
+            changes = new ChangeSimulator(node.get("cdcsim"), fieldPlan.size(), delimiter, !keyPlan.isEmpty());
+            fieldEnds = new int[fieldPlan.size()];
+        }
     }
 
     private void addFields(FieldType field) {
@@ -101,57 +212,164 @@ public class RecordGenerator {
     Generate New Record.
      */
     public String next() {
-        StringBuilder sb = new StringBuilder();
-        Iterator<Map.Entry<Integer, FieldType>> keyFieldsIterator = keyFields.entrySet().iterator();
-        Iterator<Map.Entry<Integer, FieldType>> fieldsIterator = fields.entrySet().iterator();
-
-        while (keyFieldsIterator.hasNext()) {
-            Map.Entry<Integer, FieldType> fieldMapRec = keyFieldsIterator.next();
-            sb.append(fieldMapRec.getValue().getValue());
-//            if (keyFieldsIterator.hasNext())
-            sb.append(delimiter);
+        return nextRecord().toString();
+    }
+
+    /*
+    Generate a new record into a buffer the generator reuses, without a String per field or
+    per record.  The record is only valid until the next call.
+     */
+    public CharSequence nextRecord() {
+        StringBuilder sb = record;
+        sb.setLength(0);
+        if (changes != null) {
+            return nextChange(sb);
         }
 
+        keyPlan.appendAllTerminated(sb);
+
         if (this.cdc) {
             // Only need one field and value
-            int fieldNum = rand.nextInt(fields.size());
-            int pos = 0;
-            while (fieldsIterator.hasNext()) {
-                switch (this.cdctype) {
-                    case 1:
-                        if (fieldNum == pos++) {
-                            Map.Entry<Integer, FieldType> fieldMapRec = fieldsIterator.next();
-                            sb.append(fieldMapRec.getValue().getName());
-                            sb.append(delimiter);
-                            sb.append(fieldMapRec.getValue().getValue());
-                        } else {
-                            fieldsIterator.next();
-                        }
-                        break;
-                    case 2:
-                        Map.Entry<Integer, FieldType> fieldMapRec = fieldsIterator.next();
-                        if (fieldNum == pos++) {
-                            sb.append(fieldMapRec.getValue().getValue());
-                            if (fieldsIterator.hasNext())
-                                sb.append(delimiter);
-                        } else {
-                            if (fieldsIterator.hasNext())
-                                sb.append(delimiter);
+            int fieldNum = rand.nextInt(fieldPlan.size());
+            switch (this.cdctype) {
+                case 1:
+                    sb.append(fieldPlan.get(fieldNum).getName());
+                    fieldPlan.appendDelimiter(sb);
+                    fieldPlan.append(sb, fieldNum);
+                    break;
+                case 2:
+                    int last = fieldPlan.size() - 1;
+                    for (int pos = 0; pos <= last; pos++) {
+                        if (fieldNum == pos) {
+                            fieldPlan.append(sb, pos);
                         }
-                        break;
-                    default:
-                }
+                        if (pos < last)
+                            fieldPlan.appendDelimiter(sb);
+                    }
+                    break;
+                default:
             }
         } else {
-            while (fieldsIterator.hasNext()) {
-                Map.Entry<Integer, FieldType> fieldMapRec = fieldsIterator.next();
-                sb.append(fieldMapRec.getValue().getValue());
-                if (fieldsIterator.hasNext())
-                    sb.append(delimiter);
+            fieldPlan.appendAll(sb);
+        }
+
+        return sb;
+    }
+
+    /*
+    The next record as typed values, in the order of getColumns().  Not for CDC schemas, whose
+    records only come as delimited text.
+     */
+    public void nextRecord(ValueSink sink) throws IOException {
+        if (cdc) {
+            throw new IllegalStateException("CDC records are only generated as delimited text");
+        }
+        keyPlan.writeAll(sink);
+        fieldPlan.writeAll(sink);
+    }
+
+    /*
+    The fields of a record in order, keys first.
+     */
+    public List<FieldType> getColumns() {
+        List<FieldType> columns = new ArrayList<FieldType>(keyPlan.size() + fieldPlan.size());
+        for (int i = 0; i < keyPlan.size(); i++) {
+            columns.add(keyPlan.get(i));
+        }
+        for (int i = 0; i < fieldPlan.size(); i++) {
+            columns.add(fieldPlan.get(i));
+        }
+        return columns;
+    }
+
+    public boolean isCdc() {
+        return cdc;
+    }
+
+    /*
+    CDC type 3: an insert, update or delete of one of the live rows, laid out as
+      op, keys, before image, after image
+    where an image is every field that isn't a key.  Inserts have an empty before image and
+    deletes an empty after image.  An update changes one field of the row.
+
+    An insert that draws a live key updates that row instead, so a "unique" key keeps the
+    inserts from turning into updates.  The unchanged fields of an update are copied by their
+    offsets in the live row, so values may contain the delimiter.
+     */
+    private CharSequence nextChange(StringBuilder sb) {
+        char op = changes.nextOp(rand);
+        sb.append(op).append(delimiter);
+        switch (op) {
+            case ChangeSimulator.INSERT: {
+                int keyStart = sb.length();
+                keyPlan.appendAllTerminated(sb);
+                int keyEnd = sb.length();
+                int slot = changes.find(sb, keyStart, keyEnd);
+                if (slot >= 0) {
+                    sb.setLength(0);
+                    sb.append(ChangeSimulator.UPDATE).append(delimiter);
+                    appendUpdate(sb, slot);
+                    break;
+                }
+                appendEmptyImage(sb);
+                sb.append(delimiter);
+                int afterStart = sb.length();
+                appendImage(sb, -1, -1);
+                changes.add(sb, keyStart, keyEnd, afterStart, fieldEnds);
+                break;
+            }
+            case ChangeSimulator.UPDATE: {
+                appendUpdate(sb, changes.pick(rand));
+                break;
+            }
+            case ChangeSimulator.DELETE: {
+                int slot = changes.pick(rand);
+                changes.appendKey(sb, slot);
+                changes.appendImage(sb, slot);
+                sb.append(delimiter);
+                appendEmptyImage(sb);
+                changes.remove(slot);
+                break;
+            }
+            default:
+        }
+        return sb;
+    }
+
+    /*
+    Keys, before and after image of an update to the row in 'slot'.
+     */
+    private void appendUpdate(StringBuilder sb, int slot) {
+        changes.appendKey(sb, slot);
+        changes.appendImage(sb, slot);
+        sb.append(delimiter);
+        int afterStart = sb.length();
+        appendImage(sb, slot, rand.nextInt(fieldPlan.size()));
+        changes.setImage(slot, sb, afterStart, fieldEnds);
+    }
+
+    /*
+    An image, noting where each field ends in fieldEnds.  Field 'changed' is drawn and the rest
+    come from the row in 'slot', or every field is drawn when there is no slot.
+     */
+    private void appendImage(StringBuilder sb, int slot, int changed) {
+        int last = fieldPlan.size() - 1;
+        for (int f = 0; f <= last; f++) {
+            if (slot < 0 || f == changed) {
+                fieldPlan.append(sb, f);
+            } else {
+                changes.appendField(sb, slot, f);
             }
+            fieldEnds[f] = sb.length();
+            if (f < last)
+                fieldPlan.appendDelimiter(sb);
         }
+    }
 
-        return sb.toString();
+    private void appendEmptyImage(StringBuilder sb) {
+        for (int i = 1; i < fieldPlan.size(); i++) {
+            sb.append(delimiter);
+        }
     }
 
 }
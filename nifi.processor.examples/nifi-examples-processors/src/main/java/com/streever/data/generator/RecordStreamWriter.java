@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator;
+
+import com.streever.parsers.RecordScanner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+Encodes records straight into an OutputStream through one reusable byte buffer, so the
+memory used doesn't depend on how many records are written.
+
+The encoder runs across records and is only reset at the start of a stream, so a charset
+with a byte order mark (ie. UTF-16) writes it once, at the start, as OutputStreamWriter does.
+ */
+public class RecordStreamWriter {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private OutputStream out;
+    private final Charset charset;
+    private final CharsetEncoder encoder;
+    // ASCII compatible charsets can write 7 bit chars straight as bytes.
+    private final boolean asciiCompatible;
+    private final byte[] recordSeparator;
+    // The byte order mark the charset starts a stream with, if any.
+    private final byte[] mark;
+
+    private final ByteBuffer buffer;
+    private final byte[] bytes;
+
+    private long records = 0;
+    private long bytesWritten = 0;
+
+    public RecordStreamWriter(OutputStream out, Charset charset) {
+        this(out, charset, "\n", DEFAULT_BUFFER_SIZE);
+    }
+
+    public RecordStreamWriter(OutputStream out, Charset charset, String recordSeparator, int bufferSize) {
+        this.out = out;
+        this.charset = charset != null ? charset : StandardCharsets.UTF_8;
+        this.encoder = this.charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.asciiCompatible = this.charset.equals(StandardCharsets.UTF_8)
+                || this.charset.equals(StandardCharsets.US_ASCII)
+                || this.charset.equals(StandardCharsets.ISO_8859_1);
+        this.recordSeparator = RecordScanner.encode(recordSeparator, this.charset);
+        byte[] marked = recordSeparator.getBytes(this.charset);
+        this.mark = Arrays.copyOf(marked, marked.length - this.recordSeparator.length);
+        this.bytes = new byte[Math.max(bufferSize, 1024)];
+        this.buffer = ByteBuffer.wrap(bytes);
+        start();
+    }
+
+    /*
+    Reset the encoder and start the stream with the byte order mark.
+     */
+    private void start() {
+        encoder.reset();
+        if (mark.length > 0) {
+            // The encoder writes its mark with the first chars it encodes; get that out of the way.
+            encoder.encode(CharBuffer.wrap("\n"), ByteBuffer.allocate(16), false);
+            buffer.put(mark);
+        }
+    }
+
+    /*
+    Point the writer at another stream, keeping the buffer.  Anything unflushed is dropped.
+     */
+    public void reset(OutputStream out) {
+        this.out = out;
+        buffer.clear();
+        records = 0;
+        bytesWritten = 0;
+        start();
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /*
+    Write a record followed by the record separator.
+     */
+    public void write(CharSequence record) throws IOException {
+        int length = record.length();
+        int i = 0;
+        if (asciiCompatible) {
+            for (; i < length; i++) {
+                char c = record.charAt(i);
+                if (c >= 0x80) {
+                    break;
+                }
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                buffer.put((byte) c);
+            }
+        }
+        if (i < length) {
+            encode(CharBuffer.wrap(record, i, length));
+        }
+        for (byte b : recordSeparator) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put(b);
+        }
+        records++;
+    }
+
+    private void encode(CharBuffer chars) throws IOException {
+        // Not the end of input, so the encoder carries on into the next record.
+        while (encoder.encode(chars, buffer, false).isOverflow()) {
+            drain();
+        }
+        if (chars.hasRemaining()) {
+            // A high surrogate the record ended on, held back for a low one that won't come.
+            for (byte b : encoder.replacement()) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                buffer.put(b);
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        out.write(bytes, 0, buffer.position());
+        bytesWritten += buffer.position();
+        buffer.clear();
+    }
+
+    /*
+    Write out what's buffered.  The underlying stream is flushed, not closed.
+     */
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    public long getRecordCount() {
+        return records;
+    }
+
+    /*
+    Bytes handed to the OutputStream so far, not counting what is still buffered.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /*
+    Bytes written so far, including what is still buffered.
+     */
+    public long getByteCount() {
+        return bytesWritten + buffer.position();
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator;
+
+/*
+A token bucket shared by the threads generating against one target rate.  Tokens (records
+or bytes) refill continuously at the rate, up to one second's worth, so a caller that was
+held back can catch up but never burst past a second of output.
+ */
+public class TokenBucket {
+
+    private final long ratePerSecond;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(long ratePerSecond) {
+        if (ratePerSecond < 1) {
+            throw new IllegalArgumentException("Rate must be at least 1 per second");
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = ratePerSecond;
+        this.tokens = 0;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public long getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    /*
+    Take up to 'max' tokens.  Returns how many were granted, 0 when the bucket is empty (or in debt).
+     */
+    public long tryAcquire(long max) {
+        return tryAcquire(1, max);
+    }
+
+    /*
+    Take up to 'max' tokens, but only once there are at least 'min' (capped at the capacity, or
+    it would never fill).  Returns how many were granted, 0 until there are 'min'.
+     */
+    public synchronized long tryAcquire(long min, long max) {
+        refill();
+        if (tokens < Math.max(1, Math.min(min, capacity))) {
+            return 0;
+        }
+        long granted = (long) Math.min(max, Math.floor(tokens));
+        tokens -= granted;
+        return granted;
+    }
+
+    /*
+    Settle a grant once the real usage is known: a positive amount gives unused tokens back,
+    a negative one charges an overshoot against the next grants.
+     */
+    public synchronized void release(long tokens) {
+        this.tokens = Math.min(capacity, this.tokens + tokens);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerSecond / 1e9);
+        lastRefill = now;
+    }
+}
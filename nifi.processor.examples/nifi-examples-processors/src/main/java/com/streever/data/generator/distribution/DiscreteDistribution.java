@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.distribution;
+
+import java.util.SplittableRandom;
+
+/*
+A fixed set of weighted items, sampled in O(1) from an alias table (Vose's method).  The
+range is cut into one bucket per item and next() lands uniformly within the chosen bucket,
+so with as many items as a set has entries, nextIndex() returns the item itself.
+ */
+public class DiscreteDistribution extends Distribution {
+
+    private final int items;
+    private final double[] probability;
+    private final int[] alias;
+
+    public DiscreteDistribution(double[] weights) {
+        items = weights.length;
+        probability = new double[items];
+        alias = new int[items];
+
+        double total = 0;
+        for (double weight : weights) {
+            if (weight < 0 || Double.isNaN(weight)) {
+                throw new IllegalArgumentException("Weights can't be negative");
+            }
+            total += weight;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Weights must add up to more than 0");
+        }
+
+        // Scale so the average item is 1, then pair each small item with a large one.
+        double[] scaled = new double[items];
+        int[] small = new int[items];
+        int[] large = new int[items];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < items; i++) {
+            scaled[i] = weights[i] * items / total;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // What's left is 1 give or take rounding.
+        while (largeCount > 0) {
+            int i = large[--largeCount];
+            probability[i] = 1.0;
+            alias[i] = i;
+        }
+        while (smallCount > 0) {
+            int i = small[--smallCount];
+            probability[i] = 1.0;
+            alias[i] = i;
+        }
+    }
+
+    /*
+    Item k (from 0) weighted 1 / (k + 1)^exponent, so the first items are the hot ones.
+     */
+    public static DiscreteDistribution zipfian(int items, double exponent) {
+        if (items < 1) {
+            throw new IllegalArgumentException("A zipfian distribution needs at least 1 item");
+        }
+        double[] weights = new double[items];
+        for (int k = 0; k < items; k++) {
+            weights[k] = 1.0 / Math.pow(k + 1, exponent);
+        }
+        return new DiscreteDistribution(weights);
+    }
+
+    public int getItems() {
+        return items;
+    }
+
+    /*
+    The chosen item, from 0.
+     */
+    public int nextItem(SplittableRandom random) {
+        double u = random.nextDouble() * items;
+        int i = (int) u;
+        return (u - i) < probability[i] ? i : alias[i];
+    }
+
+    @Override
+    public double next(SplittableRandom random) {
+        return (nextItem(random) + random.nextDouble()) / items;
+    }
+
+    @Override
+    public int nextIndex(SplittableRandom random, int size) {
+        if (size == items) {
+            return nextItem(random);
+        }
+        return super.nextIndex(random, size);
+    }
+}
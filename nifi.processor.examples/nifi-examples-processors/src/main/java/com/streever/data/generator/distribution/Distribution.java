@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.distribution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.SplittableRandom;
+
+/*
+Where a value falls in a field's range (or which entry of a set or pool is picked), as a
+fraction in [0,1).  Fields without a distribution draw uniformly.
+
+In the schema, a field's "distribution" is either the type name or an object with a "type":
+  zipfian      "exponent" (default 1.0), "items" (default: the set, pool or range size, max 1000)
+  weighted     "weights", one per item
+  normal       "mean" (default 0.5) and "stddev" (default 0.15), as fractions of the range
+  exponential  "rate" (default 5.0), in ranges; the larger, the more values crowd at the min
+  uniform
+ */
+public abstract class Distribution {
+
+    public static final int MAX_DEFAULT_ITEMS = 1000;
+
+    public abstract double next(SplittableRandom random);
+
+    /*
+    Pick one of 'size' entries.
+     */
+    public int nextIndex(SplittableRandom random, int size) {
+        return Math.min((int) (next(random) * size), size - 1);
+    }
+
+    /*
+    Build the distribution described by a field's "distribution" node.  'items' is the number of
+    distinct values the field can take, used as the default zipfian item count.
+     */
+    public static Distribution fromJson(JsonNode node, long items) {
+        String type = node.isTextual() ? node.asText() : node.path("type").asText("uniform");
+        switch (type.toLowerCase()) {
+            case "uniform":
+                return new UniformDistribution();
+            case "zipfian":
+            case "zipf":
+                int zipfItems = node.has("items") ? node.get("items").asInt()
+                        : (int) Math.max(1, Math.min(items, MAX_DEFAULT_ITEMS));
+                return DiscreteDistribution.zipfian(zipfItems, node.path("exponent").asDouble(1.0));
+            case "weighted":
+                JsonNode weightsNode = node.get("weights");
+                if (weightsNode == null || !weightsNode.isArray() || weightsNode.size() == 0) {
+                    throw new IllegalArgumentException("A weighted distribution needs a \"weights\" array");
+                }
+                double[] weights = new double[weightsNode.size()];
+                for (int i = 0; i < weights.length; i++) {
+                    weights[i] = weightsNode.get(i).asDouble();
+                }
+                return new DiscreteDistribution(weights);
+            case "normal":
+            case "gaussian":
+                return new NormalDistribution(node.path("mean").asDouble(0.5), node.path("stddev").asDouble(0.15));
+            case "exponential":
+                return new ExponentialDistribution(node.path("rate").asDouble(5.0));
+            default:
+                throw new IllegalArgumentException("Unknown distribution: " + type);
+        }
+    }
+}
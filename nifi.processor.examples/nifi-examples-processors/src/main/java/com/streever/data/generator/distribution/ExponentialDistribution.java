@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.distribution;
+
+import java.util.SplittableRandom;
+
+/*
+An exponential distribution truncated to the range, drawn by inverting its CDF, so each value
+costs one random draw and a log.  'rate' is in ranges: at 5, nearly two thirds of the values
+land in the first fifth of the range.
+ */
+public class ExponentialDistribution extends Distribution {
+
+    private final double rate;
+    private final double mass;
+
+    public ExponentialDistribution(double rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be more than 0");
+        }
+        this.rate = rate;
+        // The share of the untruncated distribution that falls within the range.
+        this.mass = 1 - Math.exp(-rate);
+    }
+
+    @Override
+    public double next(SplittableRandom random) {
+        double value = -Math.log(1 - random.nextDouble() * mass) / rate;
+        return Math.min(value, Math.nextDown(1.0));
+    }
+}
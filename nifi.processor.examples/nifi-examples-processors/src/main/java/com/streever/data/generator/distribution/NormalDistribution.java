@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.distribution;
+
+import java.util.SplittableRandom;
+
+/*
+A normal distribution truncated to the range, with the mean and standard deviation given as
+fractions of the range.
+ */
+public class NormalDistribution extends Distribution {
+
+    // Draws outside the range are redrawn this many times before being clamped.
+    private static final int MAX_DRAWS = 16;
+
+    private final double mean;
+    private final double stddev;
+
+    public NormalDistribution(double mean, double stddev) {
+        if (stddev <= 0) {
+            throw new IllegalArgumentException("stddev must be more than 0");
+        }
+        this.mean = mean;
+        this.stddev = stddev;
+    }
+
+    @Override
+    public double next(SplittableRandom random) {
+        double value = 0;
+        for (int i = 0; i < MAX_DRAWS; i++) {
+            value = mean + stddev * gaussian(random);
+            if (value >= 0 && value < 1) {
+                return value;
+            }
+        }
+        return Math.min(Math.max(value, 0), Math.nextDown(1.0));
+    }
+
+    /*
+    Marsaglia's polar method.  The second value of each pair is dropped to keep the
+    distribution free of state.
+     */
+    private static double gaussian(SplittableRandom random) {
+        double v1;
+        double v2;
+        double s;
+        do {
+            v1 = 2 * random.nextDouble() - 1;
+            v2 = 2 * random.nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        return v1 * Math.sqrt(-2 * Math.log(s) / s);
+    }
+}
@@ -19,13 +19,21 @@
 package com.streever.data.generator.fields;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.streever.data.generator.distribution.Distribution;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
 
 public abstract class AbstractFieldType {
     private Integer order;
     private JsonNode node;
     private String name;
     private boolean key = false;
-    
+    // Not thread safe.  Each generator (and so each thread) gets its own split of the source.
+    protected final SplittableRandom random;
+    // Null draws uniformly.
+    protected Distribution distribution = null;
+
     public boolean hasOrder() {
         return order != null ? true : false;
     }
@@ -41,11 +49,58 @@ public abstract class AbstractFieldType {
         this.order = order;
     }
 
+    protected void setKey(boolean key) {
+        this.key = key;
+    }
+
+    /*
+    Pick up the field's "distribution", if it has one.  'items' is how many distinct values
+    the field draws from (set, pool or range size).
+     */
+    protected void initDistribution(long items) {
+        if (node != null && node.has("distribution")) {
+            distribution = Distribution.fromJson(node.get("distribution"), items);
+        }
+    }
+
+    /*
+    Where the next value falls in the range, in [0,1).
+     */
+    protected double nextFraction() {
+        return distribution == null ? random.nextDouble() : distribution.next(random);
+    }
+
+    /*
+    Which of 'size' set or pool entries comes next.
+     */
+    protected int nextIndex(int size) {
+        return distribution == null ? random.nextInt(size) : distribution.nextIndex(random, size);
+    }
+
     public JsonNode getJsonNode() {
         return node;
     }
 
+    public abstract void appendValue(StringBuilder sb);
+
+    /*
+    Text, unless the field says otherwise.
+     */
+    public ValueType getValueType() {
+        return ValueType.STRING;
+    }
+
+    public void writeValue(ValueSink sink) throws IOException {
+        appendValue(sink.beginString());
+        sink.endString();
+    }
+
     public AbstractFieldType(JsonNode node) {
+        this(node, new SplittableRandom());
+    }
+
+    public AbstractFieldType(JsonNode node, SplittableRandom random) {
+        this.random = random;
         if (node != null) {
             this.node = node;
             if (node.has("order")) {
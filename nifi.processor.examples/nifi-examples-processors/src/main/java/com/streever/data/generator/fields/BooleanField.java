@@ -20,15 +20,19 @@ package com.streever.data.generator.fields;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
-import java.util.Random;
+import java.io.IOException;
+import java.util.SplittableRandom;
 
 public class BooleanField extends AbstractFieldType implements FieldType<String> {
 
     String[] booleanValues = new String[]{"F","T"};
-    Random random = new Random();
 
     public BooleanField(JsonNode node) {
-        super(node);
+        this(node, new SplittableRandom());
+    }
+
+    public BooleanField(JsonNode node, SplittableRandom random) {
+        super(node, random);
         if (node.has("format")) {
             String formatString = node.get("format").asText();
             booleanValues = formatString.split(":");
@@ -36,12 +40,28 @@ public class BooleanField extends AbstractFieldType implements FieldType<String>
     }
 
     public String getValue() {
-        return booleanValues[(int)Math.round(random.nextFloat())];
+        return booleanValues[random.nextInt(2)];
+    }
+
+    @Override
+    public void appendValue(StringBuilder sb) {
+        sb.append(booleanValues[random.nextInt(2)]);
+    }
+
+    @Override
+    public ValueType getValueType() {
+        return ValueType.BOOLEAN;
+    }
+
+    @Override
+    public void writeValue(ValueSink sink) throws IOException {
+        int i = random.nextInt(2);
+        sink.writeBoolean(i == 1, booleanValues[i]);
     }
 
     @Override
     public String getPoolValue() {
-        return booleanValues[(int)Math.round(random.nextFloat())];
+        return booleanValues[random.nextInt(2)];
     }
 
 }
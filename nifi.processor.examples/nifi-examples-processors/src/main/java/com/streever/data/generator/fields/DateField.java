@@ -20,11 +20,12 @@ package com.streever.data.generator.fields;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 public class DateField extends AbstractFieldType implements FieldType<String> {
 
@@ -36,12 +37,16 @@ public class DateField extends AbstractFieldType implements FieldType<String> {
     private String format = "yyyy-MM-dd HH:mm:ss";
     private Long diff;
     private DateFormat df = null;
+    private DateRenderer renderer = null;
     //    private int poolSize = 100;
 //    private boolean hasPool = false;
-    Random random = new Random();
 
     public DateField(JsonNode node) {
-        super(node);
+        this(node, new SplittableRandom());
+    }
+
+    public DateField(JsonNode node, SplittableRandom random) {
+        super(node, random);
         if (node.has("format")) {
             format = node.get("format").asText();
             System.out.println("Date Format Set: " + format);
@@ -49,6 +54,7 @@ public class DateField extends AbstractFieldType implements FieldType<String> {
         if (df == null) {
             df = new SimpleDateFormat(format);
         }
+        renderer = new DateRenderer(format);
         try {
             if (node.has("range")) {
                 JsonNode rangeNode = node.get("range");
@@ -74,6 +80,8 @@ public class DateField extends AbstractFieldType implements FieldType<String> {
 //            poolSize = node.get("pool").get("size").asInt();
 //            fillPool();
 //        }
+        // One item per second of the range.
+        initDistribution((max - min) / 1000);
     }
 
     private Number getDiff() {
@@ -83,10 +91,13 @@ public class DateField extends AbstractFieldType implements FieldType<String> {
         return diff;
     }
 
+    private long newMillis() {
+        double multiplierD = nextFraction();
+        return (Long) min + Math.round((Long) getDiff() * multiplierD);
+    }
+
     protected String newValue() {
-        double multiplierD = random.nextDouble();
-        long dateValue = (Long) min + Math.round((Long) getDiff() * multiplierD);
-        return df.format(new Date(dateValue));
+        return renderer.format(newMillis());
     }
 
     public String getPoolValue() {
@@ -96,6 +107,21 @@ public class DateField extends AbstractFieldType implements FieldType<String> {
 
     }
 
+    @Override
+    public void appendValue(StringBuilder sb) {
+        renderer.append(sb, newMillis());
+    }
+
+    @Override
+    public ValueType getValueType() {
+        return ValueType.TIMESTAMP;
+    }
+
+    @Override
+    public void writeValue(ValueSink sink) throws IOException {
+        sink.writeTimestamp(newMillis(), renderer);
+    }
+
     public String getValue() {
 //        if (hasPool) {
 //            return getPoolValue();
@@ -0,0 +1,267 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.fields;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/*
+Renders epoch millis with a SimpleDateFormat pattern, without a Date or a SimpleDateFormat
+call per value.
+
+The pattern is compiled once into a date prefix (everything up to the first hour, minute,
+second or millisecond letter) and a time suffix.  The prefix is formatted once per local day
+(per hour when it holds an am/pm marker) and kept in a small cache, the suffix is worked out
+from the millis.  So "yyyy-MM-dd HH:mm:ss" formats a day once and then only appends numbers.
+Patterns that put date letters after the time (ie. "HH:mm dd/MM") are formatted in full.
+
+Safe to share between threads: cache entries are immutable and the SimpleDateFormat is only
+used under a lock, on a miss.
+ */
+public class DateRenderer {
+
+    private static final long HOUR = 60L * 60L * 1000L;
+    private static final long DAY = 24L * HOUR;
+    private static final int CACHE_SIZE = 4096;
+
+    private final String pattern;
+    private final TimeZone timeZone;
+    private final SimpleDateFormat prefixFormat;
+    private final SimpleDateFormat fullFormat;
+    private final long prefixPeriod;
+    // Suffix parts: a pattern letter and its count, or literal text (letter 0).
+    private final char[] suffixLetters;
+    private final int[] suffixCounts;
+    private final String[] suffixLiterals;
+
+    private final Entry[] cache = new Entry[CACHE_SIZE];
+
+    private static final class Entry {
+        private final long period;
+        private final int offset;
+        private final String prefix;
+
+        private Entry(long period, int offset, String prefix) {
+            this.period = period;
+            this.offset = offset;
+            this.prefix = prefix;
+        }
+    }
+
+    public DateRenderer(String pattern) {
+        this(pattern, TimeZone.getDefault());
+    }
+
+    public DateRenderer(String pattern, TimeZone timeZone) {
+        this.pattern = pattern;
+        this.timeZone = timeZone;
+
+        List<Character> letters = new ArrayList<Character>();
+        List<Integer> counts = new ArrayList<Integer>();
+        List<String> literals = new ArrayList<String>();
+        int suffixStart = -1;
+        boolean compiled = true;
+        boolean hourly = false;
+
+        int i = 0;
+        while (i < pattern.length()) {
+            int start = i;
+            char c = pattern.charAt(i);
+            char letter = 0;
+            int count = 0;
+            String literal = null;
+            if (c == '\'') {
+                StringBuilder text = new StringBuilder();
+                i++;
+                if (i < pattern.length() && pattern.charAt(i) == '\'') {
+                    text.append('\'');
+                    i++;
+                } else {
+                    while (i < pattern.length()) {
+                        if (pattern.charAt(i) == '\'') {
+                            if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                                text.append('\'');
+                                i += 2;
+                                continue;
+                            }
+                            i++;
+                            break;
+                        }
+                        text.append(pattern.charAt(i++));
+                    }
+                }
+                literal = text.toString();
+            } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                while (i < pattern.length() && pattern.charAt(i) == c) {
+                    i++;
+                }
+                letter = c;
+                count = i - start;
+            } else {
+                literal = String.valueOf(c);
+                i++;
+            }
+
+            if (letter != 0 && isTimeLetter(letter)) {
+                if (suffixStart < 0) {
+                    suffixStart = start;
+                }
+            } else if (letter != 0) {
+                if (suffixStart >= 0) {
+                    // A date letter after the time, can't split the pattern.
+                    compiled = false;
+                }
+                if (letter == 'a') {
+                    hourly = true;
+                }
+            }
+            if (suffixStart >= 0) {
+                letters.add(letter);
+                counts.add(count);
+                literals.add(literal);
+            }
+        }
+
+        this.fullFormat = new SimpleDateFormat(pattern);
+        this.fullFormat.setTimeZone(timeZone);
+        if (compiled) {
+            String prefixPattern = suffixStart < 0 ? pattern : pattern.substring(0, suffixStart);
+            this.prefixFormat = new SimpleDateFormat(prefixPattern);
+            this.prefixFormat.setTimeZone(timeZone);
+            this.prefixPeriod = hourly ? HOUR : DAY;
+            this.suffixLetters = new char[letters.size()];
+            this.suffixCounts = new int[letters.size()];
+            this.suffixLiterals = literals.toArray(new String[literals.size()]);
+            for (int j = 0; j < letters.size(); j++) {
+                suffixLetters[j] = letters.get(j);
+                suffixCounts[j] = counts.get(j);
+            }
+        } else {
+            this.prefixFormat = null;
+            this.prefixPeriod = 0;
+            this.suffixLetters = null;
+            this.suffixCounts = null;
+            this.suffixLiterals = null;
+        }
+    }
+
+    private static boolean isTimeLetter(char letter) {
+        switch (letter) {
+            case 'H':
+            case 'k':
+            case 'K':
+            case 'h':
+            case 'm':
+            case 's':
+            case 'S':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /*
+    True when the pattern splits into a cached prefix and a computed suffix.
+     */
+    public boolean isCompiled() {
+        return prefixFormat != null;
+    }
+
+    public String format(long millis) {
+        StringBuilder sb = new StringBuilder(pattern.length() + 8);
+        append(sb, millis);
+        return sb.toString();
+    }
+
+    public void append(StringBuilder sb, long millis) {
+        if (prefixFormat == null) {
+            synchronized (fullFormat) {
+                sb.append(fullFormat.format(new Date(millis)));
+            }
+            return;
+        }
+
+        int offset = timeZone.getOffset(millis);
+        long local = millis + offset;
+        long period = Math.floorDiv(local, prefixPeriod);
+        int slot = (int) (period & (CACHE_SIZE - 1));
+        Entry entry = cache[slot];
+        // The offset is part of the key, so a zone letter in the prefix stays right across DST.
+        if (entry == null || entry.period != period || entry.offset != offset) {
+            String prefix;
+            synchronized (prefixFormat) {
+                prefix = prefixFormat.format(new Date(millis));
+            }
+            entry = new Entry(period, offset, prefix);
+            cache[slot] = entry;
+        }
+        sb.append(entry.prefix);
+
+        long timeOfDay = Math.floorMod(local, DAY);
+        for (int i = 0; i < suffixLetters.length; i++) {
+            int count = suffixCounts[i];
+            switch (suffixLetters[i]) {
+                case 0:
+                    sb.append(suffixLiterals[i]);
+                    break;
+                case 'H':
+                    appendPadded(sb, timeOfDay / HOUR, count);
+                    break;
+                case 'k': {
+                    long hour = timeOfDay / HOUR;
+                    appendPadded(sb, hour == 0 ? 24 : hour, count);
+                    break;
+                }
+                case 'K':
+                    appendPadded(sb, (timeOfDay / HOUR) % 12, count);
+                    break;
+                case 'h': {
+                    long hour = (timeOfDay / HOUR) % 12;
+                    appendPadded(sb, hour == 0 ? 12 : hour, count);
+                    break;
+                }
+                case 'm':
+                    appendPadded(sb, (timeOfDay / 60000L) % 60, count);
+                    break;
+                case 's':
+                    appendPadded(sb, (timeOfDay / 1000L) % 60, count);
+                    break;
+                case 'S':
+                    appendPadded(sb, timeOfDay % 1000L, count);
+                    break;
+            }
+        }
+    }
+
+    private static void appendPadded(StringBuilder sb, long value, int width) {
+        for (long limit = 10; width > 1; width--, limit *= 10) {
+            if (value < limit) {
+                sb.append('0');
+            }
+        }
+        sb.append(value);
+    }
+}
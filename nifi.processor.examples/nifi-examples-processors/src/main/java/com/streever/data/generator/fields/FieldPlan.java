@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.fields;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/*
+A list of fields compiled for rendering records: the fields in a flat array, in order, and the
+delimiter as a char when it is one.  Built once from the ordered field maps, so a record is a
+loop over an array rather than an iterator over a TreeMap.
+
+Each field is appended through a switch on its class, so every call site only ever sees one
+class and the JIT can inline it.  A single appendValue() call over every field type would
+see all of them, and fall back to a virtual call per field.
+ */
+public final class FieldPlan {
+
+    private static final byte OTHER = 0;
+    private static final byte STRING = 1;
+    private static final byte NUMBER = 2;
+    private static final byte IP = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte DATE = 5;
+    private static final byte NULL = 6;
+    private static final byte UNIQUE = 7;
+    private static final byte NESTED = 8;
+
+    private final FieldType[] fields;
+    private final byte[] kinds;
+    private final String delimiter;
+    private final char delimiterChar;
+    private final boolean charDelimiter;
+
+    public FieldPlan(Collection<FieldType> fields, String delimiter) {
+        this.fields = fields.toArray(new FieldType[fields.size()]);
+        this.kinds = new byte[this.fields.length];
+        for (int i = 0; i < this.fields.length; i++) {
+            kinds[i] = kindOf(this.fields[i]);
+        }
+        this.delimiter = delimiter;
+        this.charDelimiter = delimiter.length() == 1;
+        this.delimiterChar = charDelimiter ? delimiter.charAt(0) : 0;
+    }
+
+    private static byte kindOf(FieldType field) {
+        Class<?> type = field.getClass();
+        if (type == StringField.class)
+            return STRING;
+        if (type == NumberField.class)
+            return NUMBER;
+        if (type == IPAddressField.class)
+            return IP;
+        if (type == BooleanField.class)
+            return BOOLEAN;
+        if (type == DateField.class)
+            return DATE;
+        if (type == NullField.class)
+            return NULL;
+        if (type == UniqueField.class)
+            return UNIQUE;
+        if (type == NestedField.class)
+            return NESTED;
+        return OTHER;
+    }
+
+    public int size() {
+        return fields.length;
+    }
+
+    public boolean isEmpty() {
+        return fields.length == 0;
+    }
+
+    public FieldType get(int i) {
+        return fields[i];
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    /*
+    The value of field 'i'.
+     */
+    public void append(StringBuilder sb, int i) {
+        FieldType field = fields[i];
+        switch (kinds[i]) {
+            case STRING:
+                ((StringField) field).appendValue(sb);
+                break;
+            case NUMBER:
+                ((NumberField) field).appendValue(sb);
+                break;
+            case IP:
+                ((IPAddressField) field).appendValue(sb);
+                break;
+            case BOOLEAN:
+                ((BooleanField) field).appendValue(sb);
+                break;
+            case DATE:
+                ((DateField) field).appendValue(sb);
+                break;
+            case NULL:
+                ((NullField) field).appendValue(sb);
+                break;
+            case UNIQUE:
+                ((UniqueField) field).appendValue(sb);
+                break;
+            case NESTED:
+                ((NestedField) field).appendValue(sb);
+                break;
+            default:
+                field.appendValue(sb);
+        }
+    }
+
+    /*
+    Every value, typed.
+     */
+    public void writeAll(ValueSink sink) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            fields[i].writeValue(sink);
+        }
+    }
+
+    public void appendDelimiter(StringBuilder sb) {
+        if (charDelimiter) {
+            sb.append(delimiterChar);
+        } else {
+            sb.append(delimiter);
+        }
+    }
+
+    /*
+    Every value, with delimiters between them.
+     */
+    public void appendAll(StringBuilder sb) {
+        int last = fields.length - 1;
+        for (int i = 0; i < last; i++) {
+            append(sb, i);
+            appendDelimiter(sb);
+        }
+        if (last >= 0) {
+            append(sb, last);
+        }
+    }
+
+    /*
+    Every value, each followed by a delimiter.
+     */
+    public void appendAllTerminated(StringBuilder sb) {
+        for (int i = 0; i < fields.length; i++) {
+            append(sb, i);
+            appendDelimiter(sb);
+        }
+    }
+}
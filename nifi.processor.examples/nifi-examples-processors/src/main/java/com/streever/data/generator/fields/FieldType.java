@@ -20,6 +20,8 @@ package com.streever.data.generator.fields;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import java.io.IOException;
+
 public interface FieldType<T> {
     JsonNode getJsonNode();
     boolean hasOrder();
@@ -29,4 +31,17 @@ public interface FieldType<T> {
     void setOrder(Integer order);
     T getValue();
     T getPoolValue();
+
+    /*
+    Render the next value onto the end of the record.  Same values as getValue(), without
+    the String (or boxed Number) per value.
+     */
+    void appendValue(StringBuilder sb);
+
+    ValueType getValueType();
+
+    /*
+    Write the next value to 'sink' as its type.  Same values as appendValue().
+     */
+    void writeValue(ValueSink sink) throws IOException;
 }
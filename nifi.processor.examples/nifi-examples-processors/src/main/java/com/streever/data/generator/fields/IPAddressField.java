@@ -20,20 +20,24 @@ package com.streever.data.generator.fields;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 public class IPAddressField extends AbstractFieldType implements FieldType<String> {
 
-    private String[] pool;
+    // Addresses as ints, 4 bytes each.
+    private int[] pool;
     private Long min = 0l;
     private Long max = 100000l;
     private Long diff;
     private int poolSize = 100;
     private boolean hasPool = false;
-    Random random = new Random(127);
 
     public IPAddressField(JsonNode node) {
-        super(node);
+        this(node, new SplittableRandom());
+    }
+
+    public IPAddressField(JsonNode node, SplittableRandom random) {
+        super(node, random);
         if (node.has("min")) {
             min = node.get("min").longValue();
         }
@@ -51,6 +55,7 @@ public class IPAddressField extends AbstractFieldType implements FieldType<Strin
             poolSize = node.get("pool").get("size").asInt();
             fillPool();
         }
+        initDistribution(hasPool ? poolSize : max - min);
     }
 
     private Number getDiff() {
@@ -62,21 +67,32 @@ public class IPAddressField extends AbstractFieldType implements FieldType<Strin
 
     private void fillPool() {
         hasPool = true;
-        pool = new String[poolSize];
+        pool = new int[poolSize];
         for (int i=0;i < poolSize;i++) {
-            pool[i] = newValue();
+            pool[i] = (int) newIp();
         }
     }
 
+    private long newIp() {
+        double multiplierD = nextFraction();
+        return (Long)min + Math.round((Long)getDiff() * multiplierD);
+    }
+
     protected String newValue() {
-        double multiplierD = random.nextDouble();
-        long ipLong =  (Long)min + Math.round((Long)getDiff() * multiplierD);
-        return longToIp(ipLong);
+        return longToIp(newIp());
     }
 
     public String getPoolValue() {
-        int ran = (int)Math.round((poolSize-1) * random.nextFloat());
-        return pool[ran];
+        return longToIp(pool[nextIndex(poolSize)] & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public void appendValue(StringBuilder sb) {
+        if (hasPool) {
+            appendIp(sb, pool[nextIndex(poolSize)] & 0xFFFFFFFFL);
+        } else {
+            appendIp(sb, newIp());
+        }
     }
 
     public String getValue() {
@@ -98,6 +114,16 @@ public class IPAddressField extends AbstractFieldType implements FieldType<Strin
         return result & 0xFFFFFFFF;
     }
 
+    /*
+    longToIp(), straight onto the end of the StringBuilder.
+     */
+    public static void appendIp(StringBuilder sb, long ip) {
+        sb.append((ip >> 24) & 0xff).append('.')
+                .append((ip >> 16) & 0xff).append('.')
+                .append((ip >> 8) & 0xff).append('.')
+                .append(ip & 0xff);
+    }
+
     public static String longToIp(long ip) {
         StringBuilder sb = new StringBuilder(15);
 
@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.fields;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+What the generators of one load share so their unique fields don't collide: a counter per
+unique field, the seed the key permutations are built from, and this stream's place among
+the schema's "streams" (stream K of N takes every Nth id, starting at K).  Set "streams" when
+more than one stream of a load generates unique fields.
+
+Build one per load and hand it to every RecordGenerator built for it.
+ */
+public class KeySpace {
+
+    private final long seed;
+    private final long stream;
+    private final long streams;
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+    public KeySpace(JsonNode node, long stream) {
+        this(node, stream, new SplittableRandom().nextLong());
+    }
+
+    /*
+    With 'seed' for the key permutations when the schema has none, ie. the seed of an earlier
+    KeySpace whose positions are being carried on.
+     */
+    public KeySpace(JsonNode node, long stream, long seed) {
+        this.seed = node.has("seed") ? node.get("seed").asLong() : seed;
+        if (node.has("streams")) {
+            this.streams = node.get("streams").asLong();
+            this.stream = stream;
+            if (streams < 1 || stream < 0 || stream >= streams) {
+                throw new IllegalArgumentException("Stream " + stream + " is outside of the " + streams + " streams");
+            }
+        } else {
+            // Without "streams" every stream hands out the same ids.
+            this.streams = 1;
+            this.stream = 0;
+        }
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getStream() {
+        return stream;
+    }
+
+    public long getStreams() {
+        return streams;
+    }
+
+    /*
+    The counter shared by every generator's copy of the field.
+     */
+    public AtomicLong getCounter(String fieldId) {
+        AtomicLong counter = counters.get(fieldId);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = counters.putIfAbsent(fieldId, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /*
+    Where each unique field's counter has got to, by field id.  Hand them to setPosition() on a
+    new KeySpace with the same seed (ie. after a restart) so its fields carry on instead of
+    repeating values.  Under another seed the permutations differ, and positions mean nothing.
+     */
+    public Map<String, Long> getPositions() {
+        Map<String, Long> positions = new HashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            positions.put(entry.getKey(), entry.getValue().get());
+        }
+        return positions;
+    }
+
+    /*
+    Move a field's counter on to 'position'.  Never moves it back.
+     */
+    public void setPosition(String fieldId, long position) {
+        AtomicLong counter = getCounter(fieldId);
+        long current = counter.get();
+        while (current < position && !counter.compareAndSet(current, position)) {
+            current = counter.get();
+        }
+    }
+
+    /*
+    Stafford's mix13 finalizer.  A bijection on longs, so distinct inputs give distinct outputs,
+    and neighbouring inputs give unrelated ones.
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -22,13 +22,18 @@ import com.fasterxml.jackson.databind.JsonNode;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
 public class ListField extends AbstractFieldType implements FieldType<String> {
 
     private List<String> list = new ArrayList<String>();
 
     public ListField(JsonNode node) {
-        super(node);
+        this(node, new SplittableRandom());
+    }
+
+    public ListField(JsonNode node, SplittableRandom random) {
+        super(node, random);
         if (node.has("file")) {
 
         }
@@ -39,6 +44,11 @@ public class ListField extends AbstractFieldType implements FieldType<String> {
         return null;  //To change body of implemented methods use File | Settings | File Templates.
     }
 
+    @Override
+    public void appendValue(StringBuilder sb) {
+        sb.append(getValue());
+    }
+
     @Override
     public String getPoolValue() {
         return null;  //To change body of implemented methods use File | Settings | File Templates.
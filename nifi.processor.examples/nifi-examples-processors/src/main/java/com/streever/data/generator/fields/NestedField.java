@@ -20,9 +20,8 @@ package com.streever.data.generator.fields;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
-import java.util.Iterator;
 import java.util.Map;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.TreeMap;
 
 public class NestedField extends AbstractFieldType implements FieldType<String> {
@@ -32,11 +31,15 @@ public class NestedField extends AbstractFieldType implements FieldType<String>
 
     private int repeats = 1;
     private String repeatsDelimiter = ",";
-
-    private Random generator = new Random();
+    // The fields in order, compiled once they're all added.
+    private final FieldPlan plan;
 
     public NestedField(JsonNode node) {
-        super(node);
+        this(node, new SplittableRandom());
+    }
+
+    public NestedField(JsonNode node, SplittableRandom random) {
+        super(node, random);
 
         delimiter = node.get("delimiter").asText();
 
@@ -50,32 +53,33 @@ public class NestedField extends AbstractFieldType implements FieldType<String>
         for (int i=0;i < fieldsNode.size();i++) {
             JsonNode fieldNode = fieldsNode.get(i);
             if (fieldNode.has("string")) {
-                FieldType field = new StringField(fieldNode.get("string"));
+                FieldType field = new StringField(fieldNode.get("string"), random.split());
                 addFields(field);
             } else if (fieldNode.has("number")) {
-                FieldType field = new NumberField(fieldNode.get("number"));
+                FieldType field = new NumberField(fieldNode.get("number"), random.split());
                 addFields(field);
             } else if (fieldNode.has("ip")) {
-                FieldType field = new IPAddressField(fieldNode.get("ip"));
+                FieldType field = new IPAddressField(fieldNode.get("ip"), random.split());
                 addFields(field);
             } else if (fieldNode.has("boolean")) {
-                FieldType field = new BooleanField(fieldNode.get("boolean"));
+                FieldType field = new BooleanField(fieldNode.get("boolean"), random.split());
                 addFields(field);
             } else if (fieldNode.has("date")) {
-                FieldType field = new DateField(fieldNode.get("date"));
+                FieldType field = new DateField(fieldNode.get("date"), random.split());
                 addFields(field);
             } else if (fieldNode.has("null")) {
-                FieldType field = new NullField(fieldNode.get("null"));
+                FieldType field = new NullField(fieldNode.get("null"), random.split());
                 addFields(field);
             } else if (fieldNode.has("start.stop")) {
-                StartStopFields fields = new StartStopFields(fieldNode.get("start.stop"));
+                StartStopFields fields = new StartStopFields(fieldNode.get("start.stop"), random.split());
                 addFields(fields.getStartField());
                 addFields(fields.getStopField());
             } else if (fieldNode.has("nested")) {
-                FieldType field = new NestedField(fieldNode.get("nested"));
+                FieldType field = new NestedField(fieldNode.get("nested"), random.split());
                 addFields(field);
             }
         }
+        plan = new FieldPlan(fields.values(), delimiter);
     }
 
     private void addFields(FieldType field) {
@@ -95,25 +99,21 @@ public class NestedField extends AbstractFieldType implements FieldType<String>
     @Override
     public String getValue() {
         StringBuilder sb = new StringBuilder();
+        appendValue(sb);
+        return sb.toString();
+    }
 
+    @Override
+    public void appendValue(StringBuilder sb) {
         // Fix for random number generator going from 0 <= x < repeats
-        int numRepeats = generator.nextInt(repeats) + 1;
+        int numRepeats = random.nextInt(repeats) + 1;
         for(int i=0; i < numRepeats; i++) {
-            Iterator<Map.Entry<Integer,FieldType>> fieldsIterator = fields.entrySet().iterator();
-
-            while (fieldsIterator.hasNext()) {
-                Map.Entry<Integer, FieldType> fieldMapRec = fieldsIterator.next();
-                sb.append(fieldMapRec.getValue().getValue());
-                if (fieldsIterator.hasNext())
-                    sb.append(delimiter);
-            }
+            plan.appendAll(sb);
 
             if(i+1 < numRepeats) {
                 sb.append(repeatsDelimiter);
             }
         }
-
-        return sb.toString();
     }
 
     @Override
@@ -20,12 +20,19 @@ package com.streever.data.generator.fields;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import java.io.IOException;
+import java.util.SplittableRandom;
+
 public class NullField extends AbstractFieldType implements FieldType<String> {
 
     private String nullValue = null;
 
     public NullField(JsonNode node) {
-        super(node);
+        this(node, new SplittableRandom());
+    }
+
+    public NullField(JsonNode node, SplittableRandom random) {
+        super(node, random);
         if (node.has("nullvalue")) {
             nullValue = node.get("nullvalue").asText();
         }
@@ -38,6 +45,22 @@ public class NullField extends AbstractFieldType implements FieldType<String> {
             return "";
     }
 
+    @Override
+    public void appendValue(StringBuilder sb) {
+        if (nullValue != null)
+            sb.append(nullValue);
+    }
+
+    @Override
+    public ValueType getValueType() {
+        return ValueType.NULL;
+    }
+
+    @Override
+    public void writeValue(ValueSink sink) throws IOException {
+        sink.writeNull();
+    }
+
     @Override
     public String getPoolValue() {
         if (nullValue != null)
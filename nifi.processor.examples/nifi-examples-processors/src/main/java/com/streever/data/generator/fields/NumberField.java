@@ -20,137 +20,201 @@ package com.streever.data.generator.fields;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
-import java.text.DecimalFormat;
-import java.util.Random;
+import java.io.IOException;
+import java.util.SplittableRandom;
 
+/*
+Numbers are drawn and held as primitives.  FLOAT and DOUBLE values are rounded to 'decimals'
+places once, kept as a long count of 10^-decimals units, and written with exactly that many
+decimal places.  Pools are arrays of those units.
+ */
 public class NumberField extends AbstractFieldType implements FieldType<Number> {
 
     private enum TYPE {
         INT,LONG,FLOAT,DOUBLE;
     }
-    private Number[] pool;
-    private Number min = 0;
-    private Number max = 100;
-    private DecimalFormat decimalFormat = new DecimalFormat("#.##");
+
+    private static final int DEFAULT_DECIMALS = 2;
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
     private TYPE type = TYPE.INT;
-    private Number diff;
+    // INT and LONG
+    private long min = 0;
+    private long max = 100;
+    // FLOAT and DOUBLE
+    private double minD = 0;
+    private double maxD = 100;
+    private int decimals = 0;
+    private double scale = 1;
+
+    private long[] pool;
     private int poolSize = 100;
     private boolean hasPool = false;
-    Random random = new Random(127);
 
     public NumberField(JsonNode node) {
-        super(node);
+        this(node, new SplittableRandom());
+    }
+
+    public NumberField(JsonNode node, SplittableRandom random) {
+        super(node, random);
         if (node.has("type")) {
             String typeStr = node.get("type").asText();
             type = TYPE.valueOf(typeStr.toUpperCase());
         }
-        if (node.has("min")) {
-            switch (type) {
-                case INT:
+        switch (type) {
+            case INT:
+                if (node.has("min"))
                     min = node.get("min").intValue();
-                    break;
-                case LONG:
-                    min = node.get("min").longValue();
-                    break;
-                case FLOAT:
-                    min = node.get("min").floatValue();
-                    break;
-                case DOUBLE:
-                    min = node.get("min").doubleValue();
-                    break;
-            }
-        }
-        if (node.has("max")) {
-            switch (type) {
-                case INT:
+                if (node.has("max"))
                     max = node.get("max").intValue();
-                    break;
-                case LONG:
+                break;
+            case LONG:
+                if (node.has("min"))
+                    min = node.get("min").longValue();
+                if (node.has("max"))
                     max = node.get("max").longValue();
-                    break;
-                case FLOAT:
-                    max = node.get("max").floatValue();
-                    break;
-                case DOUBLE:
-                    max = node.get("max").doubleValue();
-                    break;
-            }
-        }
-        if (node.has("decimals")) {
-            StringBuilder sb = new StringBuilder("#.");
-            int dec = node.get("decimals").asInt();
-            for (int i=0;i<dec;i++) {
-                sb.append("#");
-            }
-            decimalFormat = new DecimalFormat(sb.toString());
+                break;
+            case FLOAT:
+            case DOUBLE:
+                if (node.has("min"))
+                    minD = node.get("min").doubleValue();
+                if (node.has("max"))
+                    maxD = node.get("max").doubleValue();
+                decimals = DEFAULT_DECIMALS;
+                if (node.has("decimals")) {
+                    decimals = node.get("decimals").asInt();
+                    if (decimals < 0 || decimals >= POWERS_OF_TEN.length) {
+                        throw new IllegalArgumentException("Number field " + getName() + ": decimals must be between 0 and " +
+                                (POWERS_OF_TEN.length - 1));
+                    }
+                }
+                scale = POWERS_OF_TEN[decimals];
+                break;
         }
         if (node.has("pool")) {
             // size is required
             poolSize = node.get("pool").get("size").asInt();
             fillPool();
         }
-    }
-
-    private Number getDiff() {
-        if (diff == null) {
-            switch (type) {
-                case INT:
-                    diff = (Integer)max - (Integer)min;
-                    break;
-                case LONG:
-                    diff = (Long)max - (Long)min;
-                    break;
-                case FLOAT:
-                    diff = (Float)max - (Float)min;
-                    break;
-                case DOUBLE:
-                    diff = (Double)max - (Double)min;
-                    break;
-            }
-        }
-        return diff;
+        initDistribution(hasPool ? poolSize : (type == TYPE.INT || type == TYPE.LONG) ? max - min :
+                (long)((maxD - minD) * scale));
     }
 
     private void fillPool() {
         hasPool = true;
-        pool = new Number[poolSize];
+        pool = new long[poolSize];
         for (int i=0;i < poolSize;i++) {
-            pool[i] = newValue();
+            pool[i] = newUnits();
         }
     }
 
-    protected Number newValue() {
+    /*
+    The next value, in units of 10^-decimals.
+     */
+    protected long newUnits() {
         switch (type) {
+            case LONG:
+                return min + Math.round((max - min) * nextFraction());
+            case FLOAT:
+                float valF = (float)minD + ((float)(maxD - minD) * (float)nextFraction());
+                return Math.round(valF * scale);
+            case DOUBLE:
+                double valD = minD + ((maxD - minD) * nextFraction());
+                return Math.round(valD * scale);
             case INT:
-                return (Integer)min + random.nextInt((Integer)getDiff());
+            default:
+                if (distribution != null) {
+                    return min + (long)((max - min) * nextFraction());
+                }
+                return min + random.nextInt((int)(max - min));
+        }
+    }
+
+    private long nextUnits() {
+        return hasPool ? pool[nextIndex(poolSize)] : newUnits();
+    }
+
+    private Number toNumber(long units) {
+        switch (type) {
             case LONG:
-                double multiplierD = random.nextDouble();
-                return (Long)min + Math.round((Long)getDiff() * multiplierD);
+                return units;
             case FLOAT:
-                float multiplierF = random.nextFloat();
-                Float valF =  (Float)min + ((Float)getDiff() * multiplierF);
-                return Float.valueOf(decimalFormat.format(valF));
+                return (float)(units / scale);
             case DOUBLE:
-                double multiplierD2 = random.nextDouble();
-                Double valD = (Double)min + ((Double)getDiff() * multiplierD2);
-                return Double.valueOf(decimalFormat.format(valD));
+                return units / scale;
+            case INT:
             default:
-                return (Integer)min + random.nextInt((Integer)getDiff());
+                return (int)units;
         }
     }
 
+    protected Number newValue() {
+        return toNumber(newUnits());
+    }
+
     public Number getPoolValue() {
-        int ran = (int)Math.round((poolSize-1) * random.nextFloat());
-        return pool[ran];
+        return toNumber(pool[nextIndex(poolSize)]);
     }
 
     public Number getValue() {
-        if (hasPool) {
-            return getPoolValue();
+        return toNumber(nextUnits());
+    }
+
+    @Override
+    public void appendValue(StringBuilder sb) {
+        appendFixed(sb, nextUnits(), decimals);
+    }
+
+    @Override
+    public ValueType getValueType() {
+        switch (type) {
+            case LONG:
+                return ValueType.LONG;
+            case FLOAT:
+                return ValueType.FLOAT;
+            case DOUBLE:
+                return ValueType.DOUBLE;
+            case INT:
+            default:
+                return ValueType.INT;
+        }
+    }
+
+    @Override
+    public void writeValue(ValueSink sink) throws IOException {
+        if (type == TYPE.INT || type == TYPE.LONG) {
+            sink.writeLong(nextUnits());
         } else {
-            return newValue();
+            sink.writeDecimal(nextUnits(), decimals);
         }
     }
 
+    /*
+    Write 'units' of 10^-decimals with exactly 'decimals' places, ie. (1205, 2) as 12.05.
+     */
+    public static void appendFixed(StringBuilder sb, long units, int decimals) {
+        if (decimals == 0) {
+            sb.append(units);
+            return;
+        }
+        if (units < 0) {
+            sb.append('-');
+            units = -units;
+        }
+        long power = POWERS_OF_TEN[decimals];
+        long fraction = units % power;
+        sb.append(units / power).append('.');
+        for (long p = power / 10; p > 1 && fraction < p; p /= 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
 
 }
@@ -19,53 +19,84 @@ package com.streever.data.generator.fields;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 public class StartStopFields {
 
 
     public class StartField extends AbstractFieldType implements FieldType<String> {
         public StartField() {
-            super(null);
+            super(null, StartStopFields.this.random);
         }
 
         @Override
         public String getValue() {
-            String rtn = df.format(start);
+            String rtn = renderer.format(start);
             init(1);
             return rtn;
         }
 
         @Override
         public String getPoolValue() {
-            String rtn = df.format(start);
+            return getValue();
+        }
+
+        @Override
+        public void appendValue(StringBuilder sb) {
+            renderer.append(sb, start);
+            init(1);
+        }
+
+        @Override
+        public ValueType getValueType() {
+            return ValueType.TIMESTAMP;
+        }
+
+        @Override
+        public void writeValue(ValueSink sink) throws IOException {
+            sink.writeTimestamp(start, renderer);
             init(1);
-            return rtn;
         }
     }
 
     public class StopField extends AbstractFieldType implements FieldType<String> {
         public StopField() {
-            super(null);
+            super(null, StartStopFields.this.random);
         }
 
         @Override
         public String getValue() {
-            String rtn = df.format(stop);
+            String rtn = renderer.format(stop);
             init(2);
             return rtn;
         }
 
         @Override
         public String getPoolValue() {
-            String rtn = df.format(stop);
+            return getValue();
+        }
+
+        @Override
+        public void appendValue(StringBuilder sb) {
+            renderer.append(sb, stop);
+            init(2);
+        }
+
+        @Override
+        public ValueType getValueType() {
+            return ValueType.TIMESTAMP;
+        }
+
+        @Override
+        public void writeValue(ValueSink sink) throws IOException {
+            sink.writeTimestamp(stop, renderer);
             init(2);
-            return rtn;
         }
     }
 
@@ -84,14 +115,21 @@ public class StartStopFields {
     private Long spreadDiff;
 
     private DateFormat df = null;
+    private DateRenderer renderer = null;
 
-    private Date start;
-    private Date stop;
+    private long start;
+    private long stop;
 
+    // Start and stop come from one pair, so both fields must be read by the same generator (thread).
     private int who = 0;
-    private Random random = new Random();
+    private final SplittableRandom random;
 
     public StartStopFields(JsonNode node) {
+        this(node, new SplittableRandom());
+    }
+
+    public StartStopFields(JsonNode node, SplittableRandom random) {
+        this.random = random;
         fields[0] = new StartField();
         fields[1] = new StopField();
 
@@ -114,6 +152,7 @@ public class StartStopFields {
         if (df == null) {
             df = new SimpleDateFormat(format);
         }
+        renderer = new DateRenderer(format);
         try {
             if (node.has("range")) {
                 JsonNode rangeNode = node.get("range");
@@ -163,12 +202,12 @@ public class StartStopFields {
         who = 0;
         double multiplierD = random.nextDouble();
         long dateValue = (Long) min + Math.round((Long) getDiff() * multiplierD);
-        start = new Date(dateValue);
+        start = dateValue;
 
         multiplierD = random.nextDouble();
         long spread = (Long) spreadMin + Math.round((Long) getSpreadDiff() * multiplierD);
 
-        stop = new Date(dateValue+spread);
+        stop = dateValue+spread;
 
     }
 
@@ -19,9 +19,11 @@
 package com.streever.data.generator.fields;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import org.apache.commons.lang3.RandomStringUtils;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Iterator;
+import java.util.SplittableRandom;
 
 public class StringField extends AbstractFieldType implements FieldType<String> {
 
@@ -29,7 +31,7 @@ public class StringField extends AbstractFieldType implements FieldType<String>
         RANDOM,SET;
     }
     private TYPE type = TYPE.RANDOM;
-    private String[] pool;
+    private StringPool pool;
     private int min = 15;
     private int max = 15;
     private int diff = 0;
@@ -39,7 +41,11 @@ public class StringField extends AbstractFieldType implements FieldType<String>
     private String charStr = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
 
     public StringField(JsonNode node) {
-        super(node);
+        this(node, new SplittableRandom());
+    }
+
+    public StringField(JsonNode node, SplittableRandom random) {
+        super(node, random);
         if (node.has("random")) {
             JsonNode rNode = node.get("random");
             if (rNode.get("min") != null)
@@ -52,9 +58,7 @@ public class StringField extends AbstractFieldType implements FieldType<String>
                 charStr = rNode.get("chars").asText();
             }
             if (rNode.get("pool") != null) {
-                // size is required
-                poolSize = rNode.get("pool").get("size").asInt();
-                fillPool();
+                fillPool(rNode.get("pool"));
             }
         } else if (node.has("set")) {
             JsonNode setNode = node.get("set");
@@ -66,30 +70,99 @@ public class StringField extends AbstractFieldType implements FieldType<String>
                 set[i++] = element.asText();
             }
         }
+        initDistribution(type == TYPE.SET ? set.length : poolSize);
     }
 
     private int getStringSize() {
         if (diff == 0) {
             return min;
         } else {
-            double ran = Math.random();
-            long vector = Math.round(diff * ran);
-            return (int)(min + vector);
+            return min + random.nextInt(diff + 1);
         }
 
     }
 
-    private void fillPool() {
+    /*
+    The pool is packed into a StringPool.  It's one of:
+      "file"     a prebuilt pool, one value per line, mapped into memory and shared by every
+                 field that names the same file
+      "size"     values generated by this field, off the heap with "offheap": true.  With
+                 "shared": "name", fields naming the same pool share the first one built
+     */
+    private void fillPool(JsonNode poolNode) {
         hasPool = true;
-        pool = new String[poolSize];
-        for (int i=0;i < poolSize;i++) {
-            pool[i] = RandomStringUtils.random(getStringSize(), charStr);
+        if (poolNode.has("file")) {
+            File file = new File(poolNode.get("file").asText());
+            try {
+                String name = "file:" + file.getCanonicalPath();
+                pool = StringPool.getShared(name);
+                if (pool == null) {
+                    pool = StringPool.share(name, StringPool.map(file));
+                }
+            } catch (IOException ioe) {
+                throw new IllegalArgumentException("Couldn't read string pool " + file + ": " + ioe.getMessage(), ioe);
+            }
+        } else {
+            // size is required
+            poolSize = poolNode.get("size").asInt();
+            String name = poolNode.has("shared") ? "pool:" + poolNode.get("shared").asText() : null;
+            pool = name != null ? StringPool.getShared(name) : null;
+            if (pool == null) {
+                StringPool.Builder builder = new StringPool.Builder(poolSize, max);
+                StringBuilder value = new StringBuilder(max);
+                int charCount = charStr.length();
+                for (int i = 0; i < poolSize; i++) {
+                    value.setLength(0);
+                    int size = getStringSize();
+                    for (int c = 0; c < size; c++) {
+                        value.append(charStr.charAt(random.nextInt(charCount)));
+                    }
+                    builder.add(value);
+                }
+                pool = builder.build(poolNode.has("offheap") && poolNode.get("offheap").asBoolean());
+                if (name != null) {
+                    pool = StringPool.share(name, pool);
+                }
+            }
         }
+        poolSize = pool.size();
+    }
+
+    /*
+    RandomStringUtils and Math.random share one Random across every thread, so build the
+    string from this field's own source.
+     */
+    private String randomString(int size) {
+        char[] chars = new char[size];
+        int charCount = charStr.length();
+        for (int i = 0; i < size; i++) {
+            chars[i] = charStr.charAt(random.nextInt(charCount));
+        }
+        return new String(chars);
     }
 
     public String getPoolValue() {
-        int ran = (int)Math.round((poolSize-1) * Math.random());
-        return pool[ran];
+        return pool.get(nextIndex(poolSize));
+    }
+
+    @Override
+    public void appendValue(StringBuilder sb) {
+        if (hasPool) {
+            pool.append(sb, nextIndex(poolSize));
+        } else {
+            switch (type) {
+                case RANDOM:
+                    int size = getStringSize();
+                    int charCount = charStr.length();
+                    for (int i = 0; i < size; i++) {
+                        sb.append(charStr.charAt(random.nextInt(charCount)));
+                    }
+                    break;
+                case SET:
+                    sb.append(set[nextIndex(set.length)]);
+                    break;
+            }
+        }
     }
 
     public String getValue() {
@@ -99,11 +172,10 @@ public class StringField extends AbstractFieldType implements FieldType<String>
         } else {
             switch (type) {
                 case RANDOM:
-                    rtn = RandomStringUtils.random(getStringSize(),charStr);
+                    rtn = randomString(getStringSize());
                     break;
                 case SET:
-                    double multiplier = Math.random();
-                    rtn = set[(int)(set.length * multiplier)];
+                    rtn = set[nextIndex(set.length)];
                     break;
             }
         }
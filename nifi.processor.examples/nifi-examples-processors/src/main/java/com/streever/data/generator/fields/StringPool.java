@@ -0,0 +1,251 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.fields;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+A pool of string values packed into one arena of UTF-8 bytes, one value per line, with an int
+offset per value.  A pool of millions of short values costs its bytes plus 4 per value, instead
+of a String, a char[] and a reference each, and gives the GC a couple of objects to trace rather
+than millions.
+
+The arena is a byte[] by default, or a direct buffer (off heap), or a newline delimited file
+mapped into memory, which is how a large prebuilt pool is shared without reading it onto the
+heap.  A pool is read only once built, so any number of generators can share one: see
+getShared() and share().
+ */
+public final class StringPool {
+
+    // Pools by name, held only as long as some generator uses them.
+    private static final ConcurrentMap<String, WeakReference<StringPool>> SHARED =
+            new ConcurrentHashMap<String, WeakReference<StringPool>>();
+
+    private final ByteBuffer arena;
+    // Backing array of a heap arena, for the fast path.  Null off heap.
+    private final byte[] bytes;
+    // Value i starts at offsets[i] and ends before the '\n' (or "\r\n") ahead of offsets[i + 1].
+    private final int[] offsets;
+    private final int size;
+
+    private StringPool(ByteBuffer arena, int[] offsets, int size) {
+        this.arena = arena;
+        this.bytes = arena.hasArray() ? arena.array() : null;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /*
+    Bytes held in the arena, on or off heap.
+     */
+    public long getArenaBytes() {
+        return arena.capacity();
+    }
+
+    public boolean isHeap() {
+        return bytes != null;
+    }
+
+    public String get(int i) {
+        StringBuilder sb = new StringBuilder();
+        append(sb, i);
+        return sb.toString();
+    }
+
+    /*
+    Decode value i onto the end of 'sb'.
+     */
+    public void append(StringBuilder sb, int i) {
+        int at = offsets[i];
+        int end = offsets[i + 1] - 1;
+        if (end > at && byteAt(end - 1) == '\r') {
+            end--;
+        }
+        if (bytes != null) {
+            // ASCII straight across, which is most pools.
+            while (at < end && bytes[at] >= 0) {
+                sb.append((char) bytes[at++]);
+            }
+        }
+        while (at < end) {
+            int b = byteAt(at++);
+            if (b < 0x80) {
+                sb.append((char) b);
+            } else if (b < 0xE0) {
+                sb.append((char) (((b & 0x1F) << 6) | (byteAt(at++) & 0x3F)));
+            } else if (b < 0xF0) {
+                sb.append((char) (((b & 0x0F) << 12) | ((byteAt(at++) & 0x3F) << 6) | (byteAt(at++) & 0x3F)));
+            } else {
+                int cp = ((b & 0x07) << 18) | ((byteAt(at++) & 0x3F) << 12) | ((byteAt(at++) & 0x3F) << 6) | (byteAt(at++) & 0x3F);
+                sb.appendCodePoint(cp);
+            }
+        }
+    }
+
+    private int byteAt(int i) {
+        return (bytes != null ? bytes[i] : arena.get(i)) & 0xFF;
+    }
+
+    /*
+    Map a file of values, one per line (UTF-8), read only.  Only the offsets are read onto the heap.
+     */
+    public static StringPool map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() >= Integer.MAX_VALUE) {
+                throw new IOException("Pool file " + file + " is over 2GB");
+            }
+            ByteBuffer arena = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int length = arena.capacity();
+            int[] offsets = new int[1024];
+            int size = 0;
+            int start = 0;
+            for (int i = 0; i < length; i++) {
+                if (arena.get(i) == '\n') {
+                    if (size + 1 >= offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    }
+                    offsets[size++] = start;
+                    start = i + 1;
+                }
+            }
+            if (start < length) {
+                throw new IOException("Pool file " + file + " must end with a newline");
+            }
+            offsets[size] = length;
+            if (size == 0) {
+                throw new IOException("Pool file " + file + " is empty");
+            }
+            return new StringPool(arena, size + 1 == offsets.length ? offsets : Arrays.copyOf(offsets, size + 1), size);
+        } finally {
+            // The mapping stays valid after the channel is closed.
+            raf.close();
+        }
+    }
+
+    /*
+    The pool shared under 'name', if it's still in use.
+     */
+    public static StringPool getShared(String name) {
+        WeakReference<StringPool> ref = SHARED.get(name);
+        return ref != null ? ref.get() : null;
+    }
+
+    /*
+    Share 'pool' under 'name', unless another pool got there first, in which case use that one.
+     */
+    public static StringPool share(String name, StringPool pool) {
+        while (true) {
+            WeakReference<StringPool> ref = SHARED.get(name);
+            StringPool existing = ref != null ? ref.get() : null;
+            if (existing != null) {
+                return existing;
+            }
+            WeakReference<StringPool> mine = new WeakReference<StringPool>(pool);
+            if (ref == null ? SHARED.putIfAbsent(name, mine) == null : SHARED.replace(name, ref, mine)) {
+                return pool;
+            }
+        }
+    }
+
+    /*
+    Packs values into a new pool.  Values mustn't contain a newline.
+     */
+    public static class Builder {
+        private byte[] arena;
+        private int length = 0;
+        private int[] offsets;
+        private int size = 0;
+
+        public Builder(int expectedSize, int expectedLength) {
+            arena = new byte[Math.max(16, expectedSize * (expectedLength + 1))];
+            offsets = new int[Math.max(1, expectedSize) + 1];
+        }
+
+        public Builder add(CharSequence value) {
+            int chars = value.length();
+            ensure(chars * 3 + 1);
+            for (int i = 0; i < chars; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    arena[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    arena[length++] = (byte) (0xC0 | (c >> 6));
+                    arena[length++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    arena[length++] = (byte) (0xF0 | (cp >> 18));
+                    arena[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    arena[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    arena[length++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    arena[length++] = '?';
+                } else {
+                    arena[length++] = (byte) (0xE0 | (c >> 12));
+                    arena[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    arena[length++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            arena[length++] = '\n';
+            if (size + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[++size] = length;
+            return this;
+        }
+
+        private void ensure(int bytes) {
+            if (length + bytes > arena.length) {
+                long grown = Math.max((long) arena.length * 2, (long) length + bytes);
+                if (grown >= Integer.MAX_VALUE) {
+                    throw new IllegalStateException("String pool is over 2GB");
+                }
+                arena = Arrays.copyOf(arena, (int) grown);
+            }
+        }
+
+        /*
+        The pool, on the heap or in a direct buffer off it.
+         */
+        public StringPool build(boolean offHeap) {
+            ByteBuffer buffer;
+            if (offHeap) {
+                buffer = ByteBuffer.allocateDirect(length);
+                buffer.put(arena, 0, length);
+                buffer.clear();
+            } else {
+                buffer = ByteBuffer.wrap(Arrays.copyOf(arena, length));
+            }
+            return new StringPool(buffer, Arrays.copyOf(offsets, size + 1), size);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.fields;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+A field whose values never repeat, for keys.  Each value comes from an id no other generator
+sharing the KeySpace (or stream of the schema) will use:
+  sequence     start + step * id, "start" default 0 and "step" default 1
+  permutation  every value of ["min", "max") once, in a shuffled order
+  uuid         random UUIDs (version 4 layout) with the id scrambled into the last 48 bits
+
+Generators claim ids from the shared counter in blocks, without locking, so values are only in
+order within one generator.  A permutation starts over once the range is used up.
+
+Unlike the other fields, it is a key unless "key" is false.
+ */
+public class UniqueField extends AbstractFieldType implements FieldType<String> {
+
+    private enum STRATEGY {
+        SEQUENCE, PERMUTATION, UUID;
+    }
+
+    private static final int BLOCK_SIZE = 1024;
+    private static final int ROUNDS = 4;
+    private static final long MASK48 = (1L << 48) - 1;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private STRATEGY strategy = STRATEGY.SEQUENCE;
+    private final AtomicLong counter;
+    private final long stream;
+    private final long streams;
+    private long nextId = 0;
+    private long blockEnd = 0;
+
+    // SEQUENCE
+    private long start = 0;
+    private long step = 1;
+
+    // PERMUTATION, a Feistel network over the next even power of 2 at or above the range size.
+    private long min = 0;
+    private long size = 0;
+    private int halfBits;
+    private long halfMask;
+    private long[] roundKeys;
+
+    // UUID
+    private long idMask;
+
+    public UniqueField(JsonNode node, SplittableRandom random, KeySpace keys, String fieldId) {
+        super(node, random);
+        if (!node.has("key")) {
+            setKey(true);
+        }
+        if (node.has("strategy")) {
+            strategy = STRATEGY.valueOf(node.get("strategy").asText().toUpperCase());
+        }
+        counter = keys.getCounter(fieldId);
+        stream = keys.getStream();
+        streams = keys.getStreams();
+
+        long fieldSeed = KeySpace.mix64(keys.getSeed() ^ fieldId.hashCode());
+        switch (strategy) {
+            case SEQUENCE:
+                if (node.has("start"))
+                    start = node.get("start").asLong();
+                if (node.has("step"))
+                    step = node.get("step").asLong();
+                break;
+            case PERMUTATION:
+                if (node.has("min"))
+                    min = node.get("min").asLong();
+                if (!node.has("max")) {
+                    throw new IllegalArgumentException("A permutation needs a max for unique field " + fieldId);
+                }
+                size = node.get("max").asLong() - min;
+                if (size < 1 || size > (1L << 62)) {
+                    throw new IllegalArgumentException("Permutation range for unique field " + fieldId + " must hold 1 to 2^62 values");
+                }
+                int bits = Math.max(2, 64 - Long.numberOfLeadingZeros(size - 1));
+                halfBits = (bits + 1) / 2;
+                halfMask = (1L << halfBits) - 1;
+                roundKeys = new long[ROUNDS];
+                for (int r = 0; r < ROUNDS; r++) {
+                    roundKeys[r] = KeySpace.mix64(fieldSeed + r);
+                }
+                break;
+            case UUID:
+                idMask = KeySpace.mix64(fieldSeed) & MASK48;
+                break;
+        }
+    }
+
+    /*
+    The next id of this stream: every 'streams'th, starting at 'stream'.
+     */
+    private long nextId() {
+        if (nextId == blockEnd) {
+            nextId = counter.getAndAdd(BLOCK_SIZE);
+            blockEnd = nextId + BLOCK_SIZE;
+        }
+        return (nextId++) * streams + stream;
+    }
+
+    @Override
+    public void appendValue(StringBuilder sb) {
+        if (strategy == STRATEGY.UUID) {
+            appendUuid(sb, nextId());
+        } else {
+            sb.append(nextLong());
+        }
+    }
+
+    private long nextLong() {
+        long id = nextId();
+        return strategy == STRATEGY.SEQUENCE ? start + step * id : min + permute(id % size);
+    }
+
+    @Override
+    public ValueType getValueType() {
+        return strategy == STRATEGY.UUID ? ValueType.STRING : ValueType.LONG;
+    }
+
+    @Override
+    public void writeValue(ValueSink sink) throws IOException {
+        if (strategy == STRATEGY.UUID) {
+            appendUuid(sink.beginString(), nextId());
+            sink.endString();
+        } else {
+            sink.writeLong(nextLong());
+        }
+    }
+
+    @Override
+    public String getValue() {
+        StringBuilder sb = new StringBuilder(36);
+        appendValue(sb);
+        return sb.toString();
+    }
+
+    @Override
+    public String getPoolValue() {
+        return getValue();
+    }
+
+    /*
+    A permutation of [0, 2^(2 * halfBits)) restricted to [0, size) by re-encrypting values that
+    fall outside it ("cycle walking").  The power of 2 is less than 4 times the size, so that's
+    a few rounds at most on average.
+     */
+    private long permute(long x) {
+        do {
+            long left = x >>> halfBits;
+            long right = x & halfMask;
+            for (int r = 0; r < ROUNDS; r++) {
+                long next = left ^ (KeySpace.mix64(right ^ roundKeys[r]) & halfMask);
+                left = right;
+                right = next;
+            }
+            x = (left << halfBits) | right;
+        } while (x >= size);
+        return x;
+    }
+
+    /*
+    Random bits with the version 4 and variant bits set, and the last 48 bits replaced by a
+    scramble of the id.  The scramble is a bijection, so ids below 2^48 never repeat.
+     */
+    private void appendUuid(StringBuilder sb, long id) {
+        long hi = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long lo = (random.nextLong() & 0x3FFF000000000000L) | 0x8000000000000000L | scramble48(id ^ idMask);
+        appendHex(sb, hi >>> 32, 8);
+        sb.append('-');
+        appendHex(sb, hi >>> 16, 4);
+        sb.append('-');
+        appendHex(sb, hi, 4);
+        sb.append('-');
+        appendHex(sb, lo >>> 48, 4);
+        sb.append('-');
+        appendHex(sb, lo, 12);
+    }
+
+    private static long scramble48(long x) {
+        x &= MASK48;
+        x = ((x ^ (x >>> 24)) * 0x9E3779B97F4BL) & MASK48;
+        x = ((x ^ (x >>> 23)) * 0xC2B2AE3D27D5L) & MASK48;
+        return x ^ (x >>> 24);
+    }
+
+    private static void appendHex(StringBuilder sb, long value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            sb.append(HEX[(int) (value >>> shift) & 0xF]);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.fields;
+
+import java.io.IOException;
+
+/*
+Where a field writes its next value as a typed value rather than as text, for output formats
+that encode values themselves (ie. Avro).  One call per field, in record order.
+ */
+public interface ValueSink {
+
+    void writeNull() throws IOException;
+
+    /*
+    'text' is the value in the field's format, ie. "0" or "F", for formats that write text.
+     */
+    void writeBoolean(boolean value, String text) throws IOException;
+
+    void writeLong(long value) throws IOException;
+
+    /*
+    'units' of 10^-decimals, ie. (1205, 2) is 12.05.
+     */
+    void writeDecimal(long units, int decimals) throws IOException;
+
+    /*
+    Milliseconds since the epoch.  'renderer' writes it in the field's format.
+     */
+    void writeTimestamp(long millis, DateRenderer renderer) throws IOException;
+
+    /*
+    A text value is appended to the returned buffer, then ended with endString().
+     */
+    StringBuilder beginString();
+
+    void endString() throws IOException;
+}
@@ -0,0 +1,376 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.output;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.streever.data.generator.RecordGenerator;
+import com.streever.data.generator.fields.DateRenderer;
+import com.streever.data.generator.fields.FieldType;
+import com.streever.data.generator.fields.KeySpace;
+import com.streever.data.generator.fields.ValueSink;
+import com.streever.data.generator.fields.ValueType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+An Avro object container file (uncompressed), with a record schema derived from the fields:
+  string, ip, nested, uuid   string
+  number                     int, long, float or double by its type
+  unique                     long
+  boolean                    boolean
+  date, start.stop           long, logicalType timestamp-millis
+  null                       null
+
+Values are encoded straight into the block buffer from the fields' primitives, per the Avro
+1.8 binary encoding, so there's no dependency on the Avro library.  Blocks are written out at
+about BLOCK_SIZE bytes.
+ */
+public class AvroRecordWriter implements RecordWriter, ValueSink {
+
+    public static final int BLOCK_SIZE = 64 * 1024;
+    private static final byte[] MAGIC = new byte[]{'O', 'b', 'j', 1};
+    private static final double[] POWERS_OF_TEN = new double[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final ValueType[] types;
+    private final String schema;
+    private final byte[] sync = new byte[16];
+
+    private OutputStream out;
+    private byte[] block = new byte[BLOCK_SIZE + 1024];
+    private int blockLength = 0;
+    private long blockRecords = 0;
+    // For headers and block counts.
+    private final byte[] scratch = new byte[32];
+    private final StringBuilder text = new StringBuilder(64);
+    private int column;
+
+    private long records = 0;
+    private long bytesWritten = 0;
+
+    public AvroRecordWriter(List<FieldType> columns) {
+        types = new ValueType[columns.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = columns.get(i).getValueType();
+        }
+        schema = buildSchema(columns, types);
+        // Derived from the schema rather than random, so a seeded generator writes the same bytes every run.
+        long a = KeySpace.mix64(schema.hashCode());
+        long b = KeySpace.mix64(a);
+        for (int i = 0; i < 8; i++) {
+            sync[i] = (byte) (a >>> (i * 8));
+            sync[i + 8] = (byte) (b >>> (i * 8));
+        }
+    }
+
+    private static String buildSchema(List<FieldType> columns, ValueType[] types) {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode record = mapper.createObjectNode();
+        record.put("type", "record");
+        record.put("name", "GeneratedRecord");
+        record.put("namespace", "com.streever.data.generator");
+        ArrayNode fields = record.putArray("fields");
+        String[] names = RecordWriters.columnNames(columns);
+        Set<String> used = new HashSet<String>();
+        for (int i = 0; i < types.length; i++) {
+            ObjectNode field = fields.addObject();
+            String name = avroName(names[i]);
+            if (!used.add(name)) {
+                name = "field_" + (i + 1);
+                used.add(name);
+            }
+            field.put("name", name);
+            switch (types[i]) {
+                case BOOLEAN:
+                    field.put("type", "boolean");
+                    break;
+                case INT:
+                    field.put("type", "int");
+                    break;
+                case LONG:
+                    field.put("type", "long");
+                    break;
+                case FLOAT:
+                    field.put("type", "float");
+                    break;
+                case DOUBLE:
+                    field.put("type", "double");
+                    break;
+                case TIMESTAMP:
+                    ObjectNode timestamp = field.putObject("type");
+                    timestamp.put("type", "long");
+                    timestamp.put("logicalType", "timestamp-millis");
+                    break;
+                case NULL:
+                    field.put("type", "null");
+                    break;
+                case STRING:
+                default:
+                    field.put("type", "string");
+            }
+        }
+        return record.toString();
+    }
+
+    /*
+    Avro names are [A-Za-z_][A-Za-z0-9_]*.
+     */
+    private static String avroName(String name) {
+        StringBuilder sb = new StringBuilder(name.length() + 1);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || (i > 0 && c >= '0' && c <= '9');
+            if (i == 0 && c >= '0' && c <= '9') {
+                sb.append('_');
+                valid = true;
+            }
+            sb.append(valid ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    public String getSchema() {
+        return schema;
+    }
+
+    @Override
+    public void reset(OutputStream out) throws IOException {
+        this.out = out;
+        blockLength = 0;
+        blockRecords = 0;
+        records = 0;
+        bytesWritten = 0;
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        write(MAGIC, MAGIC.length);
+        // File metadata, a map of 2 entries: string keys, bytes values.
+        writeScratchLong(2);
+        writeHeaderString("avro.schema");
+        writeHeaderString(schema);
+        writeHeaderString("avro.codec");
+        writeHeaderString("null");
+        writeScratchLong(0);
+        write(sync, sync.length);
+    }
+
+    private void writeHeaderString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeScratchLong(bytes.length);
+        write(bytes, bytes.length);
+    }
+
+    private void writeScratchLong(long value) throws IOException {
+        write(scratch, encodeLong(value, scratch, 0));
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+        out.write(bytes, 0, length);
+        bytesWritten += length;
+    }
+
+    @Override
+    public void write(RecordGenerator generator) throws IOException {
+        column = 0;
+        generator.nextRecord(this);
+        records++;
+        blockRecords++;
+        if (blockLength >= BLOCK_SIZE) {
+            writeBlock();
+        }
+    }
+
+    /*
+    A data block: record count, byte count, the records, then the sync marker.
+     */
+    private void writeBlock() throws IOException {
+        if (blockRecords == 0) {
+            return;
+        }
+        writeScratchLong(blockRecords);
+        writeScratchLong(blockLength);
+        write(block, blockLength);
+        write(sync, sync.length);
+        blockLength = 0;
+        blockRecords = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBlock();
+        out.flush();
+    }
+
+    @Override
+    public long getRecordCount() {
+        return records;
+    }
+
+    @Override
+    public long getByteCount() {
+        return bytesWritten + blockLength;
+    }
+
+    @Override
+    public String getMimeType() {
+        return "application/avro-binary";
+    }
+
+    private void ensure(int bytes) {
+        if (blockLength + bytes > block.length) {
+            block = Arrays.copyOf(block, Math.max(block.length * 2, blockLength + bytes));
+        }
+    }
+
+    /*
+    Zig-zag varint, as Avro writes int and long.
+     */
+    static int encodeLong(long value, byte[] bytes, int at) {
+        long n = (value << 1) ^ (value >> 63);
+        while ((n & ~0x7FL) != 0) {
+            bytes[at++] = (byte) ((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        bytes[at++] = (byte) n;
+        return at;
+    }
+
+    private void putLong(long value) {
+        ensure(10);
+        blockLength = encodeLong(value, block, blockLength);
+    }
+
+    private void putFixed(long bits, int bytes) {
+        ensure(bytes);
+        for (int i = 0; i < bytes; i++) {
+            block[blockLength++] = (byte) (bits >>> (i * 8));
+        }
+    }
+
+    @Override
+    public void writeNull() {
+        column++;
+    }
+
+    @Override
+    public void writeBoolean(boolean value, String text) {
+        column++;
+        ensure(1);
+        block[blockLength++] = (byte) (value ? 1 : 0);
+    }
+
+    @Override
+    public void writeLong(long value) {
+        column++;
+        putLong(value);
+    }
+
+    @Override
+    public void writeDecimal(long units, int decimals) {
+        double value = units / POWERS_OF_TEN[decimals];
+        switch (types[column++]) {
+            case FLOAT:
+                putFixed(Float.floatToIntBits((float) value) & 0xFFFFFFFFL, 4);
+                break;
+            case DOUBLE:
+                putFixed(Double.doubleToLongBits(value), 8);
+                break;
+            default:
+                putLong(Math.round(value));
+        }
+    }
+
+    @Override
+    public void writeTimestamp(long millis, DateRenderer renderer) {
+        column++;
+        putLong(millis);
+    }
+
+    @Override
+    public StringBuilder beginString() {
+        text.setLength(0);
+        return text;
+    }
+
+    /*
+    Length and UTF-8 bytes.  Unpaired surrogates are written as '?'.
+     */
+    @Override
+    public void endString() {
+        column++;
+        int length = text.length();
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        putLong(bytes);
+        ensure(bytes);
+        byte[] b = block;
+        int at = blockLength;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                b[at++] = (byte) c;
+            } else if (c < 0x800) {
+                b[at++] = (byte) (0xC0 | (c >> 6));
+                b[at++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                b[at++] = (byte) (0xF0 | (cp >> 18));
+                b[at++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[at++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[at++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                b[at++] = '?';
+            } else {
+                b[at++] = (byte) (0xE0 | (c >> 12));
+                b[at++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[at++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        blockLength = at;
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.output;
+
+import com.streever.data.generator.RecordGenerator;
+import com.streever.data.generator.RecordStreamWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/*
+The generator's own delimited text, one record per line.
+ */
+public class DelimitedRecordWriter implements RecordWriter {
+
+    private final RecordStreamWriter writer;
+
+    public DelimitedRecordWriter(Charset charset) {
+        this.writer = new RecordStreamWriter(null, charset);
+    }
+
+    @Override
+    public void reset(OutputStream out) {
+        writer.reset(out);
+    }
+
+    @Override
+    public void write(RecordGenerator generator) throws IOException {
+        writer.write(generator.nextRecord());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public long getRecordCount() {
+        return writer.getRecordCount();
+    }
+
+    @Override
+    public long getByteCount() {
+        return writer.getByteCount();
+    }
+
+    @Override
+    public String getMimeType() {
+        return "text/plain";
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.output;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.streever.data.generator.RecordGenerator;
+import com.streever.data.generator.RecordStreamWriter;
+import com.streever.data.generator.fields.DateRenderer;
+import com.streever.data.generator.fields.FieldType;
+import com.streever.data.generator.fields.NumberField;
+import com.streever.data.generator.fields.ValueSink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/*
+Fixed width text, one record per line.  Each column is the field's "width" chars, or a default
+for its type.  Numbers are right aligned and everything else left aligned, padded with spaces,
+and values longer than the width are cut to it.
+ */
+public class FixedWidthRecordWriter implements RecordWriter, ValueSink {
+
+    private final RecordStreamWriter writer;
+    private final int[] widths;
+    private final StringBuilder record = new StringBuilder(256);
+    private final StringBuilder text = new StringBuilder(64);
+    private int column;
+
+    public FixedWidthRecordWriter(List<FieldType> columns, Charset charset) {
+        this.writer = new RecordStreamWriter(null, charset);
+        widths = new int[columns.size()];
+        for (int i = 0; i < widths.length; i++) {
+            FieldType field = columns.get(i);
+            JsonNode node = field.getJsonNode();
+            widths[i] = node != null && node.has("width") ? node.get("width").asInt() : defaultWidth(field);
+            if (widths[i] < 1) {
+                throw new IllegalArgumentException("Width of field " + field.getName() + " must be at least 1");
+            }
+        }
+    }
+
+    private static int defaultWidth(FieldType field) {
+        switch (field.getValueType()) {
+            case BOOLEAN:
+                return 5;
+            case INT:
+                return 11;
+            case LONG:
+                return 20;
+            case FLOAT:
+            case DOUBLE:
+                return 24;
+            case TIMESTAMP:
+                return 23;
+            case NULL:
+                return 1;
+            case STRING:
+            default:
+                return 32;
+        }
+    }
+
+    public int getRecordWidth() {
+        int width = 0;
+        for (int w : widths) {
+            width += w;
+        }
+        return width;
+    }
+
+    @Override
+    public void reset(OutputStream out) {
+        writer.reset(out);
+    }
+
+    @Override
+    public void write(RecordGenerator generator) throws IOException {
+        record.setLength(0);
+        column = 0;
+        generator.nextRecord(this);
+        writer.write(record);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public long getRecordCount() {
+        return writer.getRecordCount();
+    }
+
+    @Override
+    public long getByteCount() {
+        return writer.getByteCount();
+    }
+
+    @Override
+    public String getMimeType() {
+        return "text/plain";
+    }
+
+    /*
+    Put 'text' into the next column.
+     */
+    private void putText(boolean rightAligned) {
+        int width = widths[column++];
+        int length = text.length();
+        if (length >= width) {
+            record.append(text, 0, width);
+            return;
+        }
+        if (rightAligned) {
+            pad(width - length);
+            record.append(text);
+        } else {
+            record.append(text);
+            pad(width - length);
+        }
+    }
+
+    private void pad(int spaces) {
+        for (int i = 0; i < spaces; i++) {
+            record.append(' ');
+        }
+    }
+
+    @Override
+    public void writeNull() {
+        pad(widths[column++]);
+    }
+
+    @Override
+    public void writeBoolean(boolean value, String text) {
+        this.text.setLength(0);
+        this.text.append(text);
+        putText(false);
+    }
+
+    @Override
+    public void writeLong(long value) {
+        text.setLength(0);
+        text.append(value);
+        putText(true);
+    }
+
+    @Override
+    public void writeDecimal(long units, int decimals) {
+        text.setLength(0);
+        NumberField.appendFixed(text, units, decimals);
+        putText(true);
+    }
+
+    @Override
+    public void writeTimestamp(long millis, DateRenderer renderer) {
+        text.setLength(0);
+        renderer.append(text, millis);
+        putText(false);
+    }
+
+    @Override
+    public StringBuilder beginString() {
+        text.setLength(0);
+        return text;
+    }
+
+    @Override
+    public void endString() {
+        putText(false);
+    }
+}
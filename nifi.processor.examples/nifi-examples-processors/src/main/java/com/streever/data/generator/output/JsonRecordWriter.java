@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.output;
+
+import com.streever.data.generator.RecordGenerator;
+import com.streever.data.generator.RecordStreamWriter;
+import com.streever.data.generator.fields.DateRenderer;
+import com.streever.data.generator.fields.FieldType;
+import com.streever.data.generator.fields.NumberField;
+import com.streever.data.generator.fields.ValueSink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/*
+JSON lines: a JSON object per record, one per line, keyed by field name.  Numbers and booleans
+are JSON numbers and booleans, dates are strings in the field's format, null fields are null.
+ */
+public class JsonRecordWriter implements RecordWriter, ValueSink {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final RecordStreamWriter writer;
+    // '{"name":' for the first column, ',"name":' for the rest.
+    private final String[] prefixes;
+    private final StringBuilder record = new StringBuilder(256);
+    private final StringBuilder text = new StringBuilder(64);
+    private int column;
+
+    public JsonRecordWriter(List<FieldType> columns, Charset charset) {
+        this.writer = new RecordStreamWriter(null, charset);
+        String[] names = RecordWriters.columnNames(columns);
+        prefixes = new String[names.length];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            sb.setLength(0);
+            sb.append(i == 0 ? '{' : ',');
+            appendString(sb, names[i]);
+            sb.append(':');
+            prefixes[i] = sb.toString();
+        }
+    }
+
+    @Override
+    public void reset(OutputStream out) {
+        writer.reset(out);
+    }
+
+    @Override
+    public void write(RecordGenerator generator) throws IOException {
+        record.setLength(0);
+        column = 0;
+        generator.nextRecord(this);
+        if (prefixes.length == 0) {
+            record.append('{');
+        }
+        record.append('}');
+        writer.write(record);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public long getRecordCount() {
+        return writer.getRecordCount();
+    }
+
+    @Override
+    public long getByteCount() {
+        return writer.getByteCount();
+    }
+
+    @Override
+    public String getMimeType() {
+        return "application/json";
+    }
+
+    private void nextColumn() {
+        record.append(prefixes[column++]);
+    }
+
+    @Override
+    public void writeNull() {
+        nextColumn();
+        record.append("null");
+    }
+
+    @Override
+    public void writeBoolean(boolean value, String text) {
+        nextColumn();
+        record.append(value);
+    }
+
+    @Override
+    public void writeLong(long value) {
+        nextColumn();
+        record.append(value);
+    }
+
+    @Override
+    public void writeDecimal(long units, int decimals) {
+        nextColumn();
+        NumberField.appendFixed(record, units, decimals);
+    }
+
+    @Override
+    public void writeTimestamp(long millis, DateRenderer renderer) {
+        text.setLength(0);
+        renderer.append(text, millis);
+        endString();
+    }
+
+    @Override
+    public StringBuilder beginString() {
+        text.setLength(0);
+        return text;
+    }
+
+    @Override
+    public void endString() {
+        nextColumn();
+        appendString(record, text);
+    }
+
+    /*
+    'value' as a quoted JSON string.
+     */
+    static void appendString(StringBuilder sb, CharSequence value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
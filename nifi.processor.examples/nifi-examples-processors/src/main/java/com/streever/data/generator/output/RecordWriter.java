@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.output;
+
+import com.streever.data.generator.RecordGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+Writes generated records to a stream in one output format.  reset() starts a stream (writing
+any header the format has), then write() per record, then flush() to finish it.  A writer keeps
+its buffers between streams, and isn't thread safe.
+ */
+public interface RecordWriter {
+
+    void reset(OutputStream out) throws IOException;
+
+    void write(RecordGenerator generator) throws IOException;
+
+    /*
+    Finish the stream: write out what's buffered.  The stream is flushed, not closed.
+     */
+    void flush() throws IOException;
+
+    long getRecordCount();
+
+    /*
+    Bytes written to the stream so far, including what is still buffered.
+     */
+    long getByteCount();
+
+    String getMimeType();
+}
@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.output;
+
+import com.streever.data.generator.RecordGenerator;
+import com.streever.data.generator.fields.FieldType;
+
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+The output formats, by name.
+ */
+public final class RecordWriters {
+
+    public static final String DELIMITED = "delimited";
+    public static final String JSON = "json";
+    public static final String FIXED_WIDTH = "fixed-width";
+    public static final String AVRO = "avro";
+
+    private RecordWriters() {
+    }
+
+    /*
+    A writer for the records of 'generator' (or any generator of the same schema).  The charset
+    is for the text formats, Avro is always UTF-8.
+     */
+    public static RecordWriter create(String format, RecordGenerator generator, Charset charset) {
+        if (!DELIMITED.equals(format) && generator.isCdc()) {
+            throw new IllegalArgumentException("CDC records can only be written as " + DELIMITED);
+        }
+        if (DELIMITED.equals(format)) {
+            return new DelimitedRecordWriter(charset);
+        } else if (JSON.equals(format)) {
+            return new JsonRecordWriter(generator.getColumns(), charset);
+        } else if (FIXED_WIDTH.equals(format)) {
+            return new FixedWidthRecordWriter(generator.getColumns(), charset);
+        } else if (AVRO.equals(format)) {
+            return new AvroRecordWriter(generator.getColumns());
+        }
+        throw new IllegalArgumentException("Unknown output format: " + format);
+    }
+
+    /*
+    A name per column: the field's name, or field_N (from 1) when it has none or it's taken.
+     */
+    static String[] columnNames(List<FieldType> columns) {
+        String[] names = new String[columns.size()];
+        Set<String> used = new HashSet<String>();
+        for (int i = 0; i < names.length; i++) {
+            String name = columns.get(i).getName();
+            if (name == null || name.isEmpty() || used.contains(name)) {
+                name = "field_" + (i + 1);
+            }
+            used.add(name);
+            names[i] = name;
+        }
+        return names;
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.quality;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * What one column of a delimited record may hold, for the RecordContentValidator.
+ *
+ * Every type checks nullability (an empty field, or the 'nullValue' when set).  Beyond that:
+ *   string  - length from 'minLength' to 'maxLength', and optionally a regex 'pattern'
+ *   int     - an int from 'min' to 'max'
+ *   long    - a long from 'min' to 'max'
+ *   decimal - a number with at most 'scale' places (-1 for any), from 'min' to 'max'
+ *   date    - a date in SimpleDateFormat 'format'
+ *   enum    - one of 'values'
+ */
+public class ColumnRule {
+
+    public enum Type {
+        STRING, INT, LONG, DECIMAL, DATE, ENUM
+    }
+
+    private String name = null;
+    private Type type = Type.STRING;
+    private boolean nullable = true;
+    private String nullValue = null;
+    private Double min = null;
+    private Double max = null;
+    private int scale = -1;
+    private String format = null;
+    private List<String> values = new ArrayList<String>();
+    private int minLength = 0;
+    private int maxLength = Integer.MAX_VALUE;
+    private String pattern = null;
+
+    public ColumnRule() {
+    }
+
+    public ColumnRule(String name, Type type) {
+        this.name = name;
+        this.type = type;
+    }
+
+    /**
+     * A rule from its json definition, ie. {"name":"amount","type":"decimal","scale":2,"nullable":false}
+     */
+    public static ColumnRule fromJson(JsonNode node) {
+        ColumnRule rule = new ColumnRule();
+        if (node.has("name"))
+            rule.setName(node.get("name").asText());
+        if (node.has("type"))
+            rule.setType(Type.valueOf(node.get("type").asText().toUpperCase()));
+        if (node.has("nullable"))
+            rule.setNullable(node.get("nullable").asBoolean());
+        if (node.has("null"))
+            rule.setNullValue(node.get("null").asText());
+        if (node.has("min"))
+            rule.setMin(node.get("min").asDouble());
+        if (node.has("max"))
+            rule.setMax(node.get("max").asDouble());
+        if (node.has("scale"))
+            rule.setScale(node.get("scale").asInt());
+        if (node.has("format"))
+            rule.setFormat(node.get("format").asText());
+        if (node.has("values")) {
+            for (JsonNode value : node.get("values")) {
+                rule.getValues().add(value.asText());
+            }
+        }
+        if (node.has("minLength"))
+            rule.setMinLength(node.get("minLength").asInt());
+        if (node.has("maxLength"))
+            rule.setMaxLength(node.get("maxLength").asInt());
+        if (node.has("pattern"))
+            rule.setPattern(node.get("pattern").asText());
+        return rule;
+    }
+
+    /**
+     * Throws an IllegalArgumentException when the rule can't be checked.
+     */
+    public void check() {
+        if (type == Type.DATE && format == null) {
+            throw new IllegalArgumentException("Date column '" + name + "' needs a 'format'");
+        }
+        if (type == Type.ENUM && values.isEmpty()) {
+            throw new IllegalArgumentException("Enum column '" + name + "' needs 'values'");
+        }
+        if (min != null && max != null && min > max) {
+            throw new IllegalArgumentException("Column '" + name + "' has 'min' above 'max'");
+        }
+        if (minLength > maxLength) {
+            throw new IllegalArgumentException("Column '" + name + "' has 'minLength' above 'maxLength'");
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public boolean isNullable() {
+        return nullable;
+    }
+
+    public void setNullable(boolean nullable) {
+        this.nullable = nullable;
+    }
+
+    public String getNullValue() {
+        return nullValue;
+    }
+
+    /**
+     * A value, besides the empty field, that stands for null.  ie. "NULL" or "\N".
+     */
+    public void setNullValue(String nullValue) {
+        this.nullValue = nullValue;
+    }
+
+    public Double getMin() {
+        return min;
+    }
+
+    public void setMin(Double min) {
+        this.min = min;
+    }
+
+    public Double getMax() {
+        return max;
+    }
+
+    public void setMax(Double max) {
+        this.max = max;
+    }
+
+    boolean hasRange() {
+        return min != null || max != null;
+    }
+
+    /*
+    The integer bounds, defaulting to the range of the type.
+     */
+    long getMinValue() {
+        long floor = type == Type.INT ? Integer.MIN_VALUE : Long.MIN_VALUE;
+        return min != null ? Math.max(floor, (long) Math.ceil(min)) : floor;
+    }
+
+    long getMaxValue() {
+        long ceiling = type == Type.INT ? Integer.MAX_VALUE : Long.MAX_VALUE;
+        return max != null ? Math.min(ceiling, (long) Math.floor(max)) : ceiling;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public void setScale(int scale) {
+        this.scale = scale;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+
+    public void setValues(List<String> values) {
+        this.values = values;
+    }
+
+    public int getMinLength() {
+        return minLength;
+    }
+
+    public void setMinLength(int minLength) {
+        this.minLength = minLength;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public void setMaxLength(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public void setPattern(String pattern) {
+        this.pattern = pattern;
+    }
+
+}
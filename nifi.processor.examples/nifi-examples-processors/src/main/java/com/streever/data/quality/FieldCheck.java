@@ -0,0 +1,466 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.quality;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ *
+ * A ColumnRule compiled into a check of one field, given as the range [start, end) of the
+ * record, so a field is checked without a String being made of it.
+ *
+ * Not thread safe (the regex and date fallbacks keep state); each validation compiles its own.
+ */
+abstract class FieldCheck {
+
+    private final boolean nullable;
+    private final String nullValue;
+    private final String problem;
+
+    FieldCheck(ColumnRule rule, String problem) {
+        this.nullable = rule.isNullable();
+        this.nullValue = rule.getNullValue();
+        this.problem = problem;
+    }
+
+    /**
+     * True when the field passes.  An empty field (or the null value) passes only when nullable.
+     */
+    final boolean accept(CharSequence line, int start, int end) {
+        if (start == end || (nullValue != null && regionEquals(line, start, end, nullValue))) {
+            return nullable;
+        }
+        return check(line, start, end);
+    }
+
+    abstract boolean check(CharSequence line, int start, int end);
+
+    /**
+     * What a failing value isn't, ie. "not an int from 0 to 10".
+     */
+    String getProblem() {
+        return nullable ? problem : problem + " (not nullable)";
+    }
+
+    static boolean regionEquals(CharSequence line, int start, int end, String value) {
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (line.charAt(i) != value.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static FieldCheck compile(ColumnRule rule) {
+        switch (rule.getType()) {
+            case INT:
+            case LONG:
+                return new IntegerCheck(rule);
+            case DECIMAL:
+                return new DecimalCheck(rule);
+            case DATE:
+                DateCheck date = DateCheck.compile(rule);
+                return date != null ? date : new DateFormatCheck(rule);
+            case ENUM:
+                return new EnumCheck(rule);
+            case STRING:
+            default:
+                return new StringCheck(rule);
+        }
+    }
+
+    /*
+    Optional sign and digits, within [min, max].  Parsed as Long.parseLong() does, negative,
+    so Long.MIN_VALUE doesn't overflow.
+     */
+    static class IntegerCheck extends FieldCheck {
+        private final long min;
+        private final long max;
+
+        IntegerCheck(ColumnRule rule) {
+            super(rule, "not " + (rule.getType() == ColumnRule.Type.INT ? "an int" : "a long") + " from " + rule.getMinValue() + " to " + rule.getMaxValue());
+            this.min = rule.getMinValue();
+            this.max = rule.getMaxValue();
+        }
+
+        @Override
+        boolean check(CharSequence line, int start, int end) {
+            int i = start;
+            boolean negative = false;
+            char first = line.charAt(i);
+            if (first == '-' || first == '+') {
+                negative = first == '-';
+                if (++i == end) {
+                    return false;
+                }
+            }
+            long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+            long multiplyMin = limit / 10;
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = line.charAt(i) - '0';
+                if (digit < 0 || digit > 9 || value < multiplyMin) {
+                    return false;
+                }
+                value *= 10;
+                if (value < limit + digit) {
+                    return false;
+                }
+                value -= digit;
+            }
+            value = negative ? value : -value;
+            return value >= min && value <= max;
+        }
+    }
+
+    /*
+    Optional sign, digits, and optionally '.' and up to 'scale' digits, within [min, max].
+     */
+    static class DecimalCheck extends FieldCheck {
+        private final int scale;
+        private final double min;
+        private final double max;
+
+        DecimalCheck(ColumnRule rule) {
+            super(rule, "not a decimal" + (rule.getScale() >= 0 ? " with at most " + rule.getScale() + " places" : "") +
+                    (rule.hasRange() ? " from " + (rule.getMin() != null ? rule.getMin() : "any") +
+                    " to " + (rule.getMax() != null ? rule.getMax() : "any") : ""));
+            this.scale = rule.getScale();
+            this.min = rule.getMin() != null ? rule.getMin() : Double.NEGATIVE_INFINITY;
+            this.max = rule.getMax() != null ? rule.getMax() : Double.POSITIVE_INFINITY;
+        }
+
+        @Override
+        boolean check(CharSequence line, int start, int end) {
+            int i = start;
+            boolean negative = false;
+            char first = line.charAt(i);
+            if (first == '-' || first == '+') {
+                negative = first == '-';
+                i++;
+            }
+            double value = 0;
+            int digits = 0;
+            for (; i < end; i++) {
+                int digit = line.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+                digits++;
+            }
+            if (digits == 0) {
+                return false;
+            }
+            if (i < end) {
+                if (line.charAt(i++) != '.' || i == end) {
+                    return false;
+                }
+                int places = end - i;
+                if (scale >= 0 && places > scale) {
+                    return false;
+                }
+                double fraction = 0;
+                for (int p = end - 1; p >= i; p--) {
+                    int digit = line.charAt(p) - '0';
+                    if (digit < 0 || digit > 9) {
+                        return false;
+                    }
+                    fraction = (fraction + digit) / 10;
+                }
+                value += fraction;
+            }
+            value = negative ? -value : value;
+            return value >= min && value <= max;
+        }
+    }
+
+    /*
+    A length in [minLength, maxLength], and the column's regex when it has one.
+     */
+    static class StringCheck extends FieldCheck {
+        private final int minLength;
+        private final int maxLength;
+        private final Matcher matcher;
+
+        StringCheck(ColumnRule rule) {
+            super(rule, "not " + rule.getMinLength() + " to " + rule.getMaxLength() + " chars" +
+                    (rule.getPattern() != null ? " matching " + rule.getPattern() : ""));
+            this.minLength = rule.getMinLength();
+            this.maxLength = rule.getMaxLength();
+            this.matcher = rule.getPattern() != null ? Pattern.compile(rule.getPattern()).matcher("") : null;
+        }
+
+        @Override
+        boolean check(CharSequence line, int start, int end) {
+            int length = end - start;
+            if (length < minLength || length > maxLength) {
+                return false;
+            }
+            return matcher == null || matcher.reset(line).region(start, end).matches();
+        }
+    }
+
+    /*
+    One of a set of values.  Small sets are compared in turn, larger ones found by hash (the
+    String.hashCode() of the field, computed over the range) in a sorted table.
+     */
+    static class EnumCheck extends FieldCheck {
+        private static final int LINEAR = 8;
+        private final String[] values;
+        private final int[] hashes;
+
+        EnumCheck(ColumnRule rule) {
+            super(rule, "not one of " + rule.getValues());
+            List<String> list = new ArrayList<String>(rule.getValues());
+            String[] sorted = list.toArray(new String[list.size()]);
+            Arrays.sort(sorted, (a, b) -> Integer.compare(a.hashCode(), b.hashCode()));
+            this.values = sorted;
+            this.hashes = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                hashes[i] = sorted[i].hashCode();
+            }
+        }
+
+        @Override
+        boolean check(CharSequence line, int start, int end) {
+            if (values.length <= LINEAR) {
+                for (String value : values) {
+                    if (regionEquals(line, start, end, value)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + line.charAt(i);
+            }
+            int at = Arrays.binarySearch(hashes, hash);
+            if (at < 0) {
+                return false;
+            }
+            // Back up to the first of any values sharing the hash.
+            while (at > 0 && hashes[at - 1] == hash) {
+                at--;
+            }
+            for (; at < hashes.length && hashes[at] == hash; at++) {
+                if (regionEquals(line, start, end, values[at])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /*
+    A date pattern of fixed width numbers (yyyy, yy, MM, dd, HH, mm, ss, SSS) and literals,
+    checked digit by digit, with the day checked against the month (and year).
+     */
+    static class DateCheck extends FieldCheck {
+        private static final int LITERAL = 0;
+        private static final int YEAR4 = 1;
+        private static final int YEAR2 = 2;
+        private static final int MONTH = 3;
+        private static final int DAY = 4;
+        private static final int HOUR = 5;
+        private static final int MINUTE = 6;
+        private static final int SECOND = 7;
+        private static final int MILLI = 8;
+        private static final int[] WIDTHS = new int[]{1, 4, 2, 2, 2, 2, 2, 2, 3};
+        private static final int[] DAYS = new int[]{31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+        private final int[] kinds;
+        private final char[] literals;
+        private final int width;
+
+        private DateCheck(ColumnRule rule, int[] kinds, char[] literals) {
+            super(rule, "not a date like " + rule.getFormat());
+            this.kinds = kinds;
+            this.literals = literals;
+            int width = 0;
+            for (int kind : kinds) {
+                width += WIDTHS[kind];
+            }
+            this.width = width;
+        }
+
+        /*
+        Null when the pattern has anything else, ie. month names or unpadded numbers.
+         */
+        static DateCheck compile(ColumnRule rule) {
+            String format = rule.getFormat();
+            List<Integer> kinds = new ArrayList<Integer>();
+            StringBuilder literals = new StringBuilder();
+            int i = 0;
+            while (i < format.length()) {
+                char c = format.charAt(i);
+                if (c == '\'') {
+                    int close = format.indexOf('\'', i + 1);
+                    if (close < 0) {
+                        return null;
+                    }
+                    if (close == i + 1) {
+                        kinds.add(LITERAL);
+                        literals.append('\'');
+                    }
+                    for (int q = i + 1; q < close; q++) {
+                        kinds.add(LITERAL);
+                        literals.append(format.charAt(q));
+                    }
+                    i = close + 1;
+                } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                    int run = i;
+                    while (run < format.length() && format.charAt(run) == c) {
+                        run++;
+                    }
+                    int kind = kindOf(c, run - i);
+                    if (kind < 0) {
+                        return null;
+                    }
+                    kinds.add(kind);
+                    literals.append(' ');
+                    i = run;
+                } else {
+                    kinds.add(LITERAL);
+                    literals.append(c);
+                    i++;
+                }
+            }
+            int[] kindArray = new int[kinds.size()];
+            for (int k = 0; k < kindArray.length; k++) {
+                kindArray[k] = kinds.get(k);
+            }
+            return new DateCheck(rule, kindArray, literals.toString().toCharArray());
+        }
+
+        private static int kindOf(char letter, int count) {
+            switch (letter) {
+                case 'y':
+                    return count == 4 ? YEAR4 : count == 2 ? YEAR2 : -1;
+                case 'M':
+                    return count == 2 ? MONTH : -1;
+                case 'd':
+                    return count == 2 ? DAY : -1;
+                case 'H':
+                    return count == 2 ? HOUR : -1;
+                case 'm':
+                    return count == 2 ? MINUTE : -1;
+                case 's':
+                    return count == 2 ? SECOND : -1;
+                case 'S':
+                    return count == 3 ? MILLI : -1;
+                default:
+                    return -1;
+            }
+        }
+
+        @Override
+        boolean check(CharSequence line, int start, int end) {
+            if (end - start != width) {
+                return false;
+            }
+            int at = start;
+            int year = -1;
+            int month = -1;
+            int day = -1;
+            for (int k = 0; k < kinds.length; k++) {
+                int kind = kinds[k];
+                if (kind == LITERAL) {
+                    if (line.charAt(at++) != literals[k]) {
+                        return false;
+                    }
+                    continue;
+                }
+                int value = 0;
+                for (int w = WIDTHS[kind]; w > 0; w--) {
+                    int digit = line.charAt(at++) - '0';
+                    if (digit < 0 || digit > 9) {
+                        return false;
+                    }
+                    value = value * 10 + digit;
+                }
+                switch (kind) {
+                    case YEAR4:
+                    case YEAR2:
+                        year = kind == YEAR4 ? value : -1;
+                        break;
+                    case MONTH:
+                        if (value < 1 || value > 12)
+                            return false;
+                        month = value;
+                        break;
+                    case DAY:
+                        if (value < 1 || value > 31)
+                            return false;
+                        day = value;
+                        break;
+                    case HOUR:
+                        if (value > 23)
+                            return false;
+                        break;
+                    case MINUTE:
+                    case SECOND:
+                        if (value > 59)
+                            return false;
+                        break;
+                    default:
+                }
+            }
+            if (month > 0 && day > DAYS[month - 1]) {
+                return false;
+            }
+            if (month == 2 && day == 29 && year >= 0) {
+                return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            }
+            return true;
+        }
+    }
+
+    /*
+    Any other date pattern, parsed strictly by SimpleDateFormat.  Makes a String per field.
+     */
+    static class DateFormatCheck extends FieldCheck {
+        private final SimpleDateFormat format;
+        private final ParsePosition position = new ParsePosition(0);
+
+        DateFormatCheck(ColumnRule rule) {
+            super(rule, "not a date like " + rule.getFormat());
+            this.format = new SimpleDateFormat(rule.getFormat());
+            this.format.setLenient(false);
+        }
+
+        @Override
+        boolean check(CharSequence line, int start, int end) {
+            String value = line.subSequence(start, end).toString();
+            position.setIndex(0);
+            position.setErrorIndex(-1);
+            return format.parse(value, position) != null && position.getIndex() == value.length();
+        }
+    }
+}
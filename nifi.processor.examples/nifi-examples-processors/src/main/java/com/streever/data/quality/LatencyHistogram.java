@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.quality;
+
+/**
+ *
+ * A histogram of durations in nanoseconds, with HDR style log-linear buckets: each power of
+ * two is split into 16 buckets, so any value is held to within 1/16 (about 6%) in a fixed
+ * 960 counts, from 1ns to Long.MAX_VALUE.
+ *
+ * The count per decade (power of ten) is kept too, exactly, since decades don't fall on
+ * bucket boundaries.
+ *
+ * Recording is an array increment; not thread safe, merge per thread histograms instead.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    // The most decades a long holds, 10^18 ns.
+    private static final int DECADES = 19;
+
+    private final long[] counts = new long[BUCKETS];
+    // By decade 'd', the values from 10^d (0 for the first) up to 10^(d+1).
+    private final long[] decades = new long[DECADES];
+    private long count = 0;
+    private long total = 0;
+    private long max = 0;
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[index(nanos)]++;
+        decades[decade(nanos)]++;
+        count++;
+        total += nanos;
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        for (int d = 0; d < DECADES; d++) {
+            decades[d] += other.decades[d];
+        }
+        count += other.count;
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * The value at or below which 'percentile' percent of the values fall, as the top of its
+     * bucket (so at most about 6% high).  0 when empty.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highest(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * The number of values in the buckets wholly below 'nanos', so exact only when 'nanos' is
+     * the bottom of a bucket (ie. a power of two) and low by up to a bucket otherwise.  See
+     * getCountBelowDecade() for exact counts below powers of ten.
+     */
+    public long getCountBelow(long nanos) {
+        long below = 0;
+        for (int i = 0; i < BUCKETS && highest(i) < nanos; i++) {
+            below += counts[i];
+        }
+        return below;
+    }
+
+    /**
+     * The exact number of values below 10^'decade' ns, from 1 (10 ns).
+     */
+    public long getCountBelowDecade(int decade) {
+        if (decade < 1) {
+            throw new IllegalArgumentException("Decade must be at least 1");
+        }
+        long below = 0;
+        for (int d = 0; d < decade && d < DECADES; d++) {
+            below += decades[d];
+        }
+        return below;
+    }
+
+    static int decade(long value) {
+        int d = 0;
+        for (long power = 10; d < DECADES - 1 && value >= power; power *= 10) {
+            d++;
+        }
+        return d;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    static long lowest(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    static long highest(int index) {
+        return index + 1 < BUCKETS ? lowest(index + 1) - 1 : Long.MAX_VALUE;
+    }
+}
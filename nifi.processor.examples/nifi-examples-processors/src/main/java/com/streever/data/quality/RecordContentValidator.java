@@ -1,10 +1,350 @@
 package com.streever.data.quality;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.streever.parsers.RecordScanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
+ *
+ * Checks the contents of each record, column by column, against a list of ColumnRules.
+ *
+ * Records are split (delimiter defaulted to \n, charset to UTF-8) with the RecordScanner, and
+ * fields on the 'fieldDelimiter' by scanning for it, not with a regex.  Each rule is compiled
+ * once into a typed check (int/long range, decimal scale, date, enum, length, nullability) that
+ * works on the field's position in the record, so no Strings are made for valid records.
+ *
+ * The rules can be given as json:
+ *   {"delimiter": ",", "columns": [{"name": "id", "type": "long", "min": 0, "nullable": false}, ...]}
+ *
+ * Fields aren't unquoted; a delimiter inside a field is a delimiter.
+ *
+ * Errors are kept (the first 'maxErrorsInMemory'), counted and sinked the same way the
+ * RecordLayoutValidator does, with the reason for each kept error and a count per column.
+ *
+ * A stream that can't be read to the end isn't valid; the exception is kept for getFailure().
  *
  * Created by dstreev on 2016-10-06.
  */
 public class RecordContentValidator {
 
+    private List<ColumnRule> columns = new ArrayList<ColumnRule>();
+    private String fieldDelimiter = ",";
+    private Boolean hasHeader = Boolean.TRUE;
+    private Map<Long, String> errors = new TreeMap<Long, String>();
+    private Map<Long, String> errorReasons = new TreeMap<Long, String>();
+    // Errors by column.  The extra last slot counts records with the wrong number of fields.
+    private long[] columnErrorCounts = new long[1];
+    private long recordCount = 0l;
+    private boolean valid = Boolean.TRUE;
+    private long errorCount = 0l;
+    private boolean aborted = false;
+    private Exception failure = null;
+
+    private int maxErrorsInMemory = Integer.MAX_VALUE;
+    // Stop validating after this many errors.  0 is unlimited.
+    private long maxErrors = 0l;
+    private ErrorSink errorSink = null;
+
+    private InputStream inputStream = null;
+    private Charset charset = StandardCharsets.UTF_8;
+    private String delimiter = RecordScanner.DEFAULT_DELIMITER;
+
+    public RecordContentValidator() {
+    }
+
+    public RecordContentValidator(InputStream inputStream) {
+        setInputStream(inputStream);
+    }
+
+    /**
+     * Replace the columns (and the field delimiter, when given) from their json definition.
+     */
+    public void setRules(JsonNode node) {
+        if (node.has("delimiter")) {
+            setFieldDelimiter(RecordScanner.unescapeDelimiter(node.get("delimiter").asText()));
+        }
+        List<ColumnRule> rules = new ArrayList<ColumnRule>();
+        if (node.has("columns")) {
+            for (JsonNode column : node.get("columns")) {
+                rules.add(ColumnRule.fromJson(column));
+            }
+        }
+        setColumns(rules);
+    }
+
+    public List<ColumnRule> getColumns() {
+        return columns;
+    }
+
+    public void setColumns(List<ColumnRule> columns) {
+        this.columns = columns;
+    }
+
+    public void addColumn(ColumnRule column) {
+        columns.add(column);
+    }
+
+    public String getFieldDelimiter() {
+        return fieldDelimiter;
+    }
+
+    public void setFieldDelimiter(String fieldDelimiter) {
+        if (fieldDelimiter == null || fieldDelimiter.length() == 0) {
+            throw new IllegalArgumentException("Field delimiter can't be empty");
+        }
+        this.fieldDelimiter = fieldDelimiter;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * The first 'maxErrorsInMemory' errors, by record number.
+     */
+    public Map<Long, String> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Why each of the errors failed, ie. "column 3 (amount): not a decimal with at most 2 places".
+     */
+    public Map<Long, String> getErrorReasons() {
+        return errorReasons;
+    }
+
+    /**
+     * The number of errors found in each column.  Only the first failing column of a record
+     * is counted.  The last slot counts records with the wrong number of fields.
+     */
+    public long[] getColumnErrorCounts() {
+        return columnErrorCounts;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * True when validation stopped early because 'maxErrors' was reached.  The record count
+     * then only covers the records read.
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * The exception that stopped validation (ie. the stream or the ErrorSink failed), or null.
+     * The stream isn't valid when there is one.
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    public int getMaxErrorsInMemory() {
+        return maxErrorsInMemory;
+    }
+
+    public void setMaxErrorsInMemory(int maxErrorsInMemory) {
+        this.maxErrorsInMemory = maxErrorsInMemory;
+    }
+
+    public long getMaxErrors() {
+        return maxErrors;
+    }
+
+    public void setMaxErrors(long maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    public ErrorSink getErrorSink() {
+        return errorSink;
+    }
+
+    public void setErrorSink(ErrorSink errorSink) {
+        this.errorSink = errorSink;
+    }
+
+    public Boolean getHasHeader() {
+        return hasHeader;
+    }
+
+    public void setHasHeader(Boolean hasHeader) {
+        this.hasHeader = hasHeader;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public void setDelimiter(String delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public void setInputStream(InputStream inputStream) {
+        this.inputStream = inputStream;
+        init();
+    }
+
+    protected void init() {
+        errors.clear();
+        errorReasons.clear();
+        columnErrorCounts = new long[columns.size() + 1];
+        recordCount = 0l;
+        valid = Boolean.TRUE;
+        errorCount = 0l;
+        aborted = false;
+        failure = null;
+    }
+
+    /**
+     * Compile the column rules.  Throws an IllegalArgumentException for a rule that can't be
+     * checked, so callers can validate the rules up front.
+     */
+    public void compile() {
+        compileChecks();
+    }
+
+    private FieldCheck[] compileChecks() {
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("No columns to validate");
+        }
+        FieldCheck[] checks = new FieldCheck[columns.size()];
+        for (int i = 0; i < checks.length; i++) {
+            ColumnRule rule = columns.get(i);
+            rule.check();
+            checks[i] = FieldCheck.compile(rule);
+        }
+        return checks;
+    }
+
+    public void validate() {
+        // Check that we have the minimum required elements
+        if (inputStream == null || columns.isEmpty()) {
+            return;
+        }
+
+        FieldCheck[] checks = compileChecks();
+        columnErrorCounts = new long[checks.length + 1];
+        recordCount = 0;
+
+        try {
+            RecordScanner scanner = new RecordScanner(inputStream, charset, delimiter);
+            while (scanner.next()) {
+                if (hasHeader && recordCount == 0) {
+                    // Header
+                } else {
+                    CharSequence line = scanner.getRecord();
+                    int failed = checkRecord(checks, line);
+                    if (failed != CHECKED && !error(recordCount, line, checks, failed)) {
+                        recordCount++;
+                        break;
+                    }
+                }
+                recordCount++;
+            }
+        } catch (Exception ex) {
+            fail(ex);
+        }
+    }
+
+    private void fail(Exception ex) {
+        failure = ex;
+        valid = Boolean.FALSE;
+    }
+
+    private static final int CHECKED = -1;
+
+    /*
+    Split the record and check each field.  Returns CHECKED, the index of the first failing
+    column, or the number of columns when the record has the wrong number of fields.
+     */
+    private int checkRecord(FieldCheck[] checks, CharSequence line) {
+        int length = line.length();
+        int start = 0;
+        int column = 0;
+        while (true) {
+            int end = indexOfDelimiter(line, start, length);
+            if (column == checks.length) {
+                return checks.length;
+            }
+            if (!checks[column].accept(line, start, end)) {
+                return column;
+            }
+            column++;
+            if (end == length) {
+                break;
+            }
+            start = end + fieldDelimiter.length();
+        }
+        return column == checks.length ? CHECKED : checks.length;
+    }
+
+    /*
+    The start of the next field delimiter from 'from', or 'length' when there isn't one.
+     */
+    private int indexOfDelimiter(CharSequence line, int from, int length) {
+        char first = fieldDelimiter.charAt(0);
+        int last = length - fieldDelimiter.length();
+        for (int i = from; i <= last; i++) {
+            if (line.charAt(i) == first && (fieldDelimiter.length() == 1 || FieldCheck.regionEquals(line, i, i + fieldDelimiter.length(), fieldDelimiter))) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /*
+    Record an error.  Returns false when validation should stop.
+     */
+    private boolean error(long recordNumber, CharSequence line, FieldCheck[] checks, int failed) throws IOException {
+        valid = Boolean.FALSE;
+        errorCount++;
+        columnErrorCounts[failed]++;
+        if (errors.size() < maxErrorsInMemory) {
+            errors.put(recordNumber, line.toString());
+            errorReasons.put(recordNumber, reason(checks, failed));
+        }
+        if (errorSink != null) {
+            errorSink.error(recordNumber, line);
+        }
+        if (maxErrors > 0 && errorCount >= maxErrors) {
+            aborted = true;
+            return false;
+        }
+        return true;
+    }
+
+    private String reason(FieldCheck[] checks, int failed) {
+        if (failed == checks.length) {
+            return "expected " + checks.length + " fields";
+        }
+        String name = columns.get(failed).getName();
+        return "column " + (failed + 1) + (name != null ? " (" + name + ")" : "") + ": " + checks[failed].getProblem();
+    }
 
 }
@@ -1,39 +1,179 @@
 package com.streever.data.quality;
 
-import java.io.BufferedReader;
+import com.streever.parsers.LayoutMatcher;
+import com.streever.parsers.LayoutPattern;
+import com.streever.parsers.PatternCache;
+import com.streever.parsers.RecordScanner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  *
- * The intent of this class is to check the incoming stream, parse record (defaulted by \n)
- * and check that the contents match an expected format.
+ * The intent of this class is to check the incoming stream, parse record (delimiter defaulted
+ * to \n, charset to UTF-8) and check that the contents match an expected format.
+ *
+ * When a ForkJoinPool is set, the stream is cut into delimiter aligned chunks that are
+ * validated in parallel.  Errors are merged back in order with their global record numbers.
+ *
+ * The header (when 'hasHeader') and footer (when 'hasFooter') aren't checked against the
+ * record format, but against the optional 'headerRegEx' and 'footerRegEx'.  The footer is
+ * found by looking ahead one record, so the stream is still read once.  When the footer
+ * RegEx has a group, its first group is the expected number of data records (not counting
+ * the header and footer), and a different count is an error on the footer.
+ *
+ * Records are matched with a LayoutMatcher (a literal prefix check, then a DFA for patterns
+ * that allow it) unless 'linearMatching' is turned off, which leaves it all to java.util.regex.
+ *
+ * Each validation's ValidationMetrics (rates, error ratio, time to first error and the
+ * match times of every 'sampleInterval'th record) are kept for getMetrics().
+ *
+ * Only the first 'maxErrorsInMemory' errors are kept in the errors map.  Set an ErrorSink
+ * to stream every error out as it is found, and 'maxErrors' to give up on hopeless files.
+ *
+ * A stream that can't be read to the end isn't valid; the exception is kept for getFailure().
  *
  * Created by dstreev on 2016-10-06.
  */
 public class RecordLayoutValidator {
 
     private String expectedRecordFormatRegEx = null;
+    // Pre-compiled pattern.  When not set, the regex is looked up in the shared PatternCache.
+    private Pattern expectedRecordFormatPattern = null;
     private Boolean hasHeader = Boolean.TRUE;
+    private boolean linearMatching = true;
     private Boolean hasFooter = Boolean.FALSE;
+    private String headerRegEx = null;
+    private String footerRegEx = null;
+    private long expectedRecordCount = -1l;
     private Map<Long, String> errors = new TreeMap<Long, String>();
     private long recordCount = 0l;
     private boolean valid = Boolean.TRUE;
+    private long errorCount = 0l;
+    private boolean aborted = false;
+    private Exception failure = null;
+
+    private int maxErrorsInMemory = Integer.MAX_VALUE;
+    // Stop validating after this many errors.  0 is unlimited.
+    private long maxErrors = 0l;
+    private ErrorSink errorSink = null;
 
     private InputStream inputStream = null;
+    private Charset charset = StandardCharsets.UTF_8;
+    private String delimiter = RecordScanner.DEFAULT_DELIMITER;
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    // The chunk sizes the processor accepts.
+    public static final int MIN_CHUNK_SIZE = 1024;
+    public static final int MAX_CHUNK_SIZE = 1024 * 1024 * 1024;
+    public static final int DEFAULT_SAMPLE_INTERVAL = 16;
+
+    private ValidationMetrics metrics = new ValidationMetrics();
+    // Time the match of every n'th record.  0 times none.
+    private int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+    private long bytesRead = 0l;
+
+    // Parallel validation, when a pool is set.
+    private ForkJoinPool pool = null;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
 
     public boolean isValid() {
         return valid;
     }
 
+    /**
+     * The first 'maxErrorsInMemory' errors, by record number.
+     */
     public Map<Long, String> getErrors() {
         return errors;
     }
 
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * True when validation stopped early because 'maxErrors' was reached.  The record count
+     * then only covers the records read.
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * The exception that stopped validation (ie. the stream failed to read), or null.  The
+     * stream isn't valid when there is one.
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    public int getMaxErrorsInMemory() {
+        return maxErrorsInMemory;
+    }
+
+    public void setMaxErrorsInMemory(int maxErrorsInMemory) {
+        this.maxErrorsInMemory = maxErrorsInMemory;
+    }
+
+    public long getMaxErrors() {
+        return maxErrors;
+    }
+
+    public void setMaxErrors(long maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    public ErrorSink getErrorSink() {
+        return errorSink;
+    }
+
+    public void setErrorSink(ErrorSink errorSink) {
+        this.errorSink = errorSink;
+    }
+
+    public ValidationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * Time the match of every 'sampleInterval'th record.  1 times them all, 0 none.
+     */
+    public void setSampleInterval(int sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    public boolean isLinearMatching() {
+        return linearMatching;
+    }
+
+    /**
+     * Match with a LayoutMatcher (the default), or false for java.util.regex alone.
+     */
+    public void setLinearMatching(boolean linearMatching) {
+        this.linearMatching = linearMatching;
+    }
+
     public Boolean getHasHeader() {
         return hasHeader;
     }
@@ -50,18 +190,107 @@ public class RecordLayoutValidator {
         this.hasFooter = hasFooter;
     }
 
+    public String getHeaderRegEx() {
+        return headerRegEx;
+    }
+
+    /**
+     * The header must match this RegEx, when set.
+     */
+    public void setHeaderRegEx(String headerRegEx) {
+        this.headerRegEx = headerRegEx;
+    }
+
+    public String getFooterRegEx() {
+        return footerRegEx;
+    }
+
+    /**
+     * The footer must match this RegEx, when set.  Its first group, when it has one, is the
+     * expected number of data records.
+     */
+    public void setFooterRegEx(String footerRegEx) {
+        this.footerRegEx = footerRegEx;
+    }
+
+    /**
+     * The record count from the footer.  -1 without one.
+     */
+    public long getExpectedRecordCount() {
+        return expectedRecordCount;
+    }
+
+    /**
+     * The records read, less the header and footer.
+     */
+    public long getDataRecordCount() {
+        return Math.max(0l, recordCount - (hasHeader ? 1 : 0) - (hasFooter ? 1 : 0));
+    }
+
     public String getExpectedRecordFormatRegEx() {
         return expectedRecordFormatRegEx;
     }
 
     public void setExpectedRecordFormatRegEx(String expectedRecordFormatRegEx) {
         this.expectedRecordFormatRegEx = expectedRecordFormatRegEx;
+        this.expectedRecordFormatPattern = null;
+    }
+
+    public Pattern getExpectedRecordFormatPattern() {
+        return expectedRecordFormatPattern;
+    }
+
+    public void setExpectedRecordFormatPattern(Pattern expectedRecordFormatPattern) {
+        this.expectedRecordFormatPattern = expectedRecordFormatPattern;
+        this.expectedRecordFormatRegEx = expectedRecordFormatPattern != null ? expectedRecordFormatPattern.pattern() : null;
     }
 
     public long getRecordCount() {
         return recordCount;
     }
 
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public void setDelimiter(String delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Validate chunks of the stream in parallel on this pool.  Null (the default) validates
+     * on the calling thread.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Bytes per chunk when validating in parallel.  Must be positive.
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive, not " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
     public InputStream getInputStream() {
         return inputStream;
     }
@@ -75,6 +304,11 @@ public class RecordLayoutValidator {
         errors.clear();
         recordCount = 0l;
         valid = Boolean.TRUE;
+        errorCount = 0l;
+        aborted = false;
+        failure = null;
+        expectedRecordCount = -1l;
+        metrics = new ValidationMetrics();
     }
 
     public RecordLayoutValidator() {
@@ -85,42 +319,310 @@ public class RecordLayoutValidator {
     }
 
     public void validate() {
-        String rtn = null;
         // Check that we have the minimum required elements
-        if (inputStream == null || expectedRecordFormatRegEx == null) {
+        if (inputStream == null || (expectedRecordFormatRegEx == null && expectedRecordFormatPattern == null)) {
             return;
         }
 
-        // Build the Compile RegEx Pattern
-        Pattern regExPattern = Pattern.compile(expectedRecordFormatRegEx);
+        // Use the pre-compiled Pattern, or fetch it from the cache.
+        Pattern regExPattern = expectedRecordFormatPattern != null ? expectedRecordFormatPattern :
+                PatternCache.getShared().get(expectedRecordFormatRegEx);
+        // Looked up once, not per chunk.
+        LayoutPattern layout = linearMatching ? LayoutPattern.forPattern(regExPattern) : null;
         recordCount = 0;
+        expectedRecordCount = -1l;
+        footerRecord = -1l;
+        footerLine = null;
+        bytesRead = 0l;
+        metrics = new ValidationMetrics();
+        metrics.start();
+
+        try {
+            if (pool != null) {
+                validateParallel(regExPattern, layout);
+            } else {
+                ChunkResult result = validateChunk(regExPattern, layout, inputStream, true, true, false);
+                recordCount = result.count;
+                bytesRead = result.bytes;
+                metrics.getMatchTimes().merge(result.matchTimes);
+                footer(result, 0);
+            }
+            reconcile();
+        } catch (ExecutionException ee) {
+            // A chunk failed.
+            fail(ee.getCause() instanceof Exception ? (Exception) ee.getCause() : ee);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            fail(ie);
+        } catch (Exception ex) {
+            fail(ex);
+        }
+        metrics.stop(bytesRead, recordCount, errorCount);
+    }
+
+    // The footer, with its record number, kept to report a count that doesn't match.
+    private long footerRecord = -1l;
+    private String footerLine = null;
+
+    /*
+    Check the records counted against the footer's count.
+     */
+    private void reconcile() throws IOException {
+        if (aborted || expectedRecordCount < 0 || footerLine == null) {
+            return;
+        }
+        if (getDataRecordCount() != expectedRecordCount) {
+            error(footerRecord, footerLine);
+        }
+    }
+
+    private Pattern headerPattern() {
+        return headerRegEx != null ? PatternCache.getShared().get(headerRegEx) : null;
+    }
+
+    private Pattern footerPattern() {
+        return footerRegEx != null ? PatternCache.getShared().get(footerRegEx) : null;
+    }
+
+    /*
+    Validate every record in the stream.  Errors are either reported straight away, or
+    collected ('chunked') with record numbers relative to the start of the chunk.  Only
+    the 'first' chunk has the header and only the 'last' the footer.  Records are matched
+    with 'layout' when there is one.
+     */
+    private ChunkResult validateChunk(Pattern regExPattern, LayoutPattern layout, InputStream in, boolean first, boolean last, boolean chunked) throws IOException {
+        ChunkResult result = new ChunkResult();
+        RecordScanner scanner = new RecordScanner(in, charset, delimiter);
+        LayoutMatcher layoutMatcher = layout != null ? layout.threadMatcher() : null;
+        Matcher matcher = regExPattern.matcher("");
+        Pattern headerPattern = headerPattern();
+        Pattern footerPattern = footerPattern();
+        boolean skipHeader = first && hasHeader;
+        boolean findFooter = last && hasFooter;
+        int countdown = sampleInterval;
+
+        // Iterate till the end of the stream.
+        while (scanner.next()) {
+            CharSequence line = scanner.getRecord();
+            if (skipHeader && result.count == 0) {
+                // Header
+                if (headerPattern != null && !headerPattern.matcher(line).find() && !report(result, line, chunked)) {
+                    result.count++;
+                    break;
+                }
+            } else if (findFooter && !scanner.hasNext()) {
+                // Footer, the last record.
+                if (!footer(result, line, footerPattern, chunked)) {
+                    result.count++;
+                    break;
+                }
+            } else {
+                long matchStart = 0;
+                boolean timed = sampleInterval > 0 && --countdown == 0;
+                if (timed) {
+                    countdown = sampleInterval;
+                    matchStart = System.nanoTime();
+                }
+                boolean matched = layoutMatcher != null ? layoutMatcher.find(line) : matcher.reset(line).find();
+                if (timed) {
+                    result.matchTimes.record(System.nanoTime() - matchStart);
+                }
+                // Doesn't Match. Record Line and offending record.
+                if (!matched && !report(result, line, chunked)) {
+                    result.count++;
+                    break;
+                }
+            }
+            result.count++;
+        }
+        result.bytes = scanner.getPosition();
+        return result;
+    }
+
+    /*
+    Check the footer and keep its expected count.  Returns false when validation should stop.
+     */
+    private boolean footer(ChunkResult result, CharSequence line, Pattern footerPattern, boolean chunked) throws IOException {
+        result.footerRecord = result.count;
+        result.footerLine = line.toString();
+        if (footerPattern == null) {
+            return true;
+        }
+        Matcher matcher = footerPattern.matcher(line);
+        if (!matcher.find()) {
+            return report(result, line, chunked);
+        }
+        if (matcher.groupCount() > 0 && matcher.group(1) != null) {
+            try {
+                result.expectedCount = Long.parseLong(matcher.group(1).trim());
+            } catch (NumberFormatException nfe) {
+                return report(result, line, chunked);
+            }
+        }
+        return true;
+    }
+
+    private boolean report(ChunkResult result, CharSequence line, boolean chunked) throws IOException {
+        if (chunked) {
+            if (result.firstErrorNanos < 0) {
+                result.firstErrorNanos = System.nanoTime();
+            }
+            result.addError(result.count, line.toString());
+            return true;
+        }
+        return error(result.count, line);
+    }
 
-        // Wrap InputStream in a BufferedReader.
-        BufferedReader inBuff = new BufferedReader(new InputStreamReader(inputStream));
+    private void validateParallel(final Pattern regExPattern, final LayoutPattern layout) throws Exception {
+        final byte[] delimiterBytes = RecordScanner.encode(delimiter, charset);
+        final int unitLength = RecordScanner.unitLength(charset);
+        final int maxInFlight = pool.getParallelism() * 2;
+        final Deque<Future<ChunkResult>> inFlight = new ArrayDeque<Future<ChunkResult>>();
 
-        String line = null;
         try {
-            // Iterate till the end of the buffer or when rtn isn't null.
-            while ((line = inBuff.readLine()) != null && rtn == null) {
-                if (hasHeader && recordCount == 0) {
-                    // Header
-                } else {
-                    if (!isMatch(regExPattern, line)) {
-                        // Doesn't Match. Record Line and offending record.
-                        errors.put(recordCount, line);
-                        valid = Boolean.FALSE;
+            byte[] carry = new byte[0];
+            boolean eof = false;
+            boolean first = true;
+            while (!eof && !aborted) {
+                // Fill a chunk, behind what was left over from the last one.
+                byte[] chunk = Arrays.copyOf(carry, Math.max(chunkSize, carry.length * 2));
+                int length = carry.length;
+                int end = -1;
+                while (end < 0 && !eof) {
+                    if (length == chunk.length) {
+                        chunk = Arrays.copyOf(chunk, chunk.length * 2);
+                    }
+                    int read = inputStream.read(chunk, length, chunk.length - length);
+                    if (read == -1) {
+                        eof = true;
+                    } else {
+                        length += read;
+                    }
+                    if (length == chunk.length || eof) {
+                        // Leave at least a byte behind, so the last chunk is always the one read at eof.
+                        end = lastDelimiterEnd(chunk, length - 1, delimiterBytes, unitLength);
+                    }
+                }
+                if (eof) {
+                    end = length;
+                }
+                carry = Arrays.copyOfRange(chunk, end, length);
+                if (end == 0) {
+                    continue;
+                }
+
+                final InputStream chunkIn = new ByteArrayInputStream(chunk, 0, end);
+                final boolean firstChunk = first;
+                final boolean lastChunk = eof;
+                first = false;
+                inFlight.add(pool.submit(new Callable<ChunkResult>() {
+                    @Override
+                    public ChunkResult call() throws Exception {
+                        return validateChunk(regExPattern, layout, chunkIn, firstChunk, lastChunk, true);
                     }
+                }));
+                // Merge finished chunks in order, which also bounds the memory held in chunks.
+                while (!aborted && (inFlight.size() >= maxInFlight || (!inFlight.isEmpty() && inFlight.peek().isDone()))) {
+                    merge(inFlight.poll().get());
                 }
-                recordCount++;
             }
-        } catch (Exception ex) {
-            ex.printStackTrace();
+            while (!aborted && !inFlight.isEmpty()) {
+                merge(inFlight.poll().get());
+            }
+        } finally {
+            // Left over when aborted, or a chunk failed.
+            for (Future<ChunkResult> future : inFlight) {
+                future.cancel(false);
+            }
         }
     }
 
-    private boolean isMatch(Pattern pattern, String value) {
-        Matcher matcher = pattern.matcher(value);
-        return matcher.find();
+    /*
+    Take the footer (and its count) from the chunk that had it.
+     */
+    private void footer(ChunkResult result, long offset) {
+        if (result.footerLine != null) {
+            footerRecord = offset + result.footerRecord;
+            footerLine = result.footerLine;
+            expectedRecordCount = result.expectedCount;
+        }
+    }
+
+    private static int lastDelimiterEnd(byte[] chunk, int length, byte[] delimiterBytes, int unitLength) {
+        // Chunks start on a code unit, so only look on code unit boundaries.
+        int from = length - delimiterBytes.length;
+        for (int i = from - from % unitLength; i >= 0; i -= unitLength) {
+            int j = 0;
+            while (j < delimiterBytes.length && chunk[i + j] == delimiterBytes[j]) {
+                j++;
+            }
+            if (j == delimiterBytes.length) {
+                return i + delimiterBytes.length;
+            }
+        }
+        return -1;
+    }
+
+    /*
+    Add a chunk's results, shifting its record numbers by the records already counted.
+     */
+    private void merge(ChunkResult result) throws IOException {
+        footer(result, recordCount);
+        bytesRead += result.bytes;
+        metrics.getMatchTimes().merge(result.matchTimes);
+        if (!result.errorRecords.isEmpty()) {
+            metrics.firstError(recordCount + result.errorRecords.get(0), result.firstErrorNanos);
+        }
+        for (int i = 0; i < result.errorRecords.size(); i++) {
+            long record = result.errorRecords.get(i);
+            if (!error(recordCount + record, result.errorLines.get(i))) {
+                recordCount += record + 1;
+                return;
+            }
+        }
+        recordCount += result.count;
+    }
+
+    private void fail(Exception ex) {
+        failure = ex;
+        valid = Boolean.FALSE;
+    }
+
+    /*
+    Record an error.  Returns false when validation should stop.
+     */
+    private boolean error(long recordNumber, CharSequence line) throws IOException {
+        valid = Boolean.FALSE;
+        errorCount++;
+        metrics.firstError(recordNumber, System.nanoTime());
+        if (errors.size() < maxErrorsInMemory) {
+            errors.put(recordNumber, line.toString());
+        }
+        if (errorSink != null) {
+            errorSink.error(recordNumber, line);
+        }
+        if (maxErrors > 0 && errorCount >= maxErrors) {
+            aborted = true;
+            return false;
+        }
+        return true;
+    }
+
+    private static class ChunkResult {
+        private long count = 0;
+        private long footerRecord = -1;
+        private String footerLine = null;
+        private long expectedCount = -1;
+        private long bytes = 0;
+        private long firstErrorNanos = -1;
+        private final LatencyHistogram matchTimes = new LatencyHistogram();
+        private final List<Long> errorRecords = new ArrayList<Long>();
+        private final List<String> errorLines = new ArrayList<String>();
+
+        private void addError(long record, String line) {
+            errorRecords.add(record);
+            errorLines.add(line);
+        }
     }
 
 }
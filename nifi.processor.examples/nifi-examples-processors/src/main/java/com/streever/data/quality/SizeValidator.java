@@ -1,7 +1,496 @@
 package com.streever.data.quality;
 
+import com.streever.parsers.RecordScanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 /**
+ *
+ * Checks a file's size and record count, doing the cheapest checks first:
+ *
+ *   1. the byte size against 'minBytes' and 'maxBytes', from the size alone (no read).
+ *   2. the trailer (the last record), when a 'trailerRegEx' is set.  Only the last
+ *      'maxTrailerLength' bytes are read, so a truncated file without its trailer fails fast.
+ *      The regex's first group is the expected record count.
+ *   3. the record count, by counting delimiters over the raw bytes, against 'minRecords',
+ *      'maxRecords' and the trailer's expected count.
+ *
+ * The record count checked excludes the header (when 'hasHeader') and the trailer (when a
+ * 'trailerRegEx' is set).  getRecordCount() is every record, as for the RecordLayoutValidator.
+ *
+ * A single byte delimiter (ie. \n) is counted 8 bytes at a time, in a long.  In a charset with
+ * wider code units (UTF-16/32) a delimiter only counts where it starts on a code unit, as the
+ * RecordScanner reads it.
+ *
  * Created by dstreev on 2016-10-06.
  */
 public class SizeValidator {
+
+    public static final int DEFAULT_MAX_TRAILER_LENGTH = 4 * 1024;
+    // The tail is read into one buffer, so keep it to something sensible.
+    public static final int MIN_TRAILER_LENGTH = 1;
+    public static final int MAX_TRAILER_LENGTH = 1024 * 1024;
+
+    private long minBytes = 0l;
+    private long maxBytes = Long.MAX_VALUE;
+    private long minRecords = 0l;
+    private long maxRecords = Long.MAX_VALUE;
+    private Boolean hasHeader = Boolean.TRUE;
+    private String trailerRegEx = null;
+    private int maxTrailerLength = DEFAULT_MAX_TRAILER_LENGTH;
+
+    private long size = -1l;
+    private InputStream inputStream = null;
+    private Charset charset = StandardCharsets.UTF_8;
+    private String delimiter = RecordScanner.DEFAULT_DELIMITER;
+
+    private boolean valid = Boolean.TRUE;
+    private String reason = null;
+    private long recordCount = -1l;
+    private long expectedCount = -1l;
+    private String trailer = null;
+
+    // The last bytes read, for the trailer, and the offset of the first in the stream.
+    private byte[] tail = null;
+    private int tailLength = 0;
+    private long tailOffset = 0;
+
+    public SizeValidator() {
+    }
+
+    public SizeValidator(InputStream inputStream, long size) {
+        setInputStream(inputStream);
+        setSize(size);
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Why the file isn't valid, or null.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Every record, including the header and trailer.  -1 when the records weren't counted.
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * The records counted, less the header and trailer.  -1 when the records weren't counted.
+     */
+    public long getDataRecordCount() {
+        if (recordCount < 0) {
+            return -1l;
+        }
+        return Math.max(0l, recordCount - (hasHeader ? 1 : 0) - (trailerRegEx != null ? 1 : 0));
+    }
+
+    /**
+     * The record count from the trailer.  -1 without one.
+     */
+    public long getExpectedCount() {
+        return expectedCount;
+    }
+
+    public String getTrailer() {
+        return trailer;
+    }
+
+    public long getMinBytes() {
+        return minBytes;
+    }
+
+    public void setMinBytes(long minBytes) {
+        this.minBytes = minBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMinRecords() {
+        return minRecords;
+    }
+
+    public void setMinRecords(long minRecords) {
+        this.minRecords = minRecords;
+    }
+
+    public long getMaxRecords() {
+        return maxRecords;
+    }
+
+    public void setMaxRecords(long maxRecords) {
+        this.maxRecords = maxRecords;
+    }
+
+    public Boolean getHasHeader() {
+        return hasHeader;
+    }
+
+    public void setHasHeader(Boolean hasHeader) {
+        this.hasHeader = hasHeader;
+    }
+
+    public String getTrailerRegEx() {
+        return trailerRegEx;
+    }
+
+    public void setTrailerRegEx(String trailerRegEx) {
+        this.trailerRegEx = trailerRegEx;
+    }
+
+    public int getMaxTrailerLength() {
+        return maxTrailerLength;
+    }
+
+    public void setMaxTrailerLength(int maxTrailerLength) {
+        if (maxTrailerLength < MIN_TRAILER_LENGTH || maxTrailerLength > MAX_TRAILER_LENGTH) {
+            throw new IllegalArgumentException("Max trailer length must be between " + MIN_TRAILER_LENGTH + " and "
+                    + MAX_TRAILER_LENGTH + " bytes");
+        }
+        this.maxTrailerLength = maxTrailerLength;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * The size of the content in bytes, when known up front.  -1 when it isn't.
+     */
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public void setDelimiter(String delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public void setInputStream(InputStream inputStream) {
+        this.inputStream = inputStream;
+        init();
+    }
+
+    protected void init() {
+        valid = Boolean.TRUE;
+        reason = null;
+        recordCount = -1l;
+        expectedCount = -1l;
+        trailer = null;
+        tailLength = 0;
+    }
+
+    /**
+     * True when the records need counting (there are record bounds or a trailer).
+     */
+    public boolean isCountRequired() {
+        return minRecords > 0 || maxRecords < Long.MAX_VALUE || trailerRegEx != null;
+    }
+
+    /**
+     * Run all the checks, reading the stream once (when a count is required).
+     */
+    public void validate() {
+        if (!validateSize() || !isCountRequired() || inputStream == null) {
+            return;
+        }
+        try {
+            count(inputStream);
+            if (trailerRegEx == null || readTrailer()) {
+                validateCount();
+            }
+        } catch (IOException ex) {
+            fail("Failed to read the content: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Check the size alone.  Passes when the size isn't known.
+     */
+    public boolean validateSize() {
+        if (size < 0) {
+            return valid;
+        }
+        if (size < minBytes) {
+            return fail("Size " + size + " is below the minimum of " + minBytes + " bytes");
+        }
+        if (size > maxBytes) {
+            return fail("Size " + size + " is above the maximum of " + maxBytes + " bytes");
+        }
+        return valid;
+    }
+
+    /**
+     * Check the trailer, reading only the last 'maxTrailerLength' bytes of the stream (of
+     * 'size' bytes).  Passes when there is no 'trailerRegEx'.
+     */
+    public boolean validateTrailer(InputStream in) throws IOException {
+        if (trailerRegEx == null) {
+            return valid;
+        }
+        long toSkip = size - maxTrailerLength;
+        long position = 0;
+        while (toSkip > 0) {
+            long skipped = in.skip(toSkip);
+            if (skipped <= 0) {
+                break;
+            }
+            toSkip -= skipped;
+            position += skipped;
+        }
+        tailLength = 0;
+        byte[] buffer = new byte[maxTrailerLength];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            keepTail(buffer, 0, read);
+            position += read;
+        }
+        tailOffset = position - tailLength;
+        return readTrailer();
+    }
+
+    /*
+    Find the trailer in the tail and its expected count.
+     */
+    private boolean readTrailer() {
+        if (tail == null) {
+            return fail("No trailer in an empty file");
+        }
+        byte[] delimiterBytes = RecordScanner.encode(delimiter, charset);
+        int end = tailLength;
+        if (endsWith(tail, end, delimiterBytes)) {
+            end -= delimiterBytes.length;
+        }
+        byte[] carriageReturn = RecordScanner.encode("\r", charset);
+        if (RecordScanner.DEFAULT_DELIMITER.equals(delimiter) && endsWith(tail, end, carriageReturn)) {
+            end -= carriageReturn.length;
+        }
+        int start = lastIndexOf(tail, end, delimiterBytes, RecordScanner.unitLength(charset), tailOffset);
+        if (start < 0 && tailLength == maxTrailerLength && (size < 0 || size > maxTrailerLength)) {
+            return fail("No trailer in the last " + maxTrailerLength + " bytes");
+        }
+        start = start < 0 ? 0 : start + delimiterBytes.length;
+        trailer = new String(tail, start, end - start, charset);
+
+        Matcher matcher = Pattern.compile(trailerRegEx).matcher(trailer);
+        if (!matcher.find()) {
+            return fail("Trailer '" + trailer + "' doesn't match '" + trailerRegEx + "'");
+        }
+        if (matcher.groupCount() > 0 && matcher.group(1) != null) {
+            try {
+                expectedCount = Long.parseLong(matcher.group(1).trim());
+            } catch (NumberFormatException nfe) {
+                return fail("Trailer count '" + matcher.group(1) + "' isn't a number");
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Count the records in the stream and check the count.  Also keeps the tail, so a
+     * trailer can be read without another pass.
+     */
+    public boolean validateCount(InputStream in) throws IOException {
+        count(in);
+        if (trailerRegEx != null && expectedCount < 0 && !readTrailer()) {
+            return valid;
+        }
+        return validateCount();
+    }
+
+    private boolean validateCount() {
+        long records = getDataRecordCount();
+        if (records < minRecords) {
+            return fail(records + " records is below the minimum of " + minRecords);
+        }
+        if (records > maxRecords) {
+            return fail(records + " records is above the maximum of " + maxRecords);
+        }
+        if (expectedCount >= 0 && records != expectedCount) {
+            return fail(records + " records doesn't match the trailer count of " + expectedCount);
+        }
+        return valid;
+    }
+
+    private void count(InputStream in) throws IOException {
+        byte[] delimiterBytes = RecordScanner.encode(delimiter, charset);
+        int[] failure = delimiterBytes.length > 1 ? failureTable(delimiterBytes) : null;
+        int unitLength = RecordScanner.unitLength(charset);
+        byte[] buffer = new byte[RecordScanner.DEFAULT_BUFFER_SIZE];
+        long delimiters = 0;
+        long bytes = 0;
+        // How much of a multi byte delimiter the last read ended in.
+        int matched = 0;
+        long lastDelimiterEnd = 0;
+        tailLength = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (failure == null) {
+                delimiters += countByte(buffer, read, delimiterBytes[0]);
+                if (read > 0 && buffer[read - 1] == delimiterBytes[0]) {
+                    lastDelimiterEnd = bytes + read;
+                }
+            } else {
+                for (int i = 0; i < read; i++) {
+                    while (matched > 0 && buffer[i] != delimiterBytes[matched]) {
+                        matched = failure[matched - 1];
+                    }
+                    if (buffer[i] == delimiterBytes[matched] && ++matched == delimiterBytes.length) {
+                        long end = bytes + i + 1;
+                        if ((end - delimiterBytes.length) % unitLength == 0) {
+                            delimiters++;
+                            matched = 0;
+                            lastDelimiterEnd = end;
+                        } else {
+                            // Straddles two code units; a later match may still start on one.
+                            matched = failure[matched - 1];
+                        }
+                    }
+                }
+            }
+            keepTail(buffer, 0, read);
+            bytes += read;
+        }
+        tailOffset = bytes - tailLength;
+        // A last record without a delimiter still counts.
+        recordCount = delimiters + (bytes > lastDelimiterEnd ? 1 : 0);
+        if (size < 0) {
+            size = bytes;
+        }
+    }
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_SEVEN = 0x7F7F7F7F7F7F7F7FL;
+
+    /*
+    Count the bytes equal to 'value', 8 at a time: xor makes the matching bytes zero, and
+    ~(((x & 0x7F..) + 0x7F..) | x | 0x7F..) sets the high bit of exactly the zero bytes.
+     */
+    static long countByte(byte[] buffer, int length, byte value) {
+        ByteBuffer words = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+        long pattern = (value & 0xFFL) * ONES;
+        long count = 0;
+        int i = 0;
+        for (int last = length - 8; i <= last; i += 8) {
+            long x = words.getLong(i) ^ pattern;
+            count += Long.bitCount(~(((x & LOW_SEVEN) + LOW_SEVEN) | x | LOW_SEVEN));
+        }
+        for (; i < length; i++) {
+            if (buffer[i] == value) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int[] failureTable(byte[] pattern) {
+        int[] failure = new int[pattern.length];
+        int k = 0;
+        for (int i = 1; i < pattern.length; i++) {
+            while (k > 0 && pattern[i] != pattern[k]) {
+                k = failure[k - 1];
+            }
+            if (pattern[i] == pattern[k]) {
+                k++;
+            }
+            failure[i] = k;
+        }
+        return failure;
+    }
+
+    /*
+    Keep the last 'maxTrailerLength' bytes seen.
+     */
+    private void keepTail(byte[] buffer, int offset, int length) {
+        if (tail == null || tail.length != maxTrailerLength) {
+            tail = new byte[maxTrailerLength];
+            tailLength = 0;
+        }
+        if (length >= tail.length) {
+            System.arraycopy(buffer, offset + length - tail.length, tail, 0, tail.length);
+            tailLength = tail.length;
+            return;
+        }
+        int keep = Math.min(tailLength, tail.length - length);
+        System.arraycopy(tail, tailLength - keep, tail, 0, keep);
+        System.arraycopy(buffer, offset, tail, keep, length);
+        tailLength = keep + length;
+    }
+
+    private static boolean endsWith(byte[] bytes, int length, byte[] suffix) {
+        if (bytes == null || length < suffix.length) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length; i++) {
+            if (bytes[length - suffix.length + i] != suffix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+    The last 'target' in bytes[0, end) that starts on a code unit, given the stream offset of
+    bytes[0].
+     */
+    private static int lastIndexOf(byte[] bytes, int end, byte[] target, int unitLength, long offset) {
+        int from = end - target.length;
+        if (from < 0) {
+            return -1;
+        }
+        from -= (int) Math.floorMod(offset + from, (long) unitLength);
+        for (int i = from; i >= 0; i -= unitLength) {
+            int j = 0;
+            while (j < target.length && bytes[i + j] == target[j]) {
+                j++;
+            }
+            if (j == target.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean fail(String reason) {
+        if (valid) {
+            this.reason = reason;
+        }
+        valid = Boolean.FALSE;
+        return false;
+    }
+
 }
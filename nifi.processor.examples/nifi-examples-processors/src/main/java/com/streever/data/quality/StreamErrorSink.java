@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.quality;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ *
+ * Writes each error as "recordNumber\tline\n" to an OutputStream.
+ *
+ * Call flush() when validation is done.  The underlying stream is not closed.
+ */
+public class StreamErrorSink implements ErrorSink {
+
+    private final Writer writer;
+    private long count = 0;
+
+    public StreamErrorSink(OutputStream out, Charset charset) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, charset), 64 * 1024);
+    }
+
+    @Override
+    public void error(long recordNumber, CharSequence line) throws IOException {
+        writer.write(Long.toString(recordNumber));
+        writer.write('\t');
+        writer.append(line);
+        writer.write('\n');
+        count++;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.quality;
+
+/**
+ *
+ * What a validation cost: the bytes and records read and how fast, the error ratio, how
+ * long until the first error, and a histogram of the time taken to match a record.
+ *
+ * Only every 'sampleInterval'th record's match is timed, so the two System.nanoTime() calls
+ * it takes don't cost more than the match on every record.
+ */
+public class ValidationMetrics {
+
+    private long startNanos = 0l;
+    private long elapsedNanos = 0l;
+    private long bytes = 0l;
+    private long records = 0l;
+    private long errors = 0l;
+    private long firstErrorNanos = -1l;
+    private long firstErrorRecord = -1l;
+    private final LatencyHistogram matchTimes = new LatencyHistogram();
+
+    void start() {
+        startNanos = System.nanoTime();
+    }
+
+    void stop(long bytes, long records, long errors) {
+        this.elapsedNanos = System.nanoTime() - startNanos;
+        this.bytes = bytes;
+        this.records = records;
+        this.errors = errors;
+    }
+
+    /*
+    Note the first error, found at 'nanos' (System.nanoTime()).
+     */
+    void firstError(long recordNumber, long nanos) {
+        if (firstErrorRecord < 0) {
+            firstErrorRecord = recordNumber;
+            firstErrorNanos = nanos - startNanos;
+        }
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getBytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : bytes * 1e9 / elapsedNanos;
+    }
+
+    public double getRecordsPerSecond() {
+        return elapsedNanos == 0 ? 0 : records * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Errors per record read.
+     */
+    public double getErrorRatio() {
+        return records == 0 ? 0 : (double) errors / records;
+    }
+
+    /**
+     * Nanoseconds from the start of validation to the first error, -1 without one.
+     */
+    public long getTimeToFirstErrorNanos() {
+        return firstErrorNanos;
+    }
+
+    public long getFirstErrorRecord() {
+        return firstErrorRecord;
+    }
+
+    /**
+     * The sampled times taken to match a record, in nanoseconds.
+     */
+    public LatencyHistogram getMatchTimes() {
+        return matchTimes;
+    }
+}
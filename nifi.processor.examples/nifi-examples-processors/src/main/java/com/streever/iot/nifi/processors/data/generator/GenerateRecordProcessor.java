@@ -19,19 +19,27 @@ package com.streever.iot.nifi.processors.data.generator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.streever.data.generator.RecordGenerator;
+import com.streever.data.generator.TokenBucket;
+import com.streever.data.generator.fields.KeySpace;
+import com.streever.data.generator.output.RecordWriter;
+import com.streever.data.generator.output.RecordWriters;
 import org.apache.nifi.annotation.behavior.DynamicProperty;
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
+import org.apache.nifi.annotation.behavior.Stateful;
 import org.apache.nifi.annotation.behavior.SupportsBatching;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.components.ValidationContext;
 import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.components.state.Scope;
 import org.apache.nifi.components.Validator;
 import org.apache.nifi.expression.AttributeExpression;
 import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
 import org.apache.nifi.processor.*;
 import org.apache.nifi.processor.io.OutputStreamCallback;
 import org.apache.nifi.processor.util.StandardValidators;
@@ -39,10 +47,16 @@ import org.apache.nifi.processor.util.StandardValidators;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.Charset;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 @SupportsBatching
+@Stateful(scopes = Scope.LOCAL, description = "How far each unique field has got, and the seed of their permutations "
+        + "when the schema has none, so its keys carry on after the " +
+        "processor is stopped and started, instead of repeating.  Clear the state to start the keys over.")
 @Tags({"test", "record", "generate", "cdc"})
 @InputRequirement(Requirement.INPUT_FORBIDDEN)
 
@@ -54,8 +68,34 @@ import java.util.concurrent.atomic.AtomicReference;
 
 public class GenerateRecordProcessor extends AbstractProcessor {
 
-    private final AtomicReference<String> data = new AtomicReference<>();
-    private RecordGenerator generator = null;
+    private volatile JsonNode schema = null;
+    private volatile Charset charset = null;
+    private volatile String outputFormat = RecordWriters.DELIMITED;
+    // RecordGenerators aren't thread safe, so each concurrent task takes its own from here.
+    private final BlockingQueue<RecordGenerator> generators = new LinkedBlockingQueue<>();
+    // Each generator gets the next split of the stream's source.
+    private SplittableRandom source = null;
+    // Shared by all the generators, so their unique fields don't collide.
+    private KeySpace keys = null;
+
+    // Rate control, shared by all the concurrent tasks.  Null when generating as fast as scheduled.
+    private volatile TokenBucket bucket = null;
+    private volatile boolean rateInBytes = false;
+    private volatile long minimumGrant = 1;
+    private volatile long scheduledNanos = 0;
+    private final AtomicLong generatedUnits = new AtomicLong();
+
+    public static final String RATE_TARGET = "generate.rate.target";
+    public static final String RATE_ACHIEVED = "generate.rate.achieved";
+
+    public static final String RATE_UNIT_RECORDS = "records";
+    public static final String RATE_UNIT_BYTES = "bytes";
+
+    // State keys are the unique field ids behind this prefix, and the seed of their permutations.
+    private static final String KEY_STATE_PREFIX = "key.";
+    private static final String SEED_STATE = "seed";
+    private static final long KEY_STATE_INTERVAL_NANOS = 1000000000L;
+    private final AtomicLong keysSavedNanos = new AtomicLong();
 
     // TODO: Need to pick up the configuration
     public static final PropertyDescriptor GENERATOR_RESOURCE = new PropertyDescriptor.Builder()
@@ -74,6 +114,69 @@ public class GenerateRecordProcessor extends AbstractProcessor {
             .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
             .build();
 
+    public static final PropertyDescriptor GENERATOR_STREAM = new PropertyDescriptor.Builder()
+            .name("Generator Stream")
+            .description("When the schema has a seed, which of its independent streams to generate, ie. a different " +
+                    "one on each node (from the variable registry) for a reproducible multi-node load.  Overrides the " +
+                    "schema's stream.  Each concurrent task takes its own split of the stream.")
+            .required(false)
+            .expressionLanguageSupported(true)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor BATCH_SIZE = new PropertyDescriptor.Builder()
+            .name("Batch Size")
+            .description("The number of FlowFiles to be transferred in each invocation")
+            .required(true)
+            .defaultValue("1")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TARGET_RATE = new PropertyDescriptor.Builder()
+            .name("Target Rate")
+            .description("The records or bytes (see Rate Unit) per second to generate, across all concurrent tasks. " +
+                    "Each FlowFile is cut short of Record Count to hold the rate.  0 generates as fast as scheduled.")
+            .required(true)
+            .defaultValue("0")
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor MINIMUM_PER_FLOWFILE = new PropertyDescriptor.Builder()
+            .name("Minimum Per FlowFile")
+            .description("With a Target Rate, the fewest records or bytes (see Rate Unit) to make a FlowFile with.  " +
+                    "The processor yields until the rate allows this many, so a short Run Schedule doesn't make a " +
+                    "flood of tiny FlowFiles.  Capped at the Target Rate, and at Record Count for records.  " +
+                    "Defaults to a tenth of the Target Rate.")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_LONG_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor RATE_UNIT = new PropertyDescriptor.Builder()
+            .name("Rate Unit")
+            .description("What the Target Rate counts")
+            .required(true)
+            .allowableValues(RATE_UNIT_RECORDS, RATE_UNIT_BYTES)
+            .defaultValue(RATE_UNIT_RECORDS)
+            .build();
+
+    public static final PropertyDescriptor OUTPUT_FORMAT = new PropertyDescriptor.Builder()
+            .name("Output Format")
+            .description("How the records are written: the schema's delimited text, JSON lines, fixed width text " +
+                    "(the fields' \"width\", or a default per type) or an Avro data file with a schema derived from " +
+                    "the generator schema.  CDC schemas only generate delimited text.")
+            .required(true)
+            .allowableValues(RecordWriters.DELIMITED, RecordWriters.JSON, RecordWriters.FIXED_WIDTH, RecordWriters.AVRO)
+            .defaultValue(RecordWriters.DELIMITED)
+            .build();
+
+    public static final PropertyDescriptor CHARACTER_SET = new PropertyDescriptor.Builder()
+            .name("Character Set")
+            .description("The Character Set used to encode the text formats.  Avro strings are always UTF-8")
+            .required(true)
+            .defaultValue("UTF-8")
+            .addValidator(StandardValidators.CHARACTER_SET_VALIDATOR)
+            .build();
+
     public static final Relationship SUCCESS = new Relationship.Builder()
             .name("success")
             .build();
@@ -86,6 +189,13 @@ public class GenerateRecordProcessor extends AbstractProcessor {
         final List<PropertyDescriptor> descriptors = new ArrayList<>();
         descriptors.add(GENERATOR_RESOURCE);
         descriptors.add(RECORD_COUNT);
+        descriptors.add(GENERATOR_STREAM);
+        descriptors.add(BATCH_SIZE);
+        descriptors.add(TARGET_RATE);
+        descriptors.add(RATE_UNIT);
+        descriptors.add(MINIMUM_PER_FLOWFILE);
+        descriptors.add(OUTPUT_FORMAT);
+        descriptors.add(CHARACTER_SET);
         this.descriptors = Collections.unmodifiableList(descriptors);
 
         final Set<Relationship> relationships = new HashSet<>();
@@ -116,46 +226,132 @@ public class GenerateRecordProcessor extends AbstractProcessor {
     }
 
     @OnScheduled
-    public void onScheduled(final ProcessContext context) {
+    public void onScheduled(final ProcessContext context) throws IOException {
+        charset = Charset.forName(context.getProperty(CHARACTER_SET).getValue());
+        outputFormat = context.getProperty(OUTPUT_FORMAT).getValue();
+        schema = readSchema(context.getProperty(GENERATOR_RESOURCE).getValue());
+
+        long stream = RecordGenerator.getStream(schema);
+        if (context.getProperty(GENERATOR_STREAM).isSet()) {
+            stream = context.getProperty(GENERATOR_STREAM).evaluateAttributeExpressions().asLong();
+        }
+        synchronized (this) {
+            source = RecordGenerator.sourceFor(schema, stream);
+            final Map<String, String> state = context.getStateManager().getState(Scope.LOCAL).toMap();
+            final String savedSeed = state.get(SEED_STATE);
+            // Without a seed in the schema, keep the one the saved positions were made under.
+            keys = savedSeed != null ? new KeySpace(schema, stream, Long.parseLong(savedSeed)) : new KeySpace(schema, stream);
+            // Carry on from where the keys got to before the last stop, unless the schema's seed has changed.
+            if (savedSeed != null && Long.parseLong(savedSeed) != keys.getSeed()) {
+                getLogger().warn("The schema's seed has changed since the unique keys were saved; they start over");
+            } else {
+                for (Map.Entry<String, String> entry : state.entrySet()) {
+                    if (entry.getKey().startsWith(KEY_STATE_PREFIX)) {
+                        keys.setPosition(entry.getKey().substring(KEY_STATE_PREFIX.length()), Long.parseLong(entry.getValue()));
+                    }
+                }
+            }
+        }
+        keysSavedNanos.set(System.nanoTime());
+
+        // Build a generator for each concurrent task up front, with its own random source.
+        generators.clear();
+        for (int i = 0; i < context.getMaxConcurrentTasks(); i++) {
+            generators.offer(newGenerator());
+        }
+
+        final int targetRate = context.getProperty(TARGET_RATE).asInteger();
+        bucket = targetRate > 0 ? new TokenBucket(targetRate) : null;
+        rateInBytes = RATE_UNIT_BYTES.equals(context.getProperty(RATE_UNIT).getValue());
+        long minimum = context.getProperty(MINIMUM_PER_FLOWFILE).isSet() ? context.getProperty(MINIMUM_PER_FLOWFILE).asLong()
+                : Math.max(1, targetRate / 10);
+        if (!rateInBytes) {
+            minimum = Math.min(minimum, context.getProperty(RECORD_COUNT).asInteger());
+        }
+        minimumGrant = Math.max(1, Math.min(minimum, targetRate));
+        generatedUnits.set(0);
+        scheduledNanos = System.nanoTime();
+    }
+
+    @OnStopped
+    public void onStopped(final ProcessContext context) {
+        saveKeys(context);
+    }
+
+    /*
+    Keep how far the unique fields have got in the processor's state.  A counter is at or past
+    every id handed out, so keys carry on without repeating (skipping what was claimed but unused).
+     */
+    private void saveKeys(final ProcessContext context) {
+        final KeySpace current;
+        synchronized (this) {
+            current = keys;
+        }
+        if (current == null) {
+            return;
+        }
+        final Map<String, String> state = new HashMap<>();
+        for (Map.Entry<String, Long> entry : current.getPositions().entrySet()) {
+            state.put(KEY_STATE_PREFIX + entry.getKey(), Long.toString(entry.getValue()));
+        }
+        if (state.isEmpty()) {
+            return;
+        }
+        state.put(SEED_STATE, Long.toString(current.getSeed()));
+        try {
+            context.getStateManager().setState(state, Scope.LOCAL);
+        } catch (IOException ioe) {
+            getLogger().warn("Couldn't save the unique key positions; keys may repeat after a restart", ioe);
+        }
+    }
 
+    private synchronized RecordGenerator newGenerator() {
+        return new RecordGenerator(schema, source.split(), keys);
+    }
+
+    private static JsonNode readSchema(final String resource) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        return mapper.readValue(new File(resource), JsonNode.class);
     }
 
     @Override
     protected Collection<ValidationResult> customValidate(ValidationContext validationContext) {
         final List<ValidationResult> results = new ArrayList<>(1);
 
-        ObjectMapper mapper = new ObjectMapper();
-
-        JsonNode rootNode = null;
         try {
-            rootNode = mapper.readValue(new File(validationContext.getProperty(GENERATOR_RESOURCE).getValue()), JsonNode.class);
+            JsonNode rootNode = readSchema(validationContext.getProperty(GENERATOR_RESOURCE).getValue());
 
-            generator = new RecordGenerator(rootNode);
+            // Checks the schema without building its pools.  The generators used are built when scheduled.
+            RecordGenerator generator = RecordGenerator.checkSchema(rootNode);
+            RecordWriters.create(validationContext.getProperty(OUTPUT_FORMAT).getValue(), generator, null);
 
         } catch (IOException ioe) {
             results.add(new ValidationResult.Builder().subject("Generator Resource").valid(false).explanation("Couldn't read specified resource").build());
+        } catch (RuntimeException re) {
+            results.add(new ValidationResult.Builder().subject("Generator Resource").valid(false).explanation("Invalid generator schema: " + re.getMessage()).build());
         }
 
         return results;
     }
 
-    private String generateData(final ProcessContext context) {
-        final int recordCount = context.getProperty(RECORD_COUNT).asInteger();
-        StringBuilder sb = new StringBuilder();
-
-        for (int i = 0; i < recordCount; i++) {
-            sb.append(generator.next()).append("\n");
+    /*
+    Stream the records into the FlowFile content, so memory stays flat whatever the Record Count.
+     */
+    private void generateData(final RecordGenerator generator, final int recordCount, final long byteLimit,
+                              final RecordWriter writer, final OutputStream out) throws IOException {
+        writer.reset(out);
+        for (int i = 0; i < recordCount && writer.getByteCount() < byteLimit; i++) {
+            writer.write(generator);
         }
-
-        return sb.toString();
+        writer.flush();
     }
 
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) {
-        final String data;
-
-        data = generateData(context);
+        final int batchSize = context.getProperty(BATCH_SIZE).asInteger();
+        final int recordCount = context.getProperty(RECORD_COUNT).asInteger();
 
+        // Evaluated once for the whole batch.
         Map<PropertyDescriptor, String> processorProperties = context.getProperties();
         Map<String, String> generatedAttributes = new HashMap<String, String>();
         for (final Map.Entry<PropertyDescriptor, String> entry : processorProperties.entrySet()) {
@@ -166,19 +362,79 @@ public class GenerateRecordProcessor extends AbstractProcessor {
             }
         }
 
-        FlowFile flowFile = session.create();
-        if (data.length() > 0) {
-            flowFile = session.write(flowFile, new OutputStreamCallback() {
-                @Override
-                public void process(final OutputStream out) throws IOException {
-                    out.write(data.getBytes());
+        // More tasks than generators built when scheduled (a changed Concurrent Tasks), so build another.
+        RecordGenerator polled = generators.poll();
+        final RecordGenerator generator = polled != null ? polled : newGenerator();
+
+        // One writer (and buffer) for the batch, retargeted at each FlowFile.
+        final RecordWriter writer = RecordWriters.create(outputFormat, generator, charset);
+        final TokenBucket bucket = this.bucket;
+        try {
+            for (int i = 0; i < batchSize; i++) {
+                // Size the FlowFile to what the bucket allows.
+                int records = recordCount;
+                long byteLimit = Long.MAX_VALUE;
+                long granted = 0;
+                if (bucket != null) {
+                    granted = bucket.tryAcquire(minimumGrant, rateInBytes ? Long.MAX_VALUE : recordCount);
+                    if (granted == 0) {
+                        if (i == 0) {
+                            context.yield();
+                        }
+                        break;
+                    }
+                    if (rateInBytes) {
+                        byteLimit = granted;
+                    } else {
+                        records = (int) granted;
+                    }
                 }
-            });
+
+                final int flowFileRecords = records;
+                final long flowFileByteLimit = byteLimit;
+                FlowFile flowFile = session.create();
+                flowFile = session.write(flowFile, new OutputStreamCallback() {
+                    @Override
+                    public void process(final OutputStream out) throws IOException {
+                        generateData(generator, flowFileRecords, flowFileByteLimit, writer, out);
+                    }
+                });
+                flowFile = session.putAllAttributes(flowFile, generatedAttributes);
+                flowFile = session.putAttribute(flowFile, CoreAttributes.MIME_TYPE.key(), writer.getMimeType());
+
+                session.adjustCounter("Records Generated", writer.getRecordCount(), false);
+                session.adjustCounter("Bytes Generated", writer.getByteCount(), false);
+                if (bucket != null) {
+                    long units = rateInBytes ? writer.getByteCount() : writer.getRecordCount();
+                    if (rateInBytes) {
+                        // Hand back what the Record Count left unused, or charge the last record's overshoot.
+                        bucket.release(granted - units);
+                    }
+                    flowFile = putRateAttributes(session, flowFile, bucket, generatedUnits.addAndGet(units));
+                }
+
+                session.getProvenanceReporter().create(flowFile);
+                session.transfer(flowFile, SUCCESS);
+            }
+        } finally {
+            generators.offer(generator);
+        }
+
+        // Save the key positions now and then too, so a crash repeats at most a second of keys.
+        final long saved = keysSavedNanos.get();
+        final long now = System.nanoTime();
+        if (now - saved > KEY_STATE_INTERVAL_NANOS && keysSavedNanos.compareAndSet(saved, now)) {
+            saveKeys(context);
         }
-        flowFile = session.putAllAttributes(flowFile, generatedAttributes);
+    }
 
-        session.getProvenanceReporter().create(flowFile);
-        session.transfer(flowFile, SUCCESS);
+    private FlowFile putRateAttributes(final ProcessSession session, final FlowFile flowFile, final TokenBucket bucket,
+                                       final long units) {
+        final Map<String, String> attributes = new HashMap<>();
+        final double seconds = Math.max(System.nanoTime() - scheduledNanos, 1) / 1e9;
+        attributes.put(RATE_TARGET, String.valueOf(bucket.getRatePerSecond()));
+        attributes.put(RATE_ACHIEVED, String.format(Locale.ROOT, "%.1f", units / seconds));
+        return session.putAllAttributes(flowFile, attributes);
     }
 
     /*
@@ -16,8 +16,13 @@
  */
 package com.streever.iot.nifi.processors.data.quality;
 
+import com.streever.data.quality.LatencyHistogram;
 import com.streever.data.quality.RecordLayoutValidator;
-import com.streever.parsers.FilePartByRegEx;
+import com.streever.data.quality.ErrorSink;
+import com.streever.data.quality.StreamErrorSink;
+import com.streever.data.quality.ValidationMetrics;
+import com.streever.parsers.PatternCache;
+import com.streever.parsers.RecordScanner;
 import org.apache.nifi.annotation.behavior.ReadsAttribute;
 import org.apache.nifi.annotation.behavior.ReadsAttributes;
 import org.apache.nifi.annotation.behavior.WritesAttribute;
@@ -26,35 +31,69 @@ import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.SeeAlso;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.*;
 import org.apache.nifi.processor.exception.ProcessException;
-import org.apache.nifi.processor.io.InputStreamCallback;
 import org.apache.nifi.processor.io.OutputStreamCallback;
 import org.apache.nifi.processor.util.StandardValidators;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 @Tags({"RegEx","File","Part","Validator","Data Quality"})
 @CapabilityDescription("Test a files records against a RegEx.")
 @SeeAlso({})
 @ReadsAttributes({@ReadsAttribute(attribute="", description="")})
-@WritesAttributes({@WritesAttribute(attribute="", description="")})
+@WritesAttributes({@WritesAttribute(attribute="record.count", description="Number of records read, including the header and footer"),
+        @WritesAttribute(attribute="trailer.count", description="The record count from the footer, when the Footer RegEx has a group"),
+        @WritesAttribute(attribute="error.count", description="Number of records that didn't match, on failure"),
+        @WritesAttribute(attribute="validation.aborted", description="True when validation stopped at 'Max Errors', on failure"),
+        @WritesAttribute(attribute="validation.reason", description="Why the content couldn't be read to the end, on failure"),
+        @WritesAttribute(attribute="validation.bytes.per.second", description="Bytes validated per second"),
+        @WritesAttribute(attribute="validation.records.per.second", description="Records validated per second"),
+        @WritesAttribute(attribute="validation.error.ratio", description="Errors per record read"),
+        @WritesAttribute(attribute="validation.first.error.nanos", description="Nanoseconds from the start of validation to the first error, on failure"),
+        @WritesAttribute(attribute="validation.first.error.record", description="The record number of the first error, on failure"),
+        @WritesAttribute(attribute="validation.match.p50.nanos", description="Median time to match a record, of those sampled"),
+        @WritesAttribute(attribute="validation.match.p99.nanos", description="99th percentile time to match a record, of those sampled"),
+        @WritesAttribute(attribute="validation.match.max.nanos", description="Longest time to match a record, of those sampled")})
 public class RecordLayoutValidatorProcessor extends AbstractProcessor {
 
 
     public static final PropertyDescriptor REGEX = new PropertyDescriptor
             .Builder().name("Expected record layout RegEx")
-            .description("Expected record layout Regex")
+            .description("Expected record layout Regex.  When Expression Language is used, the evaluated RegEx is " +
+                    "compiled once and looked up in a shared pattern cache for each FlowFile.")
             .required(true)
+            .expressionLanguageSupported(true)
             .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
             .build();
 
+    public static final String ENGINE_LINEAR = "Linear";
+    public static final String ENGINE_REGEX = "java.util.regex";
+
+    public static final PropertyDescriptor MATCHING_ENGINE = new PropertyDescriptor
+            .Builder().name("Matching Engine")
+            .description("Linear checks the RegEx's literal prefix first and matches with a DFA when the RegEx allows " +
+                    "(no back references, look arounds, boundaries or possessive quantifiers), so the time per " +
+                    "record is predictable.  Other RegExs fall back to java.util.regex.  java.util.regex uses it alone.")
+            .required(true)
+            .allowableValues(ENGINE_LINEAR, ENGINE_REGEX)
+            .defaultValue(ENGINE_LINEAR)
+            .build();
+
     public static final PropertyDescriptor HAS_HEADER = new PropertyDescriptor
             .Builder().name("Has header")
             .description("Has header")
@@ -62,6 +101,82 @@ public class RecordLayoutValidatorProcessor extends AbstractProcessor {
             .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
             .build();
 
+    public static final PropertyDescriptor HAS_FOOTER = new PropertyDescriptor
+            .Builder().name("Has footer")
+            .description("The last record is a footer (or trailer), not checked against the record layout")
+            .required(true)
+            .defaultValue("false")
+            .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor HEADER_REGEX = new PropertyDescriptor
+            .Builder().name("Header RegEx")
+            .description("When set, the header must match this RegEx")
+            .required(false)
+            .addValidator(StandardValidators.REGULAR_EXPRESSION_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor FOOTER_REGEX = new PropertyDescriptor
+            .Builder().name("Footer RegEx")
+            .description("When set, the footer must match this RegEx.  When it has a group, the first group is the " +
+                    "expected number of records, not counting the header and footer, checked in the same pass.  " +
+                    "ie. '^TRAILER\\|(\\d+)$'")
+            .required(false)
+            .addValidator(StandardValidators.REGULAR_EXPRESSION_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor CHARACTER_SET = new PropertyDescriptor
+            .Builder().name("Character Set")
+            .description("The Character Set of the content")
+            .required(true)
+            .defaultValue("UTF-8")
+            .addValidator(StandardValidators.CHARACTER_SET_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor RECORD_DELIMITER = new PropertyDescriptor
+            .Builder().name("Record Delimiter")
+            .description("The delimiter between records.  \\n, \\r and \\t may be used for newline, carriage return and tab.")
+            .required(true)
+            .defaultValue("\\n")
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor MAX_ERRORS = new PropertyDescriptor
+            .Builder().name("Max Errors")
+            .description("Stop validating a FlowFile after this many errors and route it to failure.  0 reads the whole FlowFile.")
+            .required(true)
+            .defaultValue("0")
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor SAMPLE_INTERVAL = new PropertyDescriptor
+            .Builder().name("Metrics Sample Interval")
+            .description("Time the match of every n'th record for the match time metrics.  1 times every record, " +
+                    "0 none.  Rates, error ratio and time to first error are always kept.")
+            .required(true)
+            .defaultValue(Integer.toString(RecordLayoutValidator.DEFAULT_SAMPLE_INTERVAL))
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor VALIDATION_THREADS = new PropertyDescriptor
+            .Builder().name("Validation Threads")
+            .description("Number of threads used to validate a single large FlowFile.  With more than 1, content " +
+                    "larger than the Parallel Chunk Size is split into record aligned chunks validated in parallel.")
+            .required(true)
+            .defaultValue("1")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor CHUNK_SIZE = new PropertyDescriptor
+            .Builder().name("Parallel Chunk Size")
+            .description("Size of the chunks validated in parallel when Validation Threads is more than 1, " +
+                    "from 1 KB to 1 GB")
+            .required(true)
+            .defaultValue("4 MB")
+            .addValidator(StandardValidators.createDataSizeBoundsValidator(RecordLayoutValidator.MIN_CHUNK_SIZE,
+                    RecordLayoutValidator.MAX_CHUNK_SIZE))
+            .build();
+
 
     public static final Relationship SUCCESS = new Relationship.Builder()
             .name("success")
@@ -70,24 +185,76 @@ public class RecordLayoutValidatorProcessor extends AbstractProcessor {
 
     public static final Relationship FAILURE = new Relationship.Builder()
             .name("failure")
-            .description("Failure Relationship")
+            .description("The original FlowFile, when any record doesn't match or the content can't be read")
             .build();
 
     public static final Relationship ERRORS = new Relationship.Builder()
             .name("errors")
-            .description("Errors Relationship")
+            .description("A FlowFile, derived from the original, with a 'recordNumber<tab>record' line for each record " +
+                    "that doesn't match.  Only created when there is one.")
             .build();
 
+    public static final String RECORD_COUNT = "record.count";
+    public static final String TRAILER_COUNT = "trailer.count";
+    public static final String ERROR_COUNT = "error.count";
+    public static final String ABORTED = "validation.aborted";
+    public static final String REASON = "validation.reason";
+
+    public static final String BYTES_PER_SECOND = "validation.bytes.per.second";
+    public static final String RECORDS_PER_SECOND = "validation.records.per.second";
+    public static final String ERROR_RATIO = "validation.error.ratio";
+    public static final String FIRST_ERROR_NANOS = "validation.first.error.nanos";
+    public static final String FIRST_ERROR_RECORD = "validation.first.error.record";
+    public static final String MATCH_P50 = "validation.match.p50.nanos";
+    public static final String MATCH_P99 = "validation.match.p99.nanos";
+    public static final String MATCH_MAX = "validation.match.max.nanos";
+
+    public static final String RECORDS_VALIDATED = "Records Validated";
+    public static final String BYTES_VALIDATED = "Bytes Validated";
+    public static final String RECORDS_INVALID = "Records Invalid";
+    public static final String VALIDATION_MICROS = "Validation Time (us)";
+    // Sampled match times, by decade: below 10^2 ns, 10^3 ns, ...
+    public static final int[] MATCH_TIME_DECADES = new int[]{2, 3, 4, 5};
+    public static final String[] MATCH_TIME_COUNTERS = new String[]{"Match Time < 100 ns", "Match Time < 1 us",
+            "Match Time < 10 us", "Match Time < 100 us", "Match Time >= 100 us"};
+
+    public static final String PATTERN_CACHE_HITS = "RegEx Pattern Cache Hits";
+    public static final String PATTERN_CACHE_MISSES = "RegEx Pattern Cache Misses";
+
     private List<PropertyDescriptor> descriptors;
 
     private Set<Relationship> relationships;
 
+    // Settled in onScheduled.  pattern is null when the RegEx uses Expression Language.
+    private volatile Pattern pattern = null;
+    private volatile Charset charset = StandardCharsets.UTF_8;
+    private volatile String delimiter = RecordScanner.DEFAULT_DELIMITER;
+    private volatile boolean hasHeader = true;
+    private volatile boolean linearMatching = true;
+    private volatile boolean hasFooter = false;
+    private volatile String headerRegEx = null;
+    private volatile String footerRegEx = null;
+    private volatile ForkJoinPool pool = null;
+    private volatile int chunkSize = RecordLayoutValidator.DEFAULT_CHUNK_SIZE;
+    private volatile long maxErrors = 0;
+    private volatile int sampleInterval = RecordLayoutValidator.DEFAULT_SAMPLE_INTERVAL;
+
     @Override
     protected void init(final ProcessorInitializationContext context) {
         final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
 //        descriptors.add(OCCURRENCE);
         descriptors.add(REGEX);
+        descriptors.add(MATCHING_ENGINE);
         descriptors.add(HAS_HEADER);
+        descriptors.add(HAS_FOOTER);
+        descriptors.add(HEADER_REGEX);
+        descriptors.add(FOOTER_REGEX);
+        descriptors.add(CHARACTER_SET);
+        descriptors.add(RECORD_DELIMITER);
+        descriptors.add(MAX_ERRORS);
+        descriptors.add(SAMPLE_INTERVAL);
+        descriptors.add(VALIDATION_THREADS);
+        descriptors.add(CHUNK_SIZE);
         this.descriptors = Collections.unmodifiableList(descriptors);
 
         final Set<Relationship> relationships = new HashSet<Relationship>();
@@ -107,72 +274,224 @@ public class RecordLayoutValidatorProcessor extends AbstractProcessor {
         return descriptors;
     }
 
+    @Override
+    protected Collection<ValidationResult> customValidate(ValidationContext validationContext) {
+        final List<ValidationResult> results = new ArrayList<>(1);
+
+        // A RegEx without Expression Language is compiled in onScheduled, so check it here.
+        final String regex = validationContext.getProperty(REGEX).getValue();
+        if (regex != null && !validationContext.isExpressionLanguagePresent(regex)) {
+            try {
+                Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                results.add(new ValidationResult.Builder().subject(REGEX.getName()).input(regex).valid(false)
+                        .explanation("Not a valid RegEx: " + e.getDescription()).build());
+            }
+        }
+        return results;
+    }
+
     @OnScheduled
     public void onScheduled(final ProcessContext context) {
+        hasHeader = Boolean.parseBoolean(context.getProperty(HAS_HEADER).getValue());
+        linearMatching = ENGINE_LINEAR.equals(context.getProperty(MATCHING_ENGINE).getValue());
+        hasFooter = Boolean.parseBoolean(context.getProperty(HAS_FOOTER).getValue());
+        headerRegEx = context.getProperty(HEADER_REGEX).getValue();
+        footerRegEx = context.getProperty(FOOTER_REGEX).getValue();
+        charset = Charset.forName(context.getProperty(CHARACTER_SET).getValue());
+        delimiter = RecordScanner.unescapeDelimiter(context.getProperty(RECORD_DELIMITER).getValue());
+        chunkSize = context.getProperty(CHUNK_SIZE).asDataSize(DataUnit.B).intValue();
+        maxErrors = context.getProperty(MAX_ERRORS).asLong();
+        sampleInterval = context.getProperty(SAMPLE_INTERVAL).asInteger();
+
+        final int threads = context.getProperty(VALIDATION_THREADS).asInteger();
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+
+        if (context.isExpressionLanguagePresent(REGEX)) {
+            pattern = null;
+        } else {
+            pattern = Pattern.compile(context.getProperty(REGEX).evaluateAttributeExpressions().getValue());
+        }
+    }
 
+    @OnStopped
+    public void onStopped() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
     }
 
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
         FlowFile flowfile = session.get();
 
-        final String regex = context.getProperty(REGEX).getValue();
-        final Boolean hasHeader = Boolean.parseBoolean(context.getProperty(HAS_HEADER).getValue());
-
-//        final AtomicReference<String> partValue = new AtomicReference<String>();
+        if (flowfile == null) {
+            return;
+        }
 
         final RecordLayoutValidator fp = new RecordLayoutValidator();
-        fp.setExpectedRecordFormatRegEx(regex);
+        fp.setExpectedRecordFormatPattern(getPattern(context, session, flowfile));
         fp.setHasHeader(hasHeader);
+        fp.setLinearMatching(linearMatching);
+        fp.setHasFooter(hasFooter);
+        fp.setHeaderRegEx(headerRegEx);
+        fp.setFooterRegEx(footerRegEx);
+        fp.setCharset(charset);
+        fp.setDelimiter(delimiter);
+        // Small files aren't worth splitting.
+        final ForkJoinPool currentPool = pool;
+        if (currentPool != null && flowfile.getSize() > chunkSize) {
+            fp.setPool(currentPool);
+            fp.setChunkSize(chunkSize);
+        }
 
-        if (flowfile == null) {
+        fp.setMaxErrors(maxErrors);
+        fp.setSampleInterval(sampleInterval);
+        // Errors are streamed to the errors FlowFile, not held on the heap.
+        fp.setMaxErrorsInMemory(0);
+
+        // Errors are buffered and appended to an errors FlowFile, made on the first error.
+        final FlowFileErrorSink sink = new FlowFileErrorSink(session, flowfile, charset);
+        fp.setErrorSink(sink);
+        Exception failure = null;
+        try (InputStream in = session.read(flowfile)) {
+            fp.setInputStream(in);
+            fp.validate();
+            failure = fp.getFailure();
+        } catch (IOException | ProcessException ex) {
+            failure = ex;
+        }
+        try {
+            // Keep the errors found, even when the content couldn't be read to the end.
+            sink.flush();
+        } catch (IOException | ProcessException ex) {
+            failure = failure != null ? failure : ex;
+        }
+
+        final Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put(RECORD_COUNT, Long.toString(fp.getRecordCount()));
+        if (fp.getExpectedRecordCount() >= 0) {
+            attributes.put(TRAILER_COUNT, Long.toString(fp.getExpectedRecordCount()));
+        }
+        publishMetrics(session, fp.getMetrics(), attributes);
+        if (failure == null && fp.isValid()) {
+            flowfile = session.putAllAttributes(flowfile, attributes);
+            session.transfer(flowfile, SUCCESS);
             return;
         }
 
-        session.read(flowfile, new InputStreamCallback() {
-            @Override
-            public void process(InputStream in) throws IOException {
-                try {
+        attributes.put(ERROR_COUNT, Long.toString(fp.getErrorCount()));
+        attributes.put(ABORTED, Boolean.toString(fp.isAborted()));
+        if (failure != null) {
+            getLogger().error("Failed to validate {}; routing to failure", new Object[]{flowfile}, failure);
+            attributes.put(REASON, String.valueOf(failure.getMessage()));
+        }
+        flowfile = session.putAllAttributes(flowfile, attributes);
+        session.transfer(flowfile, FAILURE);
 
-                    fp.setInputStream(in);
-                    fp.validate();
+        FlowFile errorsFlowfile = sink.getFlowFile();
+        if (errorsFlowfile != null) {
+            errorsFlowfile = session.putAllAttributes(errorsFlowfile, attributes);
+            session.transfer(errorsFlowfile, ERRORS);
+        }
+    }
 
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                }
+    /*
+    Add the metrics to the counters and attributes.
+     */
+    private void publishMetrics(final ProcessSession session, final ValidationMetrics metrics, final Map<String, String> attributes) {
+        session.adjustCounter(RECORDS_VALIDATED, metrics.getRecords(), false);
+        session.adjustCounter(BYTES_VALIDATED, metrics.getBytes(), false);
+        session.adjustCounter(RECORDS_INVALID, metrics.getErrors(), false);
+        session.adjustCounter(VALIDATION_MICROS, metrics.getElapsedNanos() / 1000, false);
+
+        final LatencyHistogram matchTimes = metrics.getMatchTimes();
+        long counted = 0;
+        for (int i = 0; i < MATCH_TIME_COUNTERS.length; i++) {
+            long below = i < MATCH_TIME_DECADES.length ? matchTimes.getCountBelowDecade(MATCH_TIME_DECADES[i]) : matchTimes.getCount();
+            if (below > counted) {
+                session.adjustCounter(MATCH_TIME_COUNTERS[i], below - counted, false);
             }
-        });
+            counted = below;
+        }
 
-        boolean valid = fp.isValid();
-        if (valid) {
-            flowfile = session.putAttribute(flowfile, "record.count", Long.toString(fp.getRecordCount()));
-            session.transfer(flowfile, SUCCESS);
+        attributes.put(BYTES_PER_SECOND, Long.toString(Math.round(metrics.getBytesPerSecond())));
+        attributes.put(RECORDS_PER_SECOND, Long.toString(Math.round(metrics.getRecordsPerSecond())));
+        attributes.put(ERROR_RATIO, Double.toString(metrics.getErrorRatio()));
+        if (metrics.getFirstErrorRecord() >= 0) {
+            attributes.put(FIRST_ERROR_NANOS, Long.toString(metrics.getTimeToFirstErrorNanos()));
+            attributes.put(FIRST_ERROR_RECORD, Long.toString(metrics.getFirstErrorRecord()));
+        }
+        if (matchTimes.getCount() > 0) {
+            attributes.put(MATCH_P50, Long.toString(matchTimes.getValueAtPercentile(50)));
+            attributes.put(MATCH_P99, Long.toString(matchTimes.getValueAtPercentile(99)));
+            attributes.put(MATCH_MAX, Long.toString(matchTimes.getMax()));
+        }
+    }
+
+    private Pattern getPattern(final ProcessContext context, final ProcessSession session, final FlowFile flowfile) {
+        if (pattern != null) {
+            return pattern;
+        }
+        final String regex = context.getProperty(REGEX).evaluateAttributeExpressions(flowfile).getValue();
+        final PatternCache cache = PatternCache.getShared();
+        Pattern rtn = cache.getIfPresent(regex);
+        if (rtn != null) {
+            session.adjustCounter(PATTERN_CACHE_HITS, 1, false);
         } else {
-            session.transfer(flowfile, FAILURE);
+            rtn = cache.get(regex);
+            session.adjustCounter(PATTERN_CACHE_MISSES, 1, false);
+        }
+        return rtn;
+    }
 
-            // To write the results back out ot flow file
-            flowfile = session.write(flowfile, new OutputStreamCallback() {
+    /*
+    Writes errors with a StreamErrorSink into a buffer that's appended to the errors FlowFile
+    every FLUSH_ERRORS errors.  Valid content never makes an errors FlowFile.
+     */
+    private static class FlowFileErrorSink implements ErrorSink {
+        private static final int FLUSH_ERRORS = 1024;
+
+        private final ProcessSession session;
+        private final FlowFile parent;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+        private final StreamErrorSink lines;
+        private FlowFile flowfile = null;
+
+        private FlowFileErrorSink(ProcessSession session, FlowFile parent, Charset charset) {
+            this.session = session;
+            this.parent = parent;
+            this.lines = new StreamErrorSink(buffer, charset);
+        }
 
+        @Override
+        public void error(long recordNumber, CharSequence line) throws IOException {
+            lines.error(recordNumber, line);
+            if (lines.getCount() % FLUSH_ERRORS == 0) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            lines.flush();
+            if (buffer.size() == 0) {
+                return;
+            }
+            if (flowfile == null) {
+                flowfile = session.create(parent);
+            }
+            flowfile = session.append(flowfile, new OutputStreamCallback() {
                 @Override
                 public void process(OutputStream out) throws IOException {
-                    Map<Long, String> errorMap = fp.getErrors();
-                    Set<Long> keys = errorMap.keySet();
-
-                    for (Long key: keys) {
-                        String badLine = errorMap.get(key);
-                        StringBuilder sb = new StringBuilder();
-                        sb.append(key);
-                        sb.append("\t");
-                        sb.append(badLine);
-                        out.write(sb.toString().getBytes());
-                    }
+                    buffer.writeTo(out);
                 }
             });
-
-            session.transfer(flowfile, ERRORS);
-
+            buffer.reset();
         }
 
-
+        private FlowFile getFlowFile() {
+            return flowfile;
+        }
     }
 }
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streever.iot.nifi.processors.data.quality;
+
+import com.streever.data.quality.SizeValidator;
+import com.streever.parsers.RecordScanner;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.*;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.io.InputStreamCallback;
+import org.apache.nifi.processor.util.StandardValidators;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Pattern;
+
+@Tags({"Size","Record Count","Trailer","Validator","Data Quality"})
+@CapabilityDescription("Check a files size and record count, cheapest first: the size from the FlowFile alone, " +
+        "then the trailer (reading only the end of the content), then the record count.")
+@SeeAlso({RecordLayoutValidatorProcessor.class})
+@WritesAttributes({@WritesAttribute(attribute="record.count", description="Number of records, including the header and trailer, when counted"),
+        @WritesAttribute(attribute="trailer.count", description="The record count from the trailer"),
+        @WritesAttribute(attribute="validation.reason", description="Why the FlowFile failed, on failure")})
+public class SizeValidatorProcessor extends AbstractProcessor {
+
+    public static final PropertyDescriptor MIN_SIZE = new PropertyDescriptor
+            .Builder().name("Minimum Size")
+            .description("The smallest valid content, ie. '1 B' to reject empty files")
+            .required(false)
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor MAX_SIZE = new PropertyDescriptor
+            .Builder().name("Maximum Size")
+            .description("The largest valid content")
+            .required(false)
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor MIN_RECORDS = new PropertyDescriptor
+            .Builder().name("Minimum Records")
+            .description("The fewest valid records, not counting the header and trailer.  Requires reading the content.")
+            .required(false)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor MAX_RECORDS = new PropertyDescriptor
+            .Builder().name("Maximum Records")
+            .description("The most valid records, not counting the header and trailer.  Requires reading the content.")
+            .required(false)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor TRAILER_REGEX = new PropertyDescriptor
+            .Builder().name("Trailer RegEx")
+            .description("The last record must match this RegEx, and its first group (when it has one) is the expected " +
+                    "number of records, not counting the header and trailer.  ie. '^TRAILER\\|(\\d+)$'")
+            .required(false)
+            .addValidator(StandardValidators.REGULAR_EXPRESSION_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor MAX_TRAILER_LENGTH = new PropertyDescriptor
+            .Builder().name("Maximum Trailer Length")
+            .description("How much of the end of the content is read to find the trailer, from 1 B to 1 MB")
+            .required(true)
+            .defaultValue("4 KB")
+            .addValidator(StandardValidators.createDataSizeBoundsValidator(SizeValidator.MIN_TRAILER_LENGTH,
+                    SizeValidator.MAX_TRAILER_LENGTH))
+            .build();
+
+    public static final PropertyDescriptor HAS_HEADER = new PropertyDescriptor
+            .Builder().name("Has header")
+            .description("Has header")
+            .required(true)
+            .defaultValue("false")
+            .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor CHARACTER_SET = new PropertyDescriptor
+            .Builder().name("Character Set")
+            .description("The Character Set of the content")
+            .required(true)
+            .defaultValue("UTF-8")
+            .addValidator(StandardValidators.CHARACTER_SET_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor RECORD_DELIMITER = new PropertyDescriptor
+            .Builder().name("Record Delimiter")
+            .description("The delimiter between records.  \\n, \\r and \\t may be used for newline, carriage return and tab.")
+            .required(true)
+            .defaultValue("\\n")
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
+
+    public static final Relationship SUCCESS = new Relationship.Builder()
+            .name("success")
+            .description("Success Relationship")
+            .build();
+
+    public static final Relationship FAILURE = new Relationship.Builder()
+            .name("failure")
+            .description("The original FlowFile, when its size, record count or trailer isn't valid")
+            .build();
+
+    public static final String RECORD_COUNT = "record.count";
+    public static final String TRAILER_COUNT = "trailer.count";
+    public static final String REASON = "validation.reason";
+
+    private List<PropertyDescriptor> descriptors;
+
+    private Set<Relationship> relationships;
+
+    // Settled in onScheduled.
+    private volatile long minBytes = 0;
+    private volatile long maxBytes = Long.MAX_VALUE;
+    private volatile long minRecords = 0;
+    private volatile long maxRecords = Long.MAX_VALUE;
+    private volatile String trailerRegEx = null;
+    private volatile int maxTrailerLength = SizeValidator.DEFAULT_MAX_TRAILER_LENGTH;
+    private volatile boolean hasHeader = false;
+    private volatile Charset charset = StandardCharsets.UTF_8;
+    private volatile String delimiter = RecordScanner.DEFAULT_DELIMITER;
+
+    @Override
+    protected void init(final ProcessorInitializationContext context) {
+        final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
+        descriptors.add(MIN_SIZE);
+        descriptors.add(MAX_SIZE);
+        descriptors.add(MIN_RECORDS);
+        descriptors.add(MAX_RECORDS);
+        descriptors.add(TRAILER_REGEX);
+        descriptors.add(MAX_TRAILER_LENGTH);
+        descriptors.add(HAS_HEADER);
+        descriptors.add(CHARACTER_SET);
+        descriptors.add(RECORD_DELIMITER);
+        this.descriptors = Collections.unmodifiableList(descriptors);
+
+        final Set<Relationship> relationships = new HashSet<Relationship>();
+        relationships.add(SUCCESS);
+        relationships.add(FAILURE);
+        this.relationships = Collections.unmodifiableSet(relationships);
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        return this.relationships;
+    }
+
+    @Override
+    public final List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return descriptors;
+    }
+
+    @OnScheduled
+    public void onScheduled(final ProcessContext context) {
+        minBytes = context.getProperty(MIN_SIZE).isSet() ? context.getProperty(MIN_SIZE).asDataSize(DataUnit.B).longValue() : 0;
+        maxBytes = context.getProperty(MAX_SIZE).isSet() ? context.getProperty(MAX_SIZE).asDataSize(DataUnit.B).longValue() : Long.MAX_VALUE;
+        minRecords = context.getProperty(MIN_RECORDS).isSet() ? context.getProperty(MIN_RECORDS).asLong() : 0;
+        maxRecords = context.getProperty(MAX_RECORDS).isSet() ? context.getProperty(MAX_RECORDS).asLong() : Long.MAX_VALUE;
+        trailerRegEx = context.getProperty(TRAILER_REGEX).getValue();
+        maxTrailerLength = context.getProperty(MAX_TRAILER_LENGTH).asDataSize(DataUnit.B).intValue();
+        hasHeader = Boolean.parseBoolean(context.getProperty(HAS_HEADER).getValue());
+        charset = Charset.forName(context.getProperty(CHARACTER_SET).getValue());
+        delimiter = RecordScanner.unescapeDelimiter(context.getProperty(RECORD_DELIMITER).getValue());
+        if (trailerRegEx != null) {
+            // Fail at scheduling, not on the first FlowFile.
+            Pattern.compile(trailerRegEx);
+        }
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        FlowFile flowfile = session.get();
+
+        if (flowfile == null) {
+            return;
+        }
+
+        final SizeValidator sv = new SizeValidator();
+        sv.setMinBytes(minBytes);
+        sv.setMaxBytes(maxBytes);
+        sv.setMinRecords(minRecords);
+        sv.setMaxRecords(maxRecords);
+        sv.setTrailerRegEx(trailerRegEx);
+        sv.setMaxTrailerLength(maxTrailerLength);
+        sv.setHasHeader(hasHeader);
+        sv.setCharset(charset);
+        sv.setDelimiter(delimiter);
+        sv.setSize(flowfile.getSize());
+
+        // Cheapest first: the size doesn't touch the content, the trailer only reads its end.
+        if (sv.validateSize() && trailerRegEx != null) {
+            session.read(flowfile, new InputStreamCallback() {
+                @Override
+                public void process(InputStream in) throws IOException {
+                    sv.validateTrailer(in);
+                }
+            });
+        }
+        if (sv.isValid() && sv.isCountRequired()) {
+            session.read(flowfile, new InputStreamCallback() {
+                @Override
+                public void process(InputStream in) throws IOException {
+                    sv.validateCount(in);
+                }
+            });
+        }
+
+        final Map<String, String> attributes = new HashMap<String, String>();
+        if (sv.getRecordCount() >= 0) {
+            attributes.put(RECORD_COUNT, Long.toString(sv.getRecordCount()));
+        }
+        if (sv.getExpectedCount() >= 0) {
+            attributes.put(TRAILER_COUNT, Long.toString(sv.getExpectedCount()));
+        }
+        if (sv.isValid()) {
+            flowfile = session.putAllAttributes(flowfile, attributes);
+            session.transfer(flowfile, SUCCESS);
+        } else {
+            attributes.put(REASON, sv.getReason());
+            flowfile = session.putAllAttributes(flowfile, attributes);
+            session.transfer(flowfile, FAILURE);
+        }
+    }
+}
@@ -17,10 +17,18 @@
 package com.streever.iot.nifi.processors.examples;
 
 import com.streever.parsers.FilePartByRegEx;
+import com.streever.parsers.FilePartRule;
+import com.streever.parsers.FilePartsByRegEx;
+import com.streever.parsers.PatternCache;
+import com.streever.parsers.RecordScanner;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.components.PropertyValue;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.components.Validator;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.*;
+import org.apache.nifi.annotation.behavior.DynamicProperty;
 import org.apache.nifi.annotation.behavior.ReadsAttribute;
 import org.apache.nifi.annotation.behavior.ReadsAttributes;
 import org.apache.nifi.annotation.behavior.WritesAttribute;
@@ -35,14 +43,26 @@ import org.apache.nifi.processor.io.OutputStreamCallback;
 import org.apache.nifi.processor.util.StandardValidators;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 @Tags({"RegEx","File","Part","Parser"})
-@CapabilityDescription("Extract content from file, based on RegEx Pattern")
+@CapabilityDescription("Extract content from file, based on RegEx Pattern.  Additional named extraction rules " +
+        "can be added as dynamic properties; all rules are evaluated in a single pass over the content.")
+@DynamicProperty(name = "Attribute name", value = "RegEx, or occurrence,group,RegEx",
+        description = "Writes the 'occurrence' (default 1) match of the RegEx to the named attribute.  The group " +
+                "(default 1 when the RegEx has a group) selects the RegEx group; 0 writes the whole line.  " +
+                "The match location is written to '<name>.offset' and '<name>.line'.")
 @SeeAlso({})
 @ReadsAttributes({@ReadsAttribute(attribute="", description="")})
-@WritesAttributes({@WritesAttribute(attribute="", description="")})
+@WritesAttributes({@WritesAttribute(attribute="file.part.value", description="The matched value, or RegEx group"),
+        @WritesAttribute(attribute="file.part.offset", description="Byte offset of the match from the start of the content"),
+        @WritesAttribute(attribute="file.part.line", description="Line number (1 based) of the match")})
 public class FilePartByRegExProcessor extends AbstractProcessor {
 
 
@@ -50,13 +70,17 @@ public class FilePartByRegExProcessor extends AbstractProcessor {
             .Builder().name("Value Occurrence Index")
             .description("Value Occurrence Index")
             .required(true)
+            .defaultValue("1")
             .addValidator(StandardValidators.INTEGER_VALIDATOR)
             .build();
 
     public static final PropertyDescriptor REGEX = new PropertyDescriptor
             .Builder().name("RegEx")
-            .description("RegEx")
-            .required(true)
+            .description("RegEx.  When Expression Language is used, the evaluated RegEx is compiled " +
+                    "once and looked up in a shared pattern cache for each FlowFile.  Optional when " +
+                    "extraction rules are given as dynamic properties.")
+            .required(false)
+            .expressionLanguageSupported(true)
             .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
             .build();
 
@@ -64,25 +88,59 @@ public class FilePartByRegExProcessor extends AbstractProcessor {
             .Builder().name("RegEx Group Support")
             .description("RegEx Group Support")
             .required(true)
+            .defaultValue("false")
             .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
             .build();
 
+    public static final PropertyDescriptor CHARACTER_SET = new PropertyDescriptor
+            .Builder().name("Character Set")
+            .description("The Character Set of the content")
+            .required(true)
+            .defaultValue("UTF-8")
+            .addValidator(StandardValidators.CHARACTER_SET_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor RECORD_DELIMITER = new PropertyDescriptor
+            .Builder().name("Record Delimiter")
+            .description("The delimiter between records.  \\n, \\r and \\t may be used for newline, carriage return and tab.")
+            .required(true)
+            .defaultValue("\\n")
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
 
     public static final Relationship SUCCESS = new Relationship.Builder()
             .name("success")
             .description("Success Relationship")
             .build();
 
+    public static final String PART_VALUE = "file.part.value";
+    public static final String PART_OFFSET = "file.part.offset";
+    public static final String PART_LINE = "file.part.line";
+
+    public static final String PATTERN_CACHE_HITS = "RegEx Pattern Cache Hits";
+    public static final String PATTERN_CACHE_MISSES = "RegEx Pattern Cache Misses";
+
     private List<PropertyDescriptor> descriptors;
 
     private Set<Relationship> relationships;
 
+    // Settled in onScheduled.  pattern is null when the RegEx uses Expression Language.
+    private volatile Pattern pattern = null;
+    private volatile Charset charset = StandardCharsets.UTF_8;
+    private volatile String delimiter = RecordScanner.DEFAULT_DELIMITER;
+    private volatile int occurrence = 1;
+    private volatile boolean regexGroupSupport = false;
+    private volatile List<FilePartRule> dynamicRules = Collections.emptyList();
+
     @Override
     protected void init(final ProcessorInitializationContext context) {
         final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
         descriptors.add(OCCURRENCE);
         descriptors.add(REGEX);
         descriptors.add(REGEX_GROUP_SUPPORT);
+        descriptors.add(CHARACTER_SET);
+        descriptors.add(RECORD_DELIMITER);
         this.descriptors = Collections.unmodifiableList(descriptors);
 
         final Set<Relationship> relationships = new HashSet<Relationship>();
@@ -100,29 +158,94 @@ public class FilePartByRegExProcessor extends AbstractProcessor {
         return descriptors;
     }
 
+    @Override
+    protected PropertyDescriptor getSupportedDynamicPropertyDescriptor(final String propertyDescriptorName) {
+        return new PropertyDescriptor.Builder()
+                .name(propertyDescriptorName)
+                .required(false)
+                .addValidator(StandardValidators.ATTRIBUTE_KEY_PROPERTY_NAME_VALIDATOR)
+                .addValidator(createRuleValidator())
+                .dynamic(true)
+                .build();
+    }
+
+    @Override
+    protected Collection<ValidationResult> customValidate(ValidationContext validationContext) {
+        final List<ValidationResult> results = new ArrayList<>(1);
+
+        boolean hasRule = validationContext.getProperty(REGEX).isSet();
+        for (PropertyDescriptor descriptor : validationContext.getProperties().keySet()) {
+            if (descriptor.isDynamic()) {
+                hasRule = true;
+            }
+        }
+        if (!hasRule) {
+            results.add(new ValidationResult.Builder().subject(REGEX.getName()).valid(false)
+                    .explanation("RegEx or at least one extraction rule dynamic property is required").build());
+        }
+
+        // Group support returns group 1, so a RegEx without one would fail on every FlowFile.
+        final String regex = validationContext.getProperty(REGEX).getValue();
+        if (regex != null && !validationContext.isExpressionLanguagePresent(regex)
+                && Boolean.parseBoolean(validationContext.getProperty(REGEX_GROUP_SUPPORT).getValue())) {
+            try {
+                if (Pattern.compile(regex).matcher("").groupCount() == 0) {
+                    results.add(new ValidationResult.Builder().subject(REGEX.getName()).input(regex).valid(false)
+                            .explanation("RegEx Group Support needs a RegEx with a group").build());
+                }
+            } catch (PatternSyntaxException e) {
+                results.add(new ValidationResult.Builder().subject(REGEX.getName()).input(regex).valid(false)
+                        .explanation("Not a valid RegEx: " + e.getDescription()).build());
+            }
+        }
+        return results;
+    }
+
     @OnScheduled
     public void onScheduled(final ProcessContext context) {
+        occurrence = Integer.parseInt(context.getProperty(OCCURRENCE).getValue());
+        regexGroupSupport = Boolean.parseBoolean(context.getProperty(REGEX_GROUP_SUPPORT).getValue());
+        charset = Charset.forName(context.getProperty(CHARACTER_SET).getValue());
+        delimiter = RecordScanner.unescapeDelimiter(context.getProperty(RECORD_DELIMITER).getValue());
 
+        if (!context.getProperty(REGEX).isSet() || context.isExpressionLanguagePresent(REGEX)) {
+            pattern = null;
+        } else {
+            pattern = Pattern.compile(context.getProperty(REGEX).evaluateAttributeExpressions().getValue());
+        }
+
+        final List<FilePartRule> rules = new ArrayList<FilePartRule>();
+        for (PropertyDescriptor descriptor : context.getProperties().keySet()) {
+            if (descriptor.isDynamic()) {
+                rules.add(FilePartRule.parse(descriptor.getName(), context.getProperty(descriptor).getValue()));
+            }
+        }
+        dynamicRules = Collections.unmodifiableList(rules);
     }
 
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
         FlowFile flowfile = session.get();
 
-        final String regex = context.getProperty(REGEX).getValue();
-        final Boolean regexGroupSupport = Boolean.parseBoolean(context.getProperty(REGEX_GROUP_SUPPORT).getValue());
-        final Integer occurrence = Integer.parseInt(context.getProperty(OCCURRENCE).getValue());
+        if (flowfile == null) {
+            return;
+        }
+
+        if (!dynamicRules.isEmpty()) {
+            extractParts(context, session, flowfile);
+            return;
+        }
 
         final AtomicReference<String> partValue = new AtomicReference<String>();
+        final AtomicLong partOffset = new AtomicLong(-1);
+        final AtomicLong partLine = new AtomicLong(-1);
 
         final FilePartByRegEx fp = new FilePartByRegEx();
         fp.setOccurrence(occurrence);
         fp.setRegexGroupSupport(regexGroupSupport);
-        fp.setRegex(regex);
-
-        if (flowfile == null) {
-            return;
-        }
+        fp.setCharset(charset);
+        fp.setDelimiter(delimiter);
+        fp.setPattern(getPattern(context, session, flowfile));
 
         session.read(flowfile, new InputStreamCallback() {
             @Override
@@ -131,6 +254,8 @@ public class FilePartByRegExProcessor extends AbstractProcessor {
                     fp.setInputStream(in);
 
                     partValue.set(fp.getValue());
+                    partOffset.set(fp.getMatchOffset());
+                    partLine.set(fp.getMatchLineNumber());
 
                 } catch (Exception ex) {
                     ex.printStackTrace();
@@ -138,9 +263,100 @@ public class FilePartByRegExProcessor extends AbstractProcessor {
             }
         });
 
-        flowfile = session.putAttribute(flowfile, "file.part.value", partValue.get());
+        final Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put(PART_VALUE, partValue.get());
+        if (partOffset.get() >= 0) {
+            attributes.put(PART_OFFSET, Long.toString(partOffset.get()));
+            attributes.put(PART_LINE, Long.toString(partLine.get()));
+        }
+        flowfile = session.putAllAttributes(flowfile, attributes);
 
         session.transfer(flowfile, SUCCESS);
 
     }
+
+    /*
+    Evaluate the RegEx property and every dynamic rule in one pass over the content.
+     */
+    private void extractParts(final ProcessContext context, final ProcessSession session, FlowFile flowfile) {
+        final List<FilePartRule> rules = new ArrayList<FilePartRule>(dynamicRules.size() + 1);
+        FilePartRule partRule = null;
+        if (context.getProperty(REGEX).isSet()) {
+            final Pattern mainPattern = getPattern(context, session, flowfile);
+            if (regexGroupSupport && mainPattern.matcher("").groupCount() == 0) {
+                // Only an Expression Language RegEx gets here; the others are checked in customValidate.
+                getLogger().error("RegEx {} for {} has no group for RegEx Group Support; skipping it",
+                        new Object[]{mainPattern.pattern(), flowfile});
+            } else {
+                partRule = new FilePartRule(PART_VALUE, mainPattern, occurrence, regexGroupSupport ? 1 : 0);
+                rules.add(partRule);
+            }
+        }
+        rules.addAll(dynamicRules);
+
+        final FilePartsByRegEx fp = new FilePartsByRegEx(rules);
+        fp.setCharset(charset);
+        fp.setDelimiter(delimiter);
+
+        final Map<String, String> values = new HashMap<String, String>();
+        session.read(flowfile, new InputStreamCallback() {
+            @Override
+            public void process(InputStream in) throws IOException {
+                fp.setInputStream(in);
+                values.putAll(fp.getValues());
+            }
+        });
+
+        final Map<String, String> attributes = new HashMap<String, String>();
+        for (FilePartRule rule : rules) {
+            String name = rule.getName();
+            boolean mainRule = rule == partRule;
+            if (mainRule) {
+                attributes.put(PART_VALUE, values.get(name));
+            } else if (values.containsKey(name)) {
+                attributes.put(name, values.get(name));
+            }
+            if (fp.getMatchOffset(name) >= 0) {
+                attributes.put(mainRule ? PART_OFFSET : name + ".offset", Long.toString(fp.getMatchOffset(name)));
+                attributes.put(mainRule ? PART_LINE : name + ".line", Long.toString(fp.getMatchLineNumber(name)));
+            }
+        }
+        flowfile = session.putAllAttributes(flowfile, attributes);
+
+        session.transfer(flowfile, SUCCESS);
+    }
+
+    private Pattern getPattern(final ProcessContext context, final ProcessSession session, final FlowFile flowfile) {
+        if (pattern != null) {
+            return pattern;
+        }
+        final String regex = context.getProperty(REGEX).evaluateAttributeExpressions(flowfile).getValue();
+        final PatternCache cache = PatternCache.getShared();
+        Pattern rtn = cache.getIfPresent(regex);
+        if (rtn != null) {
+            session.adjustCounter(PATTERN_CACHE_HITS, 1, false);
+        } else {
+            rtn = cache.get(regex);
+            session.adjustCounter(PATTERN_CACHE_MISSES, 1, false);
+        }
+        return rtn;
+    }
+
+    /*
+     * Validates a dynamic property as a FilePartRule.
+     */
+    private static Validator createRuleValidator() {
+        return new Validator() {
+            @Override
+            public ValidationResult validate(String subject, String input, ValidationContext context) {
+                try {
+                    FilePartRule.parse(subject, input);
+                    return new ValidationResult.Builder().subject(subject).input(input).valid(true).build();
+                } catch (RuntimeException e) {
+                    return new ValidationResult.Builder().subject(subject).input(input).valid(false)
+                            .explanation("Not a valid extraction rule: " + e.getMessage()).build();
+                }
+            }
+        };
+    }
 }
@@ -1,12 +1,8 @@
 package com.streever.parsers;
 
-import java.io.BufferedReader;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -24,11 +20,19 @@ public class FilePartByRegEx {
     private int occurrenceCount = 1;
 
     private String regex = null;
+    // Pre-compiled pattern.  When not set, the regex is looked up in the shared PatternCache.
+    private Pattern pattern = null;
     // Support for pulling a regex group element from the matched value.
     private boolean regexGroupSupport = false;
     private int groupItemOccurrence = 1;
 
     private InputStream inputStream = null;
+    private Charset charset = StandardCharsets.UTF_8;
+    private String delimiter = RecordScanner.DEFAULT_DELIMITER;
+
+    // Location of the last match.
+    private long matchOffset = -1;
+    private long matchLineNumber = -1;
 
     public int getOccurrence() {
         return occurrence;
@@ -44,6 +48,16 @@ public class FilePartByRegEx {
 
     public void setRegex(String regex) {
         this.regex = regex;
+        this.pattern = null;
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    public void setPattern(Pattern pattern) {
+        this.pattern = pattern;
+        this.regex = pattern != null ? pattern.pattern() : null;
     }
 
     public boolean isRegexGroupSupport() {
@@ -54,6 +68,25 @@ public class FilePartByRegEx {
         this.regexGroupSupport = regexGroupSupport;
     }
 
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     * The record (line) delimiter.  Defaults to "\n".
+     */
+    public void setDelimiter(String delimiter) {
+        this.delimiter = delimiter;
+    }
+
     public InputStream getInputStream() {
         return inputStream;
     }
@@ -69,25 +102,41 @@ public class FilePartByRegEx {
         this.inputStream = inputStream;
     }
 
+    /**
+     * Byte offset, from the start of the stream, of the match returned by the last getValue().
+     * -1 when nothing matched.
+     */
+    public long getMatchOffset() {
+        return matchOffset;
+    }
+
+    /**
+     * Line number (1 based) of the match returned by the last getValue().  -1 when nothing matched.
+     */
+    public long getMatchLineNumber() {
+        return matchLineNumber;
+    }
+
     public String getValue() {
         String rtn = null;
+        matchOffset = -1;
+        matchLineNumber = -1;
         // Check that we have the minimum required elements
-        if (inputStream == null || regex == null) {
+        if (inputStream == null || (regex == null && pattern == null)) {
             return null;
         }
 
-        // Build the Compile RegEx Pattern
-        Pattern regExPattern = Pattern.compile(regex);
+        // Use the pre-compiled Pattern, or fetch it from the cache.
+        Pattern regExPattern = pattern != null ? pattern : PatternCache.getShared().get(regex);
         occurrenceCount = 1;
 
-        // Wrap InputStream in a BufferedReader.
-        BufferedReader inBuff = new BufferedReader(new InputStreamReader(inputStream));
+        RecordScanner scanner = new RecordScanner(inputStream, charset, delimiter);
+        Matcher matcher = regExPattern.matcher("");
 
-        String line = null;
         try {
-            // Iterate till the end of the buffer or when rtn isn't null.
-            while ((line = inBuff.readLine()) != null && rtn == null) {
-                rtn = getMatchedValue(regExPattern, line);
+            // Iterate till the end of the stream or the occurrence is found.
+            while (rtn == null && scanner.next()) {
+                rtn = getMatchedValue(matcher, scanner);
             }
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -96,26 +145,28 @@ public class FilePartByRegEx {
         return rtn;
     }
 
-    private String getMatchedValue(Pattern pattern, String value) {
-        Matcher matcher = pattern.matcher(value);
-        String rtn = null;
+    private String getMatchedValue(Matcher matcher, RecordScanner scanner) {
+        CharSequence value = scanner.getRecord();
+        matcher.reset(value);
 
         // If we have a match...
         while (matcher.find()) {
             if (occurrenceCount == occurrence) {
                 // Found the occurrence we're looking for.
+                matchLineNumber = scanner.getRecordNumber();
+                matchOffset = scanner.getRecordOffset() + scanner.getByteLength(matcher.start());
                 // No check if we're looking for RegEx Group Support and
                 // return back the part, or the whole value.
                 if (regexGroupSupport) {
-                    rtn = new String(matcher.group(1));
+                    return matcher.group(1);
                 } else {
-                    rtn = new String(value);
+                    return value.toString();
                 }
             } else {
                 // Increase Count and do it again.
                 occurrenceCount++;
             }
         }
-        return rtn;
+        return null;
     }
 }
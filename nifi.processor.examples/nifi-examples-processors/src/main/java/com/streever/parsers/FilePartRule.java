@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.parsers;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ *
+ * A named extraction rule for FilePartsByRegEx: pull the 'nth' occurrence of a RegEx
+ * and return either the whole line or one of the RegEx groups.
+ *
+ * A rule can be described as a String, either just the RegEx, or
+ * "occurrence,group,RegEx".  A group of 0 returns the whole line.  With just the RegEx
+ * the first occurrence is used, and group 1 when the RegEx has a group.
+ */
+public class FilePartRule {
+
+    private static final Pattern SPEC = Pattern.compile("^(\\d+),(\\d+),(.+)$", Pattern.DOTALL);
+
+    private final String name;
+    private final Pattern pattern;
+    private final int occurrence;
+    private final int group;
+
+    public FilePartRule(String name, Pattern pattern, int occurrence, int group) {
+        if (occurrence < 1) {
+            throw new IllegalArgumentException("Occurrence must be 1 or more for rule: " + name);
+        }
+        if (group < 0 || group > pattern.matcher("").groupCount()) {
+            throw new IllegalArgumentException("RegEx for rule: " + name + " doesn't have group " + group);
+        }
+        this.name = name;
+        this.pattern = pattern;
+        this.occurrence = occurrence;
+        this.group = group;
+    }
+
+    /**
+     * Build a rule from "RegEx" or "occurrence,group,RegEx".  The RegEx is taken from the
+     * shared PatternCache.
+     */
+    public static FilePartRule parse(String name, String spec) {
+        Matcher matcher = SPEC.matcher(spec);
+        if (matcher.matches()) {
+            Pattern pattern = PatternCache.getShared().get(matcher.group(3));
+            return new FilePartRule(name, pattern, Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+        } else {
+            Pattern pattern = PatternCache.getShared().get(spec);
+            int group = pattern.matcher("").groupCount() > 0 ? 1 : 0;
+            return new FilePartRule(name, pattern, 1, group);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    public int getOccurrence() {
+        return occurrence;
+    }
+
+    public int getGroup() {
+        return group;
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.parsers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/**
+ *
+ * Evaluates a set of FilePartRules against a stream in a single pass.
+ *
+ * Reading stops as soon as every rule has found its occurrence, so pulling a control
+ * date, a record count and a batch id from the header of a file costs one short read.
+ */
+public class FilePartsByRegEx {
+
+    private List<FilePartRule> rules = new ArrayList<FilePartRule>();
+
+    private InputStream inputStream = null;
+    private Charset charset = StandardCharsets.UTF_8;
+    private String delimiter = RecordScanner.DEFAULT_DELIMITER;
+
+    // Results of the last getValues(), indexed like rules.
+    private String[] values = new String[0];
+    private long[] matchOffsets = new long[0];
+    private long[] matchLineNumbers = new long[0];
+
+    public FilePartsByRegEx() {
+    }
+
+    public FilePartsByRegEx(List<FilePartRule> rules) {
+        this.rules.addAll(rules);
+    }
+
+    public List<FilePartRule> getRules() {
+        return Collections.unmodifiableList(rules);
+    }
+
+    public void addRule(FilePartRule rule) {
+        rules.add(rule);
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public void setInputStream(InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public void setDelimiter(String delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Run every rule over the stream.
+     *
+     * @return rule name to value, for the rules that matched, in rule order.
+     * @throws IOException when the stream can't be read, rather than report the rules as not found.
+     */
+    public Map<String, String> getValues() throws IOException {
+        Map<String, String> rtn = new LinkedHashMap<String, String>();
+        int ruleCount = rules.size();
+        values = new String[ruleCount];
+        matchOffsets = new long[ruleCount];
+        matchLineNumbers = new long[ruleCount];
+        for (int i = 0; i < ruleCount; i++) {
+            matchOffsets[i] = -1;
+            matchLineNumbers[i] = -1;
+        }
+        // Check that we have the minimum required elements
+        if (inputStream == null || ruleCount == 0) {
+            return rtn;
+        }
+
+        Matcher[] matchers = new Matcher[ruleCount];
+        int[] occurrenceCounts = new int[ruleCount];
+        for (int i = 0; i < ruleCount; i++) {
+            matchers[i] = rules.get(i).getPattern().matcher("");
+        }
+        int outstanding = ruleCount;
+
+        RecordScanner scanner = new RecordScanner(inputStream, charset, delimiter);
+        // Iterate till the end of the stream or every rule is satisfied.
+        while (outstanding > 0 && scanner.next()) {
+            CharSequence line = scanner.getRecord();
+            for (int i = 0; i < ruleCount; i++) {
+                if (values[i] != null) {
+                    continue;
+                }
+                FilePartRule rule = rules.get(i);
+                Matcher matcher = matchers[i].reset(line);
+                while (matcher.find()) {
+                    if (++occurrenceCounts[i] == rule.getOccurrence()) {
+                        String value = rule.getGroup() == 0 ? line.toString() : matcher.group(rule.getGroup());
+                        if (value == null) {
+                            // The group didn't take part; as FilePartByRegEx does, try the next match.
+                            occurrenceCounts[i]--;
+                            continue;
+                        }
+                        values[i] = value;
+                        matchLineNumbers[i] = scanner.getRecordNumber();
+                        matchOffsets[i] = scanner.getRecordOffset() + scanner.getByteLength(matcher.start());
+                        outstanding--;
+                        break;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < ruleCount; i++) {
+            if (values[i] != null) {
+                rtn.put(rules.get(i).getName(), values[i]);
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Byte offset of the match for the named rule in the last getValues().  -1 when it didn't match.
+     */
+    public long getMatchOffset(String name) {
+        int i = indexOf(name);
+        return i < 0 ? -1 : matchOffsets[i];
+    }
+
+    /**
+     * Line number (1 based) of the match for the named rule in the last getValues().  -1 when it didn't match.
+     */
+    public long getMatchLineNumber(String name) {
+        int i = indexOf(name);
+        return i < 0 ? -1 : matchLineNumbers[i];
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < rules.size() && i < values.length; i++) {
+            if (rules.get(i).getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,329 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.parsers;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/**
+ *
+ * Answers Matcher.find() for a LayoutPattern: the literal prefix is checked first, then the
+ * record is run through the DFA (or java.util.regex when the pattern isn't linear).
+ *
+ * The DFA is built lazily, a state (a set of NFA states) at a time as records need them.
+ * ASCII transitions are cached in a table per state, and other chars in one small hash table
+ * of up to 'MAX_WIDE_TRANSITIONS'.  When more than 'MAX_DFA_STATES' are made, the cache is
+ * dropped and built again, so memory stays bounded for any pattern.
+ *
+ * java.util.regex matches supplementary characters as one code point and lets '$' match
+ * before a final line terminator; records with either are handed to it, so the answer is
+ * always the same as Matcher.find().
+ *
+ * Not thread safe; one per thread, see LayoutPattern.threadMatcher().
+ */
+public final class LayoutMatcher {
+
+    public static final int MAX_DFA_STATES = 4096;
+    public static final int MAX_WIDE_TRANSITIONS = 1024;
+
+    private static final int UNKNOWN = -1;
+
+    private final LayoutPattern pattern;
+    private final String prefix;
+    private final Matcher matcher;
+
+    // The NFA, from the pattern.
+    private final int[] kinds;
+    private final LayoutPattern.CharSet[] sets;
+    private final int[] outs;
+    private final int[] outs1;
+    private final boolean startAnchored;
+    private final boolean endAnchored;
+
+    // The DFA, built as needed.
+    private final Map<IntBuffer, Integer> states = new HashMap<IntBuffer, Integer>();
+    private final List<int[]> stateSets = new ArrayList<int[]>();
+    // By state: the next state for each ASCII char, or UNKNOWN.
+    private int[][] transitions = new int[64][];
+    private boolean[] accepting = new boolean[64];
+    private boolean[] dead = new boolean[64];
+    // Non-ASCII transitions, open addressed: (state << 16 | char) + 1 and the next state.
+    // Made when first needed.
+    private int[] wideKeys;
+    private int[] wideNext;
+    private int wideCount = 0;
+    private int startState;
+    private int[] startSet;
+    // Counts resets of the DFA.
+    private int generation = 0;
+
+    // Scratch for building state sets.
+    private final int[] stack;
+    private final int[] marks;
+    private int mark = 0;
+    private int[] scratch;
+    // The last closure, sorted, in its first 'closedSize'.
+    private final int[] closed;
+    private int closedSize = 0;
+
+    private long fallbacks = 0;
+
+    LayoutMatcher(LayoutPattern pattern) {
+        this.pattern = pattern;
+        this.prefix = pattern.getPrefix();
+        this.matcher = pattern.getPattern().matcher("");
+        this.kinds = pattern.getKinds();
+        this.sets = pattern.getSets();
+        this.outs = pattern.getOuts();
+        this.outs1 = pattern.getOuts1();
+        this.startAnchored = pattern.isStartAnchored();
+        this.endAnchored = pattern.isEndAnchored();
+        int size = kinds != null ? kinds.length : 0;
+        this.stack = new int[size];
+        this.marks = new int[size];
+        // Room for a state set and the start set.
+        this.scratch = new int[2 * size];
+        this.closed = new int[size];
+        if (kinds != null) {
+            closure(new int[]{pattern.getStart()}, 1);
+            startSet = Arrays.copyOf(closed, closedSize);
+            reset();
+        }
+    }
+
+    public LayoutPattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Records handed to java.util.regex, though the pattern is linear.
+     */
+    public long getFallbackCount() {
+        return fallbacks;
+    }
+
+    /**
+     * The same as pattern.matcher(line).find().
+     */
+    public boolean find(CharSequence line) {
+        if (prefix != null && !startsWith(line, prefix)) {
+            return false;
+        }
+        if (kinds == null) {
+            return matcher.reset(line).find();
+        }
+        int length = line.length();
+        if (endAnchored && length > 0 && isLineTerminator(line.charAt(length - 1))) {
+            return fallback(line);
+        }
+        int state = startState;
+        if (!endAnchored && accepting[state]) {
+            return true;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            int next;
+            if (c < 128) {
+                next = transitions[state][c];
+                if (next == UNKNOWN) {
+                    int built = generation;
+                    next = step(state, c);
+                    // Unless the step dropped the cache, 'state' is still the same state.
+                    if (built == generation) {
+                        transitions[state][c] = next;
+                    }
+                }
+            } else if (Character.isSurrogate(c)) {
+                return fallback(line);
+            } else {
+                next = wideTransition(state, c);
+            }
+            state = next;
+            if (dead[state]) {
+                return false;
+            }
+            if (!endAnchored && accepting[state]) {
+                return true;
+            }
+        }
+        return accepting[state];
+    }
+
+    /*
+    The cached transition from 'state' on a non-ASCII char, or the step, cached.
+     */
+    private int wideTransition(int state, char c) {
+        if (wideKeys == null) {
+            wideKeys = new int[MAX_WIDE_TRANSITIONS * 2];
+            wideNext = new int[MAX_WIDE_TRANSITIONS * 2];
+        }
+        int key = (state << 16 | c) + 1;
+        int mask = wideKeys.length - 1;
+        for (int i = (key * 0x9E3779B9) >>> 16 & mask; wideKeys[i] != 0; i = (i + 1) & mask) {
+            if (wideKeys[i] == key) {
+                return wideNext[i];
+            }
+        }
+        int built = generation;
+        int next = step(state, c);
+        // As for ASCII, unless the step dropped the cache.
+        if (built == generation) {
+            if (wideCount >= MAX_WIDE_TRANSITIONS) {
+                Arrays.fill(wideKeys, 0);
+                wideCount = 0;
+            }
+            int i = (key * 0x9E3779B9) >>> 16 & mask;
+            while (wideKeys[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            wideKeys[i] = key;
+            wideNext[i] = next;
+            wideCount++;
+        }
+        return next;
+    }
+
+    private boolean fallback(CharSequence line) {
+        fallbacks++;
+        return matcher.reset(line).find();
+    }
+
+    private static boolean startsWith(CharSequence line, String prefix) {
+        int length = prefix.length();
+        if (line.length() < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /*
+    The DFA state reached from 'state' on 'c'.  Unanchored patterns may start a match at
+    any position, so the start set joins every state.
+     */
+    private int step(int state, char c) {
+        int[] set = stateSets.get(state);
+        int count = 0;
+        for (int nfa : set) {
+            if (kinds[nfa] == LayoutPattern.CHAR && sets[nfa].matches(c)) {
+                scratch[count++] = outs[nfa];
+            }
+        }
+        if (!startAnchored) {
+            for (int nfa : startSet) {
+                scratch[count++] = nfa;
+            }
+        }
+        closure(scratch, count);
+        Integer index = states.get(IntBuffer.wrap(closed, 0, closedSize));
+        if (index != null) {
+            return index;
+        }
+        if (stateSets.size() >= MAX_DFA_STATES) {
+            reset();
+        }
+        return add(Arrays.copyOf(closed, closedSize));
+    }
+
+    /*
+    Drop every DFA state but the start.
+     */
+    private void reset() {
+        generation++;
+        states.clear();
+        if (wideKeys != null) {
+            Arrays.fill(wideKeys, 0);
+            wideCount = 0;
+        }
+        stateSets.clear();
+        startState = add(startSet);
+    }
+
+    private int add(int[] set) {
+        int index = stateSets.size();
+        stateSets.add(set);
+        states.put(IntBuffer.wrap(set), index);
+        if (index >= transitions.length) {
+            transitions = Arrays.copyOf(transitions, transitions.length * 2);
+            accepting = Arrays.copyOf(accepting, accepting.length * 2);
+            dead = Arrays.copyOf(dead, dead.length * 2);
+        }
+        int[] table = new int[128];
+        Arrays.fill(table, UNKNOWN);
+        transitions[index] = table;
+        // Nothing left to match; only when anchored at the start.
+        dead[index] = set.length == 0;
+        accepting[index] = false;
+        for (int nfa : set) {
+            if (kinds[nfa] == LayoutPattern.MATCH) {
+                accepting[index] = true;
+                break;
+            }
+        }
+        return index;
+    }
+
+    /*
+    The CHAR and MATCH states reachable from 'from' through splits, sorted into 'closed'.
+     */
+    private void closure(int[] from, int count) {
+        if (++mark == Integer.MAX_VALUE) {
+            Arrays.fill(marks, 0);
+            mark = 1;
+        }
+        int size = 0;
+        // States are marked as they're pushed, so each is pushed once.
+        int top = 0;
+        for (int i = 0; i < count; i++) {
+            top = push(from[i], top);
+        }
+        while (top > 0) {
+            int nfa = stack[--top];
+            if (kinds[nfa] == LayoutPattern.SPLIT) {
+                top = push(outs[nfa], top);
+                top = push(outs1[nfa], top);
+            } else {
+                closed[size++] = nfa;
+            }
+        }
+        Arrays.sort(closed, 0, size);
+        closedSize = size;
+    }
+
+    private int push(int nfa, int top) {
+        if (nfa >= 0 && marks[nfa] != mark) {
+            marks[nfa] = mark;
+            stack[top++] = nfa;
+        }
+        return top;
+    }
+}
@@ -0,0 +1,770 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.parsers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ *
+ * A record layout RegEx, analysed for faster, predictable matching with Matcher.find().
+ *
+ * Two things are taken from the pattern:
+ *
+ *   - the literal prefix of an anchored pattern (ie. "2016-" of "^2016-\d{2}"), checked
+ *     with a plain compare before anything else, so most bad records are rejected at once.
+ *   - when the pattern only uses literals, classes, groups, alternation, greedy or lazy
+ *     quantifiers and leading '^' / trailing '$' anchors, an NFA.  LayoutMatchers run it
+ *     as a lazily built DFA, which takes time linear in the record however the pattern
+ *     nests, so hostile records can't cause catastrophic backtracking.
+ *
+ * Anything else (back references, look arounds, boundaries, possessive quantifiers,
+ * flags, ...) is left to java.util.regex, still behind the prefix check.
+ *
+ * Immutable and thread safe; get a LayoutMatcher per thread, ie. with threadMatcher().
+ */
+public class LayoutPattern {
+
+    // Bounds on the NFA, beyond which ie. large counted repeats are left to java.util.regex.
+    public static final int MAX_NFA_STATES = 10000;
+
+    // LayoutMatchers kept per thread, with the DFAs they've built.
+    public static final int MATCHERS_PER_THREAD = 8;
+
+    static final int MATCH = 0;
+    static final int CHAR = 1;
+    static final int SPLIT = 2;
+
+    // A static ThreadLocal, so the matchers (which reference their LayoutPattern) don't keep
+    // it alive past its thread.
+    private static final ThreadLocal<Map<LayoutPattern, LayoutMatcher>> THREAD_MATCHERS = new ThreadLocal<Map<LayoutPattern, LayoutMatcher>>() {
+        @Override
+        protected Map<LayoutPattern, LayoutMatcher> initialValue() {
+            return new LinkedHashMap<LayoutPattern, LayoutMatcher>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<LayoutPattern, LayoutMatcher> eldest) {
+                    return size() > MATCHERS_PER_THREAD;
+                }
+            };
+        }
+    };
+
+    private final Pattern pattern;
+    private final String prefix;
+    private final String fallbackReason;
+
+    // The NFA, null when the pattern is left to java.util.regex.
+    private final int[] kinds;
+    private final CharSet[] sets;
+    private final int[] outs;
+    private final int[] outs1;
+    private final int start;
+    private final boolean startAnchored;
+    private final boolean endAnchored;
+
+    /**
+     * The analysis of a Pattern, shared by everyone validating with the same regex and flags.
+     * It's held with the Pattern in the shared PatternCache, and evicted with it.
+     */
+    public static LayoutPattern forPattern(Pattern pattern) {
+        return PatternCache.getShared().getLayout(pattern);
+    }
+
+    public LayoutPattern(Pattern pattern) {
+        this.pattern = pattern;
+        String regex = pattern.pattern();
+        this.prefix = pattern.flags() == 0 ? literalPrefix(regex) : null;
+
+        Parser parser = new Parser(regex);
+        Node root = null;
+        String reason = null;
+        if (pattern.flags() != 0) {
+            reason = "Pattern flags";
+        } else {
+            try {
+                root = parser.parse();
+            } catch (Unsupported unsupported) {
+                reason = unsupported.getMessage();
+            }
+        }
+
+        Builder builder = new Builder();
+        int startState = -1;
+        if (root != null) {
+            try {
+                startState = builder.compile(root, MATCH);
+            } catch (Unsupported unsupported) {
+                reason = unsupported.getMessage();
+            }
+        }
+        this.fallbackReason = reason;
+        if (reason == null) {
+            this.kinds = builder.kinds();
+            this.sets = builder.sets.toArray(new CharSet[builder.sets.size()]);
+            this.outs = builder.outs();
+            this.outs1 = builder.outs1();
+            this.start = startState;
+        } else {
+            this.kinds = null;
+            this.sets = null;
+            this.outs = null;
+            this.outs1 = null;
+            this.start = -1;
+        }
+        this.startAnchored = parser.startAnchored;
+        this.endAnchored = parser.endAnchored;
+    }
+
+    public LayoutMatcher matcher() {
+        return new LayoutMatcher(this);
+    }
+
+    /**
+     * This thread's LayoutMatcher, kept with the DFA it has built for the next call on the
+     * thread.  Each thread keeps the matchers of the last MATCHERS_PER_THREAD patterns.
+     */
+    public LayoutMatcher threadMatcher() {
+        Map<LayoutPattern, LayoutMatcher> matchers = THREAD_MATCHERS.get();
+        LayoutMatcher rtn = matchers.get(this);
+        if (rtn == null) {
+            rtn = new LayoutMatcher(this);
+            matchers.put(this, rtn);
+        }
+        return rtn;
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * The literal every match starts with at the start of the record, or null.
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * True when matched by the DFA, false when left to java.util.regex.
+     */
+    public boolean isLinear() {
+        return kinds != null;
+    }
+
+    /**
+     * Why the pattern is left to java.util.regex, or null.
+     */
+    public String getFallbackReason() {
+        return fallbackReason;
+    }
+
+    boolean isStartAnchored() {
+        return startAnchored;
+    }
+
+    boolean isEndAnchored() {
+        return endAnchored;
+    }
+
+    int getStart() {
+        return start;
+    }
+
+    int[] getKinds() {
+        return kinds;
+    }
+
+    CharSet[] getSets() {
+        return sets;
+    }
+
+    int[] getOuts() {
+        return outs;
+    }
+
+    int[] getOuts1() {
+        return outs1;
+    }
+
+    /*
+    The literal characters after a leading '^', up to the first meta character.  A literal
+    followed by a quantifier isn't required, so it's dropped.  None when the pattern has a
+    top level alternation, where '^' only anchors the first alternative.
+     */
+    static String literalPrefix(String regex) {
+        if (!regex.startsWith("^") || hasTopLevelAlternation(regex)) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        int i = 1;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            int literal;
+            int next;
+            if (c == '\\' && i + 1 < regex.length()) {
+                char e = regex.charAt(i + 1);
+                if ((e >= 'a' && e <= 'z') || (e >= 'A' && e <= 'Z') || (e >= '0' && e <= '9')) {
+                    break;
+                }
+                literal = e;
+                next = i + 2;
+            } else if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+                break;
+            } else {
+                literal = c;
+                next = i + 1;
+            }
+            if (next < regex.length() && "?*+{".indexOf(regex.charAt(next)) >= 0) {
+                break;
+            }
+            sb.append((char) literal);
+            i = next;
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    private static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Unsupported extends RuntimeException {
+        Unsupported(String message) {
+            super(message);
+        }
+    }
+
+    /*
+    A set of chars: a bitmap for ASCII and ranges above it.
+     */
+    static final class CharSet {
+        private long low = 0;
+        private long high = 0;
+        // Pairs of inclusive ranges, above 127.
+        private final List<int[]> ranges = new ArrayList<int[]>();
+        private boolean negated = false;
+
+        static CharSet of(char c) {
+            CharSet set = new CharSet();
+            set.add(c, c);
+            return set;
+        }
+
+        void add(int from, int to) {
+            for (int c = from; c <= Math.min(to, 127); c++) {
+                if (c < 64) {
+                    low |= 1L << c;
+                } else {
+                    high |= 1L << (c - 64);
+                }
+            }
+            if (to > 127) {
+                ranges.add(new int[]{Math.max(from, 128), to});
+            }
+        }
+
+        void addAll(CharSet other) {
+            if (other.negated) {
+                throw new Unsupported("Negated class in a class");
+            }
+            low |= other.low;
+            high |= other.high;
+            ranges.addAll(other.ranges);
+        }
+
+        CharSet negate() {
+            negated = !negated;
+            return this;
+        }
+
+        boolean matches(char c) {
+            boolean in;
+            if (c < 64) {
+                in = (low & (1L << c)) != 0;
+            } else if (c < 128) {
+                in = (high & (1L << (c - 64))) != 0;
+            } else {
+                in = false;
+                for (int[] range : ranges) {
+                    if (c >= range[0] && c <= range[1]) {
+                        in = true;
+                        break;
+                    }
+                }
+            }
+            return in != negated;
+        }
+    }
+
+    /*
+    The pattern, parsed.
+     */
+    private static abstract class Node {
+    }
+
+    private static class Chars extends Node {
+        private final CharSet set;
+
+        Chars(CharSet set) {
+            this.set = set;
+        }
+    }
+
+    private static class Concat extends Node {
+        private final List<Node> nodes = new ArrayList<Node>();
+    }
+
+    private static class Alternation extends Node {
+        private final List<Node> nodes = new ArrayList<Node>();
+    }
+
+    private static class Repeat extends Node {
+        private final Node node;
+        private final int min;
+        // -1 for unbounded
+        private final int max;
+
+        Repeat(Node node, int min, int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    /*
+    Recursive descent over the subset of the syntax with the same meaning for a DFA.
+     */
+    private static class Parser {
+        private final String regex;
+        private int at = 0;
+        private boolean startAnchored = false;
+        private boolean endAnchored = false;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        Node parse() {
+            int end = regex.length();
+            if (regex.startsWith("^")) {
+                startAnchored = true;
+                at = 1;
+            }
+            if (end > at && regex.charAt(end - 1) == '$' && !escaped(end - 1)) {
+                endAnchored = true;
+            }
+            if ((startAnchored || endAnchored) && hasTopLevelAlternation(regex)) {
+                throw new Unsupported("Anchors with a top level alternation");
+            }
+            int limit = endAnchored ? end - 1 : end;
+            Node node = alternation(limit);
+            if (at != limit) {
+                throw new Unsupported("Unbalanced ')' at " + at);
+            }
+            return node;
+        }
+
+        private boolean escaped(int index) {
+            int slashes = 0;
+            for (int i = index - 1; i >= 0 && regex.charAt(i) == '\\'; i--) {
+                slashes++;
+            }
+            return slashes % 2 == 1;
+        }
+
+        private Node alternation(int limit) {
+            Alternation alternation = new Alternation();
+            alternation.nodes.add(concat(limit));
+            while (at < limit && regex.charAt(at) == '|') {
+                at++;
+                alternation.nodes.add(concat(limit));
+            }
+            return alternation.nodes.size() == 1 ? alternation.nodes.get(0) : alternation;
+        }
+
+        private Node concat(int limit) {
+            Concat concat = new Concat();
+            while (at < limit && regex.charAt(at) != '|' && regex.charAt(at) != ')') {
+                concat.nodes.add(repeat(limit));
+            }
+            return concat;
+        }
+
+        private Node repeat(int limit) {
+            Node node = atom(limit);
+            if (at < limit) {
+                char c = regex.charAt(at);
+                int min = -1;
+                int max = -1;
+                if (c == '*') {
+                    min = 0;
+                    at++;
+                } else if (c == '+') {
+                    min = 1;
+                    at++;
+                } else if (c == '?') {
+                    min = 0;
+                    max = 1;
+                    at++;
+                } else if (c == '{') {
+                    int close = regex.indexOf('}', at);
+                    if (close < 0 || close >= limit) {
+                        throw new Unsupported("Unclosed '{' at " + at);
+                    }
+                    String[] bounds = regex.substring(at + 1, close).split(",", -1);
+                    try {
+                        min = Integer.parseInt(bounds[0]);
+                        max = bounds.length == 1 ? min : bounds[1].isEmpty() ? -1 : Integer.parseInt(bounds[1]);
+                    } catch (NumberFormatException nfe) {
+                        throw new Unsupported("Bad repeat at " + at);
+                    }
+                    if (bounds.length > 2) {
+                        throw new Unsupported("Bad repeat at " + at);
+                    }
+                    at = close + 1;
+                }
+                if (min >= 0) {
+                    if (at < limit) {
+                        char mode = regex.charAt(at);
+                        if (mode == '?') {
+                            // Lazy: another match order, the same records match.
+                            at++;
+                        } else if (mode == '+') {
+                            throw new Unsupported("Possessive quantifier at " + at);
+                        }
+                    }
+                    if (at < limit && "*+?{".indexOf(regex.charAt(at)) >= 0) {
+                        throw new Unsupported("Repeated quantifier at " + at);
+                    }
+                    return new Repeat(node, min, max);
+                }
+            }
+            return node;
+        }
+
+        private Node atom(int limit) {
+            char c = regex.charAt(at);
+            switch (c) {
+                case '(':
+                    at++;
+                    if (regex.startsWith("?:", at)) {
+                        at += 2;
+                    } else if (regex.startsWith("?<", at) && at + 2 < limit
+                            && regex.charAt(at + 2) != '=' && regex.charAt(at + 2) != '!') {
+                        // Named group
+                        int close = regex.indexOf('>', at);
+                        if (close < 0) {
+                            throw new Unsupported("Bad group name at " + at);
+                        }
+                        at = close + 1;
+                    } else if (regex.startsWith("?", at)) {
+                        throw new Unsupported("Special group at " + at);
+                    }
+                    Node node = alternation(limit);
+                    if (at >= limit || regex.charAt(at) != ')') {
+                        throw new Unsupported("Unclosed group");
+                    }
+                    at++;
+                    return node;
+                case '[':
+                    return new Chars(charClass(limit));
+                case '.':
+                    at++;
+                    // Any char but the line terminators.
+                    CharSet dot = new CharSet();
+                    dot.add('\n', '\n');
+                    dot.add('\r', '\r');
+                    dot.add('\u0085', '\u0085');
+                    dot.add('\u2028', '\u2029');
+                    return new Chars(dot.negate());
+                case '\\':
+                    return new Chars(escape(limit, false));
+                case '^':
+                case '$':
+                    throw new Unsupported("Anchor inside the pattern at " + at);
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw new Unsupported("Dangling quantifier at " + at);
+                default:
+                    at++;
+                    return new Chars(CharSet.of(c));
+            }
+        }
+
+        private CharSet charClass(int limit) {
+            // at is on '['
+            at++;
+            CharSet set = new CharSet();
+            boolean negated = false;
+            if (at < limit && regex.charAt(at) == '^') {
+                negated = true;
+                at++;
+            }
+            if (at < limit && regex.charAt(at) == ']') {
+                throw new Unsupported("']' first in a class at " + at);
+            }
+            while (at < limit && regex.charAt(at) != ']') {
+                char c = regex.charAt(at);
+                if (c == '[' || regex.startsWith("&&", at)) {
+                    throw new Unsupported("Nested class at " + at);
+                }
+                int from;
+                if (c == '\\') {
+                    CharSet escaped = escape(limit, true);
+                    Integer single = singleChar(escaped);
+                    if (single == null) {
+                        set.addAll(escaped);
+                        continue;
+                    }
+                    from = single;
+                } else {
+                    from = c;
+                    at++;
+                }
+                if (at + 1 < limit && regex.charAt(at) == '-' && regex.charAt(at + 1) != ']') {
+                    at++;
+                    int to;
+                    if (regex.charAt(at) == '\\') {
+                        Integer single = singleChar(escape(limit, true));
+                        if (single == null) {
+                            throw new Unsupported("Bad range in a class at " + at);
+                        }
+                        to = single;
+                    } else if (regex.charAt(at) == '[') {
+                        throw new Unsupported("Nested class at " + at);
+                    } else {
+                        to = regex.charAt(at++);
+                    }
+                    if (to < from) {
+                        throw new Unsupported("Bad range in a class at " + at);
+                    }
+                    set.add(from, to);
+                } else {
+                    set.add(from, from);
+                }
+            }
+            if (at >= limit) {
+                throw new Unsupported("Unclosed class");
+            }
+            at++;
+            return negated ? set.negate() : set;
+        }
+
+        private static Integer singleChar(CharSet set) {
+            int ascii = Long.bitCount(set.low) + Long.bitCount(set.high);
+            if (set.negated) {
+                return null;
+            }
+            if (ascii == 1 && set.ranges.isEmpty()) {
+                return set.low != 0 ? Long.numberOfTrailingZeros(set.low) : 64 + Long.numberOfTrailingZeros(set.high);
+            }
+            if (ascii == 0 && set.ranges.size() == 1 && set.ranges.get(0)[0] == set.ranges.get(0)[1]) {
+                return set.ranges.get(0)[0];
+            }
+            return null;
+        }
+
+        /*
+        An escape, at '\\'.  The shorthand classes are ASCII only, as without UNICODE_CHARACTER_CLASS.
+         */
+        private CharSet escape(int limit, boolean inClass) {
+            if (at + 1 >= limit) {
+                throw new Unsupported("Trailing '\\'");
+            }
+            char e = regex.charAt(at + 1);
+            at += 2;
+            CharSet set = new CharSet();
+            switch (e) {
+                case 'd':
+                    set.add('0', '9');
+                    return set;
+                case 'D':
+                    set.add('0', '9');
+                    return inClass ? complement(set) : set.negate();
+                case 'w':
+                    set.add('a', 'z');
+                    set.add('A', 'Z');
+                    set.add('0', '9');
+                    set.add('_', '_');
+                    return set;
+                case 'W':
+                    set.add('a', 'z');
+                    set.add('A', 'Z');
+                    set.add('0', '9');
+                    set.add('_', '_');
+                    return inClass ? complement(set) : set.negate();
+                case 's':
+                    set.add(' ', ' ');
+                    set.add('\t', '\r');
+                    return set;
+                case 'S':
+                    set.add(' ', ' ');
+                    set.add('\t', '\r');
+                    return inClass ? complement(set) : set.negate();
+                case 't':
+                    return CharSet.of('\t');
+                case 'n':
+                    return CharSet.of('\n');
+                case 'r':
+                    return CharSet.of('\r');
+                case 'f':
+                    return CharSet.of('\f');
+                case 'a':
+                    return CharSet.of('\u0007');
+                case 'e':
+                    return CharSet.of('\u001B');
+                case 'x':
+                    return CharSet.of((char) hex(2));
+                case 'u':
+                    return CharSet.of((char) hex(4));
+                default:
+                    if ((e >= 'a' && e <= 'z') || (e >= 'A' && e <= 'Z') || (e >= '0' && e <= '9')) {
+                        throw new Unsupported("Escape '\\" + e + "'");
+                    }
+                    return CharSet.of(e);
+            }
+        }
+
+        private int hex(int digits) {
+            if (at + digits > regex.length()) {
+                throw new Unsupported("Bad hex escape at " + at);
+            }
+            try {
+                int value = Integer.parseInt(regex.substring(at, at + digits), 16);
+                at += digits;
+                return value;
+            } catch (NumberFormatException nfe) {
+                throw new Unsupported("Bad hex escape at " + at);
+            }
+        }
+
+        /*
+        The chars not in an ASCII set, as a set that can be added to a class.
+         */
+        private static CharSet complement(CharSet ascii) {
+            CharSet set = new CharSet();
+            set.low = ~ascii.low;
+            set.high = ~ascii.high;
+            set.ranges.add(new int[]{128, 0xFFFF});
+            return set;
+        }
+    }
+
+    /*
+    Thompson's construction, compiled back to front: each node is given the state to go to
+    after it.  State 0 is the MATCH.
+     */
+    private static class Builder {
+        private final List<Integer> kinds = new ArrayList<Integer>(Collections.singletonList(MATCH));
+        private final List<CharSet> sets = new ArrayList<CharSet>(Collections.singletonList((CharSet) null));
+        private final List<Integer> outs = new ArrayList<Integer>(Collections.singletonList(-1));
+        private final List<Integer> outs1 = new ArrayList<Integer>(Collections.singletonList(-1));
+
+        private int add(int kind, CharSet set, int out, int out1) {
+            if (kinds.size() >= MAX_NFA_STATES) {
+                throw new Unsupported("More than " + MAX_NFA_STATES + " NFA states");
+            }
+            kinds.add(kind);
+            sets.add(set);
+            outs.add(out);
+            outs1.add(out1);
+            return kinds.size() - 1;
+        }
+
+        int compile(Node node, int next) {
+            if (node instanceof Chars) {
+                return add(CHAR, ((Chars) node).set, next, -1);
+            }
+            if (node instanceof Concat) {
+                List<Node> nodes = ((Concat) node).nodes;
+                for (int i = nodes.size() - 1; i >= 0; i--) {
+                    next = compile(nodes.get(i), next);
+                }
+                return next;
+            }
+            if (node instanceof Alternation) {
+                List<Node> nodes = ((Alternation) node).nodes;
+                int rtn = compile(nodes.get(nodes.size() - 1), next);
+                for (int i = nodes.size() - 2; i >= 0; i--) {
+                    rtn = add(SPLIT, null, compile(nodes.get(i), next), rtn);
+                }
+                return rtn;
+            }
+            Repeat repeat = (Repeat) node;
+            int rtn = next;
+            if (repeat.max < 0) {
+                // A loop: the split is made first, so the body can return to it.
+                int loop = add(SPLIT, null, -1, next);
+                outs.set(loop, compile(repeat.node, loop));
+                rtn = loop;
+            } else {
+                for (int i = repeat.min; i < repeat.max; i++) {
+                    rtn = add(SPLIT, null, compile(repeat.node, rtn), next);
+                }
+            }
+            for (int i = 0; i < repeat.min; i++) {
+                rtn = compile(repeat.node, rtn);
+            }
+            return rtn;
+        }
+
+        int[] kinds() {
+            return toArray(kinds);
+        }
+
+        int[] outs() {
+            return toArray(outs);
+        }
+
+        int[] outs1() {
+            return toArray(outs1);
+        }
+
+        private static int[] toArray(List<Integer> list) {
+            int[] rtn = new int[list.size()];
+            for (int i = 0; i < rtn.length; i++) {
+                rtn[i] = list.get(i);
+            }
+            return rtn;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.parsers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ *
+ * A bounded, least-recently-used cache of compiled RegEx Patterns, keyed by the
+ * regex string and the compile flags.
+ *
+ * Compiling a Pattern is far more expensive than matching a short line with it, so
+ * components that receive their regex per FlowFile (Expression Language) should look
+ * the Pattern up here instead of calling Pattern.compile each time.
+ *
+ * Each entry also holds the LayoutPattern analysis of its Pattern, made on first use, so
+ * the analysis is dropped with the Pattern.
+ */
+public class PatternCache {
+
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private static final PatternCache SHARED = new PatternCache(DEFAULT_MAX_SIZE);
+
+    private final int maxSize;
+    private final Map<Key, Entry> patterns;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * The cache shared by all the parsers and validators in this bundle.
+     */
+    public static PatternCache getShared() {
+        return SHARED;
+    }
+
+    public PatternCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pattern cache size must be at least 1");
+        }
+        this.maxSize = maxSize;
+        this.patterns = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > PatternCache.this.maxSize;
+            }
+        };
+    }
+
+    public Pattern get(String regex) {
+        return get(regex, 0);
+    }
+
+    public Pattern get(String regex, int flags) {
+        return entry(regex, flags).pattern;
+    }
+
+    /**
+     * The LayoutPattern analysis of the regex, made once per cached Pattern.
+     */
+    public LayoutPattern getLayout(String regex) {
+        return getLayout(regex, 0);
+    }
+
+    public LayoutPattern getLayout(String regex, int flags) {
+        return entry(regex, flags).layout();
+    }
+
+    /**
+     * The analysis of a Pattern compiled elsewhere, cached as its regex and flags.
+     */
+    public LayoutPattern getLayout(Pattern pattern) {
+        Key key = new Key(pattern.pattern(), pattern.flags());
+        Entry entry;
+        synchronized (patterns) {
+            entry = patterns.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+                entry = new Entry(pattern);
+                patterns.put(key, entry);
+            }
+        }
+        return entry.layout();
+    }
+
+    private Entry entry(String regex, int flags) {
+        Key key = new Key(regex, flags);
+        synchronized (patterns) {
+            Entry entry = patterns.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry;
+            }
+        }
+        // Compile outside the lock.  Two threads may race to compile the same
+        // regex, but the result is identical and the loser is simply replaced.
+        misses.incrementAndGet();
+        Entry entry = new Entry(Pattern.compile(regex, flags));
+        synchronized (patterns) {
+            patterns.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the cached Pattern, or null when it hasn't been compiled yet.  Only
+     * a hit is counted; follow a null with get() to compile and count the miss.
+     */
+    public Pattern getIfPresent(String regex) {
+        return getIfPresent(regex, 0);
+    }
+
+    public Pattern getIfPresent(String regex, int flags) {
+        Key key = new Key(regex, flags);
+        synchronized (patterns) {
+            Entry entry = patterns.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry.pattern;
+            }
+            return null;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int size() {
+        synchronized (patterns) {
+            return patterns.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (patterns) {
+            patterns.clear();
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+
+    private static final class Entry {
+        private final Pattern pattern;
+        private volatile LayoutPattern layout;
+
+        private Entry(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        /*
+        Analysed outside the cache's lock.  Racing threads make the same analysis, and the
+        last one is kept.
+         */
+        private LayoutPattern layout() {
+            LayoutPattern rtn = layout;
+            if (rtn == null) {
+                rtn = new LayoutPattern(pattern);
+                layout = rtn;
+            }
+            return rtn;
+        }
+    }
+
+    private static final class Key {
+        private final String regex;
+        private final int flags;
+
+        private Key(String regex, int flags) {
+            if (regex == null) {
+                throw new NullPointerException("regex");
+            }
+            this.regex = regex;
+            this.flags = flags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return flags == other.flags && regex.equals(other.regex);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * regex.hashCode() + flags;
+        }
+    }
+}
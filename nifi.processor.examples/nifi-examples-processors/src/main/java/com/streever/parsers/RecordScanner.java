@@ -0,0 +1,341 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.parsers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *
+ * Splits a stream into records on a delimiter, working on the raw bytes.
+ *
+ * The stream is read in large blocks and the delimiter is located in the byte buffer.
+ * Each record is decoded into a single reused char buffer and handed out as a
+ * CharSequence view, so no String is created per record.  The view is only valid
+ * until the next call to next(); call toString() on it to keep a copy.
+ *
+ * When the delimiter is "\n", a trailing "\r" is dropped from each record so CRLF
+ * files behave as they did with BufferedReader.readLine().
+ *
+ * The delimiter is matched on code unit boundaries, so it works for UTF-16 and UTF-32 as
+ * well.  "UTF-16" is read big-endian, as Java writes it; use UTF-16LE for little-endian
+ * files.
+ */
+public class RecordScanner {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final String DEFAULT_DELIMITER = "\n";
+
+    private final InputStream inputStream;
+    private final Charset charset;
+    private final byte[] delimiter;
+    private final boolean stripCarriageReturn;
+    private final byte[] carriageReturn;
+    // Bytes per code unit; the delimiter only matches on a multiple of it.
+    private final int unitLength;
+    // A byte order mark the charset puts in front of what it encodes.
+    private final int markLength;
+    // ASCII compatible charsets can copy 7 bit bytes straight to chars.
+    private final boolean asciiCompatible;
+    private final CharsetDecoder decoder;
+
+    private byte[] buffer;
+    private int bufferStart = 0;
+    private int bufferEnd = 0;
+    private boolean eof = false;
+
+    private char[] chars = new char[256];
+    private CharBuffer record = CharBuffer.wrap(chars);
+
+    private long position = 0;
+    private long recordNumber = 0;
+    private long recordOffset = -1;
+    private int recordByteLength = 0;
+    private boolean recordAscii = true;
+
+    public RecordScanner(InputStream inputStream) {
+        this(inputStream, StandardCharsets.UTF_8, DEFAULT_DELIMITER);
+    }
+
+    public RecordScanner(InputStream inputStream, Charset charset, String delimiter) {
+        this(inputStream, charset, delimiter, DEFAULT_BUFFER_SIZE);
+    }
+
+    public RecordScanner(InputStream inputStream, Charset charset, String delimiter, int bufferSize) {
+        if (inputStream == null) {
+            throw new NullPointerException("inputStream");
+        }
+        if (delimiter == null || delimiter.length() == 0) {
+            throw new IllegalArgumentException("Record delimiter can't be empty");
+        }
+        this.inputStream = inputStream;
+        this.charset = charset != null ? charset : StandardCharsets.UTF_8;
+        this.delimiter = encode(delimiter, this.charset);
+        this.stripCarriageReturn = DEFAULT_DELIMITER.equals(delimiter);
+        this.carriageReturn = encode("\r", this.charset);
+        this.unitLength = unitLength(this.charset);
+        this.markLength = "\n".getBytes(this.charset).length - unitLength;
+        this.asciiCompatible = this.charset.equals(StandardCharsets.UTF_8)
+                || this.charset.equals(StandardCharsets.US_ASCII)
+                || this.charset.equals(StandardCharsets.ISO_8859_1);
+        this.decoder = this.charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.buffer = new byte[Math.max(bufferSize, this.delimiter.length * 2)];
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * The bytes of 'value' in 'charset', without the byte order mark some charsets (ie. UTF-16)
+     * put in front of everything they encode.  Use it for delimiters that are matched in the
+     * middle of a stream.
+     */
+    public static byte[] encode(String value, Charset charset) {
+        byte[] once = value.getBytes(charset);
+        // A mark is written once per encode, so it's what doesn't double when 'value' does.
+        int length = (value + value).getBytes(charset).length - once.length;
+        return once.length == length ? once : Arrays.copyOfRange(once, once.length - length, once.length);
+    }
+
+    /**
+     * The bytes per code unit of 'charset': 1 for UTF-8 and the single byte charsets, 2 for
+     * UTF-16 and 4 for UTF-32.
+     */
+    public static int unitLength(Charset charset) {
+        return encode("\n", charset).length;
+    }
+
+    /**
+     * Turn the escapes \\n, \\r and \\t, as typed into a processor property, into the characters.
+     */
+    public static String unescapeDelimiter(String value) {
+        if (value == null) {
+            return null;
+        }
+        return value.replace("\\n", "\n").replace("\\r", "\r").replace("\\t", "\t");
+    }
+
+    /**
+     * Advance to the next record.
+     *
+     * @return false when the stream is exhausted.
+     */
+    public boolean next() throws IOException {
+        int searchFrom = bufferStart;
+        while (true) {
+            int found = indexOfDelimiter(searchFrom);
+            if (found >= 0) {
+                setRecord(bufferStart, found - bufferStart, delimiter.length);
+                return true;
+            }
+            if (eof) {
+                if (bufferEnd > bufferStart) {
+                    // Last record without a trailing delimiter.
+                    setRecord(bufferStart, bufferEnd - bufferStart, 0);
+                    return true;
+                }
+                return false;
+            }
+            // Only the tail that could hold a partial delimiter needs to be searched again.
+            searchFrom = Math.max(bufferStart, bufferEnd - delimiter.length + 1);
+            int shift = fill();
+            searchFrom -= shift;
+        }
+    }
+
+    /**
+     * True when another record follows the current one.  May read ahead in the stream, but
+     * leaves the current record as it is, so the last record (ie. a footer) can be told
+     * apart without copying every record.
+     */
+    public boolean hasNext() throws IOException {
+        while (bufferStart == bufferEnd && !eof) {
+            fill();
+        }
+        return bufferEnd > bufferStart;
+    }
+
+    /**
+     * The current record, without its delimiter.  Only valid until the next call to next().
+     */
+    public CharSequence getRecord() {
+        return record;
+    }
+
+    /**
+     * The number of the current record, starting at 1.
+     */
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * The byte offset of the start of the current record, from the start of the stream.
+     */
+    public long getRecordOffset() {
+        return recordOffset;
+    }
+
+    /**
+     * The length of the current record in bytes, excluding the delimiter.
+     */
+    public int getRecordByteLength() {
+        return recordByteLength;
+    }
+
+    /**
+     * The number of bytes the first 'chars' characters of the current record occupy in
+     * the stream.  Use with a Matcher.start() to find the byte offset of a match.
+     */
+    public int getByteLength(int chars) {
+        if (recordAscii) {
+            return chars;
+        }
+        return charset.encode(CharBuffer.wrap(record, 0, chars)).remaining() - (chars > 0 ? markLength : 0);
+    }
+
+    /**
+     * Bytes consumed from the stream up to the end of the current record and its delimiter.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    private int indexOfDelimiter(int from) {
+        final byte first = delimiter[0];
+        final int last = bufferEnd - delimiter.length;
+        if (unitLength > 1) {
+            // Records start on a code unit, so bufferStart does too.
+            from += Math.floorMod(bufferStart - from, unitLength);
+        }
+        for (int i = from; i <= last; i += unitLength) {
+            if (buffer[i] == first) {
+                int j = 1;
+                while (j < delimiter.length && buffer[i + j] == delimiter[j]) {
+                    j++;
+                }
+                if (j == delimiter.length) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /*
+    Move the unconsumed bytes to the front of the buffer (growing it when a single record
+    fills it) and read more.  Returns how far the unconsumed bytes moved.
+     */
+    private int fill() throws IOException {
+        int shift = bufferStart;
+        int remaining = bufferEnd - bufferStart;
+        if (shift > 0) {
+            System.arraycopy(buffer, bufferStart, buffer, 0, remaining);
+            bufferStart = 0;
+            bufferEnd = remaining;
+        } else if (bufferEnd == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = inputStream.read(buffer, bufferEnd, buffer.length - bufferEnd);
+        if (read == -1) {
+            eof = true;
+        } else {
+            bufferEnd += read;
+        }
+        return shift;
+    }
+
+    private void setRecord(int start, int length, int delimiterLength) {
+        recordNumber++;
+        recordOffset = position;
+        recordByteLength = length;
+        position += length + delimiterLength;
+        bufferStart = start + length + delimiterLength;
+
+        int decodeLength = length;
+        if (stripCarriageReturn && endsWith(start, decodeLength, carriageReturn)) {
+            decodeLength -= carriageReturn.length;
+        }
+        decode(start, decodeLength);
+    }
+
+    private boolean endsWith(int start, int length, byte[] suffix) {
+        if (length < suffix.length) {
+            return false;
+        }
+        int from = start + length - suffix.length;
+        for (int i = 0; i < suffix.length; i++) {
+            if (buffer[from + i] != suffix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void decode(int start, int length) {
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+            record = CharBuffer.wrap(chars);
+        }
+        recordAscii = asciiCompatible;
+        if (asciiCompatible) {
+            for (int i = 0; i < length; i++) {
+                byte b = buffer[start + i];
+                if (b < 0) {
+                    recordAscii = false;
+                    break;
+                }
+                chars[i] = (char) b;
+            }
+            if (recordAscii) {
+                record.clear();
+                record.limit(length);
+                return;
+            }
+        }
+        record.clear();
+        decoder.reset();
+        ByteBuffer in = ByteBuffer.wrap(buffer, start, length);
+        while (decoder.decode(in, record, true).isOverflow()) {
+            growRecord();
+        }
+        while (decoder.flush(record).isOverflow()) {
+            growRecord();
+        }
+        record.flip();
+    }
+
+    private void growRecord() {
+        int used = record.position();
+        chars = Arrays.copyOf(chars, chars.length * 2);
+        record = CharBuffer.wrap(chars);
+        record.position(used);
+    }
+
+}
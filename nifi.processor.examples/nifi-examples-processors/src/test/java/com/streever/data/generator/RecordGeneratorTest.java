@@ -20,11 +20,30 @@ package com.streever.data.generator;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.streever.data.generator.fields.*;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class RecordGeneratorTest {
 
@@ -154,6 +173,374 @@ public class RecordGeneratorTest {
         }
     }
 
+    /*
+    Compare building the whole payload as a String with streaming it through a RecordStreamWriter.
+     */
+    @Test
+    public void Test051() {
+        ObjectMapper mapper = new ObjectMapper();
+        try {
+            JsonNode rootNode = mapper.readValue(new File("src/main/resources/sample-record-generator.json"), JsonNode.class);
+
+            RecordGenerator recGen = new RecordGenerator(rootNode);
+            int count = 1000000;
+
+            CountingOutputStream out = new CountingOutputStream();
+            long start = new Date().getTime();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                sb.append(recGen.next()).append("\n");
+            }
+            out.write(sb.toString().getBytes());
+            long end = new Date().getTime();
+            report("Payload String", out.count, end - start);
+
+            out = new CountingOutputStream();
+            start = new Date().getTime();
+            RecordStreamWriter writer = new RecordStreamWriter(out, StandardCharsets.UTF_8);
+            for (int i = 0; i < count; i++) {
+                writer.write(recGen.next());
+            }
+            writer.flush();
+            end = new Date().getTime();
+            report("Streamed", out.count, end - start);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /*
+    A seeded schema gives the same records every time, and a different stream gives different ones.
+     */
+    @Test
+    public void SeedTest001() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode rootNode = (ObjectNode) mapper.readValue(new File("src/main/resources/validation-generator.json"), JsonNode.class);
+        rootNode.put("seed", 20161006L);
+
+        RecordGenerator first = new RecordGenerator(rootNode);
+        RecordGenerator second = new RecordGenerator(rootNode);
+        rootNode.put("stream", 1);
+        RecordGenerator other = new RecordGenerator(rootNode);
+
+        int same = 0;
+        for (int i = 0; i < 1000; i++) {
+            String record = first.next();
+            assertEquals(record, second.next());
+            if (record.equals(other.next())) {
+                same++;
+            }
+        }
+        assertEquals(0, same);
+    }
+
+    /*
+    Replay a simulated CDC stream against a map of the live rows: inserts only of keys that
+    aren't live, updates and deletes only of live keys with the row's current image as before.
+     */
+    @Test
+    public void CdcTest001() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode rootNode = mapper.readValue(new File("src/main/resources/sample-record-ordered-key-generator-cdc3.json"), JsonNode.class);
+        RecordGenerator generator = new RecordGenerator(rootNode);
+        int images = 5;
+        String empty = "||||";
+
+        Map<String, String> live = new HashMap<String, String>();
+        int[] ops = new int[3];
+        for (int i = 0; i < 100000; i++) {
+            String[] parts = generator.next().split("\\|", 3);
+            String key = parts[1];
+            String before = parts[2].substring(0, nthIndexOf(parts[2], '|', images));
+            String after = parts[2].substring(before.length() + 1);
+            switch (parts[0]) {
+                case "I":
+                    ops[0]++;
+                    assertEquals(empty, before);
+                    assertTrue(live.put(key, after) == null);
+                    break;
+                case "U":
+                    ops[1]++;
+                    assertEquals(before, live.put(key, after));
+                    String[] was = before.split("\\|", -1);
+                    String[] now = after.split("\\|", -1);
+                    int changed = 0;
+                    for (int f = 0; f < images; f++) {
+                        if (!was[f].equals(now[f]))
+                            changed++;
+                    }
+                    assertTrue(changed <= 1);
+                    break;
+                case "D":
+                    ops[2]++;
+                    assertEquals(empty, after);
+                    assertEquals(before, live.remove(key));
+                    break;
+                default:
+                    fail("Unknown op " + parts[0]);
+            }
+            assertTrue(live.size() <= 1000);
+        }
+        // 1:3:1 once the working set has filled.
+        assertEquals(0.6, ops[1] / 100000.0, 0.02);
+        assertEquals(1.0, ops[0] / (double) ops[2], 0.05);
+    }
+
+    /*
+    Values holding the delimiter, and a key with 10 values for 8 live rows, so inserts draw live
+    keys.  Images are fixed width ("A|B|nn") so the records split without the delimiter.
+     */
+    @Test
+    public void CdcTest002() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode rootNode = mapper.readTree("{\"cdc\": true, \"cdctype\": 3, \"cdcsim\": {\"keys\": 8}, \"delimiter\": \"|\", \"fields\": ["
+                + "{\"number\": {\"key\": true, \"type\": \"int\", \"min\": 0, \"max\": 9}},"
+                + "{\"string\": {\"set\": [\"A|B\"]}},"
+                + "{\"number\": {\"type\": \"int\", \"min\": 10, \"max\": 99}}]}");
+        RecordGenerator generator = new RecordGenerator(rootNode, new SplittableRandom(7));
+
+        Map<String, String> live = new HashMap<String, String>();
+        int[] ops = new int[3];
+        for (int i = 0; i < 20000; i++) {
+            String record = generator.next();
+            String op = record.substring(0, 1);
+            String key = record.substring(2, 3);
+            String before = record.charAt(4) == '|' ? "|" : record.substring(4, 10);
+            String after = record.substring(before.length() + 5);
+            switch (op) {
+                case "I":
+                    ops[0]++;
+                    assertEquals("|", before);
+                    assertTrue(live.put(key, after) == null);
+                    break;
+                case "U":
+                    ops[1]++;
+                    assertEquals(before, live.put(key, after));
+                    assertEquals("A|B|", after.substring(0, 4));
+                    assertEquals(6, after.length());
+                    break;
+                case "D":
+                    ops[2]++;
+                    assertEquals("|", after);
+                    assertEquals(before, live.remove(key));
+                    break;
+                default:
+                    fail("Unknown op " + op);
+            }
+            assertTrue(before.equals("|") || before.matches("A\\|B\\|\\d\\d"));
+            assertTrue(live.size() <= 8);
+        }
+        assertTrue(ops[0] > 0 && ops[1] > 0 && ops[2] > 0);
+    }
+
+    @Test
+    public void CdcTest003() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        // Past the most keys, and too many row offsets for an int array; rejected before allocating.
+        for (String keys : new String[]{"268435457", "4294967296", "268435456"}) {
+            try {
+                new ChangeSimulator(mapper.readTree("{\"keys\": " + keys + "}"), 16, "|", true);
+                fail(keys + " keys should be rejected");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    private static int nthIndexOf(String value, char c, int n) {
+        int at = -1;
+        for (int i = 0; i < n; i++) {
+            at = value.indexOf(c, at + 1);
+        }
+        return at;
+    }
+
+    /*
+    Records/s for a wide (120+ field) schema, rendered by iterating the ordered TreeMap per
+    record as next() used to, and by the compiled FieldPlan.  Same fields and seed for both,
+    so the records must match too.
+     */
+    @Test
+    public void Test053() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode rootNode = (ObjectNode) mapper.readValue(new File("src/main/resources/validation-generator.json"), JsonNode.class);
+        ArrayNode fieldsNode = (ArrayNode) rootNode.get("fields");
+        ArrayNode wide = mapper.createArrayNode();
+        while (wide.size() < 120) {
+            wide.addAll(fieldsNode);
+        }
+        rootNode.set("fields", wide);
+
+        Map<Integer, FieldType> ordered = new TreeMap<Integer, FieldType>();
+        for (FieldType field : buildFields(rootNode, new SplittableRandom(42))) {
+            ordered.put(ordered.size(), field);
+        }
+        FieldPlan plan = new FieldPlan(buildFields(rootNode, new SplittableRandom(42)), ",");
+        System.out.println("Fields: " + plan.size());
+
+        int count = 100000;
+        StringBuilder byMap = new StringBuilder();
+        StringBuilder byPlan = new StringBuilder();
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                byMap.setLength(0);
+                Iterator<Map.Entry<Integer, FieldType>> fieldsIterator = ordered.entrySet().iterator();
+                while (fieldsIterator.hasNext()) {
+                    fieldsIterator.next().getValue().appendValue(byMap);
+                    if (fieldsIterator.hasNext())
+                        byMap.append(",");
+                }
+            }
+            long mapNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                byPlan.setLength(0);
+                plan.appendAll(byPlan);
+            }
+            long planNanos = System.nanoTime() - start;
+
+            assertEquals(byMap.toString(), byPlan.toString());
+            System.out.println("Round " + round + ", TreeMap: " + recordsPerSecond(count, mapNanos) +
+                    " records/s, FieldPlan: " + recordsPerSecond(count, planNanos) + " records/s");
+        }
+    }
+
+    private static long recordsPerSecond(long records, long nanos) {
+        return records * 1000000000L / Math.max(nanos, 1);
+    }
+
+    /*
+    The same source through getValue() and appendValue() has to give the same values.
+     */
+    @Test
+    public void AppendTest001() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        String[] schemas = {"sample-record-generator.json", "sample-null-generator.json",
+                "sample-startstop-generator.json", "validation-generator.json"};
+        for (String schema : schemas) {
+            JsonNode rootNode = mapper.readValue(new File("src/main/resources/" + schema), JsonNode.class);
+            List<FieldType> byValue = buildFields(rootNode, new SplittableRandom(42));
+            List<FieldType> byAppend = buildFields(rootNode, new SplittableRandom(42));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                for (int f = 0; f < byValue.size(); f++) {
+                    sb.setLength(0);
+                    byAppend.get(f).appendValue(sb);
+                    Object value = byValue.get(f).getValue();
+                    if (value instanceof Number) {
+                        // Numbers are written with exactly 'decimals' places, getValue() drops trailing zeros.
+                        assertEquals(schema, 0, new BigDecimal(value.toString()).compareTo(new BigDecimal(sb.toString())));
+                    } else {
+                        assertEquals(schema, String.valueOf(value), sb.toString());
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+    Compare the bytes allocated per record, building a String per field and per record against
+    appending into one reused buffer.
+     */
+    @Test
+    public void Test052() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode rootNode = mapper.readValue(new File("src/main/resources/validation-generator.json"), JsonNode.class);
+        List<FieldType> fields = buildFields(rootNode, new SplittableRandom());
+        int count = 1000000;
+
+        RecordStreamWriter writer = new RecordStreamWriter(new CountingOutputStream(), StandardCharsets.UTF_8);
+        long allocated = allocatedBytes();
+        long start = new Date().getTime();
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (FieldType field : fields) {
+                sb.append(field.getValue()).append(",");
+            }
+            writer.write(sb.toString());
+        }
+        long end = new Date().getTime();
+        System.out.println("getValue(): " + (end - start) + " ms, bytes allocated per record: " +
+                (allocatedBytes() - allocated) / count);
+
+        writer = new RecordStreamWriter(new CountingOutputStream(), StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder();
+        allocated = allocatedBytes();
+        start = new Date().getTime();
+        for (int i = 0; i < count; i++) {
+            sb.setLength(0);
+            for (FieldType field : fields) {
+                field.appendValue(sb);
+                sb.append(",");
+            }
+            writer.write(sb);
+        }
+        end = new Date().getTime();
+        System.out.println("appendValue(): " + (end - start) + " ms, bytes allocated per record: " +
+                (allocatedBytes() - allocated) / count);
+    }
+
+    /*
+    The top level fields of a schema, in declared order.
+     */
+    private List<FieldType> buildFields(JsonNode rootNode, SplittableRandom random) {
+        List<FieldType> fields = new ArrayList<FieldType>();
+        JsonNode fieldsNode = rootNode.get("fields");
+        for (int i = 0; i < fieldsNode.size(); i++) {
+            JsonNode fieldNode = fieldsNode.get(i);
+            if (fieldNode.has("string")) {
+                fields.add(new StringField(fieldNode.get("string"), random.split()));
+            } else if (fieldNode.has("number")) {
+                fields.add(new NumberField(fieldNode.get("number"), random.split()));
+            } else if (fieldNode.has("ip")) {
+                fields.add(new IPAddressField(fieldNode.get("ip"), random.split()));
+            } else if (fieldNode.has("boolean")) {
+                fields.add(new BooleanField(fieldNode.get("boolean"), random.split()));
+            } else if (fieldNode.has("date")) {
+                fields.add(new DateField(fieldNode.get("date"), random.split()));
+            } else if (fieldNode.has("null")) {
+                fields.add(new NullField(fieldNode.get("null"), random.split()));
+            } else if (fieldNode.has("start.stop")) {
+                StartStopFields startStop = new StartStopFields(fieldNode.get("start.stop"), random.split());
+                fields.add(startStop.getStartField());
+                fields.add(startStop.getStopField());
+            } else if (fieldNode.has("nested")) {
+                fields.add(new NestedField(fieldNode.get("nested"), random.split()));
+            }
+        }
+        return fields;
+    }
+
+    private long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private void report(String name, long bytes, long ms) {
+        double mb = bytes / (1024d * 1024d);
+        System.out.println(name + ": " + String.format("%.1f", mb) + " MB in (ms): " + ms +
+                " (" + String.format("%.1f", mb * 1000d / Math.max(ms, 1)) + " MB/s)");
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count += len;
+        }
+    }
+
     @Test
     public void Test060() {
         ObjectMapper mapper = new ObjectMapper();
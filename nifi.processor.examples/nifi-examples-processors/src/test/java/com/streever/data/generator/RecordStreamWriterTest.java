@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class RecordStreamWriterTest {
+
+    @Test
+    public void WriterTest001() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordStreamWriter writer = new RecordStreamWriter(out, StandardCharsets.UTF_8);
+        writer.write("one,1");
+        writer.write("deux,é");
+        writer.flush();
+
+        assertEquals(2, writer.getRecordCount());
+        assertEquals("one,1\ndeux,é\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(out.size(), writer.getBytesWritten());
+    }
+
+    /*
+    Records that straddle the buffer have to come out whole, in both the ASCII and the encoder paths.
+     */
+    @Test
+    public void WriterTest002() throws Exception {
+        Charset[] charsets = {StandardCharsets.UTF_8, StandardCharsets.UTF_16LE};
+        for (Charset charset : charsets) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            RecordStreamWriter writer = new RecordStreamWriter(out, charset, "|", 1024);
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 500; i++) {
+                String record = "record-" + i + (i % 3 == 0 ? "-ü€" : "");
+                writer.write(record);
+                expected.append(record).append("|");
+            }
+            writer.flush();
+            assertEquals(expected.toString(), new String(out.toByteArray(), charset));
+        }
+    }
+
+    /*
+    A charset with a byte order mark writes it once per stream, not once per record.
+     */
+    @Test
+    public void WriterTest003() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordStreamWriter writer = new RecordStreamWriter(out, StandardCharsets.UTF_16, "\n", 1024);
+        writer.write("one,1");
+        writer.write("");
+        writer.write("deux,\u00e9");
+        writer.flush();
+
+        String expected = "one,1\n\ndeux,\u00e9\n";
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_16), out.toByteArray());
+
+        out = new ByteArrayOutputStream();
+        writer.reset(out);
+        writer.write("two");
+        writer.flush();
+        assertArrayEquals("two\n".getBytes(StandardCharsets.UTF_16), out.toByteArray());
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.distribution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.streever.data.generator.fields.StringField;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DistributionTest {
+
+    private static final int DRAWS = 200000;
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void WeightedTest001() {
+        double[] weights = {5, 0, 1, 3, 1};
+        DiscreteDistribution distribution = new DiscreteDistribution(weights);
+        SplittableRandom random = new SplittableRandom(3);
+        int[] counts = new int[weights.length];
+        for (int i = 0; i < DRAWS; i++) {
+            counts[distribution.nextIndex(random, weights.length)]++;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            assertEquals("item " + i, weights[i] / 10, counts[i] / (double) DRAWS, 0.01);
+        }
+    }
+
+    @Test
+    public void ZipfianTest001() {
+        DiscreteDistribution distribution = DiscreteDistribution.zipfian(100, 1.0);
+        double harmonic = 0;
+        for (int k = 1; k <= 100; k++) {
+            harmonic += 1.0 / k;
+        }
+        SplittableRandom random = new SplittableRandom(5);
+        int[] counts = new int[100];
+        for (int i = 0; i < DRAWS; i++) {
+            double value = distribution.next(random);
+            assertTrue(value >= 0 && value < 1);
+            counts[(int) (value * 100)]++;
+        }
+        assertEquals(1 / harmonic, counts[0] / (double) DRAWS, 0.01);
+        assertEquals(0.5 / harmonic, counts[1] / (double) DRAWS, 0.01);
+        assertEquals(0.01 / harmonic, counts[99] / (double) DRAWS, 0.002);
+    }
+
+    @Test
+    public void ContinuousTest001() {
+        SplittableRandom random = new SplittableRandom(9);
+
+        NormalDistribution normal = new NormalDistribution(0.3, 0.05);
+        double sum = 0;
+        int within = 0;
+        for (int i = 0; i < DRAWS; i++) {
+            double value = normal.next(random);
+            assertTrue(value >= 0 && value < 1);
+            sum += value;
+            if (Math.abs(value - 0.3) < 0.05) {
+                within++;
+            }
+        }
+        assertEquals(0.3, sum / DRAWS, 0.005);
+        assertEquals(0.683, within / (double) DRAWS, 0.01);
+
+        ExponentialDistribution exponential = new ExponentialDistribution(5.0);
+        int firstFifth = 0;
+        for (int i = 0; i < DRAWS; i++) {
+            double value = exponential.next(random);
+            assertTrue(value >= 0 && value < 1);
+            if (value < 0.2) {
+                firstFifth++;
+            }
+        }
+        assertEquals((1 - Math.exp(-1)) / (1 - Math.exp(-5)), firstFifth / (double) DRAWS, 0.01);
+    }
+
+    /*
+    A distribution on a SET string field picks the set entries by weight.
+     */
+    @Test
+    public void FieldTest001() throws Exception {
+        JsonNode node = mapper.readValue("{\"set\": [\"hot\", \"warm\", \"cold\"], " +
+                "\"distribution\": {\"type\": \"weighted\", \"weights\": [8, 1.5, 0.5]}}", JsonNode.class);
+        StringField field = new StringField(node, new SplittableRandom(1));
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < DRAWS; i++) {
+            String value = field.getValue();
+            counts.put(value, counts.containsKey(value) ? counts.get(value) + 1 : 1);
+        }
+        assertEquals(0.8, counts.get("hot") / (double) DRAWS, 0.01);
+        assertEquals(0.05, counts.get("cold") / (double) DRAWS, 0.01);
+
+        node = mapper.readValue("{\"set\": [\"a\", \"b\", \"c\", \"d\"], \"distribution\": \"zipfian\"}", JsonNode.class);
+        field = new StringField(node, new SplittableRandom(1));
+        int first = 0;
+        for (int i = 0; i < DRAWS; i++) {
+            if ("a".equals(field.getValue())) {
+                first++;
+            }
+        }
+        // 1 / (1 + 1/2 + 1/3 + 1/4)
+        assertEquals(0.48, first / (double) DRAWS, 0.01);
+    }
+}
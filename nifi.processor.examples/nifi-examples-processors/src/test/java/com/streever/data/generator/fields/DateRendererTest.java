@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.fields;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.SplittableRandom;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DateRendererTest {
+
+    private static final String[] PATTERNS = {"yyyy-MM-dd HH:mm:ss", "MM/dd/yyyy", "yyyy-MM-dd'T'HH:mm:ss.SSSZ",
+            "EEE, d MMM yyyy hh:mm a", "yyyyMMddkkmmssS", "K:mm 'o''clock' z", "HH:mm:ss", "HH:mm dd/MM/yyyy"};
+
+    private static final String[] ZONES = {"UTC", "America/New_York", "Asia/Kolkata", "Australia/Lord_Howe"};
+
+    /*
+    Same output as SimpleDateFormat, across DST changes and zones with half hour offsets.
+     */
+    @Test
+    public void RenderTest001() {
+        SplittableRandom random = new SplittableRandom(11);
+        long min = -100L * 365 * 24 * 3600 * 1000;
+        long max = 60L * 365 * 24 * 3600 * 1000;
+        for (String zone : ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            for (String pattern : PATTERNS) {
+                DateRenderer renderer = new DateRenderer(pattern, timeZone);
+                SimpleDateFormat df = new SimpleDateFormat(pattern);
+                df.setTimeZone(timeZone);
+                for (int i = 0; i < 20000; i++) {
+                    // Mostly a narrow range, so the cache is hit, with some from anywhere.
+                    long millis = i % 10 == 0 ? min + (long) ((max - min) * random.nextDouble())
+                            : 1478400000000L + (long) (3L * 24 * 3600 * 1000 * random.nextDouble());
+                    assertEquals(zone + " " + pattern, df.format(new Date(millis)), renderer.format(millis));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void RenderTest002() {
+        assertTrue(new DateRenderer("yyyy-MM-dd HH:mm:ss").isCompiled());
+        assertTrue(new DateRenderer("yyyy-MM-dd").isCompiled());
+        assertFalse(new DateRenderer("HH:mm dd/MM/yyyy").isCompiled());
+    }
+
+    @Test
+    public void Test050() {
+        String pattern = "yyyy-MM-dd HH:mm:ss";
+        SimpleDateFormat df = new SimpleDateFormat(pattern);
+        DateRenderer renderer = new DateRenderer(pattern);
+        SplittableRandom random = new SplittableRandom();
+        long min = 1262304000000L;
+        long range = 3L * 365 * 24 * 3600 * 1000;
+        StringBuilder sb = new StringBuilder();
+        int count = 2000000;
+
+        long start = new Date().getTime();
+        for (int i = 0; i < count; i++) {
+            sb.setLength(0);
+            sb.append(df.format(new Date(min + (long) (range * random.nextDouble()))));
+        }
+        long end = new Date().getTime();
+        System.out.println("SimpleDateFormat, " + count + " in (ms): " + (end - start));
+
+        start = new Date().getTime();
+        for (int i = 0; i < count; i++) {
+            sb.setLength(0);
+            renderer.append(sb, min + (long) (range * random.nextDouble()));
+        }
+        end = new Date().getTime();
+        System.out.println("DateRenderer, " + count + " in (ms): " + (end - start));
+    }
+}
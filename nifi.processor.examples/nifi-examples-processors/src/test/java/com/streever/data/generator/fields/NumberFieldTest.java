@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.fields;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.SplittableRandom;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NumberFieldTest {
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void FixedTest001() {
+        assertEquals("12.05", fixed(1205, 2));
+        assertEquals("0.00", fixed(0, 2));
+        assertEquals("0.007", fixed(7, 3));
+        assertEquals("-3.50", fixed(-350, 2));
+        assertEquals("42", fixed(42, 0));
+        assertEquals("1.0", fixed(10, 1));
+    }
+
+    /*
+    Every value has exactly 'decimals' places and stays within min and max, pooled or not.
+     */
+    @Test
+    public void DecimalsTest001() throws Exception {
+        check("{\"type\": \"float\", \"decimals\": 2, \"min\": 10, \"max\": 1000}", "^\\d{2,4}\\.\\d{2}$", 10, 1000);
+        check("{\"type\": \"double\", \"decimals\": 4, \"min\": -5, \"max\": 5}", "^-?\\d\\.\\d{4}$", -5, 5);
+        check("{\"type\": \"double\", \"decimals\": 0, \"min\": 0, \"max\": 10}", "^\\d{1,2}$", 0, 10);
+        check("{\"type\": \"int\", \"min\": 100, \"max\": 1000}", "^\\d{3}$", 100, 1000);
+        check("{\"type\": \"long\", \"min\": 10000000000, \"max\": 20000000000}", "^\\d{11}$", 10000000000L, 20000000000L);
+        check("{\"type\": \"double\", \"decimals\": 3, \"min\": 1, \"max\": 2, \"pool\": {\"size\": 5}}", "^1\\.\\d{3}|2\\.000$", 1, 2);
+    }
+
+    private void check(String json, String regex, double min, double max) throws Exception {
+        NumberField field = new NumberField(mapper.readValue(json, JsonNode.class), new SplittableRandom(7));
+        Pattern pattern = Pattern.compile(regex);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.setLength(0);
+            field.appendValue(sb);
+            assertTrue(json + " -> " + sb, pattern.matcher(sb).matches());
+            double value = Double.parseDouble(sb.toString());
+            assertTrue(json + " -> " + sb, value >= min && value <= max);
+        }
+    }
+
+    private String fixed(long units, int decimals) {
+        StringBuilder sb = new StringBuilder();
+        NumberField.appendFixed(sb, units, decimals);
+        return sb.toString();
+    }
+
+    /*
+    The old path: DecimalFormat to a String, parsed back to a boxed Double, then toString() into the record.
+     */
+    @Test
+    public void Test050() throws Exception {
+        NumberField field = new NumberField(mapper.readValue("{\"type\": \"double\", \"decimals\": 4, \"min\": 10, \"max\": 1000}",
+                JsonNode.class));
+        java.text.DecimalFormat decimalFormat = new java.text.DecimalFormat("#.####");
+        SplittableRandom random = new SplittableRandom();
+        StringBuilder sb = new StringBuilder();
+        int count = 5000000;
+
+        long start = new Date().getTime();
+        for (int i = 0; i < count; i++) {
+            sb.setLength(0);
+            Double value = 10d + (990d * random.nextDouble());
+            sb.append(Double.valueOf(decimalFormat.format(value)));
+        }
+        long end = new Date().getTime();
+        System.out.println("DecimalFormat doubles, " + count + " in (ms): " + (end - start));
+
+        start = new Date().getTime();
+        for (int i = 0; i < count; i++) {
+            sb.setLength(0);
+            field.appendValue(sb);
+        }
+        end = new Date().getTime();
+        System.out.println("NumberField doubles, " + count + " in (ms): " + (end - start));
+    }
+}
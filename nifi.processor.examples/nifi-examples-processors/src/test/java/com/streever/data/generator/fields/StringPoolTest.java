@@ -0,0 +1,180 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.fields;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StringPoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    private static final String[] VALUES = new String[]{"ABC", "", "café", "€100", "😀 smile", "x"};
+
+    @Test
+    public void PoolTest001() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            StringPool.Builder builder = new StringPool.Builder(2, 4);
+            for (String value : VALUES) {
+                builder.add(value);
+            }
+            StringPool pool = builder.build(offHeap);
+            assertEquals(!offHeap, pool.isHeap());
+            assertEquals(VALUES.length, pool.size());
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < VALUES.length; i++) {
+                assertEquals(VALUES[i], pool.get(i));
+                pool.append(sb, i);
+            }
+            assertEquals(String.join("", VALUES), sb.toString());
+        }
+    }
+
+    /*
+    A prebuilt file, with Windows line ends too, mapped and shared by the fields that name it.
+     */
+    @Test
+    public void FileTest001() throws Exception {
+        File file = folder.newFile("pool.txt");
+        OutputStream out = new FileOutputStream(file);
+        for (int i = 0; i < VALUES.length; i++) {
+            out.write((VALUES[i] + (i % 2 == 0 ? "\r\n" : "\n")).getBytes(StandardCharsets.UTF_8));
+        }
+        out.close();
+
+        StringPool pool = StringPool.map(file);
+        assertFalse(pool.isHeap());
+        for (int i = 0; i < VALUES.length; i++) {
+            assertEquals(VALUES[i], pool.get(i));
+        }
+
+        String json = "{\"random\": {\"pool\": {\"file\": \"" + file.getPath() + "\"}}}";
+        StringField first = new StringField(mapper.readValue(json, JsonNode.class), new SplittableRandom(1));
+        StringField second = new StringField(mapper.readValue(json, JsonNode.class), new SplittableRandom(2));
+        assertSame(StringPool.getShared("file:" + file.getCanonicalPath()), StringPool.getShared("file:" + file.getCanonicalPath()));
+        Set<String> values = new HashSet<String>();
+        for (String value : VALUES) {
+            values.add(value);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(values.contains(first.getValue()));
+            assertTrue(values.contains(second.getValue()));
+        }
+    }
+
+    /*
+    Fields naming the same pool draw from the first one built.
+     */
+    @Test
+    public void SharedTest001() throws Exception {
+        String json = "{\"random\": {\"min\": 8, \"max\": 8, \"pool\": {\"size\": 50, \"shared\": \"SharedTest001\", \"offheap\": true}}}";
+        StringField first = new StringField(mapper.readValue(json, JsonNode.class), new SplittableRandom(1));
+        StringField second = new StringField(mapper.readValue(json, JsonNode.class), new SplittableRandom(2));
+        StringPool pool = StringPool.getShared("pool:SharedTest001");
+        assertNotNull(pool);
+        Set<String> values = new HashSet<String>();
+        for (int i = 0; i < pool.size(); i++) {
+            values.add(pool.get(i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(values.contains(first.getValue()));
+            assertTrue(values.contains(second.getValue()));
+        }
+    }
+
+    /*
+    Heap cost of a million pooled values, as Strings and packed, and the time to render them.
+     */
+    @Test
+    public void Test050() {
+        int count = 1000000;
+        SplittableRandom random = new SplittableRandom(5);
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+        System.gc();
+        long before = usedHeap();
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            strings[i] = randomValue(random, chars);
+        }
+        System.gc();
+        long stringBytes = usedHeap() - before;
+
+        random = new SplittableRandom(5);
+        StringPool.Builder builder = new StringPool.Builder(count, 12);
+        for (int i = 0; i < count; i++) {
+            builder.add(randomValue(random, chars));
+        }
+        StringPool pool = builder.build(false);
+        System.out.println("String[]: " + stringBytes / count + " bytes/value, StringPool: " +
+                (pool.getArenaBytes() + 4L * (count + 1)) / count + " bytes/value");
+
+        StringBuilder sb = new StringBuilder();
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                sb.setLength(0);
+                sb.append(strings[i]);
+            }
+            long stringNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                sb.setLength(0);
+                pool.append(sb, i);
+            }
+            long poolNanos = System.nanoTime() - start;
+            System.out.println("Round " + round + ", String[]: " + stringNanos / 1000000 + " ms, StringPool: " +
+                    poolNanos / 1000000 + " ms");
+        }
+        assertEquals(strings[count - 1], pool.get(count - 1));
+    }
+
+    private static String randomValue(SplittableRandom random, String chars) {
+        char[] value = new char[12];
+        for (int c = 0; c < value.length; c++) {
+            value[c] = chars.charAt(random.nextInt(chars.length()));
+        }
+        return new String(value);
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.fields;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UniqueFieldTest {
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void SequenceTest001() throws Exception {
+        KeySpace keys = keys("{}", 0);
+        UniqueField field = field("{\"strategy\": \"sequence\", \"start\": 100, \"step\": 5}", keys);
+        assertTrue(field.isKey());
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(Long.toString(100 + 5 * i), field.getValue());
+        }
+    }
+
+    /*
+    Every value of the range once, and not in order.
+     */
+    @Test
+    public void PermutationTest001() throws Exception {
+        for (int size : new int[]{1, 2, 3, 1000, 1025, 65537}) {
+            UniqueField field = field("{\"strategy\": \"permutation\", \"min\": 10, \"max\": " + (10 + size) + "}", keys("{\"seed\": 3}", 0));
+            boolean[] seen = new boolean[size];
+            int inOrder = 0;
+            for (int i = 0; i < size; i++) {
+                int value = Integer.parseInt(field.getValue()) - 10;
+                assertTrue(value >= 0 && value < size);
+                assertTrue("Repeated " + value, !seen[value]);
+                seen[value] = true;
+                if (value == i)
+                    inOrder++;
+            }
+            if (size >= 1000) {
+                assertTrue(inOrder < size / 10);
+            }
+        }
+    }
+
+    @Test
+    public void UuidTest001() throws Exception {
+        Pattern uuid = Pattern.compile("^[0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}$");
+        UniqueField field = field("{\"strategy\": \"uuid\"}", keys("{}", 0));
+        Set<String> values = new HashSet<String>();
+        Set<String> tails = new HashSet<String>();
+        for (int i = 0; i < 100000; i++) {
+            String value = field.getValue();
+            assertTrue(value, uuid.matcher(value).matches());
+            values.add(value);
+            tails.add(value.substring(24));
+        }
+        assertEquals(100000, values.size());
+        // The last 48 bits alone never repeat.
+        assertEquals(100000, tails.size());
+    }
+
+    /*
+    Fields sharing a KeySpace, on several threads, and streams of the same schema, never repeat.
+     */
+    @Test
+    public void SharedTest001() throws Exception {
+        final String json = "{\"strategy\": \"permutation\", \"max\": 1000000}";
+        final int perField = 50000;
+        List<KeySpace> streams = new ArrayList<KeySpace>();
+        for (int stream = 0; stream < 3; stream++) {
+            streams.add(keys("{\"seed\": 11, \"streams\": 3}", stream));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+            for (final KeySpace keys : streams) {
+                for (int t = 0; t < 4; t++) {
+                    final UniqueField field = field(json, keys);
+                    results.add(executor.submit(() -> {
+                        long[] values = new long[perField];
+                        for (int i = 0; i < perField; i++) {
+                            values[i] = Long.parseLong(field.getValue());
+                        }
+                        return values;
+                    }));
+                }
+            }
+            Set<Long> all = new HashSet<Long>();
+            for (Future<long[]> result : results) {
+                for (long value : result.get()) {
+                    assertTrue("Repeated " + value, all.add(value));
+                }
+            }
+            assertEquals(3 * 4 * perField, all.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void StreamTest001() throws Exception {
+        keys("{\"streams\": 2}", 2);
+    }
+
+    private KeySpace keys(String json, long stream) throws Exception {
+        return new KeySpace(mapper.readValue(json, JsonNode.class), stream);
+    }
+
+    private UniqueField field(String json, KeySpace keys) throws Exception {
+        return new UniqueField(mapper.readValue(json, JsonNode.class), new SplittableRandom(), keys, "fields[0]");
+    }
+}
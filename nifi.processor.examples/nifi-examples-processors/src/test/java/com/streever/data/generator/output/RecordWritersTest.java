@@ -0,0 +1,292 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.generator.output;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.streever.data.generator.RecordGenerator;
+import com.streever.data.generator.fields.DateRenderer;
+import com.streever.data.generator.fields.FieldType;
+import com.streever.data.generator.fields.ValueSink;
+import com.streever.data.generator.fields.ValueType;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RecordWritersTest {
+
+    private ObjectMapper mapper = new ObjectMapper();
+
+    private JsonNode seeded() throws IOException {
+        ObjectNode rootNode = (ObjectNode) mapper.readValue(new File("src/main/resources/validation-generator.json"), JsonNode.class);
+        rootNode.put("seed", 20161006L);
+        return rootNode;
+    }
+
+    /*
+    The JSON lines carry the same values as the delimited text of the same seed.
+     */
+    @Test
+    public void JsonTest001() throws Exception {
+        JsonNode rootNode = seeded();
+        List<FieldType> columns = new RecordGenerator(rootNode).getColumns();
+        String[] json = lines(write(RecordWriters.JSON, new RecordGenerator(rootNode), 1000));
+        String[] text = lines(write(RecordWriters.DELIMITED, new RecordGenerator(rootNode), 1000));
+        assertEquals(1000, json.length);
+
+        ObjectMapper decimals = new ObjectMapper().enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+        for (int i = 0; i < json.length; i++) {
+            JsonNode record = decimals.readTree(json[i]);
+            String[] values = text[i].split(",", -1);
+            assertEquals(values.length, record.size());
+            Iterator<JsonNode> fields = record.elements();
+            for (int c = 0; c < values.length; c++) {
+                JsonNode field = fields.next();
+                if (field.isBoolean()) {
+                    // The second of the field's "false:true" format is true.
+                    String[] format = columns.get(c).getJsonNode().get("format").asText().split(":");
+                    assertEquals(format[field.asBoolean() ? 1 : 0], values[c]);
+                } else if (!field.isNull()) {
+                    assertEquals(values[c], field.asText());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void FixedWidthTest001() throws Exception {
+        RecordGenerator generator = new RecordGenerator(seeded());
+        FixedWidthRecordWriter writer = (FixedWidthRecordWriter) RecordWriters.create(RecordWriters.FIXED_WIDTH, generator, StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.reset(out);
+        for (int i = 0; i < 1000; i++) {
+            writer.write(generator);
+        }
+        writer.flush();
+        for (String line : lines(out.toByteArray())) {
+            assertEquals(writer.getRecordWidth(), line.length());
+        }
+    }
+
+    /*
+    Decode the Avro data file by hand and check it against the typed values of the same seed.
+     */
+    @Test
+    public void AvroTest001() throws Exception {
+        JsonNode rootNode = seeded();
+        RecordGenerator generator = new RecordGenerator(rootNode);
+        List<FieldType> columns = generator.getColumns();
+        // Small records and enough of them for several blocks.
+        int count = 20000;
+        byte[] avro = write(RecordWriters.AVRO, generator, count);
+
+        RecordGenerator expected = new RecordGenerator(rootNode);
+        RecordingSink sink = new RecordingSink();
+
+        InputStream in = new ByteArrayInputStream(avro);
+        byte[] magic = new byte[4];
+        in.read(magic);
+        assertArrayEquals(new byte[]{'O', 'b', 'j', 1}, magic);
+        JsonNode schema = null;
+        for (long entries = readLong(in); entries != 0; entries = readLong(in)) {
+            for (long e = 0; e < entries; e++) {
+                String key = readString(in);
+                String value = readString(in);
+                if (key.equals("avro.schema")) {
+                    schema = mapper.readTree(value);
+                } else {
+                    assertEquals("avro.codec", key);
+                    assertEquals("null", value);
+                }
+            }
+        }
+        assertEquals(columns.size(), schema.get("fields").size());
+        byte[] sync = new byte[16];
+        in.read(sync);
+
+        int records = 0;
+        int blocks = 0;
+        while (in.available() > 0) {
+            long blockRecords = readLong(in);
+            readLong(in);
+            blocks++;
+            for (long r = 0; r < blockRecords; r++) {
+                sink.values.clear();
+                expected.nextRecord(sink);
+                for (int c = 0; c < columns.size(); c++) {
+                    Object value = sink.values.get(c);
+                    ValueType type = columns.get(c).getValueType();
+                    switch (type) {
+                        case STRING:
+                            assertEquals(value, readString(in));
+                            break;
+                        case BOOLEAN:
+                            assertEquals(value, in.read() == 1);
+                            break;
+                        case INT:
+                        case LONG:
+                        case TIMESTAMP:
+                            assertEquals(value, readLong(in));
+                            break;
+                        case FLOAT:
+                            assertEquals(((BigDecimal) value).floatValue(), Float.intBitsToFloat((int) readFixed(in, 4)), 0f);
+                            break;
+                        case DOUBLE:
+                            assertEquals(((BigDecimal) value).doubleValue(), Double.longBitsToDouble(readFixed(in, 8)), 0d);
+                            break;
+                        case NULL:
+                            break;
+                    }
+                }
+                records++;
+            }
+            byte[] blockSync = new byte[16];
+            in.read(blockSync);
+            assertArrayEquals(sync, blockSync);
+        }
+        assertEquals(count, records);
+        assertTrue(blocks > 1);
+    }
+
+    /*
+    MB/s and records/s for each format.
+     */
+    @Test
+    public void Test050() throws Exception {
+        JsonNode rootNode = seeded();
+        int count = 500000;
+        for (String format : new String[]{RecordWriters.DELIMITED, RecordWriters.JSON, RecordWriters.FIXED_WIDTH, RecordWriters.AVRO}) {
+            RecordGenerator generator = new RecordGenerator(rootNode);
+            RecordWriter writer = RecordWriters.create(format, generator, StandardCharsets.UTF_8);
+            writer.reset(new NullOutputStream());
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                writer.write(generator);
+            }
+            writer.flush();
+            long nanos = Math.max(System.nanoTime() - start, 1);
+            double mb = writer.getByteCount() / (1024d * 1024d);
+            System.out.println(format + ": " + String.format("%.1f", mb * 1e9 / nanos) + " MB/s, " +
+                    (count * 1000000000L / nanos) + " records/s, " + (writer.getByteCount() / count) + " bytes/record");
+        }
+    }
+
+    private byte[] write(String format, RecordGenerator generator, int count) throws IOException {
+        RecordWriter writer = RecordWriters.create(format, generator, StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.reset(out);
+        for (int i = 0; i < count; i++) {
+            writer.write(generator);
+        }
+        writer.flush();
+        assertEquals(count, writer.getRecordCount());
+        assertEquals(out.size(), writer.getByteCount());
+        return out.toByteArray();
+    }
+
+    private static String[] lines(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8).split("\n");
+    }
+
+    private static long readLong(InputStream in) throws IOException {
+        long n = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.read();
+            n |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static long readFixed(InputStream in, int bytes) throws IOException {
+        long bits = 0;
+        for (int i = 0; i < bytes; i++) {
+            bits |= (long) in.read() << (i * 8);
+        }
+        return bits;
+    }
+
+    private static String readString(InputStream in) throws IOException {
+        byte[] bytes = new byte[(int) readLong(in)];
+        in.read(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class RecordingSink implements ValueSink {
+        private final List<Object> values = new ArrayList<Object>();
+        private final StringBuilder text = new StringBuilder();
+
+        public void writeNull() {
+            values.add(null);
+        }
+
+        public void writeBoolean(boolean value, String text) {
+            values.add(value);
+        }
+
+        public void writeLong(long value) {
+            values.add(value);
+        }
+
+        public void writeDecimal(long units, int decimals) {
+            values.add(BigDecimal.valueOf(units, decimals));
+        }
+
+        public void writeTimestamp(long millis, DateRenderer renderer) {
+            values.add(millis);
+        }
+
+        public StringBuilder beginString() {
+            text.setLength(0);
+            return text;
+        }
+
+        public void endString() {
+            values.add(text.toString());
+        }
+    }
+
+    private static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
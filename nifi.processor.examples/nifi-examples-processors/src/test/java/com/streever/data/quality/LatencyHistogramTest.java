@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.quality;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void BucketTest001() {
+        // Buckets follow on from each other and hold their values.
+        for (int i = 0; i < 959; i++) {
+            assertEquals(LatencyHistogram.lowest(i + 1), LatencyHistogram.highest(i) + 1);
+            assertEquals(i, LatencyHistogram.index(LatencyHistogram.lowest(i)));
+            assertEquals(i, LatencyHistogram.index(LatencyHistogram.highest(i)));
+        }
+        assertEquals(959, LatencyHistogram.index(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void PercentileTest001() {
+        Random random = new Random(5);
+        LatencyHistogram one = new LatencyHistogram();
+        LatencyHistogram two = new LatencyHistogram();
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // Log normal-ish, like match times.
+            values[i] = (long) Math.exp(4 + 2 * random.nextGaussian());
+            (i % 2 == 0 ? one : two).record(values[i]);
+        }
+        one.merge(two);
+        Arrays.sort(values);
+
+        assertEquals(values.length, one.getCount());
+        assertEquals(values[values.length - 1], one.getMax());
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long approximate = one.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + exact + " " + approximate, approximate >= exact && approximate <= exact + exact / 16 + 1);
+        }
+
+        long below = 0;
+        for (long value : values) {
+            below += value < 1024 ? 1 : 0;
+        }
+        // 1024 is the bottom of a bucket, so this is exact.
+        assertEquals(below, one.getCountBelow(1024));
+
+        // Exact at every decade, which aren't bucket boundaries.
+        for (int decade = 1; decade <= 6; decade++) {
+            long bound = (long) Math.pow(10, decade);
+            below = 0;
+            for (long value : values) {
+                below += value < bound ? 1 : 0;
+            }
+            assertEquals(bound + "", below, one.getCountBelowDecade(decade));
+        }
+        assertEquals(values.length, one.getCountBelowDecade(19));
+    }
+
+}
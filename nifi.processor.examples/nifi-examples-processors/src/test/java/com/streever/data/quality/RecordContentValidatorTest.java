@@ -0,0 +1,242 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.quality;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecordContentValidatorTest {
+
+    private static final String[] CURRENCIES = new String[]{"USD", "EUR", "GBP", "JPY", "CAD", "AUD", "CHF", "CNY", "SEK", "NZD", "MXN", "SGD"};
+
+    // The same layout as a whole line regex, for comparison.  It can't check the ranges.
+    private static final String LAYOUT = "^\\d+,\\d{4}-\\d{2}-\\d{2},(USD|EUR|GBP|JPY|CAD|AUD|CHF|CNY|SEK|NZD|MXN|SGD)," +
+            "-?\\d+(\\.\\d{1,2})?,[^,]{1,20},(\\d{1,4}|NULL)?$";
+
+    private static final String RULES = "{\"delimiter\": \",\", \"columns\": [" +
+            "{\"name\": \"id\", \"type\": \"long\", \"min\": 0, \"nullable\": false}," +
+            "{\"name\": \"date\", \"type\": \"date\", \"format\": \"yyyy-MM-dd\", \"nullable\": false}," +
+            "{\"name\": \"ccy\", \"type\": \"enum\", \"values\": [\"USD\", \"EUR\", \"GBP\", \"JPY\", \"CAD\", \"AUD\", \"CHF\", \"CNY\", \"SEK\", \"NZD\", \"MXN\", \"SGD\"], \"nullable\": false}," +
+            "{\"name\": \"amount\", \"type\": \"decimal\", \"scale\": 2, \"nullable\": false}," +
+            "{\"name\": \"name\", \"type\": \"string\", \"minLength\": 1, \"maxLength\": 20, \"nullable\": false}," +
+            "{\"name\": \"qty\", \"type\": \"int\", \"min\": 0, \"max\": 1000, \"null\": \"NULL\"}]}";
+
+    /*
+    Every 997th record has a bad value, in a different column each time.
+     */
+    private byte[] buildContent(int records) {
+        StringBuilder sb = new StringBuilder("ID,DATE,CCY,AMOUNT,NAME,QTY\n");
+        for (int i = 0; i < records; i++) {
+            int bad = i % 997 == 0 ? (i / 997) % 7 : -1;
+            sb.append(bad == 0 ? "-" + i : String.valueOf(i)).append(',');
+            sb.append(bad == 1 ? "2016-02-30" : "2016-" + (10 + i % 3) + "-" + (10 + i % 19)).append(',');
+            sb.append(bad == 2 ? "XXX" : CURRENCIES[i % CURRENCIES.length]).append(',');
+            sb.append(bad == 3 ? i + ".123" : i + "." + (10 + i % 90)).append(',');
+            sb.append(bad == 4 ? "" : "name " + (i % 1000)).append(',');
+            sb.append(i % 5 == 0 ? "NULL" : String.valueOf(i % 1000));
+            if (bad == 5) {
+                sb.append(",extra");
+            } else if (bad == 6) {
+                sb.append(i % 2 == 0 ? "0000" : "1001");
+            }
+            sb.append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private RecordContentValidator validate(byte[] content) throws IOException {
+        RecordContentValidator comp = new RecordContentValidator();
+        comp.setRules(new ObjectMapper().readTree(RULES));
+        comp.setInputStream(new ByteArrayInputStream(content));
+        comp.setHasHeader(true);
+        comp.validate();
+        return comp;
+    }
+
+    private RecordLayoutValidator validateLayout(byte[] content) {
+        RecordLayoutValidator comp = new RecordLayoutValidator();
+        comp.setInputStream(new ByteArrayInputStream(content));
+        comp.setExpectedRecordFormatRegEx(LAYOUT);
+        comp.setHasHeader(true);
+        comp.validate();
+        return comp;
+    }
+
+    private boolean check(ColumnRule rule, String value) {
+        RecordContentValidator comp = new RecordContentValidator();
+        comp.addColumn(rule);
+        comp.setHasHeader(false);
+        comp.setInputStream(new ByteArrayInputStream((value + "\n").getBytes(StandardCharsets.UTF_8)));
+        comp.validate();
+        return comp.isValid();
+    }
+
+    @Test
+    public void ContentTest001() throws IOException {
+        RecordContentValidator comp = validate(buildContent(20000));
+
+        assertFalse(comp.isValid());
+        assertEquals(20001, comp.getRecordCount());
+        // 997, ... 19940 are bad, 3 in each column (the wrong field count last).  Record 0 has
+        // id "-0", which is a valid long.
+        assertEquals(20, comp.getErrorCount());
+        assertEquals(20, comp.getErrors().size());
+        assertTrue(Arrays.equals(new long[]{2, 3, 3, 3, 3, 3, 3}, comp.getColumnErrorCounts()));
+        assertEquals("column 2 (date): not a date like yyyy-MM-dd (not nullable)", comp.getErrorReasons().get(998L));
+        assertTrue(comp.getErrorReasons().get(1995L).startsWith("column 3 (ccy): not one of"));
+        assertEquals("column 4 (amount): not a decimal with at most 2 places (not nullable)", comp.getErrorReasons().get(2992L));
+        assertEquals("column 5 (name): not 1 to 20 chars (not nullable)", comp.getErrorReasons().get(3989L));
+        assertEquals("expected 6 fields", comp.getErrorReasons().get(4986L));
+        assertEquals("column 6 (qty): not an int from 0 to 1000", comp.getErrorReasons().get(5983L));
+        assertTrue(comp.getErrorReasons().get(6980L).startsWith("column 1 (id)"));
+    }
+
+    @Test
+    public void FailureTest001() throws IOException {
+        // A stream that fails part way isn't valid, though every record read was.
+        RecordContentValidator comp = new RecordContentValidator();
+        comp.setRules(new ObjectMapper().readTree(RULES));
+        final byte[] content = buildContent(20000);
+        comp.setInputStream(new ByteArrayInputStream(content) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                if (pos > 0) {
+                    throw new IllegalStateException("Read failed");
+                }
+                return super.read(b, off, Math.min(len, 200));
+            }
+        });
+        comp.setHasHeader(true);
+        comp.validate();
+
+        assertFalse(comp.isValid());
+        assertEquals(0, comp.getErrorCount());
+        assertEquals("Read failed", comp.getFailure().getMessage());
+    }
+
+    @Test
+    public void TypeTest001() {
+        ColumnRule id = new ColumnRule("id", ColumnRule.Type.LONG);
+        assertTrue(check(id, "-9223372036854775808"));
+        assertTrue(check(id, "9223372036854775807"));
+        assertFalse(check(id, "9223372036854775808"));
+        assertFalse(check(id, "12a"));
+        assertFalse(check(id, "-"));
+        assertTrue(check(id, ""));
+        id.setNullable(false);
+        assertFalse(check(id, ""));
+
+        ColumnRule count = new ColumnRule("count", ColumnRule.Type.INT);
+        assertTrue(check(count, "+2147483647"));
+        assertFalse(check(count, "2147483648"));
+
+        ColumnRule amount = new ColumnRule("amount", ColumnRule.Type.DECIMAL);
+        amount.setMin(-10.5);
+        amount.setMax(10.5);
+        assertTrue(check(amount, "-10.50"));
+        assertTrue(check(amount, "7"));
+        assertFalse(check(amount, "10.51"));
+        assertFalse(check(amount, "1."));
+        assertFalse(check(amount, ".5"));
+
+        ColumnRule date = new ColumnRule("date", ColumnRule.Type.DATE);
+        date.setFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+        assertTrue(check(date, "2016-02-29T23:59:59.999"));
+        assertFalse(check(date, "2015-02-29T23:59:59.999"));
+        assertFalse(check(date, "2016-04-31T00:00:00.000"));
+        assertFalse(check(date, "2016-02-01T24:00:00.000"));
+        assertFalse(check(date, "2016-02-01 00:00:00.000"));
+
+        // Not fixed width, so checked by SimpleDateFormat.
+        ColumnRule named = new ColumnRule("named", ColumnRule.Type.DATE);
+        named.setFormat("d MMM yyyy");
+        assertTrue(check(named, "6 Oct 2016"));
+        assertFalse(check(named, "31 Sep 2016"));
+        assertFalse(check(named, "6 Oct 2016 extra"));
+
+        ColumnRule ccy = new ColumnRule("ccy", ColumnRule.Type.ENUM);
+        ccy.setValues(Arrays.asList("USD", "EUR"));
+        assertTrue(check(ccy, "EUR"));
+        assertFalse(check(ccy, "EURO"));
+
+        ColumnRule code = new ColumnRule("code", ColumnRule.Type.STRING);
+        code.setPattern("[A-Z]{2}\\d");
+        code.setNullValue("\\N");
+        assertTrue(check(code, "AB1"));
+        assertTrue(check(code, "\\N"));
+        assertFalse(check(code, "AB12"));
+    }
+
+    @Test
+    public void DelimiterTest001() {
+        RecordContentValidator comp = new RecordContentValidator();
+        comp.addColumn(new ColumnRule("a", ColumnRule.Type.INT));
+        comp.addColumn(new ColumnRule("b", ColumnRule.Type.STRING));
+        comp.addColumn(new ColumnRule("c", ColumnRule.Type.INT));
+        comp.setFieldDelimiter("|~|");
+        comp.setHasHeader(false);
+        comp.setInputStream(new ByteArrayInputStream("1|~|x|y|~|2\n1|~||~|\n1|~|2\n1|~|2|~|3|~|\n".getBytes(StandardCharsets.UTF_8)));
+        comp.validate();
+
+        assertEquals(4, comp.getRecordCount());
+        assertEquals(2, comp.getErrorCount());
+        assertEquals("expected 3 fields", comp.getErrorReasons().get(2L));
+        assertEquals("expected 3 fields", comp.getErrorReasons().get(3L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void RuleTest001() {
+        RecordContentValidator comp = new RecordContentValidator();
+        comp.addColumn(new ColumnRule("date", ColumnRule.Type.DATE));
+        comp.compile();
+    }
+
+    @Test
+    public void Test050() throws IOException {
+        byte[] content = buildContent(1000000);
+        // Warm up both.
+        validate(content);
+        validateLayout(content);
+
+        long start = System.currentTimeMillis();
+        RecordContentValidator columns = validate(content);
+        long columnsMs = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        RecordLayoutValidator layout = validateLayout(content);
+        long layoutMs = System.currentTimeMillis() - start;
+
+        assertEquals(columns.getRecordCount(), layout.getRecordCount());
+        // The regex can't see the bad dates.
+        assertTrue(columns.getErrorCount() > layout.getErrorCount());
+        double mb = content.length / (1024.0 * 1024.0);
+        System.out.println(String.format("Validated %.1f MB by column in (ms): %d (%.1f MB/s)", mb, columnsMs, mb * 1000 / Math.max(1, columnsMs)));
+        System.out.println(String.format("Validated %.1f MB by whole line regex in (ms): %d (%.1f MB/s)", mb, layoutMs, mb * 1000 / Math.max(1, layoutMs)));
+    }
+
+}
@@ -4,12 +4,18 @@ import com.streever.parsers.FilePartByRegEx;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by dstreev on 2016-10-06.
@@ -63,6 +69,289 @@ public class RecordLayoutValidatorTest {
 
     }
 
+    private static final String LAYOUT = "^\\d{8}\\|[A-Z]{3}\\|-?\\d+\\.\\d{2}$";
+
+    private byte[] buildContent(int records, String delimiter) {
+        StringBuilder sb = new StringBuilder("DATE|CCY|AMOUNT").append(delimiter);
+        for (int i = 0; i < records; i++) {
+            if (i % 997 == 0) {
+                sb.append("BAD RECORD ").append(i);
+            } else {
+                sb.append(20161000 + (i % 31)).append("|USD|").append(i).append(".").append(10 + (i % 90));
+            }
+            sb.append(delimiter);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private RecordLayoutValidator validate(byte[] content, String delimiter, ForkJoinPool pool, int chunkSize) {
+        RecordLayoutValidator comp = new RecordLayoutValidator();
+        comp.setInputStream(new ByteArrayInputStream(content));
+        comp.setExpectedRecordFormatRegEx(LAYOUT);
+        comp.setHasHeader(true);
+        comp.setDelimiter(delimiter);
+        comp.setPool(pool);
+        if (pool != null) {
+            comp.setChunkSize(chunkSize);
+        }
+        comp.validate();
+        return comp;
+    }
+
+    @Test
+    public void ParallelTest001() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (String delimiter : new String[]{"\n", "\r\n", "|~|"}) {
+                // Delimiter "|~|" can't appear in the records, but "|" can, which exercises partial matches.
+                byte[] content = buildContent(20000, delimiter);
+                RecordLayoutValidator single = validate(content, delimiter, null, 0);
+                // A small chunk size forces many chunk boundaries.
+                RecordLayoutValidator parallel = validate(content, delimiter, pool, 1000);
+
+                assertFalse(single.isValid());
+                assertEquals(20001, single.getRecordCount());
+                assertEquals(single.getRecordCount(), parallel.getRecordCount());
+                assertEquals(single.getErrors(), parallel.getErrors());
+                assertEquals("BAD RECORD 997", parallel.getErrors().get(998L));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void FailureTest001() {
+        // A stream that fails part way isn't valid, on either path.
+        final byte[] content = buildContent(20000, "\n");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (ForkJoinPool p : new ForkJoinPool[]{null, pool}) {
+                RecordLayoutValidator comp = new RecordLayoutValidator();
+                comp.setInputStream(new ByteArrayInputStream(content) {
+                    @Override
+                    public synchronized int read(byte[] b, int off, int len) {
+                        if (pos > content.length / 2) {
+                            throw new IllegalStateException("Read failed");
+                        }
+                        return super.read(b, off, Math.min(len, 1000));
+                    }
+                });
+                comp.setExpectedRecordFormatRegEx("^.*$");
+                comp.setPool(p);
+                comp.setChunkSize(1000);
+                comp.validate();
+
+                assertFalse(comp.isValid());
+                assertEquals(0, comp.getErrorCount());
+                assertEquals("Read failed", comp.getFailure().getMessage());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void ErrorSinkTest001() throws IOException {
+        byte[] content = buildContent(20000, "\n");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (ForkJoinPool p : new ForkJoinPool[]{null, pool}) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                StreamErrorSink sink = new StreamErrorSink(out, StandardCharsets.UTF_8);
+
+                RecordLayoutValidator comp = new RecordLayoutValidator();
+                comp.setInputStream(new ByteArrayInputStream(content));
+                comp.setExpectedRecordFormatRegEx(LAYOUT);
+                comp.setPool(p);
+                comp.setChunkSize(1000);
+                comp.setMaxErrorsInMemory(3);
+                comp.setErrorSink(sink);
+                comp.validate();
+                sink.flush();
+
+                // 0, 997, ... 19940 are bad: 21 errors, only 3 kept.
+                assertEquals(21, comp.getErrorCount());
+                assertEquals(3, comp.getErrors().size());
+                assertEquals(21, sink.getCount());
+                assertTrue(out.toString("UTF-8").startsWith("1\tBAD RECORD 0\n998\tBAD RECORD 997\n"));
+                assertFalse(comp.isAborted());
+                assertEquals(20001, comp.getRecordCount());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void ErrorSinkTest002() {
+        byte[] content = buildContent(20000, "\n");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (ForkJoinPool p : new ForkJoinPool[]{null, pool}) {
+                RecordLayoutValidator comp = new RecordLayoutValidator();
+                comp.setInputStream(new ByteArrayInputStream(content));
+                comp.setExpectedRecordFormatRegEx(LAYOUT);
+                comp.setPool(p);
+                comp.setChunkSize(1000);
+                comp.setMaxErrors(2);
+                comp.validate();
+
+                assertTrue(comp.isAborted());
+                assertEquals(2, comp.getErrorCount());
+                // Stopped at the second bad record, 998.
+                assertEquals(999, comp.getRecordCount());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private byte[] buildContent(int records, String delimiter, String trailer) {
+        byte[] content = buildContent(records, delimiter);
+        byte[] footer = (trailer + delimiter).getBytes(StandardCharsets.UTF_8);
+        byte[] rtn = Arrays.copyOf(content, content.length + footer.length);
+        System.arraycopy(footer, 0, rtn, content.length, footer.length);
+        return rtn;
+    }
+
+    private RecordLayoutValidator validateFooter(byte[] content, String delimiter, ForkJoinPool pool) {
+        RecordLayoutValidator comp = new RecordLayoutValidator();
+        comp.setInputStream(new ByteArrayInputStream(content));
+        comp.setExpectedRecordFormatRegEx(LAYOUT);
+        comp.setHasHeader(true);
+        comp.setHasFooter(true);
+        comp.setHeaderRegEx("^DATE\\|CCY\\|AMOUNT$");
+        comp.setFooterRegEx("^TRAILER\\|(\\d+)$");
+        comp.setDelimiter(delimiter);
+        comp.setPool(pool);
+        comp.setChunkSize(1000);
+        comp.validate();
+        return comp;
+    }
+
+    @Test
+    public void FooterTest001() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (ForkJoinPool p : new ForkJoinPool[]{null, pool}) {
+                for (String delimiter : new String[]{"\n", "|~|"}) {
+                    // 21 of the 20000 records are bad, the trailer isn't.
+                    RecordLayoutValidator comp = validateFooter(buildContent(20000, delimiter, "TRAILER|20000"), delimiter, p);
+                    assertEquals(20002, comp.getRecordCount());
+                    assertEquals(20000, comp.getDataRecordCount());
+                    assertEquals(20000, comp.getExpectedRecordCount());
+                    assertEquals(21, comp.getErrorCount());
+
+                    // One short: the trailer is reported too.
+                    comp = validateFooter(buildContent(20000, delimiter, "TRAILER|20001"), delimiter, p);
+                    assertEquals(22, comp.getErrorCount());
+                    assertEquals("TRAILER|20001", comp.getErrors().get(20001L));
+
+                    // No trailer: the last record is taken as the footer, and doesn't match.
+                    comp = validateFooter(buildContent(20000, delimiter), delimiter, p);
+                    assertEquals(-1, comp.getExpectedRecordCount());
+                    assertTrue(comp.getErrors().containsKey(20000L));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void HeaderTest001() {
+        byte[] content = ("date|ccy|amount\n20161001|USD|1.00\nTRAILER|1\n").getBytes(StandardCharsets.UTF_8);
+        RecordLayoutValidator comp = validateFooter(content, "\n", null);
+        assertEquals(1, comp.getErrorCount());
+        assertEquals("date|ccy|amount", comp.getErrors().get(0L));
+        assertEquals(1, comp.getExpectedRecordCount());
+    }
+
+    @Test
+    public void MetricsTest001() {
+        byte[] content = buildContent(20000, "\n");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (ForkJoinPool p : new ForkJoinPool[]{null, pool}) {
+                RecordLayoutValidator comp = new RecordLayoutValidator();
+                comp.setInputStream(new ByteArrayInputStream(content));
+                comp.setExpectedRecordFormatRegEx(LAYOUT);
+                comp.setPool(p);
+                comp.setChunkSize(1000);
+                comp.setSampleInterval(1);
+                comp.validate();
+
+                ValidationMetrics metrics = comp.getMetrics();
+                assertEquals(content.length, metrics.getBytes());
+                assertEquals(20001, metrics.getRecords());
+                assertEquals(21, metrics.getErrors());
+                assertEquals(21.0 / 20001, metrics.getErrorRatio(), 1e-12);
+                assertTrue(metrics.getBytesPerSecond() > 0);
+                assertTrue(metrics.getRecordsPerSecond() > 0);
+                // "BAD RECORD 0", after the header.
+                assertEquals(1, metrics.getFirstErrorRecord());
+                assertTrue(metrics.getTimeToFirstErrorNanos() >= 0);
+                assertTrue(metrics.getTimeToFirstErrorNanos() <= metrics.getElapsedNanos());
+                // Every record but the header was timed.
+                assertEquals(20000, metrics.getMatchTimes().getCount());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ChunkSizeTest001() {
+        // 4 GB as an int; a zero length chunk would never fill.
+        new RecordLayoutValidator().setChunkSize((int) (4L * 1024 * 1024 * 1024));
+    }
+
+    @Test
+    public void Test051() {
+        byte[] content = buildContent(2000000, "\n");
+        for (int sampleInterval : new int[]{0, 16, 1, 0, 16, 1}) {
+            RecordLayoutValidator comp = new RecordLayoutValidator();
+            comp.setInputStream(new ByteArrayInputStream(content));
+            comp.setExpectedRecordFormatRegEx(LAYOUT);
+            comp.setSampleInterval(sampleInterval);
+            long start = System.currentTimeMillis();
+            comp.validate();
+            long ms = System.currentTimeMillis() - start;
+            LatencyHistogram matchTimes = comp.getMetrics().getMatchTimes();
+            System.out.println("Validated " + (content.length / (1024 * 1024)) + " MB timing every " + sampleInterval +
+                    " records in (ms): " + ms + " match p50/p99/max (ns): " + matchTimes.getValueAtPercentile(50) + "/" +
+                    matchTimes.getValueAtPercentile(99) + "/" + matchTimes.getMax());
+        }
+    }
+
+    @Test
+    public void Test050() {
+        byte[] content = buildContent(2000000, "\n");
+        int threads = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // Warm up both paths.
+            validate(content, "\n", null, 0);
+            validate(content, "\n", pool, RecordLayoutValidator.DEFAULT_CHUNK_SIZE);
+
+            long start = System.currentTimeMillis();
+            RecordLayoutValidator single = validate(content, "\n", null, 0);
+            long singleMs = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            RecordLayoutValidator parallel = validate(content, "\n", pool, RecordLayoutValidator.DEFAULT_CHUNK_SIZE);
+            long parallelMs = System.currentTimeMillis() - start;
+
+            assertEquals(single.getRecordCount(), parallel.getRecordCount());
+            assertEquals(single.getErrors().size(), parallel.getErrors().size());
+            System.out.println("Validated " + (content.length / (1024 * 1024)) + " MB single thread in (ms): " + singleMs);
+            System.out.println("Validated " + (content.length / (1024 * 1024)) + " MB with " + threads + " threads in (ms): " + parallelMs);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
 //    @Test
 //    public void RegExTest002() {
 //
@@ -0,0 +1,263 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.data.quality;
+
+import com.streever.parsers.RecordScanner;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SizeValidatorTest {
+
+    private static final String TRAILER = "^TRAILER\\|(\\d+)$";
+
+    private byte[] buildContent(int records, String delimiter, boolean trailer) {
+        StringBuilder sb = new StringBuilder("DATE|CCY|AMOUNT").append(delimiter);
+        for (int i = 0; i < records; i++) {
+            sb.append(20161001 + (i % 28)).append("|USD|").append(i).append(".").append(10 + (i % 90)).append(delimiter);
+        }
+        if (trailer) {
+            sb.append("TRAILER|").append(records).append(delimiter);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /*
+    Counts the bytes read through it, skips excepted.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long read = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            read += b < 0 ? 0 : 1;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            read += n < 0 ? 0 : n;
+            return n;
+        }
+    }
+
+    @Test
+    public void SizeTest001() {
+        SizeValidator sv = new SizeValidator();
+        sv.setMinBytes(10);
+        sv.setMaxBytes(100);
+        sv.setSize(50);
+        sv.validate();
+        assertTrue(sv.isValid());
+        assertNull(sv.getReason());
+        // Nothing to count.
+        assertEquals(-1, sv.getRecordCount());
+
+        sv.setInputStream(null);
+        sv.setSize(101);
+        sv.validate();
+        assertFalse(sv.isValid());
+        assertEquals("Size 101 is above the maximum of 100 bytes", sv.getReason());
+    }
+
+    @Test
+    public void TrailerTest001() throws IOException {
+        byte[] content = buildContent(100000, "\n", true);
+
+        SizeValidator sv = new SizeValidator();
+        sv.setTrailerRegEx(TRAILER);
+        sv.setSize(content.length);
+        CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(content));
+        assertTrue(sv.validateTrailer(in));
+        assertEquals(100000, sv.getExpectedCount());
+        assertEquals("TRAILER|100000", sv.getTrailer());
+        // Only the end was read.
+        assertEquals(SizeValidator.DEFAULT_MAX_TRAILER_LENGTH, in.read);
+
+        assertTrue(sv.validateCount(new ByteArrayInputStream(content)));
+        assertEquals(100002, sv.getRecordCount());
+        assertEquals(100000, sv.getDataRecordCount());
+
+        // Truncated: the trailer is missing, found from the end alone.
+        int truncatedLength = content.length / 2;
+        sv.setInputStream(null);
+        sv.setSize(truncatedLength);
+        assertFalse(sv.validateTrailer(new ByteArrayInputStream(content, 0, truncatedLength)));
+        assertTrue(sv.getReason().contains("doesn't match"));
+        assertEquals(-1, sv.getRecordCount());
+    }
+
+    @Test
+    public void TrailerTest002() {
+        // A record lost in the middle: the trailer is there but the count is off.
+        String content = "DATE|CCY|AMOUNT\n20161001|USD|1.00\n20161002|USD|2.00\nTRAILER|3\n";
+        SizeValidator sv = new SizeValidator(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), -1);
+        sv.setTrailerRegEx(TRAILER);
+        sv.validate();
+        assertFalse(sv.isValid());
+        assertEquals(3, sv.getExpectedCount());
+        assertEquals(4, sv.getRecordCount());
+        assertEquals("2 records doesn't match the trailer count of 3", sv.getReason());
+
+        // The trailer without its delimiter, a CRLF file and a multi byte delimiter.
+        for (String[] test : new String[][]{{"\n", "A\nB\nTRAILER|2"}, {"\n", "A\r\nB\r\nTRAILER|2\r\n"}, {"|~|", "A|~|B|~|TRAILER|2|~|"}}) {
+            sv = new SizeValidator(new ByteArrayInputStream(test[1].getBytes(StandardCharsets.UTF_8)), -1);
+            sv.setHasHeader(false);
+            sv.setDelimiter(test[0]);
+            sv.setTrailerRegEx(TRAILER);
+            sv.validate();
+            assertTrue(test[1], sv.isValid());
+            assertEquals(3, sv.getRecordCount());
+        }
+    }
+
+    @Test
+    public void CountTest001() throws IOException {
+        Random random = new Random(7);
+        for (String delimiter : new String[]{"\n", "\r\n", "|~|", "aab"}) {
+            for (int test = 0; test < 20; test++) {
+                // Short random records from a small alphabet, to hit partial and overlapping delimiters.
+                StringBuilder sb = new StringBuilder();
+                int records = random.nextInt(5000);
+                for (int i = 0; i < records; i++) {
+                    for (int c = random.nextInt(12); c > 0; c--) {
+                        sb.append("ab|~\r".charAt(random.nextInt(5)));
+                    }
+                    if (i < records - 1 || random.nextBoolean()) {
+                        sb.append(delimiter);
+                    }
+                }
+                byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+                long expected = 0;
+                RecordScanner scanner = new RecordScanner(new ByteArrayInputStream(content), StandardCharsets.UTF_8, delimiter, 17);
+                while (scanner.next()) {
+                    expected++;
+                }
+
+                SizeValidator sv = new SizeValidator(new ByteArrayInputStream(content), content.length);
+                sv.setHasHeader(false);
+                sv.setDelimiter(delimiter);
+                sv.setMaxRecords(expected);
+                sv.validate();
+                assertEquals(delimiter, expected, sv.getRecordCount());
+                assertTrue(sv.isValid());
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TrailerTest003() {
+        new SizeValidator(new ByteArrayInputStream(new byte[0]), 0).setMaxTrailerLength(0);
+    }
+
+    @Test
+    public void CharsetTest001() throws IOException {
+        // "\u4E00\u0A41" is 4E 00 0A 41 in UTF-16BE, with a "\n" (00 0A) across its two chars.
+        byte[] content = "\u4E00\u0A41\nabc\n".getBytes(StandardCharsets.UTF_16BE);
+        SizeValidator sv = new SizeValidator(new ByteArrayInputStream(content), content.length);
+        sv.setHasHeader(false);
+        sv.setCharset(StandardCharsets.UTF_16BE);
+        sv.setMaxRecords(2);
+        sv.validate();
+        assertTrue(sv.getReason(), sv.isValid());
+        assertEquals(2, sv.getRecordCount());
+
+        // The same in the trailer, with the tail starting part way into a code unit.
+        String trailer = "\u4E00\u0A41TRAILER\\|(\\d+)$";
+        content = "A\n\u4E00\u0A41TRAILER|1\n".getBytes(StandardCharsets.UTF_16BE);
+        for (int maxTrailerLength : new int[]{SizeValidator.DEFAULT_MAX_TRAILER_LENGTH, 31}) {
+            sv = new SizeValidator(new ByteArrayInputStream(content), content.length);
+            sv.setHasHeader(false);
+            sv.setCharset(StandardCharsets.UTF_16BE);
+            sv.setTrailerRegEx(trailer);
+            sv.setMaxTrailerLength(maxTrailerLength);
+            sv.validate();
+            assertTrue(sv.getReason(), sv.isValid());
+            assertEquals("\u4E00\u0A41TRAILER|1", sv.getTrailer());
+
+            sv.setInputStream(null);
+            assertTrue(sv.validateTrailer(new ByteArrayInputStream(content)));
+            assertEquals("\u4E00\u0A41TRAILER|1", sv.getTrailer());
+        }
+    }
+
+    @Test
+    public void Test050() throws IOException {
+        byte[] content = buildContent(2000000, "\n", true);
+        byte[] lineBytes = new byte[]{'\n'};
+        // Warm up.
+        for (int i = 0; i < 3; i++) {
+            SizeValidator.countByte(content, content.length, lineBytes[0]);
+            count(content);
+        }
+
+        long start = System.currentTimeMillis();
+        SizeValidator sv = new SizeValidator(new ByteArrayInputStream(content), content.length);
+        sv.setTrailerRegEx(TRAILER);
+        sv.validate();
+        long countMs = System.currentTimeMillis() - start;
+        assertTrue(sv.isValid());
+
+        start = System.currentTimeMillis();
+        long bytewise = count(content);
+        long bytewiseMs = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        long records = 0;
+        RecordScanner scanner = new RecordScanner(new ByteArrayInputStream(content));
+        while (scanner.next()) {
+            records++;
+        }
+        long scanMs = System.currentTimeMillis() - start;
+
+        assertEquals(sv.getRecordCount(), bytewise);
+        assertEquals(sv.getRecordCount(), records);
+        System.out.println("Counted " + (content.length / (1024 * 1024)) + " MB 8 bytes at a time in (ms): " + countMs);
+        System.out.println("Counted " + (content.length / (1024 * 1024)) + " MB a byte at a time in (ms): " + bytewiseMs);
+        System.out.println("Counted " + (content.length / (1024 * 1024)) + " MB with the RecordScanner in (ms): " + scanMs);
+    }
+
+    private static long count(byte[] content) {
+        long count = 0;
+        for (byte b : content) {
+            if (b == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streever.iot.nifi.processors.data.generator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.streever.data.generator.fields.StringPool;
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class GenerateRecordProcessorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestRunner testRunner;
+
+    @Before
+    public void init() {
+        testRunner = TestRunners.newTestRunner(GenerateRecordProcessor.class);
+        testRunner.setProperty(GenerateRecordProcessor.GENERATOR_RESOURCE, "src/main/resources/sample-startstop-generator.json");
+        testRunner.setProperty(GenerateRecordProcessor.RECORD_COUNT, "100");
+    }
+
+    @Test
+    public void testProcessor() {
+        testRunner.run();
+
+        testRunner.assertAllFlowFilesTransferred(GenerateRecordProcessor.SUCCESS, 1);
+        MockFlowFile out = testRunner.getFlowFilesForRelationship(GenerateRecordProcessor.SUCCESS).get(0);
+        String[] records = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(100, records.length);
+    }
+
+    /*
+    One trigger makes a batch of FlowFiles, and the dynamic attributes are evaluated once for all of them.
+     */
+    @Test
+    public void testBatch() {
+        testRunner.setValidateExpressionUsage(false);
+        testRunner.setProperty(GenerateRecordProcessor.BATCH_SIZE, "25");
+        testRunner.setProperty("batch.id", "${UUID()}");
+        testRunner.run();
+
+        testRunner.assertAllFlowFilesTransferred(GenerateRecordProcessor.SUCCESS, 25);
+        List<MockFlowFile> flowFiles = testRunner.getFlowFilesForRelationship(GenerateRecordProcessor.SUCCESS);
+        String batchId = flowFiles.get(0).getAttribute("batch.id");
+        assertNotNull(batchId);
+        for (MockFlowFile out : flowFiles) {
+            out.assertAttributeEquals("batch.id", batchId);
+            assertEquals(100, new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n").length);
+        }
+
+        testRunner.clearTransferState();
+        testRunner.run();
+        assertNotEquals(batchId, testRunner.getFlowFilesForRelationship(GenerateRecordProcessor.SUCCESS).get(0).getAttribute("batch.id"));
+    }
+
+    /*
+    With a Target Rate the FlowFiles only get the records the bucket has filled with since scheduling.
+     */
+    @Test
+    public void testTargetRate() throws Exception {
+        testRunner.setProperty(GenerateRecordProcessor.RECORD_COUNT, "100000");
+        testRunner.setProperty(GenerateRecordProcessor.TARGET_RATE, "1000");
+
+        // The bucket starts empty, so the first trigger only gets the few records of the scheduling gap.
+        testRunner.run(1, false, true);
+        Thread.sleep(250);
+        testRunner.run(1, true, false);
+
+        int records = 0;
+        for (MockFlowFile out : testRunner.getFlowFilesForRelationship(GenerateRecordProcessor.SUCCESS)) {
+            records += new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n").length;
+            out.assertAttributeEquals(GenerateRecordProcessor.RATE_TARGET, "1000");
+            assertNotNull(out.getAttribute(GenerateRecordProcessor.RATE_ACHIEVED));
+        }
+        assertTrue(String.valueOf(records), records >= 200 && records <= 1000);
+    }
+
+    /*
+    Triggers that come faster than the rate yield, rather than making FlowFiles of a few records.
+     */
+    @Test
+    public void testMinimumPerFlowFile() throws Exception {
+        testRunner.setProperty(GenerateRecordProcessor.RECORD_COUNT, "100000");
+        testRunner.setProperty(GenerateRecordProcessor.TARGET_RATE, "1000");
+        testRunner.setProperty(GenerateRecordProcessor.MINIMUM_PER_FLOWFILE, "50");
+
+        testRunner.run(1, false, true);
+        for (int i = 0; i < 20; i++) {
+            Thread.sleep(10);
+            testRunner.run(1, false, false);
+        }
+        Thread.sleep(100);
+        testRunner.run(1, true, false);
+
+        List<MockFlowFile> flowFiles = testRunner.getFlowFilesForRelationship(GenerateRecordProcessor.SUCCESS);
+        assertFalse(flowFiles.isEmpty());
+        for (MockFlowFile out : flowFiles) {
+            int records = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n").length;
+            assertTrue(String.valueOf(records), records >= 50);
+        }
+    }
+
+    @Test
+    public void testTargetByteRate() throws Exception {
+        testRunner.setProperty(GenerateRecordProcessor.RECORD_COUNT, "100000");
+        testRunner.setProperty(GenerateRecordProcessor.TARGET_RATE, "100000");
+        testRunner.setProperty(GenerateRecordProcessor.RATE_UNIT, GenerateRecordProcessor.RATE_UNIT_BYTES);
+
+        testRunner.run(1, false, true);
+        Thread.sleep(250);
+        testRunner.run(1, true, false);
+
+        // At this rate the first trigger may already have a few hundred bytes to write.
+        long size = 0;
+        for (MockFlowFile out : testRunner.getFlowFilesForRelationship(GenerateRecordProcessor.SUCCESS)) {
+            size += out.getSize();
+        }
+        // The last record of each FlowFile may run over its grant.
+        assertTrue(String.valueOf(size), size >= 20000 && size <= 100000 + 200);
+    }
+
+    /*
+    With a seed in the schema, a run is repeated byte for byte, and another Generator Stream differs.
+     */
+    @Test
+    public void testSeed() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode schema = (ObjectNode) mapper.readValue(new File("src/main/resources/sample-startstop-generator.json"), JsonNode.class);
+        schema.put("seed", 42);
+        File schemaFile = folder.newFile("seeded-generator.json");
+        mapper.writeValue(schemaFile, schema);
+
+        byte[] first = runSeeded(schemaFile, null);
+        assertArrayEquals(first, runSeeded(schemaFile, null));
+        assertArrayEquals(first, runSeeded(schemaFile, "0"));
+        assertFalse(Arrays.equals(first, runSeeded(schemaFile, "1")));
+    }
+
+    private byte[] runSeeded(File schemaFile, String stream) {
+        TestRunner runner = TestRunners.newTestRunner(GenerateRecordProcessor.class);
+        runner.setValidateExpressionUsage(false);
+        runner.setProperty(GenerateRecordProcessor.GENERATOR_RESOURCE, schemaFile.getPath());
+        runner.setProperty(GenerateRecordProcessor.RECORD_COUNT, "100");
+        if (stream != null) {
+            runner.setProperty(GenerateRecordProcessor.GENERATOR_STREAM, stream);
+        }
+        runner.run();
+        runner.assertAllFlowFilesTransferred(GenerateRecordProcessor.SUCCESS, 1);
+        return runner.getFlowFilesForRelationship(GenerateRecordProcessor.SUCCESS).get(0).toByteArray();
+    }
+
+    /*
+    Each task has its own generator, so every record should still have a start before its stop.
+     */
+    @Test
+    public void testConcurrentTasks() {
+        testRunner.setThreadCount(4);
+        testRunner.run(40);
+
+        testRunner.assertAllFlowFilesTransferred(GenerateRecordProcessor.SUCCESS, 40);
+        for (MockFlowFile out : testRunner.getFlowFilesForRelationship(GenerateRecordProcessor.SUCCESS)) {
+            String[] records = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+            assertEquals(100, records.length);
+            for (String record : records) {
+                String[] fields = record.split(",", -1);
+                assertEquals(record, 7, fields.length);
+                assertTrue(record, fields[0].compareTo(fields[1]) <= 0);
+            }
+        }
+    }
+    @Test
+    public void testOutputFormat() throws Exception {
+        testRunner.setProperty(GenerateRecordProcessor.OUTPUT_FORMAT, "json");
+        testRunner.run();
+
+        testRunner.assertAllFlowFilesTransferred(GenerateRecordProcessor.SUCCESS, 1);
+        MockFlowFile out = testRunner.getFlowFilesForRelationship(GenerateRecordProcessor.SUCCESS).get(0);
+        out.assertAttributeEquals("mime.type", "application/json");
+        String[] records = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(100, records.length);
+        ObjectMapper mapper = new ObjectMapper();
+        for (String record : records) {
+            assertTrue(mapper.readTree(record).isObject());
+        }
+
+        testRunner.clearTransferState();
+        testRunner.setProperty(GenerateRecordProcessor.OUTPUT_FORMAT, "avro");
+        testRunner.run();
+        out = testRunner.getFlowFilesForRelationship(GenerateRecordProcessor.SUCCESS).get(0);
+        out.assertAttributeEquals("mime.type", "application/avro-binary");
+        byte[] content = out.toByteArray();
+        assertArrayEquals(new byte[]{'O', 'b', 'j', 1}, Arrays.copyOf(content, 4));
+    }
+
+    /*
+    CDC records only come as delimited text.
+     */
+    @Test
+    public void testCdcOutputFormat() {
+        testRunner.setProperty(GenerateRecordProcessor.GENERATOR_RESOURCE, "src/main/resources/sample-record-ordered-key-generator-cdc2.json");
+        testRunner.assertValid();
+        testRunner.setProperty(GenerateRecordProcessor.OUTPUT_FORMAT, "avro");
+        testRunner.assertNotValid();
+    }
+
+    /*
+    Validation checks the schema without building its pools, and still finds a bad one.
+     */
+    @Test
+    public void testValidationSkipsPools() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode schema = mapper.createObjectNode();
+        schema.put("delimiter", ",");
+        ArrayNode fields = schema.putArray("fields");
+        ObjectNode number = fields.addObject().putObject("number");
+        number.put("type", "long");
+        // 4 GB of longs, and a shared string pool, if they were built.
+        number.putObject("pool").put("size", Integer.MAX_VALUE / 4);
+        ObjectNode random = fields.addObject().putObject("string").putObject("random");
+        random.putObject("pool").put("size", 10).put("shared", "validation-only");
+        File schemaFile = folder.newFile("pooled-generator.json");
+        mapper.writeValue(schemaFile, schema);
+
+        testRunner.setProperty(GenerateRecordProcessor.GENERATOR_RESOURCE, schemaFile.getPath());
+        testRunner.assertValid();
+        assertNull(StringPool.getShared("pool:validation-only"));
+
+        random.putObject("pool").put("file", new File(folder.getRoot(), "missing.txt").getPath());
+        mapper.writeValue(schemaFile, schema);
+        testRunner.assertNotValid();
+    }
+
+    /*
+    Unique keys carry on from the processor's state when it's stopped and started again.
+     */
+    @Test
+    public void testKeysCarryOn() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode schema = mapper.createObjectNode();
+        schema.put("delimiter", ",");
+        schema.putArray("fields").addObject().putObject("unique").put("name", "id");
+        File schemaFile = folder.newFile("unique-generator.json");
+        mapper.writeValue(schemaFile, schema);
+        testRunner.setProperty(GenerateRecordProcessor.GENERATOR_RESOURCE, schemaFile.getPath());
+
+        testRunner.run();
+        testRunner.run();
+
+        Set<String> ids = new HashSet<String>();
+        for (MockFlowFile out : testRunner.getFlowFilesForRelationship(GenerateRecordProcessor.SUCCESS)) {
+            for (String record : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+                assertTrue(record, ids.add(record));
+            }
+        }
+        assertEquals(200, ids.size());
+        testRunner.getStateManager().assertStateSet(Scope.LOCAL);
+    }
+
+    @Test
+    public void testPermutationKeysCarryOn() throws Exception {
+        // No seed in the schema, so each start would shuffle the range differently.  Each start claims
+        // a block of 1024 ids, so the range holds all 8 without starting over.
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode schema = mapper.createObjectNode();
+        schema.put("delimiter", ",");
+        schema.putArray("fields").addObject().putObject("unique").put("name", "id")
+                .put("strategy", "permutation").put("min", 0).put("max", 10000);
+        File schemaFile = folder.newFile("permutation-generator.json");
+        mapper.writeValue(schemaFile, schema);
+        testRunner.setProperty(GenerateRecordProcessor.GENERATOR_RESOURCE, schemaFile.getPath());
+
+        for (int i = 0; i < 8; i++) {
+            testRunner.run();
+        }
+
+        Set<String> ids = new HashSet<String>();
+        for (MockFlowFile out : testRunner.getFlowFilesForRelationship(GenerateRecordProcessor.SUCCESS)) {
+            for (String record : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+                assertTrue(record, ids.add(record));
+            }
+        }
+        assertEquals(800, ids.size());
+        assertNotNull(testRunner.getStateManager().getState(Scope.LOCAL).get("seed"));
+    }
+
+}
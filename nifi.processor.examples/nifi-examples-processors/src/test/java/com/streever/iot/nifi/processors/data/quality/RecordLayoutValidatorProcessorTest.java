@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streever.iot.nifi.processors.data.quality;
+
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+
+public class RecordLayoutValidatorProcessorTest {
+
+    private TestRunner testRunner;
+
+    @Before
+    public void init() {
+        testRunner = TestRunners.newTestRunner(RecordLayoutValidatorProcessor.class);
+        // The mock context reads the raw value to answer isExpressionLanguagePresent().
+        testRunner.setValidateExpressionUsage(false);
+        testRunner.setProperty(RecordLayoutValidatorProcessor.REGEX, "^\\d{8}\\|\\w+$");
+        testRunner.setProperty(RecordLayoutValidatorProcessor.HAS_HEADER, "true");
+    }
+
+    @Test
+    public void testValid() {
+        testRunner.enqueue("DATE|NAME\n20161001|one\n20161002|two\n");
+        testRunner.run();
+
+        testRunner.assertAllFlowFilesTransferred(RecordLayoutValidatorProcessor.SUCCESS, 1);
+        MockFlowFile out = testRunner.getFlowFilesForRelationship(RecordLayoutValidatorProcessor.SUCCESS).get(0);
+        out.assertAttributeEquals("record.count", "3");
+        out.assertContentEquals("DATE|NAME\n20161001|one\n20161002|two\n");
+        // No errors FlowFile was made and dropped.
+        assertEquals(0, testRunner.getProvenanceEvents().size());
+    }
+
+    @Test
+    public void testRegExValidation() {
+        testRunner.setProperty(RecordLayoutValidatorProcessor.REGEX, "^\\d{8}(\\|\\w+$");
+        testRunner.assertNotValid();
+
+        // Only known per FlowFile.
+        testRunner.setProperty(RecordLayoutValidatorProcessor.REGEX, "^${layout}(");
+        testRunner.assertValid();
+    }
+
+    @Test
+    public void testChunkSizeValidation() {
+        testRunner.setProperty(RecordLayoutValidatorProcessor.CHUNK_SIZE, "0 B");
+        testRunner.assertNotValid();
+        testRunner.setProperty(RecordLayoutValidatorProcessor.CHUNK_SIZE, "4 GB");
+        testRunner.assertNotValid();
+        testRunner.setProperty(RecordLayoutValidatorProcessor.CHUNK_SIZE, "1 GB");
+        testRunner.assertValid();
+        testRunner.setProperty(RecordLayoutValidatorProcessor.CHUNK_SIZE, "1 KB");
+        testRunner.assertValid();
+    }
+
+    @Test
+    public void testErrors() {
+        testRunner.enqueue("DATE|NAME\n20161001|one\nbad one\n20161002|two\nbad two\n");
+        testRunner.run();
+
+        testRunner.assertTransferCount(RecordLayoutValidatorProcessor.FAILURE, 1);
+        testRunner.assertTransferCount(RecordLayoutValidatorProcessor.ERRORS, 1);
+
+        MockFlowFile original = testRunner.getFlowFilesForRelationship(RecordLayoutValidatorProcessor.FAILURE).get(0);
+        original.assertContentEquals("DATE|NAME\n20161001|one\nbad one\n20161002|two\nbad two\n");
+        original.assertAttributeEquals("error.count", "2");
+        original.assertAttributeEquals("validation.aborted", "false");
+
+        MockFlowFile errors = testRunner.getFlowFilesForRelationship(RecordLayoutValidatorProcessor.ERRORS).get(0);
+        errors.assertContentEquals("2\tbad one\n4\tbad two\n");
+    }
+
+    @Test
+    public void testManyErrors() {
+        // More errors than the sink buffers, so the errors FlowFile is appended to more than once.
+        StringBuilder content = new StringBuilder("DATE|NAME\n");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 3000; i++) {
+            content.append("bad ").append(i).append('\n');
+            expected.append(i).append("\tbad ").append(i).append('\n');
+        }
+        testRunner.enqueue(content.toString());
+        testRunner.run();
+
+        testRunner.assertTransferCount(RecordLayoutValidatorProcessor.ERRORS, 1);
+        MockFlowFile errors = testRunner.getFlowFilesForRelationship(RecordLayoutValidatorProcessor.ERRORS).get(0);
+        errors.assertContentEquals(expected.toString());
+        errors.assertAttributeEquals("error.count", "3000");
+    }
+
+    @Test
+    public void testMaxErrors() {
+        testRunner.setProperty(RecordLayoutValidatorProcessor.MAX_ERRORS, "1");
+        testRunner.enqueue("DATE|NAME\nbad one\nbad two\n20161002|two\n");
+        testRunner.run();
+
+        MockFlowFile errors = testRunner.getFlowFilesForRelationship(RecordLayoutValidatorProcessor.ERRORS).get(0);
+        errors.assertContentEquals("1\tbad one\n");
+        errors.assertAttributeEquals("validation.aborted", "true");
+        errors.assertAttributeEquals("record.count", "2");
+    }
+
+    @Test
+    public void testFooter() {
+        testRunner.setProperty(RecordLayoutValidatorProcessor.HAS_FOOTER, "true");
+        testRunner.setProperty(RecordLayoutValidatorProcessor.HEADER_REGEX, "^DATE\\|NAME$");
+        testRunner.setProperty(RecordLayoutValidatorProcessor.FOOTER_REGEX, "^TRAILER\\|(\\d+)$");
+        testRunner.enqueue("DATE|NAME\n20161001|one\n20161002|two\nTRAILER|2\n");
+        // A record short of the trailer count.
+        testRunner.enqueue("DATE|NAME\n20161001|one\nTRAILER|2\n");
+        testRunner.run(2);
+
+        testRunner.assertTransferCount(RecordLayoutValidatorProcessor.SUCCESS, 1);
+        MockFlowFile out = testRunner.getFlowFilesForRelationship(RecordLayoutValidatorProcessor.SUCCESS).get(0);
+        out.assertAttributeEquals("record.count", "4");
+        out.assertAttributeEquals("trailer.count", "2");
+
+        testRunner.assertTransferCount(RecordLayoutValidatorProcessor.FAILURE, 1);
+        MockFlowFile errors = testRunner.getFlowFilesForRelationship(RecordLayoutValidatorProcessor.ERRORS).get(0);
+        errors.assertContentEquals("2\tTRAILER|2\n");
+        errors.assertAttributeEquals("error.count", "1");
+    }
+
+    @Test
+    public void testMetrics() {
+        testRunner.setProperty(RecordLayoutValidatorProcessor.SAMPLE_INTERVAL, "1");
+        testRunner.enqueue("DATE|NAME\n20161001|one\n20161002|two\n");
+        testRunner.enqueue("DATE|NAME\n20161001|one\nbad one\n20161002|two\n");
+        testRunner.run(2);
+
+        MockFlowFile out = testRunner.getFlowFilesForRelationship(RecordLayoutValidatorProcessor.SUCCESS).get(0);
+        out.assertAttributeEquals("validation.error.ratio", "0.0");
+        out.assertAttributeExists("validation.bytes.per.second");
+        out.assertAttributeExists("validation.records.per.second");
+        out.assertAttributeExists("validation.match.p50.nanos");
+        out.assertAttributeNotExists("validation.first.error.nanos");
+
+        MockFlowFile failed = testRunner.getFlowFilesForRelationship(RecordLayoutValidatorProcessor.FAILURE).get(0);
+        failed.assertAttributeEquals("validation.error.ratio", "0.25");
+        failed.assertAttributeEquals("validation.first.error.record", "2");
+        failed.assertAttributeExists("validation.first.error.nanos");
+
+        assertEquals(Long.valueOf(7), testRunner.getCounterValue(RecordLayoutValidatorProcessor.RECORDS_VALIDATED));
+        assertEquals(Long.valueOf(1), testRunner.getCounterValue(RecordLayoutValidatorProcessor.RECORDS_INVALID));
+        assertEquals(Long.valueOf(36 + 44), testRunner.getCounterValue(RecordLayoutValidatorProcessor.BYTES_VALIDATED));
+        // Every data record was timed, into one of the match time counters.
+        long timed = 0;
+        for (String counter : RecordLayoutValidatorProcessor.MATCH_TIME_COUNTERS) {
+            Long value = testRunner.getCounterValue(counter);
+            timed += value != null ? value : 0;
+        }
+        assertEquals(5, timed);
+        assertNotNull(testRunner.getCounterValue(RecordLayoutValidatorProcessor.VALIDATION_MICROS));
+    }
+
+}
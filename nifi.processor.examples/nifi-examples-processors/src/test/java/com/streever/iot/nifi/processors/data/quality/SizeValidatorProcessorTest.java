@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.streever.iot.nifi.processors.data.quality;
+
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class SizeValidatorProcessorTest {
+
+    private TestRunner testRunner;
+
+    @Before
+    public void init() {
+        testRunner = TestRunners.newTestRunner(SizeValidatorProcessor.class);
+        testRunner.setProperty(SizeValidatorProcessor.HAS_HEADER, "true");
+    }
+
+    @Test
+    public void testSize() {
+        testRunner.setProperty(SizeValidatorProcessor.MIN_SIZE, "1 B");
+        testRunner.setProperty(SizeValidatorProcessor.MAX_SIZE, "30 B");
+        testRunner.enqueue("");
+        testRunner.enqueue("DATE|NAME\n20161001|one\n");
+        testRunner.enqueue("DATE|NAME\n20161001|one\n20161002|two\n");
+        testRunner.run(3);
+
+        testRunner.assertTransferCount(SizeValidatorProcessor.FAILURE, 2);
+        testRunner.assertTransferCount(SizeValidatorProcessor.SUCCESS, 1);
+        testRunner.getFlowFilesForRelationship(SizeValidatorProcessor.FAILURE).get(1)
+                .assertAttributeEquals("validation.reason", "Size 36 is above the maximum of 30 bytes");
+        MockFlowFile out = testRunner.getFlowFilesForRelationship(SizeValidatorProcessor.SUCCESS).get(0);
+        // Not read, so not counted.
+        out.assertAttributeNotExists("record.count");
+        MockFlowFile failed = testRunner.getFlowFilesForRelationship(SizeValidatorProcessor.FAILURE).get(0);
+        failed.assertAttributeEquals("validation.reason", "Size 0 is below the minimum of 1 bytes");
+    }
+
+    @Test
+    public void testRecords() {
+        testRunner.setProperty(SizeValidatorProcessor.MIN_RECORDS, "2");
+        testRunner.enqueue("DATE|NAME\n20161001|one\n");
+        testRunner.enqueue("DATE|NAME\n20161001|one\n20161002|two");
+        testRunner.run(2);
+
+        testRunner.assertTransferCount(SizeValidatorProcessor.FAILURE, 1);
+        testRunner.assertTransferCount(SizeValidatorProcessor.SUCCESS, 1);
+        testRunner.getFlowFilesForRelationship(SizeValidatorProcessor.FAILURE).get(0).assertAttributeEquals("record.count", "2");
+        testRunner.getFlowFilesForRelationship(SizeValidatorProcessor.SUCCESS).get(0).assertAttributeEquals("record.count", "3");
+    }
+
+    @Test
+    public void testMaxTrailerLengthValidation() {
+        testRunner.setProperty(SizeValidatorProcessor.MAX_TRAILER_LENGTH, "0 B");
+        testRunner.assertNotValid();
+        testRunner.setProperty(SizeValidatorProcessor.MAX_TRAILER_LENGTH, "3 GB");
+        testRunner.assertNotValid();
+        testRunner.setProperty(SizeValidatorProcessor.MAX_TRAILER_LENGTH, "1 MB");
+        testRunner.assertValid();
+    }
+
+    @Test
+    public void testTrailer() {
+        testRunner.setProperty(SizeValidatorProcessor.TRAILER_REGEX, "^TRAILER\\|(\\d+)$");
+        testRunner.enqueue("DATE|NAME\n20161001|one\n20161002|two\nTRAILER|2\n");
+        // Truncated
+        testRunner.enqueue("DATE|NAME\n20161001|one\n2016");
+        // Lost a record
+        testRunner.enqueue("DATE|NAME\n20161001|one\nTRAILER|2\n");
+        testRunner.run(3);
+
+        testRunner.assertTransferCount(SizeValidatorProcessor.SUCCESS, 1);
+        MockFlowFile out = testRunner.getFlowFilesForRelationship(SizeValidatorProcessor.SUCCESS).get(0);
+        out.assertAttributeEquals("record.count", "4");
+        out.assertAttributeEquals("trailer.count", "2");
+
+        testRunner.assertTransferCount(SizeValidatorProcessor.FAILURE, 2);
+        MockFlowFile truncated = testRunner.getFlowFilesForRelationship(SizeValidatorProcessor.FAILURE).get(0);
+        truncated.assertAttributeEquals("validation.reason", "Trailer '2016' doesn't match '^TRAILER\\|(\\d+)$'");
+        truncated.assertAttributeNotExists("record.count");
+        MockFlowFile lost = testRunner.getFlowFilesForRelationship(SizeValidatorProcessor.FAILURE).get(1);
+        lost.assertAttributeEquals("validation.reason", "1 records doesn't match the trailer count of 2");
+    }
+
+}
@@ -16,11 +16,14 @@
  */
 package com.streever.iot.nifi.processors.examples;
 
+import org.apache.nifi.util.MockFlowFile;
 import org.apache.nifi.util.TestRunner;
 import org.apache.nifi.util.TestRunners;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Collections;
+
 
 public class FilePartByRegExProcessorTest {
 
@@ -29,11 +32,81 @@ public class FilePartByRegExProcessorTest {
     @Before
     public void init() {
         testRunner = TestRunners.newTestRunner(FilePartByRegExProcessor.class);
+        // The mock context reads the raw value to answer isExpressionLanguagePresent().
+        testRunner.setValidateExpressionUsage(false);
     }
 
     @Test
     public void testProcessor() {
+        testRunner.setProperty(FilePartByRegExProcessor.OCCURRENCE, "2");
+        testRunner.setProperty(FilePartByRegExProcessor.REGEX, "^(\\d{4}-\\d{2}-\\d{2}).*");
+        testRunner.setProperty(FilePartByRegExProcessor.REGEX_GROUP_SUPPORT, "true");
+
+        testRunner.enqueue("header\n2016-01-01,a\n2016-01-02,b\n2016-01-03,c\n");
+        testRunner.run();
+
+        testRunner.assertAllFlowFilesTransferred(FilePartByRegExProcessor.SUCCESS, 1);
+        MockFlowFile out = testRunner.getFlowFilesForRelationship(FilePartByRegExProcessor.SUCCESS).get(0);
+        out.assertAttributeEquals("file.part.value", "2016-01-02");
+        out.assertAttributeEquals("file.part.offset", "20");
+        out.assertAttributeEquals("file.part.line", "3");
+    }
+
+    @Test
+    public void testProcessorExpressionLanguage() {
+        testRunner.setProperty(FilePartByRegExProcessor.OCCURRENCE, "1");
+        testRunner.setProperty(FilePartByRegExProcessor.REGEX, "^${prefix}(\\d+).*");
+        testRunner.setProperty(FilePartByRegExProcessor.REGEX_GROUP_SUPPORT, "true");
+
+        testRunner.enqueue("A1\nB2\n", Collections.singletonMap("prefix", "B"));
+        testRunner.enqueue("A1\nB2\n", Collections.singletonMap("prefix", "B"));
+        testRunner.enqueue("A1\nB2\n", Collections.singletonMap("prefix", "A"));
+        testRunner.run(3);
+
+        testRunner.assertAllFlowFilesTransferred(FilePartByRegExProcessor.SUCCESS, 3);
+        testRunner.getFlowFilesForRelationship(FilePartByRegExProcessor.SUCCESS).get(0).assertAttributeEquals("file.part.value", "2");
+        testRunner.getFlowFilesForRelationship(FilePartByRegExProcessor.SUCCESS).get(2).assertAttributeEquals("file.part.value", "1");
+    }
+
+    @Test
+    public void testProcessorRules() {
+        testRunner.setProperty(FilePartByRegExProcessor.REGEX, "^HDR\\|(\\d{4}-\\d{2}-\\d{2})");
+        testRunner.setProperty(FilePartByRegExProcessor.REGEX_GROUP_SUPPORT, "true");
+        testRunner.setProperty("record.count", "^TRL\\|(\\d+)");
+        testRunner.setProperty("batch.id", "1,1,\\|batch=(\\w+)");
+
+        testRunner.enqueue("HDR|2016-10-01|batch=B42\nrow1\nrow2\nTRL|2\n");
+        testRunner.run();
+
+        testRunner.assertAllFlowFilesTransferred(FilePartByRegExProcessor.SUCCESS, 1);
+        MockFlowFile out = testRunner.getFlowFilesForRelationship(FilePartByRegExProcessor.SUCCESS).get(0);
+        out.assertAttributeEquals("file.part.value", "2016-10-01");
+        out.assertAttributeEquals("file.part.offset", "0");
+        out.assertAttributeEquals("batch.id", "B42");
+        out.assertAttributeEquals("record.count", "2");
+        out.assertAttributeEquals("record.count.line", "4");
+        out.assertAttributeEquals("record.count.offset", "35");
+    }
+
+    @Test
+    public void testGroupSupportValidation() {
+        testRunner.setProperty(FilePartByRegExProcessor.REGEX, "^HDR\\|\\d+");
+        testRunner.setProperty(FilePartByRegExProcessor.REGEX_GROUP_SUPPORT, "true");
+        testRunner.assertNotValid();
+
+        testRunner.setProperty(FilePartByRegExProcessor.REGEX, "^HDR\\|(\\d+)");
+        testRunner.assertValid();
+
+        // An Expression Language RegEx is only known per FlowFile; without a group it's skipped.
+        testRunner.setProperty(FilePartByRegExProcessor.REGEX, "^${prefix}\\|\\d+");
+        testRunner.setProperty("record.count", "^TRL\\|(\\d+)");
+        testRunner.assertValid();
+        testRunner.enqueue("HDR|1\nTRL|0\n", Collections.singletonMap("prefix", "HDR"));
+        testRunner.run();
 
+        MockFlowFile out = testRunner.getFlowFilesForRelationship(FilePartByRegExProcessor.SUCCESS).get(0);
+        out.assertAttributeNotExists("file.part.value");
+        out.assertAttributeEquals("record.count", "0");
     }
 
 }
@@ -4,6 +4,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.*;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -38,6 +39,8 @@ public class FilePartByRegExTest {
             String value = comp.getValue();
 
             assertEquals("Match not found:", "-7688", value);
+            assertEquals("Line number", 18, comp.getMatchLineNumber());
+            assertEquals("Byte offset", 646, comp.getMatchOffset());
 
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -70,6 +73,8 @@ public class FilePartByRegExTest {
             String value = comp.getValue();
 
             assertEquals("Match not found:", "2015-06-30", value);
+            assertEquals("Line number", 4, comp.getMatchLineNumber());
+            assertEquals("Byte offset", 276, comp.getMatchOffset());
 
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -86,4 +91,108 @@ public class FilePartByRegExTest {
 
     }
 
+    @Test
+    public void RegExTest003() {
+        // A header match in a large stream should not read past the first buffer.
+        final long size = 64L * 1024 * 1024;
+        final byte[] header = "HDR|2016-10-01|\n".getBytes();
+        final long[] bytesRead = new long[1];
+
+        InputStream in = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                if (bytesRead[0] >= size) {
+                    return -1;
+                }
+                int pos = (int) bytesRead[0]++;
+                return pos < header.length ? header[pos] : (pos % 80 == 0 ? '\n' : 'x');
+            }
+        };
+
+        FilePartByRegEx comp = new FilePartByRegEx();
+        comp.setInputStream(in);
+        comp.setRegex("^HDR\\|(\\d{4}-\\d{2}-\\d{2})\\|");
+        comp.setRegexGroupSupport(true);
+        comp.setOccurrence(1);
+
+        assertEquals("Match not found:", "2016-10-01", comp.getValue());
+        assertEquals("Byte offset", 0, comp.getMatchOffset());
+        assertEquals("Line number", 1, comp.getMatchLineNumber());
+        assertTrue("Read too far: " + bytesRead[0], bytesRead[0] <= RecordScanner.DEFAULT_BUFFER_SIZE);
+    }
+
+    @Test
+    public void RegExTest004() {
+
+        InputStream fileIn = null;
+        try {
+            fileIn = new FileInputStream(classLoader.getResource(FILE_TWO).getFile());
+            FilePartsByRegEx comp = new FilePartsByRegEx();
+
+            comp.setInputStream(fileIn);
+            comp.addRule(FilePartRule.parse("third.date", "3,1,^(\\d{4}-\\d{2}-\\d{2}).*"));
+            comp.addRule(FilePartRule.parse("order.id", "^2015-05-29,(?:[^,]*,){5}(\\d+),"));
+            comp.addRule(FilePartRule.parse("header", "1,0,^Date,"));
+            comp.addRule(FilePartRule.parse("missing", "^NoSuchLine"));
+
+            Map<String, String> values = comp.getValues();
+
+            assertEquals("2015-06-30", values.get("third.date"));
+            assertEquals(276, comp.getMatchOffset("third.date"));
+            assertEquals("71043", values.get("order.id"));
+            assertEquals(3, comp.getMatchLineNumber("order.id"));
+            assertTrue(values.get("header").startsWith("Date,PriorShares"));
+            assertFalse(values.containsKey("missing"));
+            assertEquals(-1, comp.getMatchOffset("missing"));
+
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            assertFalse(true);
+        } finally {
+            if (fileIn != null) {
+                try {
+                    fileIn.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+    }
+
+    @Test
+    public void RegExTest005() throws Exception {
+        // The group is optional, so the first match has no value; the next one with a value is taken.
+        FilePartsByRegEx comp = new FilePartsByRegEx();
+        comp.setInputStream(new ByteArrayInputStream("ID|\nID|A7\nID|B9\n".getBytes()));
+        comp.addRule(FilePartRule.parse("id", "1,1,^ID\\|(\\w+)?"));
+        comp.addRule(FilePartRule.parse("line", "1,0,^ID"));
+
+        Map<String, String> values = comp.getValues();
+
+        assertEquals("A7", values.get("id"));
+        assertEquals(2, comp.getMatchLineNumber("id"));
+        assertEquals("ID|", values.get("line"));
+    }
+
+    @Test
+    public void RegExTest006() {
+        // A read failure isn't reported as rules not found.
+        InputStream broken = new SequenceInputStream(new ByteArrayInputStream("HDR|1\n".getBytes()), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Disk gone");
+            }
+        });
+        FilePartsByRegEx comp = new FilePartsByRegEx();
+        comp.setInputStream(broken);
+        comp.addRule(FilePartRule.parse("count", "^TRL\\|(\\d+)"));
+        try {
+            comp.getValues();
+            fail("Expected the IOException");
+        } catch (IOException expected) {
+            assertEquals("Disk gone", expected.getMessage());
+        }
+    }
+
 }
@@ -0,0 +1,232 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.parsers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class LayoutPatternTest {
+
+    private static final String LAYOUT = "^\\d{8}\\|[A-Z]{3}\\|-?\\d+\\.\\d{2}$";
+
+    private static final String[] PATTERNS = new String[]{
+            LAYOUT,
+            "^(\\w|\\s)*,-?\\d{1,10}\\.\\d{0,10},-?-?\\d{1,10}\\.\\d{0,10},-?\\d{1,10}\\.\\d{0,10}$",
+            "\\d{3}\\|",
+            "(USD|EUR)",
+            "a.c",
+            "[^,]+,b$",
+            "^ab?c*$",
+            "b{2,3}c",
+            "^[\\w-]+@[a-c]+\\.com$",
+            "(?:ab|a)(?:bc|c)$",
+            "^(a|)+b",
+            "a+?b",
+            "^[\\u00e9-\\u00ff]+",
+            "\\x61\\u0062",
+            ".$",
+            "^$",
+            "",
+            "[\\d\\s]{2}",
+            "[^\\D]a",
+            "(?<name>a)b",
+            "^a\\.\\|\\\\"};
+
+    private static final String ALPHABET = "abc,|.-@ 019AZé\r\n\t";
+
+    private String random(Random random, int maxLength) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = random.nextInt(maxLength + 1); i > 0; i--) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void AnalysisTest001() {
+        assertEquals("a.|\\", new LayoutPattern(Pattern.compile("^a\\.\\|\\\\")).getPrefix());
+        assertEquals("20", new LayoutPattern(Pattern.compile("^201?6")).getPrefix());
+        assertEquals("HDR", new LayoutPattern(Pattern.compile("^HDR\\d+")).getPrefix());
+        assertNull(new LayoutPattern(Pattern.compile(LAYOUT)).getPrefix());
+        assertNull(new LayoutPattern(Pattern.compile("^ab|cd")).getPrefix());
+        assertNull(new LayoutPattern(Pattern.compile("ab")).getPrefix());
+        assertNull(new LayoutPattern(Pattern.compile("^ab", Pattern.CASE_INSENSITIVE)).getPrefix());
+
+        for (String regex : PATTERNS) {
+            LayoutPattern pattern = new LayoutPattern(Pattern.compile(regex));
+            assertTrue(regex + ": " + pattern.getFallbackReason(), pattern.isLinear());
+        }
+        for (String regex : new String[]{"(a)\\1", "a(?=b)", "\\bword", "a++", "[a-z&&[^b]]", "^a|b$", "a$|b", "(?i)a", "\\p{Alpha}"}) {
+            LayoutPattern pattern = new LayoutPattern(Pattern.compile(regex));
+            assertFalse(regex, pattern.isLinear());
+            assertNotNull(pattern.getFallbackReason());
+        }
+        assertSame(LayoutPattern.forPattern(PatternCache.getShared().get(LAYOUT)), LayoutPattern.forPattern(PatternCache.getShared().get(LAYOUT)));
+    }
+
+    @Test
+    public void EquivalenceTest001() {
+        Random random = new Random(11);
+        List<String> inputs = new ArrayList<String>();
+        for (int i = 0; i < 3000; i++) {
+            inputs.add(random(random, 12));
+        }
+        // Some that match, some nearly.
+        String[] fixed = new String[]{"20161001|USD|12.34", "20161001|USD|12.3", "2016100|USD|12.34", "abc,1.5,2.5,-3.5",
+                "x,b", "abccc", "ab", "a-b@abc.com", "abc", "aab", "b", "aaab", "éé", "ab", "a\n", "a\r\n", "",
+                "9 ", "1a", "ab", "a.|\\", "😀b", "😀,b", "ac "};
+        for (String input : fixed) {
+            inputs.add(input);
+        }
+        for (String regex : PATTERNS) {
+            Pattern pattern = Pattern.compile(regex);
+            LayoutMatcher matcher = LayoutPattern.forPattern(pattern).matcher();
+            for (String input : inputs) {
+                assertEquals("'" + regex + "' on '" + input + "'", pattern.matcher(input).find(), matcher.find(input));
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void BacktrackTest001() {
+        // Exponential for a backtracking matcher.
+        LayoutPattern pattern = new LayoutPattern(Pattern.compile("^(a+)+$"));
+        assertTrue(pattern.isLinear());
+        LayoutMatcher matcher = pattern.matcher();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append('a');
+        }
+        assertTrue(matcher.find(sb));
+        sb.append('!');
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(matcher.find(sb));
+        }
+    }
+
+    @Test
+    public void ResetTest001() {
+        // The DFA for this has 2^13 states, more than are kept.
+        String regex = "(a|b)*a(a|b){12}$";
+        Pattern pattern = Pattern.compile(regex);
+        LayoutMatcher matcher = LayoutPattern.forPattern(pattern).matcher();
+        Random random = new Random(3);
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int c = 10 + random.nextInt(20); c > 0; c--) {
+                sb.append(random.nextBoolean() ? 'a' : 'b');
+            }
+            assertEquals(sb.toString(), pattern.matcher(sb).find(), matcher.find(sb));
+        }
+        assertEquals(0, matcher.getFallbackCount());
+    }
+
+    @Test
+    public void WideTest001() {
+        // More distinct non-ASCII transitions than are cached, so the table is cleared too.
+        String regex = "^[\\u0400-\\u04ff]+\\|[\\u4e00-\\u9fff]{2,4}$";
+        Pattern pattern = Pattern.compile(regex);
+        LayoutMatcher matcher = LayoutPattern.forPattern(pattern).matcher();
+        Random random = new Random(5);
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int c = 1 + random.nextInt(8); c > 0; c--) {
+                sb.append((char) (0x03f0 + random.nextInt(0x120)));
+            }
+            sb.append('|');
+            for (int c = 1 + random.nextInt(5); c > 0; c--) {
+                sb.append((char) (0x4e00 + random.nextInt(0x800)));
+            }
+            assertEquals(sb.toString(), pattern.matcher(sb).find(), matcher.find(sb));
+        }
+        assertEquals(0, matcher.getFallbackCount());
+    }
+
+    @Test
+    public void ThreadTest001() throws Exception {
+        final LayoutPattern pattern = LayoutPattern.forPattern(Pattern.compile(LAYOUT));
+        final LayoutMatcher matcher = pattern.threadMatcher();
+        assertSame(matcher, pattern.threadMatcher());
+        assertTrue(matcher.find("20161001|USD|12.34"));
+
+        final LayoutMatcher[] other = new LayoutMatcher[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                other[0] = pattern.threadMatcher();
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotNull(other[0]);
+        assertNotSame(matcher, other[0]);
+
+        // Only the last few patterns are kept.
+        for (int i = 0; i < LayoutPattern.MATCHERS_PER_THREAD; i++) {
+            new LayoutPattern(Pattern.compile("a{" + i + "}")).threadMatcher();
+        }
+        assertNotSame(matcher, pattern.threadMatcher());
+    }
+
+    @Test
+    public void Test050() {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 1000000; i++) {
+            if (i % 997 == 0) {
+                lines.add("BAD RECORD " + i);
+            } else {
+                lines.add((20161000 + (i % 31)) + "|USD|" + i + "." + (10 + (i % 90)));
+            }
+        }
+        for (String regex : new String[]{LAYOUT, "^2016\\d{4}\\|USD\\|\\d+\\.\\d{2}$", "\\|USD\\|\\d+\\.\\d{2}$"}) {
+            Pattern pattern = Pattern.compile(regex);
+            LayoutMatcher layout = LayoutPattern.forPattern(pattern).matcher();
+            java.util.regex.Matcher matcher = pattern.matcher("");
+            long matched = 0;
+            long linear = 0;
+            // Warm up.
+            for (String line : lines) {
+                matched += matcher.reset(line).find() ? 1 : 0;
+                linear += layout.find(line) ? 1 : 0;
+            }
+            assertEquals(matched, linear);
+
+            long start = System.currentTimeMillis();
+            for (String line : lines) {
+                matcher.reset(line).find();
+            }
+            long regexMs = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            for (String line : lines) {
+                layout.find(line);
+            }
+            long linearMs = System.currentTimeMillis() - start;
+            System.out.println("Matched " + lines.size() + " records to '" + regex + "' with java.util.regex in (ms): " + regexMs);
+            System.out.println("Matched " + lines.size() + " records to '" + regex + "' with the LayoutMatcher in (ms): " + linearMs);
+        }
+    }
+
+}
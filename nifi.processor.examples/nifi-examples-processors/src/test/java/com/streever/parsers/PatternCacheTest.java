@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.parsers;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class PatternCacheTest {
+
+    @Test
+    public void CacheTest001() {
+        PatternCache cache = new PatternCache(4);
+
+        Pattern first = cache.get("^(\\d{4}-\\d{2}-\\d{2}).*");
+        Pattern second = cache.get("^(\\d{4}-\\d{2}-\\d{2}).*");
+
+        assertSame("Pattern should be compiled once", first, second);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+
+        // Same regex, different flags, is a different pattern.
+        Pattern third = cache.get("^(\\d{4}-\\d{2}-\\d{2}).*", Pattern.CASE_INSENSITIVE);
+        assertNotSame(first, third);
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void CacheTest002() {
+        PatternCache cache = new PatternCache(2);
+
+        cache.get("a");
+        cache.get("b");
+        // Touch 'a' so 'b' is the eldest.
+        cache.get("a");
+        cache.get("c");
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.getIfPresent("a"));
+        assertNotNull(cache.getIfPresent("c"));
+        assertNull(cache.getIfPresent("b"));
+    }
+
+    @Test
+    public void LayoutTest001() {
+        PatternCache cache = new PatternCache(2);
+
+        LayoutPattern layout = cache.getLayout("^a+$");
+        assertSame(layout, cache.getLayout("^a+$"));
+        assertSame(cache.get("^a+$"), layout.getPattern());
+        // A Pattern compiled elsewhere shares the entry of its regex and flags.
+        assertSame(layout, cache.getLayout(Pattern.compile("^a+$")));
+
+        // Evicted with its Pattern.
+        cache.get("b");
+        cache.get("c");
+        assertEquals(2, cache.size());
+        assertNull(cache.getIfPresent("^a+$"));
+        assertNotSame(layout, cache.getLayout("^a+$"));
+    }
+
+}
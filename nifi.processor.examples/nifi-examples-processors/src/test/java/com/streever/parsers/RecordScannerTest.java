@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.streever.parsers;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecordScannerTest {
+
+    private List<String> scan(String content, String delimiter, int bufferSize) throws IOException {
+        RecordScanner scanner = new RecordScanner(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.UTF_8, delimiter, bufferSize);
+        List<String> records = new ArrayList<String>();
+        while (scanner.next()) {
+            records.add(scanner.getRecord().toString());
+        }
+        return records;
+    }
+
+    @Test
+    public void ScanTest001() throws IOException {
+        // CRLF and a last line without a newline.
+        List<String> records = scan("a,1\r\nbb,2\n\nccc,3", "\n", 4);
+        assertEquals(4, records.size());
+        assertEquals("a,1", records.get(0));
+        assertEquals("bb,2", records.get(1));
+        assertEquals("", records.get(2));
+        assertEquals("ccc,3", records.get(3));
+    }
+
+    @Test
+    public void ScanTest002() throws IOException {
+        // Multi-byte delimiter across buffer boundaries, with multi-byte characters.
+        List<String> records = scan("één|~|two|~||~|dreiß|~|", "|~|", 5);
+        assertEquals(4, records.size());
+        assertEquals("één", records.get(0));
+        assertEquals("two", records.get(1));
+        assertEquals("", records.get(2));
+        assertEquals("dreiß", records.get(3));
+    }
+
+    @Test
+    public void ScanTest003() throws IOException {
+        String content = "hdr\nvalue é=1\n";
+        RecordScanner scanner = new RecordScanner(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+
+        assertTrue(scanner.next());
+        assertEquals(1, scanner.getRecordNumber());
+        assertEquals(0, scanner.getRecordOffset());
+
+        assertTrue(scanner.next());
+        assertEquals(2, scanner.getRecordNumber());
+        assertEquals(4, scanner.getRecordOffset());
+        // 'é' is two bytes in UTF-8.
+        assertEquals(8, scanner.getByteLength("value é".length()));
+        assertEquals(content.getBytes(StandardCharsets.UTF_8).length, scanner.getPosition());
+
+        assertFalse(scanner.next());
+    }
+
+    @Test
+    public void LookaheadTest001() throws IOException {
+        // A small buffer, so looking ahead has to read, and the record must survive it.
+        for (String content : new String[]{"one|~|two|~|three|~|", "one|~|two|~|three"}) {
+            RecordScanner scanner = new RecordScanner(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)),
+                    StandardCharsets.UTF_8, "|~|", 4);
+            List<String> last = new ArrayList<String>();
+            while (scanner.next()) {
+                if (!scanner.hasNext()) {
+                    last.add(scanner.getRecord().toString());
+                }
+            }
+            assertEquals(1, last.size());
+            assertEquals("three", last.get(0));
+            assertEquals(3, scanner.getRecordNumber());
+        }
+    }
+
+    @Test
+    public void CharsetTest001() throws IOException {
+        // UTF-16 puts a byte order mark in front of getBytes(), and '\u0a00' holds the low byte of
+        // '\n' as its high byte, which must not be taken for a delimiter off a code unit boundary.
+        String content = "a,1\r\n\u0a00\u0a00,2\nccc,3";
+        for (String name : new String[]{"UTF-16", "UTF-16LE", "UTF-32"}) {
+            Charset charset = Charset.forName(name);
+            RecordScanner scanner = new RecordScanner(new ByteArrayInputStream(content.getBytes(charset)),
+                    charset, "\n", 8);
+            List<String> records = new ArrayList<String>();
+            while (scanner.next()) {
+                records.add(scanner.getRecord().toString());
+            }
+            assertEquals(name, 3, records.size());
+            assertEquals(name, "a,1", records.get(0));
+            assertEquals(name, "\u0a00\u0a00,2", records.get(1));
+            assertEquals(name, "ccc,3", records.get(2));
+        }
+        assertArrayEquals(new byte[]{0, '|', 0, '~'}, RecordScanner.encode("|~", StandardCharsets.UTF_16));
+        assertEquals(2, RecordScanner.unitLength(StandardCharsets.UTF_16));
+        assertEquals(1, RecordScanner.unitLength(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void Test050() throws IOException {
+        // Compare the bytes allocated per GB scanned against BufferedReader.readLine().
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            sb.append("Record ").append(i).append(",-7688.1234,42.5,1000.0000000,Some Text\n");
+        }
+        byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+        double gb = content.length / (1024.0 * 1024.0 * 1024.0);
+
+        long start = allocatedBytes();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8));
+        long lines = 0;
+        while (reader.readLine() != null) {
+            lines++;
+        }
+        long readerBytes = allocatedBytes() - start;
+
+        start = allocatedBytes();
+        RecordScanner scanner = new RecordScanner(new ByteArrayInputStream(content));
+        long records = 0;
+        while (scanner.next()) {
+            records++;
+        }
+        long scannerBytes = allocatedBytes() - start;
+
+        assertEquals(lines, records);
+        System.out.println("BufferedReader allocated (MB/GB): " + (long) (readerBytes / gb / (1024 * 1024)));
+        System.out.println("RecordScanner allocated (MB/GB): " + (long) (scannerBytes / gb / (1024 * 1024)));
+    }
+
+    private long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+}